@@ -0,0 +1,424 @@
+package com.bogatov.openglproj;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+/**
+ * Decodes textures on worker threads and uploads them on the GL thread a bounded amount at a time.
+ *
+ * {@link #load(int)} returns a placeholder texture handle right away; the decoded image is uploaded into that
+ * same handle by a later {@link #processUploads(long, long)} call, which the renderer makes once per frame.
+ *
+ * Loads carry a priority; on the default executor lower values are decoded first, in request order among equals.
+ * A load can be cancelled until its image is uploaded. A load whose decode fails ends there: its texture keeps
+ * the placeholder for good and reports {@link #isFailed}.
+ *
+ * Finished load tasks are reused and loads are tracked in primitive maps, so starting, checking and uploading
+ * loads on the GL thread does not allocate.
+ */
+public class AsyncTextureLoader {
+
+    private static final String TAG = AsyncTextureLoader.class.getSimpleName();
+
+    /** Decodes an image; called on a worker thread. */
+    public interface IDecoder {
+        /**
+         * @param size Size the shorter side is needed at; the image may be decoded smaller than the source but not
+         *            below this. 0 for full size.
+         */
+        public Bitmap decode(int resourceId, int size);
+    }
+
+    /** Creates and fills textures; called on the GL thread. */
+    public interface IUploader {
+        public int createPlaceholder();
+
+        public void upload(int textureHandle, Bitmap bitmap);
+    }
+
+    /** Told about every finished upload; called on the GL thread. */
+    public interface IUploadListener {
+        public void onTextureUploaded(int textureHandle, Bitmap bitmap);
+    }
+
+    /** Told when a decoded image is waiting to be uploaded, e.g. to request a frame; called on a worker thread. */
+    public interface IDecodeListener {
+        public void onTextureDecoded(int textureHandle);
+    }
+
+    /** Priority of loads for textures that are needed right now. */
+    public static final int PRIORITY_VISIBLE = 0;
+
+    private static ExecutorService sDefaultExecutor;
+
+    /** Orders decodes on the default executor's priority queue. */
+    private static final AtomicLong sSequence = new AtomicLong();
+
+    /**
+     * Decodes on a worker thread and then waits in the upload queue. Recycled by whoever is done with it last: the
+     * worker if nothing was queued, otherwise the thread that takes it off the queue.
+     */
+    private class LoadTask implements Runnable, Comparable<LoadTask> {
+        int resourceId;
+        int textureHandle;
+        int generation;
+        int priority;
+        int size;
+        long sequence;
+        volatile boolean cancelled;
+
+        /** The decoded image and its size, set before the task is queued for upload. */
+        Bitmap bitmap;
+        int bytes;
+
+        @Override
+        public void run() {
+            // Once queued, the task may be recycled and reused at any time, so the rest only uses locals.
+            final int textureHandle = this.textureHandle;
+            boolean queued = false;
+            try {
+                if (cancelled || generation != mGeneration.get()) {
+                    return;
+                }
+                Bitmap bitmap = null;
+                try {
+                    bitmap = mDecoder.decode(resourceId, size);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Error decoding texture resource " + resourceId, e);
+                } catch (OutOfMemoryError e) {
+                    // BitmapFactory's usual failure; the heap is fine again once the half-decoded image is gone.
+                    Log.e(TAG, "Out of memory decoding texture resource " + resourceId, e);
+                }
+                if (bitmap != null) {
+                    this.bitmap = bitmap;
+                    bytes = TextureUtils.getByteCount(bitmap);
+                    queued = true;
+                    mUploads.add(this);
+                } else if (fail(this)) {
+                    mFailedCount.incrementAndGet();
+                } else {
+                    return;
+                }
+                final IDecodeListener listener = mDecodeListener;
+                if (listener != null) {
+                    listener.onTextureDecoded(textureHandle);
+                }
+            } finally {
+                mPendingDecodes.decrementAndGet();
+                if (!queued) {
+                    recycle(this);
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(LoadTask other) {
+            if (priority != other.priority) {
+                return priority < other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    private final IDecoder mDecoder;
+    private final IUploader mUploader;
+    private final Executor mExecutor;
+
+    private IUploadListener mUploadListener;
+    private volatile IDecodeListener mDecodeListener;
+
+    /** Decoded loads waiting to be uploaded. */
+    private final ConcurrentLinkedQueue<LoadTask> mUploads = new ConcurrentLinkedQueue<LoadTask>();
+
+    /** Loads not yet uploaded, by texture handle. Guards itself and {@link #mFailed}. */
+    private final LongHashMap<LoadTask> mLoads = new LongHashMap<LoadTask>();
+
+    /** Textures whose decode failed, so they keep showing the placeholder. */
+    private final LongHashMap<Boolean> mFailed = new LongHashMap<Boolean>();
+    private final AtomicInteger mFailedCount = new AtomicInteger();
+
+    /** Finished tasks to reuse. */
+    private final ArrayList<LoadTask> mFreeTasks = new ArrayList<LoadTask>();
+
+    /** Bumped by {@link #cancelAll()}; uploads decoded for an older generation are dropped. */
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    private final AtomicInteger mPendingDecodes = new AtomicInteger();
+
+    private int mUploadedCount;
+    private long mUploadedBytes;
+    private int mCancelledCount;
+
+    public AsyncTextureLoader(IDecoder decoder, IUploader uploader, Executor executor) {
+        mDecoder = decoder;
+        mUploader = uploader;
+        mExecutor = executor;
+    }
+
+    /**
+     * Loader decoding resources with {@link TextureUtils} on a shared pool of background threads and uploading
+     * them with a mip chain, so they do not alias when drawn small.
+     */
+    public AsyncTextureLoader(final Context context) {
+        this(new IDecoder() {
+            @Override
+            public Bitmap decode(int resourceId, int size) {
+                return TextureUtils.decodeResource(context, resourceId, size);
+            }
+        }, new IUploader() {
+            @Override
+            public int createPlaceholder() {
+                return TextureUtils.createPlaceholderTexture();
+            }
+
+            @Override
+            public void upload(int textureHandle, Bitmap bitmap) {
+                TextureUtils.uploadMipmappedTexture(textureHandle, bitmap);
+            }
+        }, getDefaultExecutor());
+    }
+
+    private static synchronized Executor getDefaultExecutor() {
+        if (sDefaultExecutor == null) {
+            final int threads = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+            // Only LoadTasks are submitted, so the queue can order them by priority.
+            sDefaultExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, TAG + "-" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return sDefaultExecutor;
+    }
+
+    public void setUploadListener(IUploadListener listener) {
+        mUploadListener = listener;
+    }
+
+    public void setDecodeListener(IDecodeListener listener) {
+        mDecodeListener = listener;
+    }
+
+    /**
+     * Starts decoding a resource that is needed right now. Must be called on the GL thread.
+     *
+     * @return A texture handle that shows a placeholder until the image has been uploaded.
+     */
+    public int load(int resourceId) {
+        return load(resourceId, PRIORITY_VISIBLE);
+    }
+
+    /**
+     * Starts decoding a resource. Must be called on the GL thread.
+     *
+     * @param priority Lower values are decoded first, {@link #PRIORITY_VISIBLE} before everything else.
+     * @return A texture handle that shows a placeholder until the image has been uploaded.
+     */
+    public int load(int resourceId, int priority) {
+        return load(resourceId, priority, 0);
+    }
+
+    /**
+     * Starts decoding a resource at a reduced size. Must be called on the GL thread.
+     *
+     * @param size Size the shorter side of the image is needed at, or 0 for full size.
+     * @return A texture handle that shows a placeholder until the image has been uploaded.
+     */
+    public int load(int resourceId, int priority, int size) {
+        final int textureHandle = mUploader.createPlaceholder();
+        final LoadTask task = obtainTask();
+        task.resourceId = resourceId;
+        task.textureHandle = textureHandle;
+        task.generation = mGeneration.get();
+        task.priority = priority;
+        task.size = size;
+        task.sequence = sSequence.getAndIncrement();
+        task.cancelled = false;
+
+        synchronized (mLoads) {
+            // The name may have belonged to a texture that failed before it was deleted.
+            mFailed.remove(textureHandle);
+            mLoads.put(textureHandle, task);
+        }
+        mPendingDecodes.incrementAndGet();
+        mExecutor.execute(task);
+
+        return textureHandle;
+    }
+
+    private LoadTask obtainTask() {
+        synchronized (mFreeTasks) {
+            final int count = mFreeTasks.size();
+            if (count > 0) {
+                return mFreeTasks.remove(count - 1);
+            }
+        }
+        return new LoadTask();
+    }
+
+    private void recycle(LoadTask task) {
+        task.bitmap = null;
+        synchronized (mFreeTasks) {
+            mFreeTasks.add(task);
+        }
+    }
+
+    /**
+     * Ends a load whose decode failed, unless it was dropped meanwhile, so the texture stops reporting as loading.
+     *
+     * @return Whether the load was still current.
+     */
+    private boolean fail(LoadTask task) {
+        synchronized (mLoads) {
+            if (!mLoads.remove(task.textureHandle, task)) {
+                return false;
+            }
+            mFailed.put(task.textureHandle, Boolean.TRUE);
+            return true;
+        }
+    }
+
+    /**
+     * Drops a load that has not been uploaded yet; its texture keeps showing the placeholder.
+     *
+     * @return false if the image was already uploaded or the handle is unknown.
+     */
+    public boolean cancel(int textureHandle) {
+        final LoadTask task;
+        synchronized (mLoads) {
+            task = mLoads.remove(textureHandle);
+        }
+        if (task == null) {
+            return false;
+        }
+        task.cancelled = true;
+        mCancelledCount++;
+        return true;
+    }
+
+    /**
+     * Uploads decoded images until either budget is used up. At least one image is uploaded per call if any is
+     * waiting, so an image larger than the byte budget still gets through.
+     *
+     * @param byteBudget Maximum number of texel bytes to upload, or 0 for no limit.
+     * @param timeBudgetNanos Maximum time to spend, or 0 for no limit.
+     * @return Number of textures uploaded.
+     */
+    public int processUploads(long byteBudget, long timeBudgetNanos) {
+        final long start = System.nanoTime();
+        final int generation = mGeneration.get();
+        long bytes = 0;
+        int uploaded = 0;
+
+        LoadTask task;
+        while ((task = mUploads.peek()) != null) {
+            if (uploaded > 0) {
+                if (byteBudget > 0 && bytes + task.bytes > byteBudget) {
+                    break;
+                }
+                if (timeBudgetNanos > 0 && System.nanoTime() - start >= timeBudgetNanos) {
+                    break;
+                }
+            }
+            mUploads.poll();
+
+            // A cancelled load's handle may already belong to a newer load, so match the task itself.
+            final boolean current;
+            synchronized (mLoads) {
+                current = task.generation == generation && mLoads.remove(task.textureHandle, task);
+            }
+            if (current) {
+                mUploader.upload(task.textureHandle, task.bitmap);
+                if (mUploadListener != null) {
+                    mUploadListener.onTextureUploaded(task.textureHandle, task.bitmap);
+                }
+                bytes += task.bytes;
+                uploaded++;
+            }
+            task.bitmap.recycle();
+            recycle(task);
+        }
+
+        mUploadedCount += uploaded;
+        mUploadedBytes += bytes;
+        return uploaded;
+    }
+
+    /**
+     * Drops every queued and in-flight load, e.g. because the GL context the handles belong to is gone.
+     */
+    public void cancelAll() {
+        mGeneration.incrementAndGet();
+        synchronized (mLoads) {
+            mLoads.clear();
+            mFailed.clear();
+        }
+
+        LoadTask task;
+        while ((task = mUploads.poll()) != null) {
+            task.bitmap.recycle();
+            recycle(task);
+        }
+    }
+
+    /** Whether the texture still shows its placeholder because its image is not uploaded yet. */
+    public boolean isLoading(int textureHandle) {
+        synchronized (mLoads) {
+            return mLoads.containsKey(textureHandle);
+        }
+    }
+
+    /**
+     * Whether the texture's decode failed; it shows the placeholder and nothing more will be uploaded into it.
+     */
+    public boolean isFailed(int textureHandle) {
+        synchronized (mLoads) {
+            return mFailed.containsKey(textureHandle);
+        }
+    }
+
+    /** Whether no decode is running and no upload is waiting. */
+    public boolean isIdle() {
+        return mPendingDecodes.get() == 0 && mUploads.isEmpty();
+    }
+
+    public int getPendingUploadCount() {
+        return mUploads.size();
+    }
+
+    public int getUploadedCount() {
+        return mUploadedCount;
+    }
+
+    public long getUploadedBytes() {
+        return mUploadedBytes;
+    }
+
+    public int getCancelledCount() {
+        return mCancelledCount;
+    }
+
+    /** Number of loads whose decode failed. */
+    public int getFailedCount() {
+        return mFailedCount.get();
+    }
+}
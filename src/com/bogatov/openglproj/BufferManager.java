@@ -0,0 +1,143 @@
+package com.bogatov.openglproj;
+
+import java.nio.Buffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.opengl.GLES20;
+
+/**
+ * Creates {@link BufferObject}s for one GL context and keeps track of how much buffer memory they hold
+ * and how often they are uploaded to.
+ */
+public class BufferManager {
+
+    private final IGL mGL;
+
+    private final List<BufferObject> mBuffers = new ArrayList<BufferObject>();
+
+    private int mTotalBytes;
+    private int mStaticBytes;
+    private int mDynamicBytes;
+    private int mStreamBytes;
+
+    private int mUploadCount;
+    private long mUploadedBytes;
+    private int mOrphanCount;
+
+    public BufferManager(IGL gl) {
+        mGL = gl;
+    }
+
+    public BufferObject createVertexBuffer(int usage) {
+        return create(GLES20.GL_ARRAY_BUFFER, usage);
+    }
+
+    public BufferObject createIndexBuffer(int usage) {
+        return create(GLES20.GL_ELEMENT_ARRAY_BUFFER, usage);
+    }
+
+    /**
+     * Creates a buffer and fills it with the whole content of data in one go.
+     */
+    public BufferObject createVertexBuffer(int usage, Buffer data, int sizeBytes) {
+        final BufferObject buffer = createVertexBuffer(usage);
+        buffer.upload(data.position(0), sizeBytes);
+        buffer.unbind();
+        return buffer;
+    }
+
+    public BufferObject createIndexBuffer(int usage, Buffer data, int sizeBytes) {
+        final BufferObject buffer = createIndexBuffer(usage);
+        buffer.upload(data.position(0), sizeBytes);
+        buffer.unbind();
+        return buffer;
+    }
+
+    private BufferObject create(int target, int usage) {
+        if (usage != GLES20.GL_STATIC_DRAW && usage != GLES20.GL_DYNAMIC_DRAW && usage != GLES20.GL_STREAM_DRAW) {
+            throw new IllegalArgumentException("Unknown buffer usage: " + usage);
+        }
+
+        final BufferObject buffer = new BufferObject(this, mGL, target, usage);
+        mBuffers.add(buffer);
+        return buffer;
+    }
+
+    /** Deletes every buffer this manager created. */
+    public void releaseAll() {
+        for (int i = mBuffers.size() - 1; i >= 0; i--) {
+            mBuffers.get(i).release();
+        }
+    }
+
+    /**
+     * Forgets every buffer without deleting it, for when the GL context that owned them is already gone.
+     */
+    public void clear() {
+        mBuffers.clear();
+        mTotalBytes = 0;
+        mStaticBytes = 0;
+        mDynamicBytes = 0;
+        mStreamBytes = 0;
+    }
+
+    void onResize(BufferObject buffer, int oldSize, int newSize) {
+        addBytes(buffer.getUsage(), newSize - oldSize);
+    }
+
+    void onUpload(int sizeBytes) {
+        mUploadCount++;
+        mUploadedBytes += sizeBytes;
+    }
+
+    void onOrphan() {
+        mOrphanCount++;
+    }
+
+    void onRelease(BufferObject buffer, int size) {
+        addBytes(buffer.getUsage(), -size);
+        mBuffers.remove(buffer);
+    }
+
+    private void addBytes(int usage, int delta) {
+        mTotalBytes += delta;
+        if (usage == GLES20.GL_STATIC_DRAW) {
+            mStaticBytes += delta;
+        } else if (usage == GLES20.GL_DYNAMIC_DRAW) {
+            mDynamicBytes += delta;
+        } else {
+            mStreamBytes += delta;
+        }
+    }
+
+    public int getBufferCount() {
+        return mBuffers.size();
+    }
+
+    /** Bytes currently allocated in buffer stores. */
+    public int getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    public int getBytes(int usage) {
+        if (usage == GLES20.GL_STATIC_DRAW) {
+            return mStaticBytes;
+        } else if (usage == GLES20.GL_DYNAMIC_DRAW) {
+            return mDynamicBytes;
+        }
+        return mStreamBytes;
+    }
+
+    public int getUploadCount() {
+        return mUploadCount;
+    }
+
+    public long getUploadedBytes() {
+        return mUploadedBytes;
+    }
+
+    public int getOrphanCount() {
+        return mOrphanCount;
+    }
+}
@@ -0,0 +1,128 @@
+package com.bogatov.openglproj;
+
+import java.nio.Buffer;
+
+import android.opengl.GLES20;
+
+/**
+ * A GPU-resident vertex (GL_ARRAY_BUFFER) or index (GL_ELEMENT_ARRAY_BUFFER) buffer.
+ * Instances are created and accounted for by {@link BufferManager}.
+ */
+public class BufferObject {
+
+    private final BufferManager mManager;
+    private final IGL mGL;
+    private final int mTarget;
+    private final int mUsage;
+
+    private int mHandle;
+    private int mSize;
+
+    /** Number of glBufferData/glBufferSubData calls that carried data. */
+    private int mUploadCount;
+
+    BufferObject(BufferManager manager, IGL gl, int target, int usage) {
+        mManager = manager;
+        mGL = gl;
+        mTarget = target;
+        mUsage = usage;
+
+        final int[] handle = new int[1];
+        mGL.glGenBuffers(1, handle, 0);
+        if (handle[0] == 0) {
+            throw new RuntimeException("Error creating buffer object.");
+        }
+        mHandle = handle[0];
+    }
+
+    public void bind() {
+        mGL.glBindBuffer(mTarget, mHandle);
+    }
+
+    public void unbind() {
+        mGL.glBindBuffer(mTarget, 0);
+    }
+
+    /**
+     * (Re)allocates the buffer store and fills it with the remaining contents of data.
+     *
+     * @param sizeBytes Size of the new store in bytes.
+     */
+    public void upload(Buffer data, int sizeBytes) {
+        bind();
+        mGL.glBufferData(mTarget, sizeBytes, data, mUsage);
+        mManager.onResize(this, mSize, sizeBytes);
+        mSize = sizeBytes;
+        if (data != null) {
+            mUploadCount++;
+            mManager.onUpload(sizeBytes);
+        }
+    }
+
+    /**
+     * Replaces part of the existing store without reallocating it.
+     */
+    public void update(int offsetBytes, Buffer data, int sizeBytes) {
+        if (offsetBytes < 0 || offsetBytes + sizeBytes > mSize) {
+            throw new IllegalArgumentException("Update [" + offsetBytes + ", " + (offsetBytes + sizeBytes)
+                    + ") is outside of the buffer store of " + mSize + " bytes");
+        }
+        bind();
+        mGL.glBufferSubData(mTarget, offsetBytes, sizeBytes, data);
+        mUploadCount++;
+        mManager.onUpload(sizeBytes);
+    }
+
+    /**
+     * Detaches the current store from the buffer so the driver does not have to wait for draws still reading it.
+     * Used before refilling a streaming buffer every frame.
+     */
+    public void orphan() {
+        bind();
+        mGL.glBufferData(mTarget, mSize, null, mUsage);
+        mManager.onOrphan();
+    }
+
+    /**
+     * Uploads data, reusing the existing store when it is large enough.
+     */
+    public void set(Buffer data, int sizeBytes) {
+        if (sizeBytes > mSize) {
+            upload(data, sizeBytes);
+        } else {
+            if (mUsage == GLES20.GL_STREAM_DRAW) {
+                orphan();
+            }
+            update(0, data, sizeBytes);
+        }
+    }
+
+    public void release() {
+        if (mHandle != 0) {
+            mGL.glDeleteBuffers(1, new int[] {mHandle}, 0);
+            mHandle = 0;
+            mManager.onRelease(this, mSize);
+            mSize = 0;
+        }
+    }
+
+    public int getHandle() {
+        return mHandle;
+    }
+
+    public int getTarget() {
+        return mTarget;
+    }
+
+    public int getUsage() {
+        return mUsage;
+    }
+
+    public int getSize() {
+        return mSize;
+    }
+
+    public int getUploadCount() {
+        return mUploadCount;
+    }
+}
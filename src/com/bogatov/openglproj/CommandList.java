@@ -0,0 +1,204 @@
+package com.bogatov.openglproj;
+
+/**
+ * A list of GL calls recorded as ints, to be replayed later through an {@link IGL}, e.g. recorded on a worker
+ * thread and replayed on the GL thread. Each command is an opcode followed by its arguments; floats are stored as
+ * their raw bits.
+ *
+ * Recording and replaying do not allocate once the list has grown to the size of a typical frame. A list is not
+ * thread-safe: one thread records it, and the replaying thread must see the recording happen before it, e.g.
+ * through {@link TripleBuffer}.
+ */
+public class CommandList {
+
+    private static final int OP_USE_PROGRAM = 1;
+    private static final int OP_BIND_TEXTURE = 2;
+    private static final int OP_BIND_BUFFER = 3;
+    private static final int OP_ENABLE_VERTEX_ATTRIB_ARRAY = 4;
+    private static final int OP_VERTEX_ATTRIB_POINTER = 5;
+    private static final int OP_UNIFORM_1I = 6;
+    private static final int OP_UNIFORM_4F = 7;
+    private static final int OP_UNIFORM_MATRIX_4 = 8;
+    private static final int OP_DRAW_ARRAYS = 9;
+    private static final int OP_DRAW_ELEMENTS = 10;
+
+    private int[] mData;
+    private int mSize;
+    private int mCommandCount;
+    private int mDrawCount;
+
+    private final float[] mMatrix = new float[16];
+
+    public CommandList(int initialCapacity) {
+        mData = new int[Math.max(16, initialCapacity)];
+    }
+
+    /** Empties the list, keeping its storage. */
+    public void reset() {
+        mSize = 0;
+        mCommandCount = 0;
+        mDrawCount = 0;
+    }
+
+    private void ensureCapacity(int ints) {
+        if (mSize + ints > mData.length) {
+            final int[] data = new int[Math.max(2 * mData.length, mSize + ints)];
+            System.arraycopy(mData, 0, data, 0, mSize);
+            mData = data;
+        }
+    }
+
+    private void begin(int op, int arguments) {
+        ensureCapacity(1 + arguments);
+        mData[mSize++] = op;
+        mCommandCount++;
+    }
+
+    public void useProgram(int program) {
+        begin(OP_USE_PROGRAM, 1);
+        mData[mSize++] = program;
+    }
+
+    public void bindTexture(int target, int texture) {
+        begin(OP_BIND_TEXTURE, 2);
+        mData[mSize++] = target;
+        mData[mSize++] = texture;
+    }
+
+    public void bindBuffer(int target, int buffer) {
+        begin(OP_BIND_BUFFER, 2);
+        mData[mSize++] = target;
+        mData[mSize++] = buffer;
+    }
+
+    public void enableVertexAttribArray(int index) {
+        begin(OP_ENABLE_VERTEX_ATTRIB_ARRAY, 1);
+        mData[mSize++] = index;
+    }
+
+    /** Attribute pointer into the bound buffer object. */
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+        begin(OP_VERTEX_ATTRIB_POINTER, 6);
+        mData[mSize++] = index;
+        mData[mSize++] = size;
+        mData[mSize++] = type;
+        mData[mSize++] = normalized ? 1 : 0;
+        mData[mSize++] = stride;
+        mData[mSize++] = offset;
+    }
+
+    public void uniform1i(int location, int x) {
+        begin(OP_UNIFORM_1I, 2);
+        mData[mSize++] = location;
+        mData[mSize++] = x;
+    }
+
+    public void uniform4f(int location, float x, float y, float z, float w) {
+        begin(OP_UNIFORM_4F, 5);
+        mData[mSize++] = location;
+        mData[mSize++] = Float.floatToRawIntBits(x);
+        mData[mSize++] = Float.floatToRawIntBits(y);
+        mData[mSize++] = Float.floatToRawIntBits(z);
+        mData[mSize++] = Float.floatToRawIntBits(w);
+    }
+
+    /** Copies one matrix, so the source may change after recording. */
+    public void uniformMatrix4(int location, float[] value, int offset) {
+        begin(OP_UNIFORM_MATRIX_4, 17);
+        mData[mSize++] = location;
+        for (int i = 0; i < 16; i++) {
+            mData[mSize++] = Float.floatToRawIntBits(value[offset + i]);
+        }
+    }
+
+    public void drawArrays(int mode, int first, int count) {
+        begin(OP_DRAW_ARRAYS, 3);
+        mData[mSize++] = mode;
+        mData[mSize++] = first;
+        mData[mSize++] = count;
+        mDrawCount++;
+    }
+
+    public void drawElements(int mode, int count, int type, int offset) {
+        begin(OP_DRAW_ELEMENTS, 4);
+        mData[mSize++] = mode;
+        mData[mSize++] = count;
+        mData[mSize++] = type;
+        mData[mSize++] = offset;
+        mDrawCount++;
+    }
+
+    /**
+     * Issues the recorded calls in order. Must be called on the GL thread.
+     */
+    public void replay(IGL gl) {
+        final int[] data = mData;
+        final int size = mSize;
+        int i = 0;
+        while (i < size) {
+            final int op = data[i++];
+            switch (op) {
+            case OP_USE_PROGRAM:
+                gl.glUseProgram(data[i]);
+                i += 1;
+                break;
+            case OP_BIND_TEXTURE:
+                gl.glBindTexture(data[i], data[i + 1]);
+                i += 2;
+                break;
+            case OP_BIND_BUFFER:
+                gl.glBindBuffer(data[i], data[i + 1]);
+                i += 2;
+                break;
+            case OP_ENABLE_VERTEX_ATTRIB_ARRAY:
+                gl.glEnableVertexAttribArray(data[i]);
+                i += 1;
+                break;
+            case OP_VERTEX_ATTRIB_POINTER:
+                gl.glVertexAttribPointer(data[i], data[i + 1], data[i + 2], data[i + 3] != 0, data[i + 4],
+                        data[i + 5]);
+                i += 6;
+                break;
+            case OP_UNIFORM_1I:
+                gl.glUniform1i(data[i], data[i + 1]);
+                i += 2;
+                break;
+            case OP_UNIFORM_4F:
+                gl.glUniform4f(data[i], Float.intBitsToFloat(data[i + 1]), Float.intBitsToFloat(data[i + 2]),
+                        Float.intBitsToFloat(data[i + 3]), Float.intBitsToFloat(data[i + 4]));
+                i += 5;
+                break;
+            case OP_UNIFORM_MATRIX_4:
+                for (int j = 0; j < 16; j++) {
+                    mMatrix[j] = Float.intBitsToFloat(data[i + 1 + j]);
+                }
+                gl.glUniformMatrix4fv(data[i], 1, false, mMatrix, 0);
+                i += 17;
+                break;
+            case OP_DRAW_ARRAYS:
+                gl.glDrawArrays(data[i], data[i + 1], data[i + 2]);
+                i += 3;
+                break;
+            case OP_DRAW_ELEMENTS:
+                gl.glDrawElements(data[i], data[i + 1], data[i + 2], data[i + 3]);
+                i += 4;
+                break;
+            default:
+                throw new IllegalStateException("Unknown opcode " + op + " at " + (i - 1));
+            }
+        }
+    }
+
+    public int getCommandCount() {
+        return mCommandCount;
+    }
+
+    public int getDrawCount() {
+        return mDrawCount;
+    }
+
+    /** Number of ints recorded. */
+    public int getSize() {
+        return mSize;
+    }
+}
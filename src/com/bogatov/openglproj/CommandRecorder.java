@@ -0,0 +1,177 @@
+package com.bogatov.openglproj;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records a frame as several {@link CommandList}s in parallel, one per part of the scene, and replays the newest
+ * recorded frame on the GL thread.
+ *
+ * {@link #record} is a fork and join: the calling thread records part 0 itself and parks until the workers have
+ * finished the others, so it saves time only when the parts outweigh handing them out. Frames are published
+ * through a {@link TripleBuffer}, which lets a producer thread record the next frame while the GL thread replays
+ * the last one. When the GL thread records and replays itself, as {@link GridViewRenderer} does, the two run one
+ * after the other and the buffer only keeps the replayed lists apart from the ones being recorded.
+ *
+ * Nothing is allocated per frame.
+ */
+public class CommandRecorder {
+
+    /** Records one part of a frame; called concurrently on worker threads for different parts. */
+    public interface IRecorder {
+        public void record(int part, CommandList list);
+    }
+
+    private static ExecutorService sDefaultExecutor;
+
+    private final int mPartCount;
+    private final Executor mExecutor;
+    private final TripleBuffer<CommandList[]> mFrames;
+    private final PartTask[] mTasks;
+
+    private final AtomicInteger mRemaining = new AtomicInteger();
+    private volatile Thread mWaiter;
+    private volatile RuntimeException mFailure;
+
+    private int mRecordedCount;
+    private int mReplayedCount;
+
+    private class PartTask implements Runnable {
+        final int part;
+        CommandList list;
+        IRecorder recorder;
+
+        PartTask(int part) {
+            this.part = part;
+        }
+
+        @Override
+        public void run() {
+            try {
+                recorder.record(part, list);
+            } catch (RuntimeException e) {
+                mFailure = e;
+            } finally {
+                if (mRemaining.decrementAndGet() == 0) {
+                    LockSupport.unpark(mWaiter);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param partCount Number of lists per frame, e.g. the number of cores.
+     * @param executor Runs the parts other than the first.
+     */
+    public CommandRecorder(int partCount, Executor executor) {
+        if (partCount <= 0) {
+            throw new IllegalArgumentException("Part count must be positive: " + partCount);
+        }
+        mPartCount = partCount;
+        mExecutor = executor;
+
+        final CommandList[][] frames = new CommandList[3][];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new CommandList[partCount];
+            for (int part = 0; part < partCount; part++) {
+                frames[i][part] = new CommandList(256);
+            }
+        }
+        mFrames = new TripleBuffer<CommandList[]>(frames);
+
+        mTasks = new PartTask[partCount];
+        for (int part = 0; part < partCount; part++) {
+            mTasks[part] = new PartTask(part);
+        }
+    }
+
+    /** Uses one part per core on a shared pool of daemon threads. */
+    public CommandRecorder() {
+        this(Runtime.getRuntime().availableProcessors(), getDefaultExecutor());
+    }
+
+    private static synchronized Executor getDefaultExecutor() {
+        if (sDefaultExecutor == null) {
+            final int workers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            sDefaultExecutor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "CommandRecorder-" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sDefaultExecutor;
+    }
+
+    public int getPartCount() {
+        return mPartCount;
+    }
+
+    /**
+     * Records every part of a frame and publishes it for {@link #replay}. Only one thread may record at a time.
+     *
+     * @throws RuntimeException Whatever the recorder threw for any part; the frame is not published.
+     */
+    public void record(IRecorder recorder) {
+        final CommandList[] lists = mFrames.getBack();
+        for (int part = 0; part < mPartCount; part++) {
+            lists[part].reset();
+            mTasks[part].list = lists[part];
+            mTasks[part].recorder = recorder;
+        }
+        mFailure = null;
+        mWaiter = Thread.currentThread();
+        mRemaining.set(mPartCount);
+
+        for (int part = 1; part < mPartCount; part++) {
+            mExecutor.execute(mTasks[part]);
+        }
+        mTasks[0].run();
+        while (mRemaining.get() > 0) {
+            LockSupport.park(this);
+        }
+
+        final RuntimeException failure = mFailure;
+        if (failure != null) {
+            mFailure = null;
+            throw failure;
+        }
+        mFrames.publish();
+        mRecordedCount++;
+    }
+
+    /**
+     * Replays the newest published frame, part by part in order. Must be called on the GL thread.
+     *
+     * @return false if no frame was ever published.
+     */
+    public boolean replay(IGL gl) {
+        final CommandList[] lists = mFrames.acquire();
+        if (lists == null) {
+            return false;
+        }
+        for (int part = 0; part < mPartCount; part++) {
+            lists[part].replay(gl);
+        }
+        mReplayedCount++;
+        return true;
+    }
+
+    /** Number of frames published. */
+    public int getRecordedCount() {
+        return mRecordedCount;
+    }
+
+    /** Number of frames replayed; a frame is replayed again when no newer one was published in time. */
+    public int getReplayedCount() {
+        return mReplayedCount;
+    }
+}
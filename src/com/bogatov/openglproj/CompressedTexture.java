@@ -0,0 +1,226 @@
+package com.bogatov.openglproj;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A pre-compressed texture read from a PKM or KTX container, with one buffer per mip level ready to be passed to
+ * glCompressedTexImage2D. The level buffers are slices of the container data, so a memory mapped file is never
+ * copied onto the Java heap.
+ *
+ * This class does not touch GL, so containers can be checked on any thread.
+ */
+public class CompressedTexture {
+
+    /** Internal format of ETC1, from OES_compressed_ETC1_RGB8_texture. */
+    public static final int GL_ETC1_RGB8_OES = 0x8D64;
+
+    private static final int PKM_HEADER_SIZE = 16;
+
+    /** Format field of a PKM header holding ETC1; version 2.0 files may hold ETC2 formats instead. */
+    private static final int PKM_FORMAT_ETC1_RGB = 0;
+
+    private static final int KTX_HEADER_SIZE = 64;
+
+    private static final byte[] KTX_IDENTIFIER = {
+            (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+    };
+
+    private static final int KTX_ENDIANNESS = 0x04030201;
+
+    private final int mInternalFormat;
+    private final int mWidth;
+    private final int mHeight;
+    private final ByteBuffer[] mLevels;
+
+    private CompressedTexture(int internalFormat, int width, int height, ByteBuffer[] levels) {
+        mInternalFormat = internalFormat;
+        mWidth = width;
+        mHeight = height;
+        mLevels = levels;
+    }
+
+    /**
+     * Parses a PKM or KTX container, telling them apart by their magic bytes.
+     */
+    public static CompressedTexture parse(ByteBuffer data) throws IOException {
+        if (isKtx(data)) {
+            return parseKtx(data);
+        }
+        return parsePkm(data);
+    }
+
+    private static boolean isKtx(ByteBuffer data) {
+        if (data.remaining() < KTX_IDENTIFIER.length) {
+            return false;
+        }
+        for (int i = 0; i < KTX_IDENTIFIER.length; i++) {
+            if (data.get(data.position() + i) != KTX_IDENTIFIER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * PKM holds a single ETC1 level behind a 16 byte big endian header: "PKM ", version "10" or "20", format, the
+     * size padded to whole blocks and the original size. Only the ETC1 format is accepted.
+     */
+    public static CompressedTexture parsePkm(ByteBuffer data) throws IOException {
+        final ByteBuffer header = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+        final int start = header.position();
+        if (header.remaining() < PKM_HEADER_SIZE || header.get(start) != 'P' || header.get(start + 1) != 'K'
+                || header.get(start + 2) != 'M' || header.get(start + 3) != ' ') {
+            throw new IOException("Not a PKM file");
+        }
+        final int major = header.get(start + 4);
+        if ((major != '1' && major != '2') || header.get(start + 5) != '0') {
+            throw new IOException("Unsupported PKM version " + (char) major + "." + (char) header.get(start + 5));
+        }
+        final int format = header.getShort(start + 6) & 0xFFFF;
+        if (format != PKM_FORMAT_ETC1_RGB) {
+            throw new IOException("Unsupported PKM format " + format);
+        }
+
+        final int width = header.getShort(start + 12) & 0xFFFF;
+        final int height = header.getShort(start + 14) & 0xFFFF;
+        final int size = getEtc1DataSize(width, height);
+        final int paddedWidth = header.getShort(start + 8) & 0xFFFF;
+        final int paddedHeight = header.getShort(start + 10) & 0xFFFF;
+        // As ETC1.isValid checks it: the padded size covers the original one with less than a block to spare.
+        if (paddedWidth < width || paddedWidth - width >= 4 || paddedHeight < height || paddedHeight - height >= 4) {
+            throw new IOException("PKM padded size " + paddedWidth + "x" + paddedHeight + " does not match " + width
+                    + "x" + height);
+        }
+
+        final ByteBuffer[] levels = new ByteBuffer[] {
+                slice(data, start + PKM_HEADER_SIZE, size)
+        };
+        return new CompressedTexture(GL_ETC1_RGB8_OES, width, height, levels);
+    }
+
+    /**
+     * KTX 1.1 with a single 2D face. Each level is preceded by its size and padded to four bytes.
+     */
+    public static CompressedTexture parseKtx(ByteBuffer data) throws IOException {
+        final ByteBuffer header = data.duplicate();
+        final int start = header.position();
+        if (!isKtx(header) || header.remaining() < KTX_HEADER_SIZE) {
+            throw new IOException("Not a KTX file");
+        }
+
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(start + 12) != KTX_ENDIANNESS) {
+            header.order(ByteOrder.BIG_ENDIAN);
+        }
+
+        final int glType = header.getInt(start + 16);
+        final int internalFormat = header.getInt(start + 28);
+        final int width = header.getInt(start + 36);
+        final int height = header.getInt(start + 40);
+        final int depth = header.getInt(start + 44);
+        final int arrayElements = header.getInt(start + 48);
+        final int faces = header.getInt(start + 52);
+        final int levelCount = Math.max(1, header.getInt(start + 56));
+        final int keyValueBytes = header.getInt(start + 60);
+
+        if (glType != 0) {
+            throw new IOException("KTX texture is not compressed");
+        }
+        if (depth > 0 || arrayElements > 0 || faces != 1 || width <= 0 || height <= 0) {
+            throw new IOException("Only single 2D KTX textures are supported");
+        }
+        if (levelCount > getMipLevelCount(width, height)) {
+            throw new IOException("KTX texture has too many mip levels: " + levelCount);
+        }
+
+        final ByteBuffer[] levels = new ByteBuffer[levelCount];
+        int offset = start + KTX_HEADER_SIZE + keyValueBytes;
+        for (int level = 0; level < levelCount; level++) {
+            if (offset + 4 > header.limit()) {
+                throw new IOException("KTX texture is truncated at level " + level);
+            }
+            final int size = header.getInt(offset);
+            if (internalFormat == GL_ETC1_RGB8_OES
+                    && size != getEtc1DataSize(getMipSize(width, level), getMipSize(height, level))) {
+                throw new IOException("KTX level " + level + " has the wrong size: " + size);
+            }
+            levels[level] = slice(data, offset + 4, size);
+            offset += 4 + ((size + 3) & ~3);
+        }
+        return new CompressedTexture(internalFormat, width, height, levels);
+    }
+
+    private static ByteBuffer slice(ByteBuffer data, int offset, int size) throws IOException {
+        if (size < 0 || offset + size > data.limit()) {
+            throw new IOException("Texture data is truncated");
+        }
+        final ByteBuffer level = data.duplicate();
+        level.limit(offset + size).position(offset);
+        return level.slice();
+    }
+
+    /** Number of levels in a full mip chain, down to 1x1. */
+    public static int getMipLevelCount(int width, int height) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+
+    /** Width or height of a mip level. */
+    public static int getMipSize(int size, int level) {
+        return Math.max(1, size >> level);
+    }
+
+    /** ETC1 stores every 4x4 block, including partial ones at the edges, in 8 bytes. */
+    public static int getEtc1DataSize(int width, int height) {
+        return ((width + 3) / 4) * ((height + 3) / 4) * 8;
+    }
+
+    public static boolean isPowerOfTwo(int size) {
+        return size > 0 && (size & (size - 1)) == 0;
+    }
+
+    public int getInternalFormat() {
+        return mInternalFormat;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getLevelCount() {
+        return mLevels.length;
+    }
+
+    public int getLevelWidth(int level) {
+        return getMipSize(mWidth, level);
+    }
+
+    public int getLevelHeight(int level) {
+        return getMipSize(mHeight, level);
+    }
+
+    public ByteBuffer getLevelData(int level) {
+        return mLevels[level];
+    }
+
+    /**
+     * Whether the levels form a complete chain; ES 2.0 only samples mipmaps from complete power of two chains.
+     */
+    public boolean hasCompleteMipChain() {
+        return mLevels.length == getMipLevelCount(mWidth, mHeight) && isPowerOfTwo(mWidth) && isPowerOfTwo(mHeight);
+    }
+
+    /** Total bytes of all levels. */
+    public long getByteCount() {
+        long bytes = 0;
+        for (int i = 0; i < mLevels.length; i++) {
+            bytes += mLevels[i].remaining();
+        }
+        return bytes;
+    }
+}
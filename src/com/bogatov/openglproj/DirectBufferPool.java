@@ -0,0 +1,219 @@
+package com.bogatov.openglproj;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Hands out native-order direct buffers from a pool instead of calling ByteBuffer.allocateDirect for every piece
+ * of vertex or index data. Direct buffers are slow to allocate and their native memory is only freed once the GC
+ * gets around to finalizing them, so geometry rebuilt on every surface change piles up native memory; buffers
+ * released back to the pool are reused instead.
+ *
+ * Requests are rounded up to a power-of-two size class. Classes smaller than a slab are carved out of shared
+ * slabs; larger ones get a direct buffer of their own. Every class keeps a free list, so a block released once
+ * is reused by the next request of the same class. Reused blocks are not cleared: their contents are undefined
+ * until written.
+ *
+ * Buffers must be released through the pool with {@link #release}. The pool holds on to every buffer it hands out
+ * until then, so one that is simply dropped is never reused nor freed: its memory leaks for the life of the pool.
+ * Thread-safe.
+ */
+public class DirectBufferPool {
+
+    /** Smallest size class; smaller requests are rounded up to it. */
+    public static final int MIN_BLOCK_BYTES = 64;
+
+    /** Size of the slabs small classes are carved out of. */
+    public static final int SLAB_BYTES = 64 * 1024;
+
+    /** Largest size class kept on a free list; larger blocks are left to the GC when released. */
+    public static final int MAX_POOLED_BYTES = 4 * 1024 * 1024;
+
+    private static final int MIN_SHIFT = 6;
+
+    private static DirectBufferPool sShared;
+
+    /** Free blocks by size class; class i holds blocks of MIN_BLOCK_BYTES << i bytes. */
+    private final List<List<ByteBuffer>> mFree = new ArrayList<List<ByteBuffer>>();
+
+    /** Block behind every buffer handed out and not released yet. */
+    private final IdentityHashMap<Buffer, ByteBuffer> mInUse = new IdentityHashMap<Buffer, ByteBuffer>();
+
+    private ByteBuffer mSlab;
+    private int mSlabOffset;
+
+    private long mReservedBytes;
+    private long mUsedBytes;
+    private long mPeakUsedBytes;
+    private int mAllocationCount;
+    private int mReuseCount;
+
+    /** Pool shared by all geometry of the app. */
+    public static synchronized DirectBufferPool getShared() {
+        if (sShared == null) {
+            sShared = new DirectBufferPool();
+        }
+        return sShared;
+    }
+
+    /**
+     * @return A buffer of exactly the given capacity, position 0, in native order.
+     */
+    public synchronized ByteBuffer allocate(int bytes) {
+        final ByteBuffer block = acquire(bytes);
+        final ByteBuffer buffer = slice(block, bytes);
+        mInUse.put(buffer, block);
+        return buffer;
+    }
+
+    /**
+     * @return A float view with a capacity of exactly the given count, position 0, in native order.
+     */
+    public synchronized FloatBuffer allocateFloats(int count) {
+        final ByteBuffer block = acquire(count * 4);
+        final FloatBuffer buffer = slice(block, count * 4).asFloatBuffer();
+        mInUse.put(buffer, block);
+        return buffer;
+    }
+
+    /**
+     * @return A short view with a capacity of exactly the given count, position 0, in native order.
+     */
+    public synchronized ShortBuffer allocateShorts(int count) {
+        final ByteBuffer block = acquire(count * 2);
+        final ShortBuffer buffer = slice(block, count * 2).asShortBuffer();
+        mInUse.put(buffer, block);
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer and any views of it must not be used afterwards.
+     *
+     * @param buffer A buffer returned by this pool; null is ignored.
+     * @throws IllegalArgumentException If the buffer did not come from this pool or was already released.
+     */
+    public synchronized void release(Buffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        final ByteBuffer block = mInUse.remove(buffer);
+        if (block == null) {
+            throw new IllegalArgumentException("Buffer was not allocated from this pool or was already released");
+        }
+        final int size = block.capacity();
+        mUsedBytes -= size;
+        if (size <= MAX_POOLED_BYTES) {
+            getFreeList(getSizeClass(size)).add(block);
+        } else {
+            mReservedBytes -= size;
+        }
+    }
+
+    private ByteBuffer acquire(int bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("Negative size: " + bytes);
+        }
+        final int sizeClass = getSizeClass(bytes);
+        final int size = MIN_BLOCK_BYTES << sizeClass;
+        final List<ByteBuffer> free = getFreeList(sizeClass);
+
+        ByteBuffer block;
+        if (!free.isEmpty()) {
+            block = free.remove(free.size() - 1);
+            mReuseCount++;
+        } else if (size < SLAB_BYTES) {
+            block = carve(size);
+        } else {
+            block = ByteBuffer.allocateDirect(size);
+            mReservedBytes += size;
+        }
+        mAllocationCount++;
+        mUsedBytes += size;
+        mPeakUsedBytes = Math.max(mPeakUsedBytes, mUsedBytes);
+        return block;
+    }
+
+    /** Cuts a block out of the current slab, starting a new one if it is used up. */
+    private ByteBuffer carve(int size) {
+        // Blocks are powers of two, so aligning to the size keeps every block aligned for any element type.
+        int offset = (mSlabOffset + size - 1) & -size;
+        if (mSlab == null || offset + size > SLAB_BYTES) {
+            mSlab = ByteBuffer.allocateDirect(SLAB_BYTES);
+            mReservedBytes += SLAB_BYTES;
+            offset = 0;
+        }
+        mSlab.limit(offset + size).position(offset);
+        final ByteBuffer block = mSlab.slice();
+        mSlab.clear();
+        mSlabOffset = offset + size;
+        return block;
+    }
+
+    private static ByteBuffer slice(ByteBuffer block, int bytes) {
+        block.clear().limit(bytes);
+        final ByteBuffer buffer = block.slice().order(ByteOrder.nativeOrder());
+        block.clear();
+        return buffer;
+    }
+
+    private List<ByteBuffer> getFreeList(int sizeClass) {
+        while (mFree.size() <= sizeClass) {
+            mFree.add(new ArrayList<ByteBuffer>());
+        }
+        return mFree.get(sizeClass);
+    }
+
+    /** Index of the smallest size class holding the given number of bytes. */
+    static int getSizeClass(int bytes) {
+        if (bytes <= MIN_BLOCK_BYTES) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(bytes - 1) - MIN_SHIFT;
+    }
+
+    /**
+     * Lets the GC have the free blocks that own their memory, i.e. those of a slab or more. Blocks carved out of
+     * slabs stay, since their slab may still be partly in use.
+     */
+    public synchronized void trim() {
+        for (int sizeClass = getSizeClass(SLAB_BYTES); sizeClass < mFree.size(); sizeClass++) {
+            final List<ByteBuffer> free = mFree.get(sizeClass);
+            mReservedBytes -= (long) free.size() * (MIN_BLOCK_BYTES << sizeClass);
+            free.clear();
+        }
+    }
+
+    /** Native memory held by the pool, in use or free. */
+    public synchronized long getReservedBytes() {
+        return mReservedBytes;
+    }
+
+    /** Bytes handed out and not released yet, counted by size class. */
+    public synchronized long getUsedBytes() {
+        return mUsedBytes;
+    }
+
+    /** Highest {@link #getUsedBytes()} so far. */
+    public synchronized long getPeakUsedBytes() {
+        return mPeakUsedBytes;
+    }
+
+    public synchronized int getAllocationCount() {
+        return mAllocationCount;
+    }
+
+    /** Number of allocations served from a free list rather than new memory. */
+    public synchronized int getReuseCount() {
+        return mReuseCount;
+    }
+
+    public synchronized int getInUseCount() {
+        return mInUse.size();
+    }
+}
@@ -0,0 +1,185 @@
+package com.bogatov.openglproj;
+
+/**
+ * Records per-frame costs of a renderer into ring buffers holding the most recent frames: CPU time of the frame,
+ * GPU time where a timer is available, draw calls, state changes, vertices submitted and bytes uploaded.
+ *
+ * Recording happens on the GL thread, does not allocate and takes no locks; a frame becomes visible to readers on
+ * other threads when {@link #endFrame()} publishes it. A reader racing the writer may see the oldest frames of the
+ * window already overwritten by newer ones, which is fine for statistics.
+ */
+public class FrameStats {
+
+    public static final int METRIC_CPU_NANOS = 0;
+
+    /** GPU time of a recent frame, or -1 when there is no GPU timer. */
+    public static final int METRIC_GPU_NANOS = 1;
+    public static final int METRIC_DRAW_CALLS = 2;
+    public static final int METRIC_STATE_CHANGES = 3;
+    public static final int METRIC_VERTICES = 4;
+
+    /** Texture and buffer bytes uploaded. */
+    public static final int METRIC_UPLOAD_BYTES = 5;
+    public static final int METRIC_COUNT = 6;
+
+    /**
+     * Measures GPU time with timer queries. Results come back frames later; {@link #poll()} returns the most
+     * recent one that is ready. The GLES20 Java bindings expose no timer queries, so without an implementation
+     * backed by GL_EXT_disjoint_timer_query the GPU metric stays at -1.
+     */
+    public interface IGpuTimer {
+        public void begin();
+
+        public void end();
+
+        /** @return GPU nanoseconds of an earlier frame, or -1 if none has finished since the last poll. */
+        public long poll();
+    }
+
+    private final RenderScheduler.IClock mClock;
+    private final int mCapacity;
+
+    /** Ring buffers, metric by metric. */
+    private final long[] mSamples;
+
+    /** Frames published so far; the newest is at (mFrameCount - 1) % capacity. */
+    private volatile int mFrameCount;
+
+    private final long[] mCurrent = new long[METRIC_COUNT];
+    private long mFrameStart;
+    private boolean mInFrame;
+
+    private IGpuTimer mGpuTimer;
+    private long mLastGpuNanos = -1;
+
+    /** Shared by the percentile queries of all readers. */
+    private final Histogram mScratch = new Histogram();
+
+    /**
+     * @param capacity Number of most recent frames kept.
+     */
+    public FrameStats(int capacity) {
+        this(capacity, RenderScheduler.SYSTEM_CLOCK);
+    }
+
+    public FrameStats(int capacity, RenderScheduler.IClock clock) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        mCapacity = capacity;
+        mClock = clock;
+        mSamples = new long[METRIC_COUNT * capacity];
+    }
+
+    /** Sets a GPU timer, or null for none. */
+    public void setGpuTimer(IGpuTimer timer) {
+        mGpuTimer = timer;
+        mLastGpuNanos = -1;
+    }
+
+    public void beginFrame() {
+        for (int i = 0; i < METRIC_COUNT; i++) {
+            mCurrent[i] = 0;
+        }
+        mInFrame = true;
+        if (mGpuTimer != null) {
+            final long gpuNanos = mGpuTimer.poll();
+            if (gpuNanos >= 0) {
+                mLastGpuNanos = gpuNanos;
+            }
+            mGpuTimer.begin();
+        }
+        mFrameStart = mClock.nanoTime();
+    }
+
+    public void endFrame() {
+        if (!mInFrame) {
+            return;
+        }
+        mCurrent[METRIC_CPU_NANOS] = mClock.nanoTime() - mFrameStart;
+        if (mGpuTimer != null) {
+            mGpuTimer.end();
+        }
+        mCurrent[METRIC_GPU_NANOS] = mLastGpuNanos;
+
+        final int count = mFrameCount;
+        final int slot = count % mCapacity;
+        for (int i = 0; i < METRIC_COUNT; i++) {
+            mSamples[i * mCapacity + slot] = mCurrent[i];
+        }
+        mInFrame = false;
+        // The volatile write publishes the samples above.
+        mFrameCount = count + 1;
+    }
+
+    public void recordDrawCall(int vertices) {
+        mCurrent[METRIC_DRAW_CALLS]++;
+        mCurrent[METRIC_VERTICES] += vertices;
+    }
+
+    public void recordStateChange() {
+        mCurrent[METRIC_STATE_CHANGES]++;
+    }
+
+    public void recordUpload(long bytes) {
+        mCurrent[METRIC_UPLOAD_BYTES] += bytes;
+    }
+
+    /** Number of frames recorded since construction or {@link #clear()}. */
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /** Number of frames currently in the window. */
+    public int getWindowSize() {
+        return Math.min(mFrameCount, mCapacity);
+    }
+
+    /**
+     * @param framesAgo 0 for the newest frame.
+     * @return The metric's value for that frame, or 0 if it is not in the window.
+     */
+    public long getSample(int metric, int framesAgo) {
+        final int count = mFrameCount;
+        if (framesAgo < 0 || framesAgo >= Math.min(count, mCapacity)) {
+            return 0;
+        }
+        return mSamples[metric * mCapacity + (count - 1 - framesAgo) % mCapacity];
+    }
+
+    /**
+     * Adds the metric of every frame in the window to a histogram, without clearing it first. Unknown values,
+     * i.e. GPU times of -1, are left out.
+     */
+    public void fillHistogram(int metric, Histogram histogram) {
+        final int count = mFrameCount;
+        final int window = Math.min(count, mCapacity);
+        for (int i = 0; i < window; i++) {
+            final long value = mSamples[metric * mCapacity + (count - 1 - i) % mCapacity];
+            if (value >= 0) {
+                histogram.add(value);
+            }
+        }
+    }
+
+    /**
+     * @param percentile From 0 to 100, e.g. 50, 95 or 99.
+     * @return The metric at that percentile over the window; -1 for GPU time without a timer.
+     */
+    public long getPercentile(int metric, float percentile) {
+        if (metric == METRIC_GPU_NANOS && mGpuTimer == null) {
+            return -1;
+        }
+        synchronized (mScratch) {
+            mScratch.clear();
+            fillHistogram(metric, mScratch);
+            return mScratch.getPercentile(percentile);
+        }
+    }
+
+    /** Forgets every recorded frame; must be called on the GL thread. */
+    public void clear() {
+        mFrameCount = 0;
+        mInFrame = false;
+    }
+}
@@ -0,0 +1,84 @@
+package com.bogatov.openglproj;
+
+import android.opengl.GLES20;
+
+/**
+ * Draws the CPU time of the most recent frames of a {@link FrameStats} as a bar graph along the bottom of the
+ * screen: one bar per frame, newest on the right, green within the frame budget and red over it, with a line
+ * marking the budget. All of it goes through a {@link SpriteBatch} in a single draw.
+ *
+ * Meant to be drawn after {@link FrameStats#endFrame()}, through an {@link IGL} that is not instrumented, so the
+ * overlay does not measure itself. Does not allocate after {@link #onContextCreated}.
+ */
+public class FrameStatsOverlay {
+
+    /** Frame time of a 60 Hz display. */
+    public static final long FRAME_BUDGET_NANOS = 1000L * 1000 * 1000 / 60;
+
+    /** Frame time that fills the height of the graph. */
+    private static final long FULL_SCALE_NANOS = 2 * FRAME_BUDGET_NANOS;
+
+    /** Height of the graph in normalized device coordinates. */
+    private static final float HEIGHT = 0.5f;
+
+    /** Thickness of the budget line in normalized device coordinates. */
+    private static final float BUDGET_LINE_HEIGHT = 0.005f;
+
+    private static final int COLOR_WITHIN_BUDGET = 0xFF00CC00;
+    private static final int COLOR_OVER_BUDGET = 0xFFE60000;
+    private static final int COLOR_BUDGET = 0xFF000000;
+
+    private final FrameStats mStats;
+    private final int mBarCount;
+
+    /** Room for every bar and the budget line, so a frame of the graph is one flush. */
+    private final SpriteBatch mBatch;
+    private final float[] mIdentity = new float[16];
+
+    /**
+     * @param barCount Number of frames shown.
+     */
+    public FrameStatsOverlay(FrameStats stats, int barCount) {
+        mStats = stats;
+        mBarCount = barCount;
+        mBatch = new SpriteBatch(barCount + 1);
+        MatrixMath.setIdentity(mIdentity, 0);
+    }
+
+    /**
+     * Builds the overlay's programs and buffers; call from onSurfaceCreated after
+     * {@link ShaderLibrary#onContextCreated()}.
+     *
+     * @param gl Used for every draw of the overlay.
+     */
+    public void onContextCreated(IGL gl, ShaderLibrary library) {
+        mBatch.onContextCreated(gl, library);
+    }
+
+    public void draw() {
+        final int window = Math.min(mBarCount, mStats.getWindowSize());
+        if (window == 0) {
+            return;
+        }
+
+        final boolean depthTest = GLES20.glIsEnabled(GLES20.GL_DEPTH_TEST);
+        GLES20.glDisable(GLES20.GL_DEPTH_TEST);
+
+        final float barWidth = 2.0f / mBarCount;
+        mBatch.begin(mIdentity, 0);
+        for (int i = 0; i < window; i++) {
+            final long nanos = mStats.getSample(FrameStats.METRIC_CPU_NANOS, i);
+            final float x = 1.0f - (i + 1) * barWidth;
+            final float height = HEIGHT * Math.min(1.0f, (float) nanos / FULL_SCALE_NANOS);
+            mBatch.draw(x, -1.0f, barWidth, height, nanos <= FRAME_BUDGET_NANOS ? COLOR_WITHIN_BUDGET
+                    : COLOR_OVER_BUDGET);
+        }
+        final float budget = -1.0f + HEIGHT * FRAME_BUDGET_NANOS / FULL_SCALE_NANOS;
+        mBatch.draw(-1.0f, budget - BUDGET_LINE_HEIGHT / 2, 2.0f, BUDGET_LINE_HEIGHT, COLOR_BUDGET);
+        mBatch.end();
+
+        if (depthTest) {
+            GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+        }
+    }
+}
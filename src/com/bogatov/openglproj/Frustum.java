@@ -0,0 +1,77 @@
+package com.bogatov.openglproj;
+
+/**
+ * The six clip planes of a view frustum, extracted from a column-major projection * view (or MVP) matrix.
+ * Planes are in the space the matrix transforms from, so the frustum of an MVP matrix tests boxes in model space.
+ *
+ * Each plane is A, B, C, D with the inside where A * x + B * y + C * z + D >= 0.
+ */
+public class Frustum {
+
+    public static final int LEFT = 0;
+    public static final int RIGHT = 1;
+    public static final int BOTTOM = 2;
+    public static final int TOP = 3;
+    public static final int NEAR = 4;
+    public static final int FAR = 5;
+
+    public static final int PLANE_COUNT = 6;
+
+    private final float[] mPlanes = new float[PLANE_COUNT * 4];
+
+    /**
+     * Extracts the planes from the rows of the matrix: each is the w row plus or minus the x, y or z row.
+     */
+    public void set(float[] m, int offset) {
+        for (int axis = 0; axis < 3; axis++) {
+            setPlane(2 * axis, m, offset, axis, 1.0f);
+            setPlane(2 * axis + 1, m, offset, axis, -1.0f);
+        }
+    }
+
+    private void setPlane(int plane, float[] m, int offset, int row, float sign) {
+        final float a = m[offset + 3] + sign * m[offset + row];
+        final float b = m[offset + 7] + sign * m[offset + 4 + row];
+        final float c = m[offset + 11] + sign * m[offset + 8 + row];
+        final float d = m[offset + 15] + sign * m[offset + 12 + row];
+
+        // Normalized, so plane distances are real distances.
+        final float length = (float) Math.sqrt(a * a + b * b + c * c);
+        final float scale = length > 0.0f ? 1.0f / length : 1.0f;
+        mPlanes[4 * plane] = a * scale;
+        mPlanes[4 * plane + 1] = b * scale;
+        mPlanes[4 * plane + 2] = c * scale;
+        mPlanes[4 * plane + 3] = d * scale;
+    }
+
+    /** Plane A, B, C, D of {@link #LEFT} through {@link #FAR} start at 4 * plane. */
+    public float[] getPlanes() {
+        return mPlanes;
+    }
+
+    public boolean containsPoint(float x, float y, float z) {
+        for (int i = 0; i < mPlanes.length; i += 4) {
+            if (mPlanes[i] * x + mPlanes[i + 1] * y + mPlanes[i + 2] * z + mPlanes[i + 3] < 0.0f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether an axis aligned box is at least partly inside. For each plane only the box corner furthest along the
+     * plane normal is tested, so this is conservative: a box near a frustum corner may pass without being visible.
+     */
+    public boolean intersectsBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        for (int i = 0; i < mPlanes.length; i += 4) {
+            final float a = mPlanes[i];
+            final float b = mPlanes[i + 1];
+            final float c = mPlanes[i + 2];
+            if (a * (a >= 0.0f ? maxX : minX) + b * (b >= 0.0f ? maxY : minY) + c * (c >= 0.0f ? maxZ : minZ)
+                    + mPlanes[i + 3] < 0.0f) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
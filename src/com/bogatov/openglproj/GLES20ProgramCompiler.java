@@ -0,0 +1,34 @@
+package com.bogatov.openglproj;
+
+import android.opengl.GLES20;
+
+/**
+ * Builds programs with {@link ShaderUtils} and identifies the driver by the GL vendor, renderer and version
+ * strings of the current context.
+ */
+public class GLES20ProgramCompiler implements ProgramCache.ICompiler {
+
+    @Override
+    public int compile(String vertexShader, String fragmentShader, String[] attributes) {
+        final int vertexShaderHandle = ShaderUtils.compileShader(GLES20.GL_VERTEX_SHADER, vertexShader);
+        final int fragmentShaderHandle = ShaderUtils.compileShader(GLES20.GL_FRAGMENT_SHADER, fragmentShader);
+
+        return ShaderUtils.createAndLinkProgram(vertexShaderHandle, fragmentShaderHandle, attributes);
+    }
+
+    @Override
+    public int createProgram() {
+        return GLES20.glCreateProgram();
+    }
+
+    @Override
+    public void deleteProgram(int programHandle) {
+        GLES20.glDeleteProgram(programHandle);
+    }
+
+    @Override
+    public String getDriverKey() {
+        return GLES20.glGetString(GLES20.GL_VENDOR) + '\n' + GLES20.glGetString(GLES20.GL_RENDERER) + '\n'
+                + GLES20.glGetString(GLES20.GL_VERSION);
+    }
+}
@@ -0,0 +1,100 @@
+package com.bogatov.openglproj;
+
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+/**
+ * Program binary access through glGetProgramBinary/glProgramBinary of android.opengl.GLES30.
+ *
+ * The project targets an API level without GLES30 and GLES20 does not expose OES_get_program_binary,
+ * so the entry points are looked up by reflection. They are only used when the class exists (API 18+),
+ * the context actually is OpenGL ES 3 and the driver reports at least one binary format; otherwise the
+ * provider reports itself as unsupported and {@link ProgramCache} simply compiles from source.
+ */
+public class GLES30BinaryProvider implements ProgramCache.IBinaryProvider {
+
+    private static final String TAG = GLES30BinaryProvider.class.getSimpleName();
+
+    private static final int GL_PROGRAM_BINARY_LENGTH = 0x8741;
+    private static final int GL_NUM_PROGRAM_BINARY_FORMATS = 0x87FE;
+
+    private Method mGetProgramBinary;
+    private Method mProgramBinary;
+
+    private Boolean mSupported;
+
+    @Override
+    public boolean isSupported() {
+        if (mSupported == null) {
+            mSupported = detect();
+        }
+        return mSupported;
+    }
+
+    private boolean detect() {
+        final String version = GLES20.glGetString(GLES20.GL_VERSION);
+        if (version == null || !version.startsWith("OpenGL ES 3")) {
+            return false;
+        }
+
+        try {
+            final Class<?> gles30 = Class.forName("android.opengl.GLES30");
+            mGetProgramBinary = gles30.getMethod("glGetProgramBinary", int.class, int.class, int[].class, int.class,
+                    int[].class, int.class, Buffer.class);
+            mProgramBinary = gles30.getMethod("glProgramBinary", int.class, int.class, Buffer.class, int.class);
+        } catch (Exception e) {
+            return false;
+        }
+
+        final int[] formats = new int[1];
+        GLES20.glGetIntegerv(GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+        return formats[0] > 0;
+    }
+
+    @Override
+    public ProgramCache.Binary getBinary(int programHandle) {
+        final int[] length = new int[1];
+        GLES20.glGetProgramiv(programHandle, GL_PROGRAM_BINARY_LENGTH, length, 0);
+        if (length[0] <= 0) {
+            return null;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(length[0]).order(ByteOrder.nativeOrder());
+        final int[] written = new int[1];
+        final int[] format = new int[1];
+        try {
+            mGetProgramBinary.invoke(null, programHandle, length[0], written, 0, format, 0, buffer);
+        } catch (Exception e) {
+            Log.w(TAG, "glGetProgramBinary failed", e);
+            return null;
+        }
+        if (written[0] <= 0) {
+            return null;
+        }
+
+        final byte[] data = new byte[written[0]];
+        buffer.get(data);
+        return new ProgramCache.Binary(format[0], data);
+    }
+
+    @Override
+    public boolean loadBinary(int programHandle, int format, byte[] data) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(data.length).order(ByteOrder.nativeOrder());
+        buffer.put(data).position(0);
+        try {
+            mProgramBinary.invoke(null, programHandle, format, buffer, data.length);
+        } catch (Exception e) {
+            Log.w(TAG, "glProgramBinary failed", e);
+            return false;
+        }
+
+        final int[] linkStatus = new int[1];
+        GLES20.glGetProgramiv(programHandle, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        return linkStatus[0] != 0;
+    }
+}
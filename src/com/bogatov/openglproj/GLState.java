@@ -0,0 +1,334 @@
+package com.bogatov.openglproj;
+
+import java.nio.Buffer;
+
+import android.opengl.GLES20;
+
+/**
+ * {@link IGL} decorator that shadows the current program, the 2D texture bound to each unit, the active unit, the
+ * bound array and element buffers, the enabled vertex attributes, blending, depth testing, face culling and the
+ * blend function, and drops calls that would set them to what they already are.
+ *
+ * The shadow starts out unknown, so the first call of each kind always goes through. Anything that changes GL
+ * state without going through this object, e.g. a direct GLES20 call or a new context, must be followed by
+ * {@link #invalidate()}.
+ */
+public class GLState implements IGL {
+
+    /** Texture units whose bindings are shadowed; binds on other units always go through. */
+    public static final int MAX_TEXTURE_UNITS = 8;
+
+    /** Attributes past this index are not shadowed. */
+    private static final int MAX_ATTRIBS = 32;
+
+    private static final int UNKNOWN = -1;
+    private static final int DISABLED = 0;
+    private static final int ENABLED = 1;
+
+    private final IGL mGL;
+
+    private int mProgram;
+    private int mActiveUnit;
+    private final int[] mTextures = new int[MAX_TEXTURE_UNITS];
+    private int mArrayBuffer;
+    private int mElementArrayBuffer;
+
+    /** Attributes whose state is known, and which of those are enabled. */
+    private int mKnownAttribs;
+    private int mEnabledAttribs;
+
+    private int mBlend;
+    private int mDepthTest;
+    private int mCullFace;
+    private int mBlendSrc;
+    private int mBlendDst;
+
+    private int mElidedCount;
+
+    public GLState(IGL gl) {
+        mGL = gl;
+        invalidate();
+    }
+
+    /** Forgets everything, so the next call of each kind goes through. */
+    public void invalidate() {
+        mProgram = UNKNOWN;
+        mActiveUnit = UNKNOWN;
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++) {
+            mTextures[i] = UNKNOWN;
+        }
+        mArrayBuffer = UNKNOWN;
+        mElementArrayBuffer = UNKNOWN;
+        mKnownAttribs = 0;
+        mEnabledAttribs = 0;
+        mBlend = UNKNOWN;
+        mDepthTest = UNKNOWN;
+        mCullFace = UNKNOWN;
+        mBlendSrc = UNKNOWN;
+        mBlendDst = UNKNOWN;
+    }
+
+    /**
+     * Forgets the texture bindings and the active unit only, e.g. after textures were created or uploaded with
+     * direct GLES20 calls.
+     */
+    public void invalidateTextures() {
+        mActiveUnit = UNKNOWN;
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++) {
+            mTextures[i] = UNKNOWN;
+        }
+    }
+
+    /** Number of calls dropped because they would not have changed anything. */
+    public int getElidedCount() {
+        return mElidedCount;
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        if (program == mProgram) {
+            mElidedCount++;
+            return;
+        }
+        mProgram = program;
+        mGL.glUseProgram(program);
+    }
+
+    @Override
+    public void glEnable(int cap) {
+        setCapability(cap, ENABLED);
+    }
+
+    @Override
+    public void glDisable(int cap) {
+        setCapability(cap, DISABLED);
+    }
+
+    private void setCapability(int cap, int state) {
+        final int current;
+        switch (cap) {
+        case GLES20.GL_BLEND:
+            current = mBlend;
+            mBlend = state;
+            break;
+        case GLES20.GL_DEPTH_TEST:
+            current = mDepthTest;
+            mDepthTest = state;
+            break;
+        case GLES20.GL_CULL_FACE:
+            current = mCullFace;
+            mCullFace = state;
+            break;
+        default:
+            current = UNKNOWN;
+            break;
+        }
+        if (current == state) {
+            mElidedCount++;
+        } else if (state == ENABLED) {
+            mGL.glEnable(cap);
+        } else {
+            mGL.glDisable(cap);
+        }
+    }
+
+    @Override
+    public void glBlendFunc(int sfactor, int dfactor) {
+        if (sfactor == mBlendSrc && dfactor == mBlendDst) {
+            mElidedCount++;
+            return;
+        }
+        mBlendSrc = sfactor;
+        mBlendDst = dfactor;
+        mGL.glBlendFunc(sfactor, dfactor);
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        final int unit = texture - GLES20.GL_TEXTURE0;
+        if (unit == mActiveUnit) {
+            mElidedCount++;
+            return;
+        }
+        mActiveUnit = unit;
+        mGL.glActiveTexture(texture);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        if (target != GLES20.GL_TEXTURE_2D || mActiveUnit < 0 || mActiveUnit >= MAX_TEXTURE_UNITS) {
+            mGL.glBindTexture(target, texture);
+            return;
+        }
+        if (mTextures[mActiveUnit] == texture) {
+            mElidedCount++;
+            return;
+        }
+        mTextures[mActiveUnit] = texture;
+        mGL.glBindTexture(target, texture);
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        mGL.glGenTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset) {
+        // Deleting a bound texture binds 0 in its place.
+        for (int i = 0; i < n; i++) {
+            final int texture = textures[offset + i];
+            for (int unit = 0; unit < MAX_TEXTURE_UNITS; unit++) {
+                if (mTextures[unit] == texture) {
+                    mTextures[unit] = 0;
+                }
+            }
+        }
+        mGL.glDeleteTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        mGL.glUniform1i(location, x);
+    }
+
+    @Override
+    public void glUniform1f(int location, float x) {
+        mGL.glUniform1f(location, x);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+        mGL.glUniform4f(location, x, y, z, w);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        mGL.glUniformMatrix4fv(location, count, transpose, value, offset);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr) {
+        mGL.glVertexAttribPointer(index, size, type, normalized, stride, ptr);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        if (index < 0 || index >= MAX_ATTRIBS) {
+            mGL.glEnableVertexAttribArray(index);
+            return;
+        }
+        final int bit = 1 << index;
+        if ((mKnownAttribs & mEnabledAttribs & bit) != 0) {
+            mElidedCount++;
+            return;
+        }
+        mKnownAttribs |= bit;
+        mEnabledAttribs |= bit;
+        mGL.glEnableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        if (index < 0 || index >= MAX_ATTRIBS) {
+            mGL.glDisableVertexAttribArray(index);
+            return;
+        }
+        final int bit = 1 << index;
+        if ((mKnownAttribs & bit) != 0 && (mEnabledAttribs & bit) == 0) {
+            mElidedCount++;
+            return;
+        }
+        mKnownAttribs |= bit;
+        mEnabledAttribs &= ~bit;
+        mGL.glDisableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+        mGL.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        mGL.glDrawArrays(mode, first, count);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        mGL.glDrawElements(mode, count, type, offset);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        mGL.glGenBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        // Deleting a bound buffer binds 0 in its place.
+        for (int i = 0; i < n; i++) {
+            final int buffer = buffers[offset + i];
+            if (mArrayBuffer == buffer) {
+                mArrayBuffer = 0;
+            }
+            if (mElementArrayBuffer == buffer) {
+                mElementArrayBuffer = 0;
+            }
+        }
+        mGL.glDeleteBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        if (target == GLES20.GL_ARRAY_BUFFER) {
+            if (buffer == mArrayBuffer) {
+                mElidedCount++;
+                return;
+            }
+            mArrayBuffer = buffer;
+        } else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER) {
+            if (buffer == mElementArrayBuffer) {
+                mElidedCount++;
+                return;
+            }
+            mElementArrayBuffer = buffer;
+        }
+        mGL.glBindBuffer(target, buffer);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        mGL.glBufferData(target, size, data, usage);
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        mGL.glBufferSubData(target, offset, size, data);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        mGL.glGetProgramiv(program, pname, params, offset);
+    }
+
+    @Override
+    public String glGetActiveUniform(int program, int index, int[] size, int[] type) {
+        return mGL.glGetActiveUniform(program, index, size, type);
+    }
+
+    @Override
+    public String glGetActiveAttrib(int program, int index, int[] size, int[] type) {
+        return mGL.glGetActiveAttrib(program, index, size, type);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        return mGL.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        return mGL.glGetAttribLocation(program, name);
+    }
+}
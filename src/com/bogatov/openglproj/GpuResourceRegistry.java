@@ -0,0 +1,277 @@
+package com.bogatov.openglproj;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tracks the programs, buffers and textures of a renderer together with a recipe for creating each of them, so
+ * that after the GL context is lost they can all be created again without the renderer rebuilding everything
+ * by hand.
+ *
+ * Restoring goes in priority order: what the first frame needs is created right away in onSurfaceCreated, the
+ * rest a little at a time over the following frames. To make recreation cheaper, a recipe can hand over
+ * CPU-side data to keep between contexts, e.g. a decoded bitmap or shader sources; the {@link IRetentionPolicy}
+ * decides which of those are worth their memory. Anything not kept is produced again from its source, e.g. by
+ * decoding the resource once more.
+ *
+ * Has no GL dependencies itself; the recipes make the GL calls. Must be used on the GL thread.
+ *
+ * Only {@link SimpleRenderer} restores through the registry so far. {@link GridViewRenderer} and the renderer of
+ * {@link TextureView} still rebuild their objects in onSurfaceCreated, the grid's textures coming back
+ * asynchronously through {@link TextureCache}.
+ */
+public class GpuResourceRegistry {
+
+    public static final int KIND_PROGRAM = 0;
+    public static final int KIND_BUFFER = 1;
+    public static final int KIND_TEXTURE = 2;
+
+    /** Needed to draw the first frame; restored in onSurfaceCreated. */
+    public static final int PRIORITY_FIRST_FRAME = 0;
+
+    /** Needed soon; restored before the background ones. */
+    public static final int PRIORITY_VISIBLE = 1;
+
+    public static final int PRIORITY_BACKGROUND = 2;
+
+    /** Creates and deletes one GL object in the current context. */
+    public interface IRecipe {
+        /**
+         * @param retained What {@link #retain} returned after an earlier creation, or null if nothing was kept.
+         * @return The GL name of the new object.
+         */
+        public int create(Object retained);
+
+        /**
+         * Called after every creation that did not start from a kept copy.
+         *
+         * @param allowed Whether the retention policy lets a copy be kept; if not, the recipe should free whatever
+         *            CPU-side data it produced, e.g. recycle a bitmap.
+         * @return CPU-side data that makes the next {@link #create} cheaper, or null.
+         */
+        public Object retain(boolean allowed);
+
+        public void delete(int handle);
+    }
+
+    /** Decides which resources keep a CPU-side copy between contexts. */
+    public interface IRetentionPolicy {
+        /**
+         * @param bytes Estimated size of the copy.
+         * @param retainedBytes Size of the copies already kept.
+         */
+        public boolean shouldRetain(int kind, int priority, int bytes, long retainedBytes);
+    }
+
+    /** Keeps copies of resources up to a priority while they fit in a budget. */
+    public static IRetentionPolicy retainUpTo(final long budgetBytes, final int maxPriority) {
+        return new IRetentionPolicy() {
+            @Override
+            public boolean shouldRetain(int kind, int priority, int bytes, long retainedBytes) {
+                return priority <= maxPriority && retainedBytes + bytes <= budgetBytes;
+            }
+        };
+    }
+
+    public static class Resource {
+        public final int kind;
+        public final String name;
+        public final int priority;
+
+        /** Estimated size of the CPU-side copy, for the retention policy. */
+        public final int bytes;
+
+        private final IRecipe mRecipe;
+        private int mHandle;
+        private boolean mCreated;
+        private Object mRetained;
+        private int mCreateCount;
+
+        Resource(int kind, String name, int priority, int bytes, IRecipe recipe) {
+            this.kind = kind;
+            this.name = name;
+            this.priority = priority;
+            this.bytes = bytes;
+            mRecipe = recipe;
+        }
+
+        /** GL name in the current context; 0 until the resource is restored. */
+        public int getHandle() {
+            return mHandle;
+        }
+
+        /** Whether the resource exists in the current context. */
+        public boolean isCreated() {
+            return mCreated;
+        }
+
+        public boolean isRetained() {
+            return mRetained != null;
+        }
+
+        /** Number of times the resource was created, across contexts. */
+        public int getCreateCount() {
+            return mCreateCount;
+        }
+    }
+
+    private final IRetentionPolicy mPolicy;
+
+    /** Sorted by priority, in registration order within a priority. */
+    private final List<Resource> mResources = new ArrayList<Resource>();
+
+    /** Index of the first resource in mResources that may still need creating. */
+    private int mNextPending;
+
+    private long mRetainedBytes;
+    private int mRestoreCount;
+
+    public GpuResourceRegistry(IRetentionPolicy policy) {
+        mPolicy = policy;
+    }
+
+    /**
+     * Adds a resource without creating it; it is created by the next {@link #restore} or
+     * {@link #restorePending} call that reaches its priority.
+     *
+     * @param bytes Estimated size of a CPU-side copy, or 0 if the recipe keeps nothing.
+     */
+    public Resource register(int kind, String name, int priority, int bytes, IRecipe recipe) {
+        final Resource resource = new Resource(kind, name, priority, bytes, recipe);
+        int index = mResources.size();
+        while (index > 0 && mResources.get(index - 1).priority > priority) {
+            index--;
+        }
+        mResources.add(index, resource);
+        mNextPending = Math.min(mNextPending, index);
+        return resource;
+    }
+
+    /**
+     * Deletes a resource, drops its copy and stops tracking it.
+     */
+    public void unregister(Resource resource) {
+        final int index = mResources.indexOf(resource);
+        if (index < 0) {
+            return;
+        }
+        if (resource.mCreated) {
+            resource.mRecipe.delete(resource.mHandle);
+        }
+        dropCopy(resource);
+        resource.mCreated = false;
+        resource.mHandle = 0;
+        mResources.remove(index);
+        if (mNextPending > index) {
+            mNextPending--;
+        }
+    }
+
+    /**
+     * Marks every resource as gone with the previous context, keeping retained copies. Call first thing in
+     * onSurfaceCreated.
+     */
+    public void onContextLost() {
+        for (int i = 0; i < mResources.size(); i++) {
+            final Resource resource = mResources.get(i);
+            resource.mCreated = false;
+            resource.mHandle = 0;
+        }
+        mNextPending = 0;
+    }
+
+    /**
+     * Creates every missing resource of the given priority or more urgent.
+     *
+     * @return Number of resources created.
+     */
+    public int restore(int maxPriority) {
+        int created = 0;
+        while (mNextPending < mResources.size() && mResources.get(mNextPending).priority <= maxPriority) {
+            if (createNext()) {
+                created++;
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Creates missing resources in priority order until the time budget is used up, at least one per call.
+     *
+     * @param timeBudgetNanos Maximum time to spend, or 0 for no limit.
+     * @return Number of resources created.
+     */
+    public int restorePending(long timeBudgetNanos) {
+        final long start = System.nanoTime();
+        int created = 0;
+        while (mNextPending < mResources.size()) {
+            if (created > 0 && timeBudgetNanos > 0 && System.nanoTime() - start >= timeBudgetNanos) {
+                break;
+            }
+            if (createNext()) {
+                created++;
+            }
+        }
+        return created;
+    }
+
+    /** Creates the resource at mNextPending if it is missing and moves past it. */
+    private boolean createNext() {
+        final Resource resource = mResources.get(mNextPending++);
+        if (resource.mCreated) {
+            return false;
+        }
+        resource.mHandle = resource.mRecipe.create(resource.mRetained);
+        resource.mCreated = true;
+        resource.mCreateCount++;
+        mRestoreCount++;
+
+        if (resource.mRetained == null) {
+            final boolean allowed = mPolicy.shouldRetain(resource.kind, resource.priority, resource.bytes, 
+                    mRetainedBytes);
+            final Object retained = resource.mRecipe.retain(allowed);
+            if (allowed && retained != null) {
+                resource.mRetained = retained;
+                mRetainedBytes += resource.bytes;
+            }
+        }
+        return true;
+    }
+
+    /** Drops every CPU-side copy, e.g. when the system is low on memory. */
+    public void dropCopies() {
+        for (int i = 0; i < mResources.size(); i++) {
+            dropCopy(mResources.get(i));
+        }
+    }
+
+    private void dropCopy(Resource resource) {
+        if (resource.mRetained != null) {
+            resource.mRetained = null;
+            mRetainedBytes -= resource.bytes;
+        }
+    }
+
+    /** Whether every resource exists in the current context. */
+    public boolean isRestored() {
+        return mNextPending >= mResources.size();
+    }
+
+    public int getResourceCount() {
+        return mResources.size();
+    }
+
+    /** Resource at a position in restore order. */
+    public Resource getResource(int index) {
+        return mResources.get(index);
+    }
+
+    public long getRetainedBytes() {
+        return mRetainedBytes;
+    }
+
+    /** Number of resource creations, across contexts. */
+    public int getRestoreCount() {
+        return mRestoreCount;
+    }
+}
@@ -0,0 +1,250 @@
+package com.bogatov.openglproj;
+
+import java.nio.FloatBuffer;
+
+import android.opengl.GLES20;
+
+/**
+ * Collects grid cells into one interleaved, pre-transformed vertex stream and draws it
+ * with a single glDrawArrays per texture instead of one draw per cell.
+ *
+ * Cells may show a sub-rectangle of their texture, so cells whose images share a {@link TextureAtlas} page
+ * still end up in the same draw.
+ */
+public class GridBatch {
+
+    /** X, Y, Z, S, T */
+    public static final int FLOATS_PER_VERTEX = 5;
+
+    public static final int VERTICES_PER_CELL = 6;
+
+    private static final int BYTES_PER_FLOAT = 4;
+
+    private static final int POSITION_DATA_SIZE = 3;
+
+    private static final int TEXTURE_COORDINATE_DATA_SIZE = 2;
+
+    private static final int STRIDE = FLOATS_PER_VERTEX * BYTES_PER_FLOAT;
+
+    /** Geometry of a single cell in object space. */
+    private final float[] mCellPositions = new float[VERTICES_PER_CELL * POSITION_DATA_SIZE];
+    private final float[] mCellTextureCoordinates = new float[VERTICES_PER_CELL * TEXTURE_COORDINATE_DATA_SIZE];
+
+    /** Per cell X, Y translation, texture handle and U0, V0, U1, V1 texture rectangle, in insertion order. */
+    private float[] mCellTranslations;
+    private int[] mCellTextures;
+    private float[] mCellRegions;
+    private int mCellCount;
+
+    /** Vertex ranges sharing one texture, filled in by {@link #build()}. */
+    private int[] mRangeTextures;
+    private int[] mRangeFirst;
+    private int[] mRangeCount;
+    private int mRanges;
+
+    private FloatBuffer mVertices;
+
+    /** GPU copy of {@link #mVertices}, when attached to a {@link BufferManager}. */
+    private BufferObject mVertexBuffer;
+
+    private int mDrawCallCount;
+
+    public GridBatch(int initialCapacity) {
+        ensureCellCapacity(Math.max(1, initialCapacity));
+    }
+
+    /**
+     * Sets the geometry every cell is built from.
+     *
+     * @param positions {@link #VERTICES_PER_CELL} X, Y, Z triples.
+     * @param textureCoordinates {@link #VERTICES_PER_CELL} S, T pairs.
+     */
+    public void setCellGeometry(float[] positions, float[] textureCoordinates) {
+        System.arraycopy(positions, 0, mCellPositions, 0, mCellPositions.length);
+        System.arraycopy(textureCoordinates, 0, mCellTextureCoordinates, 0, mCellTextureCoordinates.length);
+    }
+
+    /**
+     * Keeps the built stream in a buffer object so draws do not resend it every frame.
+     * Must be called again after the GL context is recreated.
+     */
+    public void attach(BufferManager bufferManager) {
+        mVertexBuffer = bufferManager.createVertexBuffer(GLES20.GL_DYNAMIC_DRAW);
+    }
+
+    public void begin() {
+        mCellCount = 0;
+        mRanges = 0;
+    }
+
+    public void addCell(float xTranslate, float yTranslate, int textureHandle) {
+        addCell(xTranslate, yTranslate, textureHandle, 0.0f, 0.0f, 1.0f, 1.0f);
+    }
+
+    public void addCell(float xTranslate, float yTranslate, TextureAtlas.Region region) {
+        addCell(xTranslate, yTranslate, region.textureHandle, region.u0, region.v0, region.u1, region.v1);
+    }
+
+    /**
+     * Adds a cell showing the given rectangle of the texture; the cell texture coordinates are mapped into it.
+     */
+    public void addCell(float xTranslate, float yTranslate, int textureHandle, float u0, float v0, float u1, float v1) {
+        ensureCellCapacity(mCellCount + 1);
+
+        mCellTranslations[2 * mCellCount] = xTranslate;
+        mCellTranslations[2 * mCellCount + 1] = yTranslate;
+        mCellTextures[mCellCount] = textureHandle;
+        mCellRegions[4 * mCellCount] = u0;
+        mCellRegions[4 * mCellCount + 1] = v0;
+        mCellRegions[4 * mCellCount + 2] = u1;
+        mCellRegions[4 * mCellCount + 3] = v1;
+        mCellCount++;
+    }
+
+    /**
+     * Writes all added cells into the vertex stream, grouped by texture in order of first use.
+     */
+    public void build() {
+        final int vertexFloats = mCellCount * VERTICES_PER_CELL * FLOATS_PER_VERTEX;
+        if (mVertices == null || mVertices.capacity() < vertexFloats) {
+            final DirectBufferPool pool = DirectBufferPool.getShared();
+            pool.release(mVertices);
+            mVertices = pool.allocateFloats(vertexFloats);
+        }
+        mVertices.clear();
+
+        if (mRangeTextures == null || mRangeTextures.length < mCellCount) {
+            mRangeTextures = new int[mCellTextures.length];
+            mRangeFirst = new int[mCellTextures.length];
+            mRangeCount = new int[mCellTextures.length];
+        }
+        mRanges = 0;
+
+        int vertex = 0;
+        for (int cell = 0; cell < mCellCount; cell++) {
+            final int texture = mCellTextures[cell];
+            if (findRange(texture) >= 0) {
+                continue;
+            }
+
+            // Emit every cell using this texture in one contiguous run.
+            mRangeTextures[mRanges] = texture;
+            mRangeFirst[mRanges] = vertex;
+            for (int other = cell; other < mCellCount; other++) {
+                if (mCellTextures[other] == texture) {
+                    putCell(other);
+                    vertex += VERTICES_PER_CELL;
+                }
+            }
+            mRangeCount[mRanges] = vertex - mRangeFirst[mRanges];
+            mRanges++;
+        }
+
+        mVertices.position(0);
+        if (mVertexBuffer != null && vertex > 0) {
+            mVertexBuffer.set(mVertices, vertex * STRIDE);
+            mVertexBuffer.unbind();
+        }
+    }
+
+    /**
+     * Draws the built stream; the caller is expected to have the program and matrices already set.
+     *
+     * @return Number of draw calls issued.
+     */
+    public int draw(IGL gl, int positionHandle, int textureCoordinateHandle) {
+        mDrawCallCount = 0;
+        if (mRanges == 0) {
+            return 0;
+        }
+
+        if (mVertexBuffer != null) {
+            mVertexBuffer.bind();
+            gl.glVertexAttribPointer(positionHandle, POSITION_DATA_SIZE, GLES20.GL_FLOAT, false, STRIDE, 0);
+            gl.glVertexAttribPointer(textureCoordinateHandle, TEXTURE_COORDINATE_DATA_SIZE, GLES20.GL_FLOAT, false, STRIDE,
+                    POSITION_DATA_SIZE * BYTES_PER_FLOAT);
+        } else {
+            mVertices.position(0);
+            gl.glVertexAttribPointer(positionHandle, POSITION_DATA_SIZE, GLES20.GL_FLOAT, false, STRIDE, mVertices);
+            mVertices.position(POSITION_DATA_SIZE);
+            gl.glVertexAttribPointer(textureCoordinateHandle, TEXTURE_COORDINATE_DATA_SIZE, GLES20.GL_FLOAT, false, STRIDE, mVertices);
+            mVertices.position(0);
+        }
+        gl.glEnableVertexAttribArray(positionHandle);
+        gl.glEnableVertexAttribArray(textureCoordinateHandle);
+
+        for (int i = 0; i < mRanges; i++) {
+            gl.glBindTexture(GLES20.GL_TEXTURE_2D, mRangeTextures[i]);
+            gl.glDrawArrays(GLES20.GL_TRIANGLES, mRangeFirst[i], mRangeCount[i]);
+            mDrawCallCount++;
+        }
+
+        if (mVertexBuffer != null) {
+            mVertexBuffer.unbind();
+        }
+
+        return mDrawCallCount;
+    }
+
+    public int getCellCount() {
+        return mCellCount;
+    }
+
+    /** Number of distinct textures, which is also the number of draws per frame. */
+    public int getRangeCount() {
+        return mRanges;
+    }
+
+    public int getLastDrawCallCount() {
+        return mDrawCallCount;
+    }
+
+    /** The interleaved stream produced by the last {@link #build()}. */
+    public FloatBuffer getVertices() {
+        return mVertices;
+    }
+
+    private void putCell(int cell) {
+        final float xTranslate = mCellTranslations[2 * cell];
+        final float yTranslate = mCellTranslations[2 * cell + 1];
+        final float u0 = mCellRegions[4 * cell];
+        final float v0 = mCellRegions[4 * cell + 1];
+        final float uScale = mCellRegions[4 * cell + 2] - u0;
+        final float vScale = mCellRegions[4 * cell + 3] - v0;
+        for (int v = 0; v < VERTICES_PER_CELL; v++) {
+            mVertices.put(mCellPositions[v * POSITION_DATA_SIZE] + xTranslate);
+            mVertices.put(mCellPositions[v * POSITION_DATA_SIZE + 1] + yTranslate);
+            mVertices.put(mCellPositions[v * POSITION_DATA_SIZE + 2]);
+            mVertices.put(u0 + mCellTextureCoordinates[v * TEXTURE_COORDINATE_DATA_SIZE] * uScale);
+            mVertices.put(v0 + mCellTextureCoordinates[v * TEXTURE_COORDINATE_DATA_SIZE + 1] * vScale);
+        }
+    }
+
+    private int findRange(int texture) {
+        for (int i = 0; i < mRanges; i++) {
+            if (mRangeTextures[i] == texture) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void ensureCellCapacity(int cells) {
+        if (mCellTextures != null && mCellTextures.length >= cells) {
+            return;
+        }
+
+        final int capacity = mCellTextures == null ? cells : Math.max(cells, mCellTextures.length * 2);
+        final float[] translations = new float[capacity * 2];
+        final int[] textures = new int[capacity];
+        final float[] regions = new float[capacity * 4];
+        if (mCellTextures != null) {
+            System.arraycopy(mCellTranslations, 0, translations, 0, mCellCount * 2);
+            System.arraycopy(mCellTextures, 0, textures, 0, mCellCount);
+            System.arraycopy(mCellRegions, 0, regions, 0, mCellCount * 4);
+        }
+        mCellTranslations = translations;
+        mCellTextures = textures;
+        mCellRegions = regions;
+    }
+}
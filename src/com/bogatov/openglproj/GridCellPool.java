@@ -0,0 +1,166 @@
+package com.bogatov.openglproj;
+
+/**
+ * A fixed set of cells reused for whichever items are in the scroll window, so a data set of any size needs only
+ * as many cells, scene graph nodes and texture references as fit on screen plus some overscan.
+ *
+ * Item i always lands in slot i % capacity. As the window moves, each slot is recycled from the item that left
+ * to the one that entered; slots whose item is still in the window are left alone, and an item that left the
+ * window but whose slot was not needed yet keeps its binding for when it scrolls back.
+ *
+ * Has no GL dependencies and does not allocate after construction; binding is delegated to an {@link IBinder}.
+ */
+public class GridCellPool {
+
+    public static class Cell {
+        /** Index into the pool; stays the same for the life of the cell. */
+        public final int slot;
+
+        /** Item the cell shows, or -1 if unbound. */
+        public int index = -1;
+
+        /** Drawable of the item, set by the data handler. */
+        public int resourceId;
+
+        /** Texture showing the drawable, set by whoever binds the cell. */
+        public int textureHandle;
+
+        /** Texture at a new level of detail that replaces textureHandle once it is loaded, or 0. */
+        public int pendingTextureHandle;
+
+        Cell(int slot) {
+            this.slot = slot;
+        }
+    }
+
+    /** Fills in and releases cells as items move in and out of the window. */
+    public interface IBinder {
+        public void bindCell(int index, Cell cell);
+
+        public void recycleCell(Cell cell);
+    }
+
+    private final IBinder mBinder;
+    private Cell[] mCells = new Cell[0];
+
+    private int mFirstIndex;
+    private int mLastIndex = -1;
+
+    private int mBindCount;
+    private int mRecycleCount;
+
+    public GridCellPool(IBinder binder) {
+        mBinder = binder;
+    }
+
+    /**
+     * Sets the number of cells, recycling all current ones. Allocates, so it belongs with layout changes, not
+     * scrolling.
+     */
+    public void setCapacity(int capacity) {
+        recycleAll();
+        if (capacity != mCells.length) {
+            mCells = new Cell[capacity];
+            for (int i = 0; i < capacity; i++) {
+                mCells[i] = new Cell(i);
+            }
+        }
+    }
+
+    public int getCapacity() {
+        return mCells.length;
+    }
+
+    /**
+     * Makes sure every item from first to last is bound. A window larger than the pool is cut at the end.
+     *
+     * @return Number of cells bound to a new item.
+     */
+    public int setWindow(int firstIndex, int lastIndex) {
+        lastIndex = Math.min(lastIndex, firstIndex + mCells.length - 1);
+        if (firstIndex == mFirstIndex && lastIndex == mLastIndex) {
+            return 0;
+        }
+        mFirstIndex = firstIndex;
+        mLastIndex = lastIndex;
+
+        int bound = 0;
+        for (int index = firstIndex; index <= lastIndex; index++) {
+            final Cell cell = mCells[index % mCells.length];
+            if (cell.index == index) {
+                continue;
+            }
+            if (cell.index >= 0) {
+                mBinder.recycleCell(cell);
+                mRecycleCount++;
+            }
+            cell.index = index;
+            mBinder.bindCell(index, cell);
+            bound++;
+        }
+        mBindCount += bound;
+        return bound;
+    }
+
+    /**
+     * @return The cell showing the item, or null if it is not bound.
+     */
+    public Cell getCell(int index) {
+        if (mCells.length == 0 || index < 0) {
+            return null;
+        }
+        final Cell cell = mCells[index % mCells.length];
+        return cell.index == index ? cell : null;
+    }
+
+    public Cell getCellAt(int slot) {
+        return mCells[slot];
+    }
+
+    /** Recycles every bound cell. */
+    public void recycleAll() {
+        for (int i = 0; i < mCells.length; i++) {
+            final Cell cell = mCells[i];
+            if (cell.index >= 0) {
+                mBinder.recycleCell(cell);
+                mRecycleCount++;
+                cell.index = -1;
+            }
+        }
+        resetWindow();
+    }
+
+    /**
+     * Unbinds every cell without recycling it, for when what the cells held is already gone, e.g. with the GL
+     * context.
+     */
+    public void invalidate() {
+        for (int i = 0; i < mCells.length; i++) {
+            mCells[i].index = -1;
+        }
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        mFirstIndex = 0;
+        mLastIndex = -1;
+    }
+
+    public int getFirstIndex() {
+        return mFirstIndex;
+    }
+
+    public int getLastIndex() {
+        return mLastIndex;
+    }
+
+    /** Number of times a cell was bound to an item. */
+    public int getBindCount() {
+        return mBindCount;
+    }
+
+    /** Number of times a cell was released from an item. */
+    public int getRecycleCount() {
+        return mRecycleCount;
+    }
+}
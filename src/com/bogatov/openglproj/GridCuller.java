@@ -0,0 +1,203 @@
+package com.bogatov.openglproj;
+
+/**
+ * Finds the rows and columns of a regular grid of cells that can be visible in a {@link Frustum}.
+ *
+ * Instead of testing every cell, the grid's bounding rectangle is clipped against the frustum planes where they
+ * cross the cells' depth range; the cells under the bounding box of what remains are the visible ones. The cost
+ * depends on the planes, not the number of cells, and the result is a rectangle of cells that draws in one
+ * range.
+ */
+public class GridCuller {
+
+    /** A rectangle clipped by six planes has at most ten corners. */
+    private static final int MAX_POLYGON = 4 + Frustum.PLANE_COUNT;
+
+    private float mOriginX;
+    private float mOriginY;
+    private float mPitchX;
+    private float mPitchY;
+    private float mHalfWidth;
+    private float mHalfHeight;
+    private float mMinZ;
+    private float mMaxZ;
+    private int mColumns;
+    private int mRows;
+
+    private int mFirstColumn;
+    private int mLastColumn = -1;
+    private int mFirstRow;
+    private int mLastRow = -1;
+
+    private float[] mPolygon = new float[2 * MAX_POLYGON];
+    private float[] mClipped = new float[2 * MAX_POLYGON];
+
+    /**
+     * Describes the grid. Cell (column, row) is centred on originX + column * pitchX, originY + row * pitchY.
+     * A negative pitch runs the rows or columns down or left; a pitch of 0 puts them all in the same place.
+     *
+     * @param halfWidth Half the width of a cell.
+     * @param halfHeight Half the height of a cell.
+     * @param minZ Lowest z of any cell.
+     * @param maxZ Highest z of any cell.
+     */
+    public void setGrid(int columns, int rows, float originX, float originY, float pitchX, float pitchY,
+            float halfWidth, float halfHeight, float minZ, float maxZ) {
+        mColumns = columns;
+        mRows = rows;
+        mOriginX = originX;
+        mOriginY = originY;
+        mPitchX = pitchX;
+        mPitchY = pitchY;
+        mHalfWidth = halfWidth;
+        mHalfHeight = halfHeight;
+        mMinZ = minZ;
+        mMaxZ = maxZ;
+    }
+
+    /**
+     * Computes the visible cell range; read it with the getters.
+     *
+     * @param frustum Frustum in the grid's space, e.g. from the grid's MVP matrix.
+     * @return Number of visible cells.
+     */
+    public int cull(Frustum frustum) {
+        mFirstColumn = 0;
+        mLastColumn = -1;
+        mFirstRow = 0;
+        mLastRow = -1;
+        if (mColumns == 0 || mRows == 0) {
+            return 0;
+        }
+
+        // The rectangle covering every cell.
+        final float minX = mOriginX + Math.min(0.0f, (mColumns - 1) * mPitchX) - mHalfWidth;
+        final float minY = mOriginY + Math.min(0.0f, (mRows - 1) * mPitchY) - mHalfHeight;
+        final float maxX = mOriginX + Math.max(0.0f, (mColumns - 1) * mPitchX) + mHalfWidth;
+        final float maxY = mOriginY + Math.max(0.0f, (mRows - 1) * mPitchY) + mHalfHeight;
+        float[] polygon = mPolygon;
+        polygon[0] = minX;
+        polygon[1] = minY;
+        polygon[2] = maxX;
+        polygon[3] = minY;
+        polygon[4] = maxX;
+        polygon[5] = maxY;
+        polygon[6] = minX;
+        polygon[7] = maxY;
+        int corners = 4;
+
+        final float[] planes = frustum.getPlanes();
+        for (int i = 0; i < planes.length && corners > 0; i += 4) {
+            // Where the plane crosses the depth range, anything inside for some z of the cells may be visible.
+            final float c = planes[i + 2];
+            final float d = planes[i + 3] + c * (c >= 0.0f ? mMaxZ : mMinZ);
+            corners = clip(polygon, corners, planes[i], planes[i + 1], d, mClipped);
+
+            final float[] swap = polygon;
+            polygon = mClipped;
+            mClipped = swap;
+        }
+        mPolygon = polygon;
+        if (corners == 0) {
+            return 0;
+        }
+
+        float visibleMinX = Float.MAX_VALUE;
+        float visibleMinY = Float.MAX_VALUE;
+        float visibleMaxX = -Float.MAX_VALUE;
+        float visibleMaxY = -Float.MAX_VALUE;
+        for (int i = 0; i < corners; i++) {
+            visibleMinX = Math.min(visibleMinX, polygon[2 * i]);
+            visibleMaxX = Math.max(visibleMaxX, polygon[2 * i]);
+            visibleMinY = Math.min(visibleMinY, polygon[2 * i + 1]);
+            visibleMaxY = Math.max(visibleMaxY, polygon[2 * i + 1]);
+        }
+
+        mFirstColumn = getFirst(visibleMinX - mHalfWidth - mOriginX, visibleMaxX + mHalfWidth - mOriginX, mPitchX);
+        mLastColumn = getLast(visibleMinX - mHalfWidth - mOriginX, visibleMaxX + mHalfWidth - mOriginX, mPitchX,
+                mColumns);
+        mFirstRow = getFirst(visibleMinY - mHalfHeight - mOriginY, visibleMaxY + mHalfHeight - mOriginY, mPitchY);
+        mLastRow = getLast(visibleMinY - mHalfHeight - mOriginY, visibleMaxY + mHalfHeight - mOriginY, mPitchY, mRows);
+        if (mFirstColumn > mLastColumn || mFirstRow > mLastRow) {
+            mLastColumn = -1;
+            mLastRow = -1;
+            return 0;
+        }
+        return getVisibleCount();
+    }
+
+    /**
+     * First cell whose centre lies between the distances from the origin; dividing by a negative pitch swaps
+     * which of them bounds the index from below.
+     */
+    private static int getFirst(float minDistance, float maxDistance, float pitch) {
+        if (pitch == 0.0f) {
+            return 0;
+        }
+        return Math.max(0, (int) Math.ceil((pitch > 0.0f ? minDistance : maxDistance) / pitch));
+    }
+
+    private static int getLast(float minDistance, float maxDistance, float pitch, int count) {
+        if (pitch == 0.0f) {
+            return count - 1;
+        }
+        return Math.min(count - 1, (int) Math.floor((pitch > 0.0f ? maxDistance : minDistance) / pitch));
+    }
+
+    /**
+     * Sutherland-Hodgman clip of a convex polygon to the half plane a * x + b * y + d >= 0.
+     *
+     * @return Number of corners written to out.
+     */
+    private static int clip(float[] in, int corners, float a, float b, float d, float[] out) {
+        int count = 0;
+        float previousX = in[2 * (corners - 1)];
+        float previousY = in[2 * (corners - 1) + 1];
+        float previousDistance = a * previousX + b * previousY + d;
+        for (int i = 0; i < corners; i++) {
+            final float x = in[2 * i];
+            final float y = in[2 * i + 1];
+            final float distance = a * x + b * y + d;
+            if ((distance >= 0.0f) != (previousDistance >= 0.0f)) {
+                final float t = previousDistance / (previousDistance - distance);
+                out[2 * count] = previousX + t * (x - previousX);
+                out[2 * count + 1] = previousY + t * (y - previousY);
+                count++;
+            }
+            if (distance >= 0.0f) {
+                out[2 * count] = x;
+                out[2 * count + 1] = y;
+                count++;
+            }
+            previousX = x;
+            previousY = y;
+            previousDistance = distance;
+        }
+        return count;
+    }
+
+    public int getFirstColumn() {
+        return mFirstColumn;
+    }
+
+    /** Last visible column, inclusive; less than the first when nothing is visible. */
+    public int getLastColumn() {
+        return mLastColumn;
+    }
+
+    public int getFirstRow() {
+        return mFirstRow;
+    }
+
+    public int getLastRow() {
+        return mLastRow;
+    }
+
+    public int getVisibleCount() {
+        return (mLastColumn - mFirstColumn + 1) * (mLastRow - mFirstRow + 1);
+    }
+
+    public int getCellCount() {
+        return mColumns * mRows;
+    }
+}
@@ -0,0 +1,95 @@
+package com.bogatov.openglproj;
+
+/**
+ * Vertical scroll position of the grid with drag and fling. The position is in grid units, 0 at the top and
+ * {@link #getMaxScroll()} at the bottom; a fling decays exponentially and stops at either end.
+ *
+ * Has no GL or Android dependencies and does not allocate, so it can be stepped on the GL thread every frame.
+ */
+public class GridScroller {
+
+    /** Exponential decay rate of the fling velocity, per second. */
+    private static final float FRICTION = 3.0f;
+
+    /** Flings slower than this, in grid units per second, stop. */
+    private static final float MIN_VELOCITY = 0.05f;
+
+    private float mContentHeight;
+    private float mViewportHeight;
+
+    private float mScroll;
+    private float mVelocity;
+
+    /**
+     * @param contentHeight Height of all rows.
+     * @param viewportHeight Height of the visible part of the grid.
+     */
+    public void setLayout(float contentHeight, float viewportHeight) {
+        mContentHeight = contentHeight;
+        mViewportHeight = viewportHeight;
+        setScroll(mScroll);
+    }
+
+    public float getMaxScroll() {
+        return Math.max(0.0f, mContentHeight - mViewportHeight);
+    }
+
+    public float getScroll() {
+        return mScroll;
+    }
+
+    /** Jumps to a position, stopping any fling. */
+    public void setScroll(float scroll) {
+        mVelocity = 0.0f;
+        mScroll = Math.max(0.0f, Math.min(getMaxScroll(), scroll));
+    }
+
+    /** Drags by a distance, stopping any fling. */
+    public void scrollBy(float distance) {
+        setScroll(mScroll + distance);
+    }
+
+    public void fling(float velocity) {
+        mVelocity = velocity;
+    }
+
+    public void stop() {
+        mVelocity = 0.0f;
+    }
+
+    public boolean isSettled() {
+        return mVelocity == 0.0f;
+    }
+
+    /**
+     * Advances a fling.
+     *
+     * @return Whether the position changed.
+     */
+    public boolean update(long elapsedNanos) {
+        if (mVelocity == 0.0f) {
+            return false;
+        }
+
+        final float seconds = elapsedNanos / 1e9f;
+        final float decay = (float) Math.exp(-FRICTION * seconds);
+        // Distance covered while the velocity decays from v to v * decay.
+        final float distance = mVelocity * (1.0f - decay) / FRICTION;
+        final float velocity = mVelocity * decay;
+
+        final float previous = mScroll;
+        final float target = previous + distance;
+        mScroll = Math.max(0.0f, Math.min(getMaxScroll(), target));
+        // Only running into an end stops the fling; starting at one, e.g. with no time elapsed yet, does not.
+        if (mScroll != target || Math.abs(velocity) < MIN_VELOCITY) {
+            mVelocity = 0.0f;
+        } else {
+            mVelocity = velocity;
+        }
+        return mScroll != previous;
+    }
+
+    public float getVelocity() {
+        return mVelocity;
+    }
+}
@@ -1,7 +1,5 @@
 package com.bogatov.openglproj;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
 
@@ -9,6 +7,7 @@ import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
@@ -21,13 +20,46 @@ public class GridViewRenderer implements GLSurfaceView.Renderer {
     
     private static final int DEFAULT_OFFSET_PIX = 0;
     
-    private final Context mActivityContext;
-
+    /** Texture upload work allowed per frame, so loading thumbnails does not cause dropped frames. */
+    private static final long UPLOAD_BUDGET_BYTES = 1024 * 1024;
+    private static final long UPLOAD_BUDGET_NANOS = 4 * 1000 * 1000;
+    
+    /** Estimated GPU memory unreferenced textures may keep before the least recently used are deleted. */
+    private static final long TEXTURE_CACHE_BUDGET_BYTES = 16 * 1024 * 1024;
+    
     /**
-     * Store the model matrix. This matrix is used to move models from object space (where each model can be thought
-     * of being located at the center of the universe) to world space.
+     * Thumbnails up to a quarter page in size are also copied into atlas pages, so the batch draws cells showing
+     * different images together. Larger ones are few per screen and keep one draw each.
      */
-    private float[] mModelMatrix = new float[16];
+    private static final int ATLAS_PAGE_SIZE = 1024;
+    private static final int ATLAS_MAX_PAGES = 4;
+    private static final int ATLAS_MAX_IMAGE_SIZE = ATLAS_PAGE_SIZE / 4;
+    
+    /** A full atlas page is only emptied for new thumbnails while less than this of it is shown or prefetched. */
+    private static final float ATLAS_EVICT_MAX_IN_USE = 0.5f;
+    
+    /** Rows kept bound above and below the visible ones, so short scrolls do not rebind cells. */
+    private static final int OVERSCAN_ROWS = 1;
+    
+    /** Most rows past the bound ones whose textures are loaded ahead of a scroll. */
+    private static final int MAX_PREFETCH_ROWS = 4;
+    
+    private static final float EYE_Z = -1.0f + DEFAULT_COLUMN_COUNT;
+    
+    /** Depth of the cell quads; see initTextureSize(). */
+    private static final float CELL_Z = -1.0f;
+    
+    /** Number of recent frames whose costs are kept, and shown by the overlay. */
+    private static final int FRAME_STATS_CAPACITY = 120;
+    
+    /** Depth range of the projection. */
+    private static final float NEAR_PLANE = 0.999999f;
+    private static final float FAR_PLANE = 10.0f;
+    
+    /** Frames further apart than this do not advance a fling further, e.g. after a pause. */
+    private static final long MAX_FRAME_NANOS = 100 * 1000 * 1000;
+    
+    private final Context mActivityContext;
 
     /**
      * Store the view matrix. This can be thought of as our camera. This matrix transforms world space to eye space;
@@ -38,12 +70,52 @@ public class GridViewRenderer implements GLSurfaceView.Renderer {
     /** Store the projection matrix. This is used to project the scene onto a 2D viewport. */
     private float[] mProjectionMatrix = new float[16];
 
-    /** Allocate storage for the final combined matrix. This will be passed into the shader program. */
-    private float[] mMVPMatrix = new float[16];
+    /**
+     * The grid node, translated by the scroll position, with one child per pooled cell. Cell matrices are only
+     * recomputed when the grid scrolls, a cell is rebound or the camera changes, not every frame.
+     */
+    private final SceneGraph mSceneGraph = new SceneGraph(DEFAULT_COLUMN_COUNT * DEFAULT_COLUMN_COUNT + 1);
+    private int mGridNode;
+    
+    /** Cells for the items in and around the visible rows; recycled as rows scroll in and out. */
+    private final GridCellPool mCellPool;
+    
+    private final GridScroller mScroller = new GridScroller();
+    private long mLastFrameNanos;
+    private long mFrameElapsedNanos;
+    
+    /** Loads the textures of rows the scroll is heading into. */
+    private final ScrollPrefetcher mPrefetcher;
+    private final TextureCache.ITextureFactory mPrefetchFactory;
+    private final GridCellPool.Cell mPrefetchCell = new GridCellPool.Cell(-1);
+    private int mPrefetchPriority;
+    
+    /** Requests frames when something changed; null if the view renders continuously. */
+    private volatile RenderScheduler mScheduler;
+    
+    /** Scrolling requested from the UI thread, applied on the next frame. */
+    private final Object mScrollLock = new Object();
+    private float mPendingScrollPixels;
+    private float mPendingFlingPixels;
+    private boolean mPendingFling;
+    
+    /** Limits drawing to the cells inside the frustum of the grid node. */
+    private final Frustum mFrustum = new Frustum();
+    private final GridCuller mGridCuller = new GridCuller();
+    
+    /** Visible cell range the batch was last built for; the batch is rebuilt when it changes. */
+    private int mBatchFirstColumn;
+    private int mBatchLastColumn = -1;
+    private int mBatchFirstRow;
+    private int mBatchLastRow = -1;
+    private int mBatchAtlasVersion;
 
     /** Store our model data in a float buffer. */
-    private FloatBuffer mCubePositions;
-    private FloatBuffer mCubeTextureCoordinates;
+    private Mesh mCubeMesh;
+    
+    private static final VertexLayout CUBE_LAYOUT = new VertexLayout(
+            VertexAttribute.floats("a_Position", 3),
+            VertexAttribute.normalizedUnsignedShorts("a_TexCoordinate", 2));
     
     private FloatBuffer mLeftVertexBuffer;
     private ShortBuffer mLeftDrawBuffer;
@@ -64,68 +136,366 @@ public class GridViewRenderer implements GLSurfaceView.Renderer {
     /** This will be used to pass in model texture coordinate information. */
     private int mTextureCoordinateHandle;
 
-    /** How many bytes per float. */
-    private final int mBytesPerFloat = 4;   
-
-    /** Size of the position data in elements. */
-    private final int mPositionDataSize = 3;    
-
-    /** Size of the texture coordinate data in elements. */
-    private final int mTextureCoordinateDataSize = 2;
-
     /** This is a handle to our cube shading program. */
     private int mProgramHandle;
 
-    /** This is a handle to our texture data. */
-    private int mTextureDataHandle;
-
     private IViewDataHandler mViewHandler;
     
     private int mWidth;
     private int mHeight;
     private float mRatio;
     
+    /** Half the height of the view at the depth of the cells, in grid units. */
+    private float mGridHalfHeight;
+    
     private int mColumnCount = DEFAULT_COLUMN_COUNT;
+    
+    /** Number of rows that fit on screen, counting partly visible ones. */
     private int mRowCount = mColumnCount;
     
+    private int mItemCount;
+    private int mTotalRowCount;
+    
     private int mCellSize;
     private int mOffset = DEFAULT_OFFSET_PIX;
     
+    /** Costs of recent frames; every call through mGL that is not elided as redundant is counted. */
+    private final FrameStats mFrameStats = new FrameStats(FRAME_STATS_CAPACITY);
+    private final IGL mRawGL = new AndroidGL();
+    private final GLState mGL = new GLState(new InstrumentedGL(mRawGL, mFrameStats));
+    private final FrameStatsOverlay mStatsOverlay = new FrameStatsOverlay(mFrameStats, FRAME_STATS_CAPACITY);
+    private volatile boolean mStatsOverlayEnabled;
+    private BufferManager mBufferManager;
+    private final ShaderLibrary mShaderLibrary;
+    private final AsyncTextureLoader mTextureLoader;
+    private final TextureCache mTextureCache;
+    
+    /** Picks the size thumbnails are decoded at from the cell size in pixels. */
+    private final ThumbnailLod mThumbnailLod = new ThumbnailLod();
+    
+    /**
+     * Cache levels of the current and the previous thumbnail size, 0 for none; cells show the previous one until
+     * theirs is loaded.
+     */
+    private int mLodLevel;
+    private int mPreviousLodLevel;
+    private final TextureCache.ITextureFactory mTextureFactory;
+    
+    /** Copies of uploaded thumbnails, by texture handle; the batch draws a cell from its copy if there is one. */
+    private final TextureAtlas mThumbnailAtlas = new TextureAtlas(ATLAS_PAGE_SIZE, ATLAS_MAX_PAGES);
+    private final TextureAtlas.IRegionFilter mReferencedThumbnails = new TextureAtlas.IRegionFilter() {
+        @Override
+        public boolean matches(TextureAtlas.Region region) {
+            return mTextureCache.getRefCount(region.id) > 0;
+        }
+    };
+    
+    /** When set, all cells are drawn from one pre-transformed vertex stream instead of one draw per cell. */
+    private boolean mBatched = true;
+    private final GridBatch mGridBatch = new GridBatch(DEFAULT_COLUMN_COUNT * DEFAULT_COLUMN_COUNT);
+    
+    /** Orders the per-cell draws of the unbatched path by program, texture and depth. */
+    private final RenderQueue mRenderQueue = new RenderQueue(DEFAULT_COLUMN_COUNT * DEFAULT_COLUMN_COUNT);
+    private final RenderQueue.IDrawer mCellDrawer = new RenderQueue.IDrawer() {
+        @Override
+        public void draw(long key, int payload) {
+            drawCube(mCellPool.getCellAt(payload));
+        }
+    };
+    
+    /**
+     * Records the sorted cell draws on worker threads, a slice of the queue each, for the GL thread to replay.
+     * Everything the workers read is only written on the GL thread before recording starts, and the GL thread
+     * waits for the workers within the frame, so this only spreads the recording across cores.
+     */
+    private final CommandRecorder mCommandRecorder = new CommandRecorder();
+    private final CommandRecorder.IRecorder mCellRecorder = new CommandRecorder.IRecorder() {
+        @Override
+        public void record(int part, CommandList list) {
+            final int size = mRenderQueue.size();
+            final int parts = mCommandRecorder.getPartCount();
+            final int end = (int) ((long) size * (part + 1) / parts);
+            final float[] modelView = mSceneGraph.getModelViewMatrices();
+            final float[] mvp = mSceneGraph.getMVPMatrices();
+            for (int i = (int) ((long) size * part / parts); i < end; i++) {
+                final GridCellPool.Cell cell = mCellPool.getCellAt(mRenderQueue.getPayload(i));
+                final int offset = SceneGraph.getOffset(getCellNode(cell));
+                list.bindTexture(GLES20.GL_TEXTURE_2D, cell.textureHandle);
+                list.uniformMatrix4(mMVMatrixHandle, modelView, offset);
+                list.uniformMatrix4(mMVPMatrixHandle, mvp, offset);
+                list.drawArrays(GLES20.GL_TRIANGLES, 0, mCubeMesh.getVertexCount());
+            }
+        }
+    };
+    private volatile boolean mParallelRecording;
+    private volatile boolean mGridChanged = true;
+    
     public GridViewRenderer(final Context context, IViewDataHandler handler) {   
         mActivityContext = context;
         mViewHandler = handler;
+        mShaderLibrary = new ShaderLibrary(context);
+        mTextureLoader = new AsyncTextureLoader(context);
+        mTextureCache = new TextureCache(TEXTURE_CACHE_BUDGET_BYTES);
+        mTextureCache.setLoadTracker(new TextureCache.ILoadTracker() {
+            @Override
+            public boolean isLoading(int textureHandle) {
+                return mTextureLoader.isLoading(textureHandle);
+            }
+        });
+        mTextureLoader.setUploadListener(new AsyncTextureLoader.IUploadListener() {
+            @Override
+            public void onTextureUploaded(int textureHandle, Bitmap bitmap) {
+                final boolean mipmapped = CompressedTexture.isPowerOfTwo(bitmap.getWidth())
+                        && CompressedTexture.isPowerOfTwo(bitmap.getHeight());
+                mTextureCache.setSize(textureHandle, bitmap.getWidth(), bitmap.getHeight(), 
+                        bitmap.getRowBytes() / bitmap.getWidth(), mipmapped);
+                mFrameStats.recordUpload(TextureUtils.getByteCount(bitmap));
+                addToAtlas(textureHandle, bitmap);
+            }
+        });
+        mTextureCache.setDeleteListener(new TextureCache.IDeleteListener() {
+            @Override
+            public void onTextureDeleted(int textureHandle) {
+                mThumbnailAtlas.remove(textureHandle);
+            }
+        });
+        mTextureLoader.setDecodeListener(new AsyncTextureLoader.IDecodeListener() {
+            @Override
+            public void onTextureDecoded(int textureHandle) {
+                invalidate(RenderScheduler.DIRTY_TEXTURES);
+            }
+        });
+        mTextureFactory = new TextureCache.ITextureFactory() {
+            @Override
+            public int createTexture(int resourceId, int level) {
+                return mTextureLoader.load(resourceId, AsyncTextureLoader.PRIORITY_VISIBLE, mThumbnailLod.getSize());
+            }
+        };
+        mPrefetchFactory = new TextureCache.ITextureFactory() {
+            @Override
+            public int createTexture(int resourceId, int level) {
+                return mTextureLoader.load(resourceId, mPrefetchPriority, mThumbnailLod.getSize());
+            }
+        };
+        mPrefetcher = new ScrollPrefetcher(new ScrollPrefetcher.ITarget() {
+            @Override
+            public int prefetch(int index, int priority) {
+                mViewHandler.bindCell(index, mPrefetchCell);
+                mPrefetchPriority = AsyncTextureLoader.PRIORITY_VISIBLE + priority;
+                return mTextureCache.acquire(mPrefetchCell.resourceId, mLodLevel, mPrefetchFactory);
+            }
+
+            @Override
+            public void release(int index, int token, boolean used) {
+                if (used) {
+                    mTextureCache.release(token);
+                } else {
+                    releaseThumbnail(token);
+                }
+            }
+        }, MAX_PREFETCH_ROWS);
+        mCellPool = new GridCellPool(new GridCellPool.IBinder() {
+            @Override
+            public void bindCell(int index, GridCellPool.Cell cell) {
+                mViewHandler.bindCell(index, cell);
+                bindThumbnail(cell);
+                mSceneGraph.setTranslation(getCellNode(cell), getCellX(index % mColumnCount), 
+                        getCellY(index / mColumnCount), 0.0f);
+            }
+
+            @Override
+            public void recycleCell(GridCellPool.Cell cell) {
+                // A fling passes many items; their decodes must not hold up the ones that stay visible.
+                releaseThumbnail(cell.textureHandle);
+                cell.textureHandle = 0;
+                if (cell.pendingTextureHandle != 0) {
+                    releaseThumbnail(cell.pendingTextureHandle);
+                    cell.pendingTextureHandle = 0;
+                }
+            }
+        });
+    }
+    
+    /**
+     * Gives the cell its thumbnail at the current level. While that is still loading, the cell keeps showing the
+     * previous level if it is cached, so changing levels does not flash placeholders.
+     */
+    private void bindThumbnail(GridCellPool.Cell cell) {
+        final int texture = mTextureCache.acquire(cell.resourceId, mLodLevel, mTextureFactory);
+        cell.textureHandle = texture;
+        // Left over from a context that is gone if the cell was invalidated rather than recycled.
+        cell.pendingTextureHandle = 0;
+        if (mPreviousLodLevel == 0 || !mTextureLoader.isLoading(texture)) {
+            return;
+        }
+        final int previous = mTextureCache.acquire(cell.resourceId, mPreviousLodLevel);
+        if (previous == 0) {
+            return;
+        }
+        if (mTextureLoader.isLoading(previous)) {
+            releaseThumbnail(previous);
+            return;
+        }
+        cell.textureHandle = previous;
+        cell.pendingTextureHandle = texture;
+    }
+    
+    /**
+     * Drops a reference to a thumbnail. If nobody else wants it and it is not decoded yet, the load is stopped and
+     * the placeholder forgotten.
+     */
+    private void releaseThumbnail(int textureHandle) {
+        mTextureCache.release(textureHandle);
+        if (mTextureCache.getRefCount(textureHandle) == 0 && mTextureLoader.cancel(textureHandle)) {
+            mTextureCache.discard(textureHandle);
+        }
+    }
+    
+    /**
+     * Copies a small thumbnail into the atlas. When the pages are full, the page least used by cells and prefetches
+     * is emptied to make room; if every page is mostly in use, the thumbnail is drawn from its own texture rather
+     * than push the copies of visible cells out.
+     */
+    private void addToAtlas(int textureHandle, Bitmap bitmap) {
+        // Pages are RGBA; texSubImage2D cannot convert other formats into them.
+        if (bitmap.getConfig() != Bitmap.Config.ARGB_8888 
+                || Math.max(bitmap.getWidth(), bitmap.getHeight()) > ATLAS_MAX_IMAGE_SIZE) {
+            return;
+        }
+        if (mThumbnailAtlas.add(textureHandle, bitmap) == null 
+                && mThumbnailAtlas.evictPage(mReferencedThumbnails, ATLAS_EVICT_MAX_IN_USE) >= 0) {
+            mThumbnailAtlas.add(textureHandle, bitmap);
+        }
+    }
+    
+    /**
+     * Switches cells whose thumbnail at the current level has been uploaded over to it.
+     *
+     * @return Number of cells switched.
+     */
+    private int promoteThumbnails() {
+        int promoted = 0;
+        for (int slot = 0; slot < mCellPool.getCapacity(); slot++) {
+            final GridCellPool.Cell cell = mCellPool.getCellAt(slot);
+            final int pending = cell.pendingTextureHandle;
+            if (pending == 0 || mTextureLoader.isLoading(pending)) {
+                continue;
+            }
+            if (mTextureLoader.isFailed(pending)) {
+                // Keep the previous level rather than swap a real image for a placeholder.
+                mTextureCache.release(pending);
+            } else {
+                mTextureCache.release(cell.textureHandle);
+                cell.textureHandle = pending;
+                promoted++;
+            }
+            cell.pendingTextureHandle = 0;
+        }
+        return promoted;
+    }
+    
+    /**
+     * Lets the renderer ask for frames only when the grid changes, for a view in RENDERMODE_WHEN_DIRTY.
+     */
+    public void setRenderScheduler(RenderScheduler scheduler) {
+        mScheduler = scheduler;
+    }
+    
+    private void invalidate(int reasons) {
+        final RenderScheduler scheduler = mScheduler;
+        if (scheduler != null) {
+            scheduler.invalidate(reasons);
+        }
     }
     
     public void setColumntCount(int columns) {
         mColumnCount = columns;
+        mGridChanged = true;
+        invalidate(RenderScheduler.DIRTY_DATA);
+    }
+    
+    /** Re-reads the item count from the data handler and rebinds all cells. */
+    public void notifyDataSetChanged() {
+        mGridChanged = true;
+        invalidate(RenderScheduler.DIRTY_DATA);
+    }
+    
+    /**
+     * Scrolls the grid; may be called from any thread.
+     * 
+     * @param pixels Distance towards later items, in screen pixels.
+     */
+    public void scrollBy(float pixels) {
+        synchronized (mScrollLock) {
+            mPendingScrollPixels += pixels;
+            mPendingFling = false;
+        }
+        invalidate(RenderScheduler.DIRTY_SCENE);
+    }
+    
+    /**
+     * Starts a fling; may be called from any thread.
+     * 
+     * @param pixelsPerSecond Velocity towards later items.
+     */
+    public void fling(float pixelsPerSecond) {
+        synchronized (mScrollLock) {
+            mPendingFlingPixels = pixelsPerSecond;
+            mPendingFling = true;
+        }
+        invalidate(RenderScheduler.DIRTY_SCENE);
+    }
+    
+    public void setBatched(boolean batched) {
+        mBatched = batched;
+    }
+    
+    /**
+     * Records the unbatched per-cell draws on worker threads instead of issuing them one by one. The GL thread
+     * still waits for the recording before it replays the frame.
+     */
+    public void setParallelRecording(boolean parallel) {
+        mParallelRecording = parallel;
+    }
+    
+    /** Costs of recent frames; may be read from any thread. */
+    public FrameStats getFrameStats() {
+        return mFrameStats;
+    }
+    
+    /** Shows a graph of recent frame times over the grid. */
+    public void setStatsOverlayEnabled(boolean enabled) {
+        mStatsOverlayEnabled = enabled;
+        invalidate(RenderScheduler.DIRTY_SCENE);
     }
 
     protected String getVertexShader() {
-        return RawResourceReader.readTextFileFromRawResource(mActivityContext, R.raw.per_pixel_vertex_shader);
+        return mShaderLibrary.getPreprocessor().expand(ShaderLibrary.BASIC_VERTEX_SHADER, ShaderLibrary.USE_TEXTURE);
     }
 
     protected String getFragmentShader() {
-        return RawResourceReader.readTextFileFromRawResource(mActivityContext, R.raw.per_pixel_fragment_shader);
+        return mShaderLibrary.getPreprocessor().expand(ShaderLibrary.BASIC_FRAGMENT_SHADER, ShaderLibrary.USE_TEXTURE);
     }
 
     @Override
     public void onSurfaceCreated(GL10 glUnused, EGLConfig config) {
+        // Everything the state cache knew belonged to the previous context.
+        mGL.invalidate();
+        
         // Set the background clear color to white.
         GLES20.glClearColor(1.0f, 1.0f, 1.0f, 1.0f);
 
         // Use culling to remove back faces.
-//        GLES20.glEnable(GLES20.GL_CULL_FACE);
+//        mGL.glEnable(GLES20.GL_CULL_FACE);
 
         // Enable depth testing
-        GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-
-        // Enable texture mapping
-        GLES20.glEnable(GLES20.GL_TEXTURE_2D);
+        mGL.glEnable(GLES20.GL_DEPTH_TEST);
+        
+        // Texturing needs no switch in ES 2.0; glEnable(GL_TEXTURE_2D) only raises GL_INVALID_ENUM.
         
         // Position the eye in front of the origin.
         final float eyeX = 0.0f;
         final float eyeY = 0.0f;
-        final float eyeZ = (-1.0f + DEFAULT_COLUMN_COUNT);
 
         // We are looking toward the distance
         final float lookX = 0.0f;
@@ -140,25 +510,25 @@ public class GridViewRenderer implements GLSurfaceView.Renderer {
         // Set the view matrix. This matrix can be said to represent the camera position.
         // NOTE: In OpenGL 1, a ModelView matrix is used, which is a combination of a model and
         // view matrix. In OpenGL 2, we can keep track of these matrices separately if we choose.
-        Matrix.setLookAtM(mViewMatrix, 0, eyeX, eyeY, eyeZ, lookX, lookY, lookZ, upX, upY, upZ);
+        Matrix.setLookAtM(mViewMatrix, 0, eyeX, eyeY, EYE_Z, lookX, lookY, lookZ, upX, upY, upZ);
 
         final String vertexShader = getVertexShader();          
         final String fragmentShader = getFragmentShader();          
 
-        final int vertexShaderHandle = ShaderUtils.compileShader(GLES20.GL_VERTEX_SHADER, vertexShader);       
-        final int fragmentShaderHandle = ShaderUtils.compileShader(GLES20.GL_FRAGMENT_SHADER, fragmentShader);     
-
-        mProgramHandle = ShaderUtils.createAndLinkProgram(vertexShaderHandle, fragmentShaderHandle, new String[] {"a_Position",  "a_TexCoordinate"});                                                                                                   
-        
-        // Load the texture
-        mTextureDataHandle = TextureUtils.loadTexture(mActivityContext, R.drawable.pirate);
+        mShaderLibrary.onContextCreated();
+        mProgramHandle = mShaderLibrary.getProgramFromSource(vertexShader, fragmentShader, new String[] {"a_Position",  "a_TexCoordinate"});
+        mStatsOverlay.onContextCreated(mRawGL, mShaderLibrary);
         
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureDataHandle);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+        // Textures are loaded in the background as cells are bound; until decoded the cells show a placeholder.
+        // Loads still queued for a previous context are dropped, and cells bound to its textures are rebound.
+        mTextureLoader.cancelAll();
+        mTextureCache.clear();
+        mThumbnailAtlas.clear();
+        mCellPool.invalidate();
+        mPrefetcher.invalidate();
         
      // Set our per-vertex lighting program.
-        GLES20.glUseProgram(mProgramHandle);
+        mGL.glUseProgram(mProgramHandle);
         
         // Set program handles for cube drawing.
         mMVPMatrixHandle = GLES20.glGetUniformLocation(mProgramHandle, "u_MVPMatrix");
@@ -166,6 +536,16 @@ public class GridViewRenderer implements GLSurfaceView.Renderer {
         mTextureUniformHandle = GLES20.glGetUniformLocation(mProgramHandle, "u_Texture");
         mPositionHandle = GLES20.glGetAttribLocation(mProgramHandle, "a_Position");
         mTextureCoordinateHandle = GLES20.glGetAttribLocation(mProgramHandle, "a_TexCoordinate");
+        
+        // Buffers of the previous context (if any) are gone with it.
+        mBufferManager = new BufferManager(mGL);
+        if (mCubeMesh != null) {
+            // Its buffer object went with the context, but its vertex data belongs to the pool.
+            mCubeMesh.dispose();
+            mCubeMesh = null;
+        }
+        mGridBatch.attach(mBufferManager);
+        mGridChanged = true;
     }   
 
     @Override
@@ -178,21 +558,139 @@ public class GridViewRenderer implements GLSurfaceView.Renderer {
         mWidth = width;
         mHeight = height;
         mRatio = (float) width/height;
-        mRowCount = (int) ((float)mColumnCount / mRatio) + 1;
         
         final float left = -mRatio;
         final float right = mRatio;
         final float bottom = -1.0f;
         final float top = 1.0f;
-        final float near = 0.999999f;
-        final float far = 10.0f;
+        final float near = NEAR_PLANE;
+        final float far = FAR_PLANE;
         
         Matrix.frustumM(mProjectionMatrix, 0, left, right, bottom, top, near, far);
+        mSceneGraph.setCamera(mViewMatrix, 0, mProjectionMatrix, 0);
+        mGridHalfHeight = (EYE_Z - CELL_Z) * top / near;
         
-        mCellSize = width/mColumnCount - 2*mOffset;
+        mGridChanged = true;
+    }   
+    
+    private void updateGrid() {
+        mItemCount = mViewHandler.getItemCount();
+        mTotalRowCount = (mItemCount + mColumnCount - 1) / mColumnCount;
+        mRowCount = (int) (mGridHalfHeight / mRatio) + 2;
+        mCellSize = mWidth/mColumnCount - 2*mOffset;
+        if (mThumbnailLod.update(mCellSize)) {
+            // Cells rebound below get the new level and show the old one meanwhile.
+            mPreviousLodLevel = mLodLevel;
+            mLodLevel = mThumbnailLod.getSize();
+        }
         
         initTextureSize();
-    }   
+        
+        // Allocating here is fine; scrolling only reuses what is set up now.
+        mCellPool.setCapacity((mRowCount + 2 * OVERSCAN_ROWS) * mColumnCount);
+        mPrefetcher.setLayout(mColumnCount, mItemCount);
+        mSceneGraph.clear();
+        mGridNode = mSceneGraph.addNode(SceneGraph.NO_PARENT);
+        for(int slot = 0; slot < mCellPool.getCapacity(); slot++) {
+            mSceneGraph.addNode(mGridNode);
+        }
+        
+        mScroller.setLayout(mTotalRowCount * 2 * mRatio, 2 * mGridHalfHeight);
+        mSceneGraph.setTranslation(mGridNode, 0.0f, mScroller.getScroll(), 0.0f);
+        
+        // Cells are 2 * mRatio wide and tall; rows run downwards from the top of the view.
+        mGridCuller.setGrid(mColumnCount, mTotalRowCount, getCellX(0), getCellY(0), 2 * mRatio, -2 * mRatio, 
+                mRatio, mRatio, CELL_Z, CELL_Z);
+        mBatchLastColumn = -1;
+        mBatchLastRow = -1;
+    }
+    
+    /**
+     * Applies scrolling requested since the last frame and advances a fling.
+     */
+    private void updateScroll() {
+        final long now = System.nanoTime();
+        final long elapsed = mLastFrameNanos == 0 ? 0 : Math.min(MAX_FRAME_NANOS, now - mLastFrameNanos);
+        mLastFrameNanos = now;
+        mFrameElapsedNanos = elapsed;
+        
+        final float unitsPerPixel = 2 * mGridHalfHeight / mHeight;
+        final float previous = mScroller.getScroll();
+        synchronized (mScrollLock) {
+            if (mPendingScrollPixels != 0.0f) {
+                mScroller.scrollBy(mPendingScrollPixels * unitsPerPixel);
+                mPendingScrollPixels = 0.0f;
+            }
+            if (mPendingFling) {
+                mScroller.fling(mPendingFlingPixels * unitsPerPixel);
+                mPendingFling = false;
+            }
+        }
+        mScroller.update(elapsed);
+        
+        if (mScroller.getScroll() != previous) {
+            mSceneGraph.setTranslation(mGridNode, 0.0f, mScroller.getScroll(), 0.0f);
+        }
+    }
+    
+    /**
+     * Culls the grid against the current frustum, binds the items in and around the visible rows and rebuilds
+     * the batch if the visible range changed.
+     */
+    private void cullGrid() {
+        mFrustum.set(mSceneGraph.getMVPMatrices(), SceneGraph.getOffset(mGridNode));
+        mGridCuller.cull(mFrustum);
+        
+        final int firstIndex = Math.max(0, mGridCuller.getFirstRow() - OVERSCAN_ROWS) * mColumnCount;
+        final int lastIndex = Math.min(mItemCount, (mGridCuller.getLastRow() + OVERSCAN_ROWS + 1) * mColumnCount) - 1;
+        final int bound = mCellPool.setWindow(firstIndex, lastIndex);
+        final int promoted = promoteThumbnails();
+        if (lastIndex >= firstIndex) {
+            mPrefetcher.update(mScroller.getScroll() / (2 * mRatio), mFrameElapsedNanos, 
+                    firstIndex / mColumnCount, lastIndex / mColumnCount);
+        }
+        
+        if (bound == 0 && promoted == 0 && mThumbnailAtlas.getVersion() == mBatchAtlasVersion
+                && mGridCuller.getFirstColumn() == mBatchFirstColumn 
+                && mGridCuller.getLastColumn() == mBatchLastColumn
+                && mGridCuller.getFirstRow() == mBatchFirstRow && mGridCuller.getLastRow() == mBatchLastRow) {
+            return;
+        }
+        mBatchFirstColumn = mGridCuller.getFirstColumn();
+        mBatchLastColumn = mGridCuller.getLastColumn();
+        mBatchFirstRow = mGridCuller.getFirstRow();
+        mBatchLastRow = mGridCuller.getLastRow();
+        mBatchAtlasVersion = mThumbnailAtlas.getVersion();
+        
+        mGridBatch.begin();
+        for(int rows = mBatchFirstRow; rows <= mBatchLastRow; rows++) {
+            for(int cols = mBatchFirstColumn; cols <= mBatchLastColumn; cols++) {
+                final GridCellPool.Cell cell = mCellPool.getCell(rows * mColumnCount + cols);
+                if (cell == null) {
+                    continue;
+                }
+                final TextureAtlas.Region region = mThumbnailAtlas.getRegion(cell.textureHandle);
+                if (region != null) {
+                    mGridBatch.addCell(getCellX(cols), getCellY(rows), region);
+                } else {
+                    mGridBatch.addCell(getCellX(cols), getCellY(rows), cell.textureHandle);
+                }
+            }
+        }
+        mGridBatch.build();
+    }
+    
+    private float getCellX(int column) {
+        return (float) (-mColumnCount + column*2 + 1)*mRatio;
+    }
+    
+    private float getCellY(int row) {
+        return mGridHalfHeight - (row*2 + 1)*mRatio;
+    }
+    
+    private int getCellNode(GridCellPool.Cell cell) {
+        return mGridNode + 1 + cell.slot;
+    }
     
     private void initTextureSize() {
      // X, Y, Z
@@ -249,24 +747,93 @@ public class GridViewRenderer implements GLSurfaceView.Renderer {
         short drawOrder[] = { 0, 1, 2, 0, 2, 3 };
 
         // Initialize the buffers.
-        mCubePositions = ByteBuffer.allocateDirect(cubePositionData.length * mBytesPerFloat).order(ByteOrder.nativeOrder()).asFloatBuffer();                            
-        mCubePositions.put(cubePositionData).position(0);       
-
-        mCubeTextureCoordinates = ByteBuffer.allocateDirect(cubeTextureCoordinateData.length * mBytesPerFloat).order(ByteOrder.nativeOrder()).asFloatBuffer();
-        mCubeTextureCoordinates.put(cubeTextureCoordinateData).position(0);
-        
+        if (mCubeMesh != null) {
+            mCubeMesh.release();
+            mCubeMesh.dispose();
+        }
+        mCubeMesh = new Mesh(CUBE_LAYOUT, 6);
+        mCubeMesh.setAttribute(0, cubePositionData);
+        mCubeMesh.setAttribute(1, cubeTextureCoordinateData);
+        mCubeMesh.upload(mBufferManager);
         
-        mLeftVertexBuffer = ByteBuffer.allocateDirect(leftPosition.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();  
+        // Runs on every surface change; return the previous buffers rather than leaving them to the GC.
+        final DirectBufferPool pool = DirectBufferPool.getShared();
+        pool.release(mLeftVertexBuffer);
+        mLeftVertexBuffer = pool.allocateFloats(leftPosition.length);  
         mLeftVertexBuffer.put(leftPosition).position(0);
         
-        mLeftDrawBuffer = ByteBuffer.allocateDirect(drawOrder.length * 2).order(ByteOrder.nativeOrder()).asShortBuffer();  
+        pool.release(mLeftDrawBuffer);
+        mLeftDrawBuffer = pool.allocateShorts(drawOrder.length);  
         mLeftDrawBuffer.put(drawOrder).position(0);
+        
+        mGridBatch.setCellGeometry(cubePositionData, cubeTextureCoordinateData);
     }
 
     @Override
     public void onDrawFrame(GL10 glUnused) 
     {
+        final RenderScheduler scheduler = mScheduler;
+        if (scheduler != null) {
+            scheduler.beginFrame();
+        }
+        mFrameStats.beginFrame();
+        
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);                    
+        
+        mTextureLoader.processUploads(UPLOAD_BUDGET_BYTES, UPLOAD_BUDGET_NANOS);
+        mTextureCache.deleteEvicted(mGL);
+        
+        if (mGridChanged) {
+            mGridChanged = false;
+            updateGrid();
+        }
+        updateScroll();
+        mSceneGraph.update();
+        cullGrid();
+        
+        // Uploads and newly bound cells' placeholders bind textures with direct GLES20 calls.
+        mGL.invalidateTextures();
+        // Binds are only shadowed, and repeated ones dropped, once the state cache knows the active unit.
+        mGL.glActiveTexture(GLES20.GL_TEXTURE0);
+        // Only reaches GL after something else, e.g. the overlay, used another program.
+        mGL.glUseProgram(mProgramHandle);
+        
+        if (mBatched) {
+            drawBatch();
+        } else {
+            drawCells();
+        }
+        
+        mFrameStats.endFrame();
+        if (mStatsOverlayEnabled) {
+            // Drawn uncounted after the frame is recorded, behind the state cache's back.
+            mStatsOverlay.draw();
+            mGL.invalidate();
+        }
+        
+        if (scheduler != null) {
+            scheduleNextFrame(scheduler);
+        }
+    }
+    
+    /**
+     * Requests another frame while a fling is running or decoded textures are still waiting for upload budget.
+     * Otherwise the view stays idle until the next scroll, data change or decode.
+     */
+    private void scheduleNextFrame(RenderScheduler scheduler) {
+        if (!mScroller.isSettled()) {
+            scheduler.invalidate(RenderScheduler.DIRTY_SCENE);
+        }
+        if (mTextureLoader.getPendingUploadCount() > 0) {
+            scheduler.invalidate(RenderScheduler.DIRTY_TEXTURES);
+        }
+        if (!scheduler.endFrame()) {
+            // The next frame comes after an idle period; it must not advance the scroll by the time in between.
+            mLastFrameNanos = 0;
+        }
+    }
+    
+    private void drawCells() {
                 
         // Set the active texture unit to texture unit 0.
 //        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
@@ -275,55 +842,75 @@ public class GridViewRenderer implements GLSurfaceView.Renderer {
 //        GLES20.glUniform1i(mTextureUniformHandle, 0);        
         
         
-        for(int rows = 0; rows < mRowCount; rows++) {
-            float yTranslate = 0.0f;//(float) (mRowCount)/mRatio + rows*2*mRatio;
-            
-            for(int cols = 0; cols < mColumnCount; cols++) {
-                float xTranslate = (float) (-mColumnCount + cols*2 + 1)*mRatio;
-                
-                Matrix.setIdentityM(mModelMatrix, 0);
-                Matrix.translateM(mModelMatrix, 0, xTranslate, yTranslate, 0.0f);
-                
-                drawCube(); 
+        // Cells sharing a texture are drawn one after another, nearest first.
+        final float[] modelView = mSceneGraph.getModelViewMatrices();
+        mRenderQueue.clear();
+        for(int rows = mBatchFirstRow; rows <= mBatchLastRow; rows++) {
+            for(int cols = mBatchFirstColumn; cols <= mBatchLastColumn; cols++) {
+                final GridCellPool.Cell cell = mCellPool.getCell(rows * mColumnCount + cols);
+                if (cell != null) {
+                    final float eyeDistance = -modelView[SceneGraph.getOffset(getCellNode(cell)) + 14] - CELL_Z;
+                    final float depth = (eyeDistance - NEAR_PLANE) / (FAR_PLANE - NEAR_PLANE);
+                    mRenderQueue.add(RenderQueue.makeKey(0, false, mProgramHandle, cell.textureHandle, depth), 
+                            cell.slot);
+                }
             }
         }
+        mRenderQueue.sort();
+        
+        if (mParallelRecording) {
+            // A fork and join on the GL thread: the scene graph and cell pool are only valid here, so the frame
+            // cannot be recorded ahead, and the frame replayed is the one just recorded.
+            mCommandRecorder.record(mCellRecorder);
+            mCubeMesh.bind(mGL, mPositionHandle, mTextureCoordinateHandle);
+            mCommandRecorder.replay(mGL);
+        } else {
+            mRenderQueue.execute(mCellDrawer);
+        }
     }               
 
     /**
-     * Draws a cube.
+     * Draws every cell at once. The cells are already translated relative to the grid, so only the grid
+     * node's matrices have to be uploaded once per frame.
+     */
+    private void drawBatch() {
+        final int offset = SceneGraph.getOffset(mGridNode);
+        mGL.glUniformMatrix4fv(mMVMatrixHandle, 1, false, mSceneGraph.getModelViewMatrices(), offset);
+        mGL.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mSceneGraph.getMVPMatrices(), offset);
+        
+        mGridBatch.draw(mGL, mPositionHandle, mTextureCoordinateHandle);
+    }
+
+    /**
+     * Draws the cube of a bound cell.
      */         
-    private void drawCube()
+    private void drawCube(GridCellPool.Cell cell)
     {       
-        // Pass in the position information
-        mCubePositions.position(0);     
-        GLES20.glVertexAttribPointer(mPositionHandle, mPositionDataSize, GLES20.GL_FLOAT, false, 0, mCubePositions);        
-        GLES20.glEnableVertexAttribArray(mPositionHandle);        
-        
-        // Pass in the texture coordinate information
-        mCubeTextureCoordinates.position(0);
-        GLES20.glVertexAttribPointer(mTextureCoordinateHandle, mTextureCoordinateDataSize, GLES20.GL_FLOAT, false, 0, mCubeTextureCoordinates);
-        GLES20.glEnableVertexAttribArray(mTextureCoordinateHandle);
-        
-        // This multiplies the view matrix by the model matrix, and stores the result in the MVP matrix
-        // (which currently contains model * view).
-        Matrix.multiplyMM(mMVPMatrix, 0, mViewMatrix, 0, mModelMatrix, 0);   
+        // Pass in the position and texture coordinate information
+        mCubeMesh.bind(mGL, mPositionHandle, mTextureCoordinateHandle);
         
-        // Pass in the modelview matrix.
-        GLES20.glUniformMatrix4fv(mMVMatrixHandle, 1, false, mMVPMatrix, 0);                
+        mGL.glBindTexture(GLES20.GL_TEXTURE_2D, cell.textureHandle);
         
-        // This multiplies the modelview matrix by the projection matrix, and stores the result in the MVP matrix
-        // (which now contains model * view * projection).
-        Matrix.multiplyMM(mMVPMatrix, 0, mProjectionMatrix, 0, mMVPMatrix, 0);
-
-        // Pass in the combined matrix.
-        GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mMVPMatrix, 0);
+        // Pass in the modelview and combined matrices the scene graph cached for this cell.
+        final int offset = SceneGraph.getOffset(getCellNode(cell));
+        mGL.glUniformMatrix4fv(mMVMatrixHandle, 1, false, mSceneGraph.getModelViewMatrices(), offset);                
+        mGL.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mSceneGraph.getMVPMatrices(), offset);
         
         // Draw the cube.
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 6);        
+        mCubeMesh.draw(mGL, GLES20.GL_TRIANGLES);        
         
     }   
     
     interface IViewDataHandler {
         public int getColumnCount();
+        
+        /** Number of items in the data set. */
+        public int getItemCount();
+        
+        /**
+         * Sets {@link GridCellPool.Cell#resourceId} to the drawable of the item. Called on the GL thread whenever
+         * the item scrolls into view, so it should not block or allocate.
+         */
+        public void bindCell(int index, GridCellPool.Cell cell);
     }
 }
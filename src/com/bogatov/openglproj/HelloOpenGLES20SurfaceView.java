@@ -1,7 +1,5 @@
 package com.bogatov.openglproj;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 
 import javax.microedition.khronos.egl.EGLConfig;
@@ -11,9 +9,21 @@ import android.content.Context;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
-import android.os.SystemClock;
 
-public class HelloOpenGLES20SurfaceView extends GLSurfaceView {
+public class HelloOpenGLES20SurfaceView extends GLSurfaceView implements RenderScheduler.IRenderRequester {
+    
+    /**
+     * Every frame keeps the animation going for this much longer, so the triangle turns for as long as the view is
+     * drawn and frames stop shortly after it is paused.
+     */
+    private static final long ANIMATION_WINDOW_NANOS = 1000L * 1000 * 1000;
+    private static final float DEGREES_PER_SECOND = 90.0f;
+    
+    /** Room for the triangle of many frames; it wraps around long before the frames in flight could fill it. */
+    private static final int STREAM_BYTES = 16 * 1024;
+    private static final int FRAMES_IN_FLIGHT = 3;
+    
+    private final RenderScheduler mScheduler = new RenderScheduler(this);
 
     public HelloOpenGLES20SurfaceView(Context context){
         super(context);
@@ -22,42 +32,44 @@ public class HelloOpenGLES20SurfaceView extends GLSurfaceView {
         setEGLContextClientVersion(2);
         // Set the Renderer for drawing on the GLSurfaceView
         setRenderer(new HelloOpenGLES20Renderer());
+        // Only draw when the scheduler asks for a frame instead of at the display refresh rate.
+        setRenderMode(RENDERMODE_WHEN_DIRTY);
     }
     
     private class HelloOpenGLES20Renderer implements GLSurfaceView.Renderer {
         
+        private final float[] mTriangleCoords = {
+            // X, Y, Z
+            -0.5f, -0.25f, 0.0f,
+             0.5f, -0.25f, 0.0f,
+             0.0f,  0.559016994f, 0
+        };
+        
+        /** The triangle turned by the current angle, rewritten every frame. */
+        private final float[] mTurnedCoords = new float[9];
+        
+        /** The turned triangle is streamed into this buffer every frame. */
+        private StreamingVertexBuffer mStream;
+        
+        /** Client-side copy to draw from when the stream has no room. */
         private FloatBuffer triangleVB;
         
-        private final String vertexShaderCode = 
-                // This matrix member variable provides a hook to manipulate
-                // the coordinates of the objects that use this vertex shader
-                "uniform mat4 uMVPMatrix;   \n" +
-                
-                "attribute vec4 vPosition;  \n" +
-                "void main(){               \n" +
-                
-                // the matrix must be included as a modifier of gl_Position
-                " gl_Position = uMVPMatrix * vPosition; \n" +
-                
-                "}  \n";
-            
-        private final String fragmentShaderCode = 
-            "precision mediump float;  \n" +
-            "void main(){              \n" +
-            " gl_FragColor = vec4 (0.63671875, 0.76953125, 0.22265625, 1.0); \n" +
-            "}                         \n";
+        private final float[] mColor = { 0.63671875f, 0.76953125f, 0.22265625f, 1.0f };
+        
+        private final ShaderLibrary mShaderLibrary = new ShaderLibrary(getContext());
         
         private int mProgram;
         
         private int maPositionHandle;
         private int muMVPMatrixHandle;
+        private int muColorHandle;
         
         private float[] mMVPMatrix = new float[16];
         private float[] mVMatrix = new float[16];
         private float[] mProjMatrix = new float[16];
         
-        //tranformation matrix
-        private float[] mMMatrix = new float[16];
+        private float mAngle;
+        private long mLastFrameNanos;
         
         @Override
         public void onSurfaceCreated(GL10 unused, EGLConfig config) {
@@ -67,45 +79,65 @@ public class HelloOpenGLES20SurfaceView extends GLSurfaceView {
             // initialize the triangle vertex array
             initShapes();
             
-            int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexShaderCode);
-            int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode);
+            // the plain variant of the basic shader: no texture, one color for the whole triangle
+            mShaderLibrary.onContextCreated();
+            mProgram = mShaderLibrary.getProgram(ShaderLibrary.BASIC_VERTEX_SHADER, ShaderLibrary.BASIC_FRAGMENT_SHADER, 
+                    null, new String[] {"a_Position"});
             
-            mProgram = GLES20.glCreateProgram();             // create empty OpenGL Program
-            GLES20.glAttachShader(mProgram, vertexShader);   // add the vertex shader to program
-            GLES20.glAttachShader(mProgram, fragmentShader); // add the fragment shader to program
-            GLES20.glLinkProgram(mProgram);                  // creates OpenGL program executables
+            // get handle to the vertex shader's a_Position member
+            maPositionHandle = GLES20.glGetAttribLocation(mProgram, "a_Position");
+            muColorHandle = GLES20.glGetUniformLocation(mProgram, "u_Color");
             
-            // get handle to the vertex shader's vPosition member
-            maPositionHandle = GLES20.glGetAttribLocation(mProgram, "vPosition");
+            mScheduler.animate(ANIMATION_WINDOW_NANOS);
         }
         
         public void onDrawFrame(GL10 unused) {
+            final int reasons = mScheduler.beginFrame();
+            
             // Redraw background color
             GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
             
             // Add program to OpenGL environment
             GLES20.glUseProgram(mProgram);
             
-            // Prepare the triangle data
-            GLES20.glVertexAttribPointer(maPositionHandle, 3, GLES20.GL_FLOAT, false, 12, triangleVB);
+            GLES20.glUniform4fv(muColorHandle, 1, mColor, 0);
+            
+            // Create a rotation for the triangle. It only advances while animating; a frame drawn for another
+            // reason, e.g. a resize, makes the next animation start from rest.
+            if ((reasons & RenderScheduler.DIRTY_ANIMATION) != 0) {
+                final long now = System.nanoTime();
+                if (mLastFrameNanos != 0) {
+                    mAngle = (mAngle + DEGREES_PER_SECOND * (now - mLastFrameNanos) / 1e9f) % 360.0f;
+                }
+                mLastFrameNanos = now;
+            } else {
+                mLastFrameNanos = 0;
+            }
+            
+            // The rotation is applied to the vertices themselves, which are streamed in fresh every frame.
+            turnTriangle(mAngle);
+            mStream.beginFrame();
+            final int offset = mStream.write(mTurnedCoords, 0, mTurnedCoords.length);
+            if (offset >= 0) {
+                mStream.bind();
+                GLES20.glVertexAttribPointer(maPositionHandle, 3, GLES20.GL_FLOAT, false, 12, offset);
+            } else {
+                GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+                triangleVB.put(mTurnedCoords).position(0);
+                GLES20.glVertexAttribPointer(maPositionHandle, 3, GLES20.GL_FLOAT, false, 12, triangleVB);
+            }
             GLES20.glEnableVertexAttribArray(maPositionHandle);
             
-            // Apply a ModelView Projection transformation
-//            Matrix.multiplyMM(mMVPMatrix, 0, mProjMatrix, 0, mVMatrix, 0);
-//            GLES20.glUniformMatrix4fv(muMVPMatrixHandle, 1, false, mMVPMatrix, 0);
-            
-            // Create a rotation for the triangle
-            long time = SystemClock.uptimeMillis() % 4000L;
-            float angle = 0.090f * ((int) time);
-            Matrix.setRotateM(mMMatrix, 0, angle, 0, 0, 1.0f);
-            Matrix.multiplyMM(mMVPMatrix, 0, mVMatrix, 0, mMMatrix, 0);
-            Matrix.multiplyMM(mMVPMatrix, 0, mProjMatrix, 0, mMVPMatrix, 0);
-            
-            // Apply a ModelView Projection transformation
+            // Apply a View Projection transformation
+            Matrix.multiplyMM(mMVPMatrix, 0, mProjMatrix, 0, mVMatrix, 0);
             GLES20.glUniformMatrix4fv(muMVPMatrixHandle, 1, false, mMVPMatrix, 0);
             
             // Draw the triangle
             GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 3);
+            
+            // Keeps frames coming while the view is on screen.
+            mScheduler.animate(ANIMATION_WINDOW_NANOS);
+            mScheduler.endFrame();
         }
         
         @Override
@@ -118,8 +150,8 @@ public class HelloOpenGLES20SurfaceView extends GLSurfaceView {
             // in the onDrawFrame() method
             Matrix.frustumM(mProjMatrix, 0, -ratio, ratio, -1, 1, 3, 7);
             
-            //reference the uMVPMatrix shader matrix variable
-            muMVPMatrixHandle = GLES20.glGetUniformLocation(mProgram, "uMVPMatrix");
+            //reference the u_MVPMatrix shader matrix variable
+            muMVPMatrixHandle = GLES20.glGetUniformLocation(mProgram, "u_MVPMatrix");
             
             //define a camera view matrix
             Matrix.setLookAtM(mVMatrix, 0, 0, 0, -3, 0f, 0f, 0f, 0f, 1.0f, 0.0f);
@@ -127,33 +159,32 @@ public class HelloOpenGLES20SurfaceView extends GLSurfaceView {
         
         private void initShapes(){
             
-            float triangleCoords[] = {
-                // X, Y, Z
-                -0.5f, -0.25f, 0.0f,
-                 0.5f, -0.25f, 0.0f,
-                 0.0f,  0.559016994f, 0
-            }; 
-            
-            // initialize vertex Buffer for triangle  
-            ByteBuffer vbb = ByteBuffer.allocateDirect(
-                    // (# of coordinate values * 4 bytes per float)
-                    triangleCoords.length * 4); 
-            vbb.order(ByteOrder.nativeOrder());// use the device hardware's native byte order
-            triangleVB = vbb.asFloatBuffer();  // create a floating point buffer from the ByteBuffer
-            triangleVB.put(triangleCoords);    // add the coordinates to the FloatBuffer
-            triangleVB.position(0);            // set the buffer to read the first coordinate
+            // the stream's previous store went with the old context; its staging buffer is reused
+            final BufferManager bufferManager = new BufferManager(new AndroidGL());
+            if (mStream == null) {
+                mStream = new StreamingVertexBuffer(bufferManager, STREAM_BYTES, FRAMES_IN_FLIGHT);
+            } else {
+                mStream.onContextCreated(bufferManager);
+            }
+            
+            // initialize the fallback vertex Buffer for triangle, reusing the previous surface's one
+            final DirectBufferPool pool = DirectBufferPool.getShared();
+            pool.release(triangleVB);
+            triangleVB = pool.allocateFloats(mTriangleCoords.length);
         }
         
-        private int loadShader(int type, String shaderCode){
-            // create a vertex shader type (GLES20.GL_VERTEX_SHADER)
-            // or a fragment shader type (GLES20.GL_FRAGMENT_SHADER)
-            int shader = GLES20.glCreateShader(type); 
-            
-            // add the source code to the shader and compile it
-            GLES20.glShaderSource(shader, shaderCode);
-            GLES20.glCompileShader(shader);
-            
-            return shader;
+        /** Rotates the triangle about the z axis into mTurnedCoords. */
+        private void turnTriangle(float degrees) {
+            final double radians = Math.toRadians(degrees);
+            final float cos = (float) Math.cos(radians);
+            final float sin = (float) Math.sin(radians);
+            for (int i = 0; i < mTriangleCoords.length; i += 3) {
+                final float x = mTriangleCoords[i];
+                final float y = mTriangleCoords[i + 1];
+                mTurnedCoords[i] = cos * x - sin * y;
+                mTurnedCoords[i + 1] = sin * x + cos * y;
+                mTurnedCoords[i + 2] = mTriangleCoords[i + 2];
+            }
         }
     }
 }
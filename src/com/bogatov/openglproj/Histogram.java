@@ -0,0 +1,99 @@
+package com.bogatov.openglproj;
+
+/**
+ * Counts non-negative values in buckets that are exact below {@link #SUB_BUCKETS} and then log-linear: every
+ * power of two is split into SUB_BUCKETS / 2 equal parts, so any value is known to within about 6%, from
+ * nanoseconds to hours or bytes to gigabytes, in a fixed number of buckets.
+ *
+ * Does not allocate after construction.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+    /** Enough buckets for every non-negative long. */
+    public static final int BUCKET_COUNT = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS;
+
+    private final int[] mCounts = new int[BUCKET_COUNT];
+    private int mTotalCount;
+    private long mMin = Long.MAX_VALUE;
+    private long mMax = Long.MIN_VALUE;
+
+    /**
+     * Adds a value; negative values count as 0.
+     */
+    public void add(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        mCounts[getBucket(value)]++;
+        mTotalCount++;
+        mMin = Math.min(mMin, value);
+        mMax = Math.max(mMax, value);
+    }
+
+    public void clear() {
+        for (int i = 0; i < mCounts.length; i++) {
+            mCounts[i] = 0;
+        }
+        mTotalCount = 0;
+        mMin = Long.MAX_VALUE;
+        mMax = Long.MIN_VALUE;
+    }
+
+    static int getBucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // The top SUB_BUCKET_BITS bits of the value pick the bucket; the first of them is always set.
+        final int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        final int mantissa = (int) (value >>> shift);
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (mantissa - HALF_SUB_BUCKETS);
+    }
+
+    /** Largest value that falls into a bucket. */
+    static long getBucketLimit(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = (bucket - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        final long mantissa = (bucket - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * @param percentile From 0 to 100.
+     * @return A value at least as large as that percentage of the values, capped at the largest value added;
+     *         0 if nothing was added.
+     */
+    public long getPercentile(float percentile) {
+        if (mTotalCount == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * mTotalCount));
+        long seen = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            seen += mCounts[i];
+            if (seen >= rank) {
+                return Math.min(mMax, Math.max(mMin, getBucketLimit(i)));
+            }
+        }
+        return mMax;
+    }
+
+    public int getCount() {
+        return mTotalCount;
+    }
+
+    /** Smallest value added, or 0 if none. */
+    public long getMin() {
+        return mTotalCount == 0 ? 0 : mMin;
+    }
+
+    /** Largest value added, or 0 if none. */
+    public long getMax() {
+        return mTotalCount == 0 ? 0 : mMax;
+    }
+}
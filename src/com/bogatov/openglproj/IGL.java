@@ -0,0 +1,72 @@
+package com.bogatov.openglproj;
+
+import java.nio.Buffer;
+
+/**
+ * Thin abstraction over the subset of OpenGL ES 2.0 calls used by the renderers,
+ * so that geometry and draw bookkeeping can run against something other than {@link android.opengl.GLES20}.
+ */
+public interface IGL {
+
+    public void glUseProgram(int program);
+
+    public void glEnable(int cap);
+
+    public void glDisable(int cap);
+
+    public void glBlendFunc(int sfactor, int dfactor);
+
+    public void glActiveTexture(int texture);
+
+    public void glBindTexture(int target, int texture);
+
+    public void glGenTextures(int n, int[] textures, int offset);
+
+    public void glDeleteTextures(int n, int[] textures, int offset);
+
+    public void glUniform1i(int location, int x);
+
+    public void glUniform1f(int location, float x);
+
+    public void glUniform4f(int location, float x, float y, float z, float w);
+
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr);
+
+    public void glEnableVertexAttribArray(int index);
+
+    public void glDisableVertexAttribArray(int index);
+
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset);
+
+    public void glDrawArrays(int mode, int first, int count);
+
+    public void glDrawElements(int mode, int count, int type, int offset);
+
+    public void glGenBuffers(int n, int[] buffers, int offset);
+
+    public void glDeleteBuffers(int n, int[] buffers, int offset);
+
+    public void glBindBuffer(int target, int buffer);
+
+    public void glBufferData(int target, int size, Buffer data, int usage);
+
+    public void glBufferSubData(int target, int offset, int size, Buffer data);
+
+    public void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+    /**
+     * Returns the name of an active uniform and stores its array size and type in size[0] and type[0].
+     */
+    public String glGetActiveUniform(int program, int index, int[] size, int[] type);
+
+    /**
+     * Returns the name of an active attribute and stores its array size and type in size[0] and type[0].
+     */
+    public String glGetActiveAttrib(int program, int index, int[] size, int[] type);
+
+    public int glGetUniformLocation(int program, String name);
+
+    public int glGetAttribLocation(int program, String name);
+}
@@ -0,0 +1,184 @@
+package com.bogatov.openglproj;
+
+import java.nio.Buffer;
+
+/**
+ * {@link IGL} decorator that counts draw calls, vertices, state changes and uploaded bytes into a
+ * {@link FrameStats} before forwarding each call. Binds, attribute setup and uniform uploads count as state
+ * changes; object creation and queries do not.
+ */
+public class InstrumentedGL implements IGL {
+
+    private final IGL mGL;
+    private final FrameStats mStats;
+
+    public InstrumentedGL(IGL gl, FrameStats stats) {
+        mGL = gl;
+        mStats = stats;
+    }
+
+    public FrameStats getStats() {
+        return mStats;
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        mStats.recordStateChange();
+        mGL.glUseProgram(program);
+    }
+
+    @Override
+    public void glEnable(int cap) {
+        mStats.recordStateChange();
+        mGL.glEnable(cap);
+    }
+
+    @Override
+    public void glDisable(int cap) {
+        mStats.recordStateChange();
+        mGL.glDisable(cap);
+    }
+
+    @Override
+    public void glBlendFunc(int sfactor, int dfactor) {
+        mStats.recordStateChange();
+        mGL.glBlendFunc(sfactor, dfactor);
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        mStats.recordStateChange();
+        mGL.glActiveTexture(texture);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        mStats.recordStateChange();
+        mGL.glBindTexture(target, texture);
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        mGL.glGenTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset) {
+        mGL.glDeleteTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        mStats.recordStateChange();
+        mGL.glUniform1i(location, x);
+    }
+
+    @Override
+    public void glUniform1f(int location, float x) {
+        mStats.recordStateChange();
+        mGL.glUniform1f(location, x);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+        mStats.recordStateChange();
+        mGL.glUniform4f(location, x, y, z, w);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        mStats.recordStateChange();
+        mGL.glUniformMatrix4fv(location, count, transpose, value, offset);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr) {
+        mStats.recordStateChange();
+        mGL.glVertexAttribPointer(index, size, type, normalized, stride, ptr);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        mStats.recordStateChange();
+        mGL.glEnableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        mStats.recordStateChange();
+        mGL.glDisableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+        mStats.recordStateChange();
+        mGL.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        mStats.recordDrawCall(count);
+        mGL.glDrawArrays(mode, first, count);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        mStats.recordDrawCall(count);
+        mGL.glDrawElements(mode, count, type, offset);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        mGL.glGenBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        mGL.glDeleteBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        mStats.recordStateChange();
+        mGL.glBindBuffer(target, buffer);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        if (data != null) {
+            mStats.recordUpload(size);
+        }
+        mGL.glBufferData(target, size, data, usage);
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        mStats.recordUpload(size);
+        mGL.glBufferSubData(target, offset, size, data);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        mGL.glGetProgramiv(program, pname, params, offset);
+    }
+
+    @Override
+    public String glGetActiveUniform(int program, int index, int[] size, int[] type) {
+        return mGL.glGetActiveUniform(program, index, size, type);
+    }
+
+    @Override
+    public String glGetActiveAttrib(int program, int index, int[] size, int[] type) {
+        return mGL.glGetActiveAttrib(program, index, size, type);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        return mGL.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        return mGL.glGetAttribLocation(program, name);
+    }
+}
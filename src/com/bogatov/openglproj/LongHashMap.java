@@ -0,0 +1,177 @@
+package com.bogatov.openglproj;
+
+import java.util.Arrays;
+
+/**
+ * Maps long keys to objects in open-addressed arrays, so looking up a texture handle or a packed
+ * (resource id, level) pair on the GL thread neither boxes the key nor allocates an entry. Only growing the table
+ * allocates.
+ *
+ * Values must not be null. Not synchronized.
+ */
+public class LongHashMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] mKeys;
+    private Object[] mValues;
+    private int mMask;
+    private int mSize;
+
+    public LongHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param capacity Number of entries that fit without growing.
+     */
+    public LongHashMap(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Negative capacity: " + capacity);
+        }
+        int length = MIN_CAPACITY;
+        // At most half full, so probe runs stay short.
+        while (length < 2 * capacity) {
+            length <<= 1;
+        }
+        allocate(length);
+    }
+
+    private void allocate(int length) {
+        mKeys = new long[length];
+        mValues = new Object[length];
+        mMask = length - 1;
+    }
+
+    static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /** @return The slot holding the key, or the complement of the empty slot it would go into. */
+    private int find(long key) {
+        int slot = hash(key) & mMask;
+        while (mValues[slot] != null) {
+            if (mKeys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return ~slot;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        final int slot = find(key);
+        return slot >= 0 ? (V) mValues[slot] : null;
+    }
+
+    public boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * @return The value the key was mapped to before, or null.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null value for key " + key);
+        }
+        int slot = find(key);
+        if (slot >= 0) {
+            final V previous = (V) mValues[slot];
+            mValues[slot] = value;
+            return previous;
+        }
+        if (2 * (mSize + 1) > mValues.length) {
+            grow();
+            slot = find(key);
+        }
+        slot = ~slot;
+        mKeys[slot] = key;
+        mValues[slot] = value;
+        mSize++;
+        return null;
+    }
+
+    private void grow() {
+        final long[] keys = mKeys;
+        final Object[] values = mValues;
+        allocate(2 * values.length);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                final int slot = ~find(keys[i]);
+                mKeys[slot] = keys[i];
+                mValues[slot] = values[i];
+            }
+        }
+    }
+
+    /**
+     * @return The value the key was mapped to, or null.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        final int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        final V value = (V) mValues[slot];
+        removeSlot(slot);
+        return value;
+    }
+
+    /**
+     * Removes the key only if it is mapped to this very value.
+     *
+     * @return Whether it was removed.
+     */
+    public boolean remove(long key, V value) {
+        final int slot = find(key);
+        if (slot < 0 || mValues[slot] != value) {
+            return false;
+        }
+        removeSlot(slot);
+        return true;
+    }
+
+    /** Empties the slot and moves later entries of the probe run back, so no lookup stops short of them. */
+    private void removeSlot(int slot) {
+        mValues[slot] = null;
+        mSize--;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mMask;
+            if (mValues[next] == null) {
+                return;
+            }
+            final int home = hash(mKeys[next]) & mMask;
+            // Entries whose home lies cyclically in (slot, next] are still reachable from it.
+            if (slot <= next ? slot < home && home <= next : slot < home || home <= next) {
+                continue;
+            }
+            mKeys[slot] = mKeys[next];
+            mValues[slot] = mValues[next];
+            mValues[next] = null;
+            slot = next;
+        }
+    }
+
+    public void clear() {
+        if (mSize > 0) {
+            Arrays.fill(mValues, null);
+            mSize = 0;
+        }
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+}
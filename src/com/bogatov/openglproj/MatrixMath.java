@@ -0,0 +1,155 @@
+package com.bogatov.openglproj;
+
+/**
+ * Column-major 4x4 matrix math in the layout of {@link android.opengl.Matrix}, with fast paths for the cases the
+ * renderers actually hit: affine matrices, whose bottom row is 0, 0, 0, 1, and pure translations. Nothing here
+ * allocates; callers pass the arrays to write into.
+ *
+ * Unlike android.opengl.Matrix the results are written only after all inputs have been read, so the result may
+ * alias either input.
+ */
+public final class MatrixMath {
+
+    private MatrixMath() {
+    }
+
+    public static void setIdentity(float[] m, int offset) {
+        for (int i = 0; i < 16; i++) {
+            m[offset + i] = 0.0f;
+        }
+        m[offset] = 1.0f;
+        m[offset + 5] = 1.0f;
+        m[offset + 10] = 1.0f;
+        m[offset + 15] = 1.0f;
+    }
+
+    /** Sets m to a translation, without the multiply {@link android.opengl.Matrix#translateM} does. */
+    public static void setTranslation(float[] m, int offset, float x, float y, float z) {
+        setIdentity(m, offset);
+        m[offset + 12] = x;
+        m[offset + 13] = y;
+        m[offset + 14] = z;
+    }
+
+    public static boolean isAffine(float[] m, int offset) {
+        return m[offset + 3] == 0.0f && m[offset + 7] == 0.0f && m[offset + 11] == 0.0f && m[offset + 15] == 1.0f;
+    }
+
+    /**
+     * result = lhs * rhs for general matrices.
+     */
+    public static void multiply(float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+        final float l0 = lhs[lhsOffset], l1 = lhs[lhsOffset + 1], l2 = lhs[lhsOffset + 2], l3 = lhs[lhsOffset + 3];
+        final float l4 = lhs[lhsOffset + 4], l5 = lhs[lhsOffset + 5], l6 = lhs[lhsOffset + 6], l7 = lhs[lhsOffset + 7];
+        final float l8 = lhs[lhsOffset + 8], l9 = lhs[lhsOffset + 9], l10 = lhs[lhsOffset + 10], l11 = lhs[lhsOffset + 11];
+        final float l12 = lhs[lhsOffset + 12], l13 = lhs[lhsOffset + 13], l14 = lhs[lhsOffset + 14], l15 = lhs[lhsOffset + 15];
+
+        // Read a whole column of rhs before writing the same column of the result, so they may alias.
+        for (int c = 0; c < 16; c += 4) {
+            final float r0 = rhs[rhsOffset + c], r1 = rhs[rhsOffset + c + 1];
+            final float r2 = rhs[rhsOffset + c + 2], r3 = rhs[rhsOffset + c + 3];
+            result[resultOffset + c] = l0 * r0 + l4 * r1 + l8 * r2 + l12 * r3;
+            result[resultOffset + c + 1] = l1 * r0 + l5 * r1 + l9 * r2 + l13 * r3;
+            result[resultOffset + c + 2] = l2 * r0 + l6 * r1 + l10 * r2 + l14 * r3;
+            result[resultOffset + c + 3] = l3 * r0 + l7 * r1 + l11 * r2 + l15 * r3;
+        }
+    }
+
+    /**
+     * result = lhs * rhs where both are affine; skips the bottom row, 36 multiplies instead of 64.
+     */
+    public static void multiplyAffine(float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs,
+            int rhsOffset) {
+        final float l0 = lhs[lhsOffset], l1 = lhs[lhsOffset + 1], l2 = lhs[lhsOffset + 2];
+        final float l4 = lhs[lhsOffset + 4], l5 = lhs[lhsOffset + 5], l6 = lhs[lhsOffset + 6];
+        final float l8 = lhs[lhsOffset + 8], l9 = lhs[lhsOffset + 9], l10 = lhs[lhsOffset + 10];
+        final float l12 = lhs[lhsOffset + 12], l13 = lhs[lhsOffset + 13], l14 = lhs[lhsOffset + 14];
+
+        for (int c = 0; c < 12; c += 4) {
+            final float r0 = rhs[rhsOffset + c], r1 = rhs[rhsOffset + c + 1], r2 = rhs[rhsOffset + c + 2];
+            result[resultOffset + c] = l0 * r0 + l4 * r1 + l8 * r2;
+            result[resultOffset + c + 1] = l1 * r0 + l5 * r1 + l9 * r2;
+            result[resultOffset + c + 2] = l2 * r0 + l6 * r1 + l10 * r2;
+            result[resultOffset + c + 3] = 0.0f;
+        }
+        final float x = rhs[rhsOffset + 12], y = rhs[rhsOffset + 13], z = rhs[rhsOffset + 14];
+        result[resultOffset + 12] = l0 * x + l4 * y + l8 * z + l12;
+        result[resultOffset + 13] = l1 * x + l5 * y + l9 * z + l13;
+        result[resultOffset + 14] = l2 * x + l6 * y + l10 * z + l14;
+        result[resultOffset + 15] = 1.0f;
+    }
+
+    /**
+     * result = m * translation(x, y, z). Only the last column changes, so this is 12 multiplies, which is what
+     * placing a model with a translation-only model matrix under a view or view-projection matrix costs.
+     */
+    public static void translate(float[] result, int resultOffset, float[] m, int offset, float x, float y, float z) {
+        final float t0 = m[offset] * x + m[offset + 4] * y + m[offset + 8] * z + m[offset + 12];
+        final float t1 = m[offset + 1] * x + m[offset + 5] * y + m[offset + 9] * z + m[offset + 13];
+        final float t2 = m[offset + 2] * x + m[offset + 6] * y + m[offset + 10] * z + m[offset + 14];
+        final float t3 = m[offset + 3] * x + m[offset + 7] * y + m[offset + 11] * z + m[offset + 15];
+        if (result != m || resultOffset != offset) {
+            System.arraycopy(m, offset, result, resultOffset, 12);
+        }
+        result[resultOffset + 12] = t0;
+        result[resultOffset + 13] = t1;
+        result[resultOffset + 14] = t2;
+        result[resultOffset + 15] = t3;
+    }
+
+    /**
+     * Writes m * translation(x, y, z) for many instances into consecutive matrices of result.
+     *
+     * @param translations X, Y, Z per instance, {@code stride} floats apart.
+     */
+    public static void translateBatch(float[] result, int resultOffset, float[] m, int offset, float[] translations,
+            int translationOffset, int stride, int count) {
+        final float m0 = m[offset], m1 = m[offset + 1], m2 = m[offset + 2], m3 = m[offset + 3];
+        final float m4 = m[offset + 4], m5 = m[offset + 5], m6 = m[offset + 6], m7 = m[offset + 7];
+        final float m8 = m[offset + 8], m9 = m[offset + 9], m10 = m[offset + 10], m11 = m[offset + 11];
+        final float m12 = m[offset + 12], m13 = m[offset + 13], m14 = m[offset + 14], m15 = m[offset + 15];
+
+        int t = translationOffset;
+        int r = resultOffset;
+        for (int i = 0; i < count; i++, t += stride, r += 16) {
+            final float x = translations[t], y = translations[t + 1], z = translations[t + 2];
+            System.arraycopy(m, offset, result, r, 12);
+            result[r + 12] = m0 * x + m4 * y + m8 * z + m12;
+            result[r + 13] = m1 * x + m5 * y + m9 * z + m13;
+            result[r + 14] = m2 * x + m6 * y + m10 * z + m14;
+            result[r + 15] = m3 * x + m7 * y + m11 * z + m15;
+        }
+    }
+
+    /**
+     * result = m * (x, y, z, w).
+     */
+    public static void multiplyVector(float[] result, int resultOffset, float[] m, int offset, float x, float y, float z,
+            float w) {
+        result[resultOffset] = m[offset] * x + m[offset + 4] * y + m[offset + 8] * z + m[offset + 12] * w;
+        result[resultOffset + 1] = m[offset + 1] * x + m[offset + 5] * y + m[offset + 9] * z + m[offset + 13] * w;
+        result[resultOffset + 2] = m[offset + 2] * x + m[offset + 6] * y + m[offset + 10] * z + m[offset + 14] * w;
+        result[resultOffset + 3] = m[offset + 3] * x + m[offset + 7] * y + m[offset + 11] * z + m[offset + 15] * w;
+    }
+
+    /**
+     * Transforms many points, given as X, Y, Z with w = 1, by an affine matrix. Input and output may be the same
+     * array, and the strides let the points live inside an interleaved vertex stream.
+     */
+    public static void transformPoints(float[] result, int resultOffset, int resultStride, float[] m, int offset,
+            float[] points, int pointOffset, int pointStride, int count) {
+        final float m0 = m[offset], m1 = m[offset + 1], m2 = m[offset + 2];
+        final float m4 = m[offset + 4], m5 = m[offset + 5], m6 = m[offset + 6];
+        final float m8 = m[offset + 8], m9 = m[offset + 9], m10 = m[offset + 10];
+        final float m12 = m[offset + 12], m13 = m[offset + 13], m14 = m[offset + 14];
+
+        int p = pointOffset;
+        int r = resultOffset;
+        for (int i = 0; i < count; i++, p += pointStride, r += resultStride) {
+            final float x = points[p], y = points[p + 1], z = points[p + 2];
+            result[r] = m0 * x + m4 * y + m8 * z + m12;
+            result[r + 1] = m1 * x + m5 * y + m9 * z + m13;
+            result[r + 2] = m2 * x + m6 * y + m10 * z + m14;
+        }
+    }
+}
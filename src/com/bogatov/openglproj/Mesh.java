@@ -0,0 +1,199 @@
+package com.bogatov.openglproj;
+
+import java.nio.ByteBuffer;
+
+import android.opengl.GLES20;
+
+/**
+ * Vertex data packed into a single interleaved buffer according to a {@link VertexLayout}.
+ * Attributes are filled from plain float arrays and converted to the layout's storage type on the way in.
+ */
+public class Mesh {
+
+    private final VertexLayout mLayout;
+    private final int mVertexCount;
+    private final ByteBuffer mData;
+
+    private BufferObject mBuffer;
+
+    public Mesh(VertexLayout layout, int vertexCount) {
+        mLayout = layout;
+        mVertexCount = vertexCount;
+        mData = DirectBufferPool.getShared().allocate(layout.getStride() * vertexCount);
+    }
+
+    /**
+     * Packs one attribute for every vertex.
+     *
+     * @param values getComponents() values per vertex, as they would have been stored in a FloatBuffer.
+     */
+    public void setAttribute(int index, float[] values) {
+        final VertexAttribute attribute = mLayout.getAttribute(index);
+        final int components = attribute.getComponents();
+        if (values.length != components * mVertexCount) {
+            throw new IllegalArgumentException("Attribute " + attribute.getName() + " expects " + components * mVertexCount
+                    + " values, got " + values.length);
+        }
+
+        final int stride = mLayout.getStride();
+        final int componentSize = VertexAttribute.getComponentSize(attribute.getType());
+        int position = mLayout.getOffset(index);
+        for (int vertex = 0; vertex < mVertexCount; vertex++) {
+            for (int c = 0; c < components; c++) {
+                putComponent(position + c * componentSize, attribute, values[vertex * components + c]);
+            }
+            position += stride;
+        }
+    }
+
+    public void setAttribute(String name, float[] values) {
+        final int index = mLayout.indexOf(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("No attribute " + name + " in layout");
+        }
+        setAttribute(index, values);
+    }
+
+    private void putComponent(int position, VertexAttribute attribute, float value) {
+        switch (attribute.getType()) {
+        case GLES20.GL_FLOAT:
+            mData.putFloat(position, value);
+            break;
+        case VertexAttribute.GL_HALF_FLOAT_OES:
+            mData.putShort(position, toHalfFloat(value));
+            break;
+        case GLES20.GL_SHORT:
+            mData.putShort(position, (short) (attribute.isNormalized() ? Math.round(clamp(value, -1.0f) * Short.MAX_VALUE) : value));
+            break;
+        case GLES20.GL_UNSIGNED_SHORT:
+            mData.putShort(position, (short) (attribute.isNormalized() ? Math.round(clamp(value, 0.0f) * 0xFFFF) : value));
+            break;
+        case GLES20.GL_BYTE:
+            mData.put(position, (byte) (attribute.isNormalized() ? Math.round(clamp(value, -1.0f) * Byte.MAX_VALUE) : value));
+            break;
+        case GLES20.GL_UNSIGNED_BYTE:
+            mData.put(position, (byte) (attribute.isNormalized() ? Math.round(clamp(value, 0.0f) * 0xFF) : value));
+            break;
+        }
+    }
+
+    private static float clamp(float value, float min) {
+        return Math.max(min, Math.min(1.0f, value));
+    }
+
+    /**
+     * Converts to IEEE 754 half precision, rounding to nearest with ties away from zero and flushing values too
+     * small for a half to zero.
+     */
+    public static short toHalfFloat(float value) {
+        final int bits = Float.floatToIntBits(value);
+        final int sign = (bits >>> 16) & 0x8000;
+        final int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+        int mantissa = bits & 0x7FFFFF;
+
+        if (((bits >>> 23) & 0xFF) == 0xFF) {
+            // Infinity or NaN
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        if (exponent >= 0x1F) {
+            return (short) (sign | 0x7C00);
+        }
+        if (exponent <= 0) {
+            if (exponent < -10) {
+                return (short) sign;
+            }
+            // Subnormal half
+            mantissa = (mantissa | 0x800000) >> (1 - exponent);
+            return (short) (sign | ((mantissa + 0x1000) >> 13));
+        }
+        return (short) (sign | ((exponent << 10) + ((mantissa + 0x1000) >> 13)));
+    }
+
+    /**
+     * Uploads the packed vertices into a static buffer object. The CPU copy is kept so it can be uploaded again
+     * after the context is recreated.
+     */
+    public void upload(BufferManager bufferManager) {
+        mBuffer = bufferManager.createVertexBuffer(GLES20.GL_STATIC_DRAW, mData, mData.capacity());
+    }
+
+    public void release() {
+        if (mBuffer != null) {
+            mBuffer.release();
+            mBuffer = null;
+        }
+    }
+
+    /**
+     * Returns the CPU copy to the {@link DirectBufferPool}; the mesh cannot be used afterwards. Does not touch the
+     * buffer object, which may belong to a context that is already gone; call {@link #release()} first if not.
+     */
+    public void dispose() {
+        DirectBufferPool.getShared().release(mData);
+    }
+
+    /**
+     * Points every attribute at the interleaved buffer and enables it.
+     *
+     * @param locations Attribute locations in layout order; negative locations are skipped.
+     */
+    public void bind(IGL gl, int... locations) {
+        final int stride = mLayout.getStride();
+        if (mBuffer != null) {
+            mBuffer.bind();
+        }
+        for (int i = 0; i < locations.length && i < mLayout.getAttributeCount(); i++) {
+            if (locations[i] < 0) {
+                continue;
+            }
+            final VertexAttribute attribute = mLayout.getAttribute(i);
+            if (mBuffer != null) {
+                gl.glVertexAttribPointer(locations[i], attribute.getComponents(), attribute.getType(), attribute.isNormalized(),
+                        stride, mLayout.getOffset(i));
+            } else {
+                mData.position(mLayout.getOffset(i));
+                gl.glVertexAttribPointer(locations[i], attribute.getComponents(), attribute.getType(), attribute.isNormalized(),
+                        stride, mData);
+            }
+            gl.glEnableVertexAttribArray(locations[i]);
+        }
+        mData.position(0);
+        if (mBuffer != null) {
+            mBuffer.unbind();
+        }
+    }
+
+    public void unbind(IGL gl, int... locations) {
+        for (int location : locations) {
+            if (location >= 0) {
+                gl.glDisableVertexAttribArray(location);
+            }
+        }
+    }
+
+    public void draw(IGL gl, int mode) {
+        gl.glDrawArrays(mode, 0, mVertexCount);
+    }
+
+    public VertexLayout getLayout() {
+        return mLayout;
+    }
+
+    public int getVertexCount() {
+        return mVertexCount;
+    }
+
+    /** Size of the interleaved data in bytes. */
+    public int getSize() {
+        return mData.capacity();
+    }
+
+    /** Bytes saved compared with storing every attribute in its own FloatBuffer. */
+    public int getSavedBytes() {
+        return mLayout.getSavedBytes(mVertexCount);
+    }
+
+    public ByteBuffer getData() {
+        return mData;
+    }
+}
@@ -0,0 +1,305 @@
+package com.bogatov.openglproj;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * Keeps linked program binaries on disk so a program does not have to be compiled and linked again on
+ * the next surface creation. Entries are keyed by a hash of both shader sources, the bound attributes and
+ * the GL vendor, renderer and version strings, so a driver update invalidates them.
+ *
+ * Whenever a binary is missing, fails its integrity check or is rejected by the driver, the program is
+ * compiled from source as before and the entry is rewritten. All GL calls go through the {@link IBinaryProvider}
+ * and the {@link ICompiler}.
+ */
+public class ProgramCache {
+
+    private static final String TAG = ProgramCache.class.getSimpleName();
+
+    private static final int MAGIC = 0x50474243; // "PGBC"
+    private static final int VERSION = 1;
+
+    private static final String DIRECTORY = "programs";
+    private static final String SUFFIX = ".bin";
+
+    /** Access to the driver's program binary entry points. */
+    public interface IBinaryProvider {
+
+        /** Whether the current context can save and load program binaries. */
+        public boolean isSupported();
+
+        /**
+         * @return The binary of a linked program, or null if the driver did not return one.
+         */
+        public Binary getBinary(int programHandle);
+
+        /**
+         * Loads a binary into a freshly created program.
+         *
+         * @return true if the program is linked afterwards.
+         */
+        public boolean loadBinary(int programHandle, int format, byte[] data);
+    }
+
+    /** Creates, compiles and links programs in the current context. */
+    public interface ICompiler {
+
+        /**
+         * @return A program compiled and linked from source, as by {@link ShaderUtils#createAndLinkProgram}.
+         */
+        public int compile(String vertexShader, String fragmentShader, String[] attributes);
+
+        /** @return An empty program to load a binary into, or 0 on failure. */
+        public int createProgram();
+
+        public void deleteProgram(int programHandle);
+
+        /** Identifies the driver, e.g. by its vendor, renderer and version strings. */
+        public String getDriverKey();
+    }
+
+    public static class Binary {
+        public final int format;
+        public final byte[] data;
+
+        public Binary(int format, byte[] data) {
+            this.format = format;
+            this.data = data;
+        }
+    }
+
+    private final File mDirectory;
+    private final IBinaryProvider mProvider;
+    private final ICompiler mCompiler;
+
+    private String mDriverKey;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mRejectCount;
+
+    public ProgramCache(Context context) {
+        this(new File(context.getCacheDir(), DIRECTORY), new GLES30BinaryProvider());
+    }
+
+    public ProgramCache(File directory, IBinaryProvider provider) {
+        this(directory, provider, new GLES20ProgramCompiler());
+    }
+
+    public ProgramCache(File directory, IBinaryProvider provider, ICompiler compiler) {
+        mDirectory = directory;
+        mProvider = provider;
+        mCompiler = compiler;
+    }
+
+    /**
+     * Identifies the driver the binaries were produced by. Taken from the compiler on first use unless set here.
+     */
+    public void setDriverKey(String driverKey) {
+        mDriverKey = driverKey;
+    }
+
+    private String getDriverKey() {
+        if (mDriverKey == null) {
+            mDriverKey = mCompiler.getDriverKey();
+        }
+        return mDriverKey;
+    }
+
+    /**
+     * Returns a linked program for the given sources, loading it from the cache when possible.
+     *
+     * @param attributes Attributes that need to be bound to the program, as for {@link ShaderUtils#createAndLinkProgram}.
+     */
+    public int getProgram(String vertexShader, String fragmentShader, String[] attributes) {
+        if (!mProvider.isSupported()) {
+            return mCompiler.compile(vertexShader, fragmentShader, attributes);
+        }
+
+        final String key = getKey(getDriverKey(), vertexShader, fragmentShader, attributes);
+        final File file = new File(mDirectory, key + SUFFIX);
+
+        final Binary binary = read(file, key);
+        if (binary != null) {
+            final int programHandle = mCompiler.createProgram();
+            if (programHandle != 0 && mProvider.loadBinary(programHandle, binary.format, binary.data)) {
+                mHitCount++;
+                return programHandle;
+            }
+
+            Log.w(TAG, "Driver rejected cached program " + key + ", recompiling");
+            mCompiler.deleteProgram(programHandle);
+            file.delete();
+            mRejectCount++;
+        }
+
+        mMissCount++;
+        final int programHandle = mCompiler.compile(vertexShader, fragmentShader, attributes);
+        final Binary linked = mProvider.getBinary(programHandle);
+        if (linked != null) {
+            write(file, key, linked);
+        }
+        return programHandle;
+    }
+
+    /**
+     * Hex SHA-1 over the driver key, both sources and the attribute bindings.
+     */
+    public static String getKey(String driverKey, String vertexShader, String fragmentShader, String[] attributes) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            update(digest, driverKey);
+            update(digest, vertexShader);
+            update(digest, fragmentShader);
+            if (attributes != null) {
+                for (String attribute : attributes) {
+                    update(digest, attribute);
+                }
+            }
+
+            final byte[] hash = digest.digest();
+            final StringBuilder key = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16));
+                key.append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-1 is not available", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        try {
+            digest.update(value.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        // Separator, so that ("ab", "c") and ("a", "bc") hash differently.
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Reads an entry and checks magic, version, key and checksum.
+     *
+     * @return The stored binary, or null if the entry is missing or does not pass the checks.
+     */
+    Binary read(File file, String key) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            final InputStream inputStream = new FileInputStream(file);
+            try {
+                return read(inputStream, key);
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read cached program " + key, e);
+            file.delete();
+            mRejectCount++;
+            return null;
+        }
+    }
+
+    /**
+     * Entry layout: magic, version, key (UTF), binary format, length, CRC32 of the binary, binary.
+     */
+    static Binary read(InputStream inputStream, String key) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Unknown program cache format");
+        }
+        if (!key.equals(in.readUTF())) {
+            throw new IOException("Program cache key mismatch");
+        }
+
+        final int format = in.readInt();
+        final int length = in.readInt();
+        final long checksum = in.readLong();
+        if (length <= 0) {
+            throw new IOException("Invalid program binary length " + length);
+        }
+
+        final byte[] data = new byte[length];
+        in.readFully(data);
+
+        final CRC32 crc = new CRC32();
+        crc.update(data);
+        if (crc.getValue() != checksum) {
+            throw new IOException("Program binary checksum mismatch");
+        }
+        return new Binary(format, data);
+    }
+
+    private void write(File file, String key, Binary binary) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "Could not create program cache directory " + mDirectory);
+            return;
+        }
+
+        // Write to a temporary file first so a crash never leaves a truncated entry behind.
+        final File temp = new File(mDirectory, key + ".tmp");
+        try {
+            final OutputStream outputStream = new FileOutputStream(temp);
+            try {
+                write(outputStream, key, binary);
+            } finally {
+                outputStream.close();
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not rename " + temp + " to " + file);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write cached program " + key, e);
+            temp.delete();
+        }
+    }
+
+    static void write(OutputStream outputStream, String key, Binary binary) throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(binary.data);
+
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(key);
+        out.writeInt(binary.format);
+        out.writeInt(binary.data.length);
+        out.writeLong(crc.getValue());
+        out.write(binary.data);
+        out.flush();
+    }
+
+    /** Programs loaded from a stored binary. */
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    /** Programs that had to be compiled from source. */
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    /** Stored binaries that were unreadable, corrupt or rejected by the driver. */
+    public int getRejectCount() {
+        return mRejectCount;
+    }
+}
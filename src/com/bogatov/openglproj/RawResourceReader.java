@@ -29,4 +29,17 @@ public class RawResourceReader {
 
         return body.toString();
     }
+
+    /**
+     * Reads a raw resource by its name, e.g. "basic_vertex_shader" for R.raw.basic_vertex_shader.
+     *
+     * @return The text, or null if there is no such resource.
+     */
+    public static String readTextFileFromRawResource(final Context context, final String name) {
+        final int resourceId = context.getResources().getIdentifier(name, "raw", context.getPackageName());
+        if (resourceId == 0) {
+            return null;
+        }
+        return readTextFileFromRawResource(context, resourceId);
+    }
 }
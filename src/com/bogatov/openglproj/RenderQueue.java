@@ -0,0 +1,215 @@
+package com.bogatov.openglproj;
+
+/**
+ * Collects the draws of a frame as 64-bit sort keys with an int payload each, sorts them so that draws sharing a
+ * program and texture run together, and hands them back in that order.
+ *
+ * Keys compare as unsigned numbers. From the top bit down, an opaque key holds
+ * layer (8) | translucent = 0 (1) | program (12) | texture (19) | depth (24), so opaque draws are grouped by
+ * state and run front to back within a group, letting the depth test reject hidden fragments early. A translucent
+ * key holds layer (8) | translucent = 1 (1) | inverted depth (24) | program (12) | texture (19), so translucent
+ * draws come after the opaque ones of their layer and run back to front, as blending needs.
+ *
+ * Sorting is an LSD radix sort over the key bytes, skipping bytes all keys share; it is stable, so draws with
+ * equal keys keep their submission order. Has no GL dependencies and does not allocate unless a frame has more
+ * draws than any before.
+ */
+public class RenderQueue {
+
+    public static final int LAYER_BITS = 8;
+    public static final int PROGRAM_BITS = 12;
+    public static final int TEXTURE_BITS = 19;
+    public static final int DEPTH_BITS = 24;
+
+    public static final int MAX_LAYER = (1 << LAYER_BITS) - 1;
+    public static final int MAX_PROGRAM = (1 << PROGRAM_BITS) - 1;
+    public static final int MAX_TEXTURE = (1 << TEXTURE_BITS) - 1;
+    public static final int MAX_DEPTH = (1 << DEPTH_BITS) - 1;
+
+    private static final int TRANSLUCENT_SHIFT = 64 - LAYER_BITS - 1;
+    private static final int LAYER_SHIFT = 64 - LAYER_BITS;
+
+    /** Runs the sorted draws. */
+    public interface IDrawer {
+        public void draw(long key, int payload);
+    }
+
+    private long[] mKeys;
+    private int[] mPayloads;
+    private long[] mKeyScratch;
+    private int[] mPayloadScratch;
+    private final int[] mCounts = new int[256];
+    private int mSize;
+
+    private int mSortPasses;
+
+    public RenderQueue(int initialCapacity) {
+        final int capacity = Math.max(1, initialCapacity);
+        mKeys = new long[capacity];
+        mPayloads = new int[capacity];
+        mKeyScratch = new long[capacity];
+        mPayloadScratch = new int[capacity];
+    }
+
+    /**
+     * Builds a key. Program and texture are masked to their widths, which only matters for grouping.
+     *
+     * @param depth Distance from the eye, from 0 at the near plane to 1 at the far plane; clamped.
+     */
+    public static long makeKey(int layer, boolean translucent, int program, int texture, float depth) {
+        if (layer < 0 || layer > MAX_LAYER) {
+            throw new IllegalArgumentException("Layer out of range: " + layer);
+        }
+        final long quantized = quantizeDepth(depth);
+        final long state = ((long) (program & MAX_PROGRAM) << TEXTURE_BITS) | (texture & MAX_TEXTURE);
+        long key = (long) layer << LAYER_SHIFT;
+        if (translucent) {
+            key |= 1L << TRANSLUCENT_SHIFT;
+            key |= (MAX_DEPTH - quantized) << (PROGRAM_BITS + TEXTURE_BITS);
+            key |= state;
+        } else {
+            key |= state << DEPTH_BITS;
+            key |= quantized;
+        }
+        return key;
+    }
+
+    static long quantizeDepth(float depth) {
+        if (!(depth > 0.0f)) {
+            return 0;
+        }
+        if (depth >= 1.0f) {
+            return MAX_DEPTH;
+        }
+        return (long) (depth * MAX_DEPTH);
+    }
+
+    public static int getLayer(long key) {
+        return (int) (key >>> LAYER_SHIFT);
+    }
+
+    public static boolean isTranslucent(long key) {
+        return ((key >>> TRANSLUCENT_SHIFT) & 1) != 0;
+    }
+
+    public static int getProgram(long key) {
+        final int shift = isTranslucent(key) ? TEXTURE_BITS : TEXTURE_BITS + DEPTH_BITS;
+        return (int) (key >>> shift) & MAX_PROGRAM;
+    }
+
+    public static int getTexture(long key) {
+        final int shift = isTranslucent(key) ? 0 : DEPTH_BITS;
+        return (int) (key >>> shift) & MAX_TEXTURE;
+    }
+
+    public void clear() {
+        mSize = 0;
+    }
+
+    public void add(long key, int payload) {
+        if (mSize == mKeys.length) {
+            grow(2 * mSize);
+        }
+        mKeys[mSize] = key;
+        mPayloads[mSize] = payload;
+        mSize++;
+    }
+
+    private void grow(int capacity) {
+        final long[] keys = new long[capacity];
+        final int[] payloads = new int[capacity];
+        System.arraycopy(mKeys, 0, keys, 0, mSize);
+        System.arraycopy(mPayloads, 0, payloads, 0, mSize);
+        mKeys = keys;
+        mPayloads = payloads;
+        mKeyScratch = new long[capacity];
+        mPayloadScratch = new int[capacity];
+    }
+
+    /** Sorts the draws by key, keeping the submission order of equal keys. */
+    public void sort() {
+        mSortPasses = 0;
+        final int size = mSize;
+        if (size < 2) {
+            return;
+        }
+        final int[] counts = mCounts;
+        for (int shift = 0; shift < 64; shift += 8) {
+            for (int i = 0; i < 256; i++) {
+                counts[i] = 0;
+            }
+            final long[] keys = mKeys;
+            for (int i = 0; i < size; i++) {
+                counts[(int) (keys[i] >>> shift) & 0xFF]++;
+            }
+            // A byte all keys share does not reorder anything.
+            if (counts[(int) (keys[0] >>> shift) & 0xFF] == size) {
+                continue;
+            }
+
+            int offset = 0;
+            for (int i = 0; i < 256; i++) {
+                final int count = counts[i];
+                counts[i] = offset;
+                offset += count;
+            }
+            final int[] payloads = mPayloads;
+            final long[] keysOut = mKeyScratch;
+            final int[] payloadsOut = mPayloadScratch;
+            for (int i = 0; i < size; i++) {
+                final long key = keys[i];
+                final int position = counts[(int) (key >>> shift) & 0xFF]++;
+                keysOut[position] = key;
+                payloadsOut[position] = payloads[i];
+            }
+
+            mKeyScratch = keys;
+            mPayloadScratch = payloads;
+            mKeys = keysOut;
+            mPayloads = payloadsOut;
+            mSortPasses++;
+        }
+    }
+
+    /** Hands every draw to the drawer, in the current order. */
+    public void execute(IDrawer drawer) {
+        final long[] keys = mKeys;
+        final int[] payloads = mPayloads;
+        for (int i = 0; i < mSize; i++) {
+            drawer.draw(keys[i], payloads[i]);
+        }
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long getKey(int i) {
+        return mKeys[i];
+    }
+
+    public int getPayload(int i) {
+        return mPayloads[i];
+    }
+
+    /** Number of byte passes the last sort needed, at most 8. */
+    public int getSortPasses() {
+        return mSortPasses;
+    }
+
+    /**
+     * Number of times consecutive draws in the current order differ in program or texture, i.e. the state
+     * switches executing the queue costs.
+     */
+    public int countStateChanges() {
+        int changes = 0;
+        for (int i = 1; i < mSize; i++) {
+            final long previous = mKeys[i - 1];
+            final long key = mKeys[i];
+            if (getProgram(previous) != getProgram(key) || getTexture(previous) != getTexture(key)) {
+                changes++;
+            }
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,168 @@
+package com.bogatov.openglproj;
+
+/**
+ * Decides when a view in RENDERMODE_WHEN_DIRTY draws. Whatever changes what is on screen (the scene, the data set,
+ * a texture upload) marks the frame dirty, which requests one render; an animation keeps frames coming until its
+ * window runs out. A view with nothing changing draws nothing.
+ *
+ * The dirty flags say why a frame is drawn, not which part of it: the EGL surface is not guaranteed to keep its
+ * contents between swaps, so every frame is still drawn in full.
+ *
+ * Has no GL or Android dependencies; the clock and the render request are interfaces, so the state machine can be
+ * stepped with a fake clock on a plain JVM.
+ */
+public class RenderScheduler {
+
+    public static final int DIRTY_SCENE = 1;
+    public static final int DIRTY_DATA = 2;
+    public static final int DIRTY_TEXTURES = 4;
+    public static final int DIRTY_ANIMATION = 8;
+    public static final int DIRTY_ALL = DIRTY_SCENE | DIRTY_DATA | DIRTY_TEXTURES | DIRTY_ANIMATION;
+
+    public interface IClock {
+        public long nanoTime();
+    }
+
+    /** Asks the view for one more frame, e.g. GLSurfaceView.requestRender(). Must be safe to call from any thread. */
+    public interface IRenderRequester {
+        public void requestRender();
+    }
+
+    public static final IClock SYSTEM_CLOCK = new IClock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    private final IRenderRequester mRequester;
+    private final IClock mClock;
+
+    /** Reasons marked since the current frame began. */
+    private int mDirty;
+
+    /** A render was requested and the frame serving it has not begun yet. */
+    private boolean mRequested;
+
+    /** Frames keep being requested until the clock reaches this. */
+    private long mAnimationEnd;
+    private boolean mAnimating;
+
+    private int mFrameCount;
+    private int mRequestCount;
+    private int mInvalidateCount;
+
+    public RenderScheduler(IRenderRequester requester) {
+        this(requester, SYSTEM_CLOCK);
+    }
+
+    public RenderScheduler(IRenderRequester requester, IClock clock) {
+        mRequester = requester;
+        mClock = clock;
+    }
+
+    /** Marks the whole frame dirty. */
+    public void invalidate() {
+        invalidate(DIRTY_ALL);
+    }
+
+    /**
+     * Marks the frame dirty, requesting a render unless one is already on its way. May be called from any thread,
+     * including the GL thread during a frame, in which case another frame follows.
+     *
+     * @param reasons DIRTY_ flags.
+     */
+    public void invalidate(int reasons) {
+        final boolean request;
+        synchronized (this) {
+            mDirty |= reasons;
+            mInvalidateCount++;
+            request = !mRequested;
+            if (request) {
+                mRequested = true;
+                mRequestCount++;
+            }
+        }
+        if (request) {
+            mRequester.requestRender();
+        }
+    }
+
+    /**
+     * Renders continuously for a while, e.g. for the length of a transition. Overlapping windows merge into the
+     * one ending last. May be called from any thread.
+     */
+    public void animate(long durationNanos) {
+        synchronized (this) {
+            final long end = mClock.nanoTime() + durationNanos;
+            if (!mAnimating || end - mAnimationEnd > 0) {
+                mAnimationEnd = end;
+            }
+            mAnimating = true;
+        }
+        invalidate(DIRTY_ANIMATION);
+    }
+
+    /** Ends the animation window early; the frame already requested is still drawn. */
+    public synchronized void stopAnimation() {
+        mAnimating = false;
+    }
+
+    /**
+     * Called on the GL thread when a frame starts. Marks made from here on belong to the next frame.
+     *
+     * @return The reasons this frame is drawn; 0 if the view drew on its own, e.g. after a resize.
+     */
+    public synchronized int beginFrame() {
+        mFrameCount++;
+        mRequested = false;
+        int reasons = mDirty;
+        mDirty = 0;
+        if (isAnimating()) {
+            reasons |= DIRTY_ANIMATION;
+        }
+        return reasons;
+    }
+
+    /**
+     * Called on the GL thread when a frame is done; requests the next one while an animation is running.
+     *
+     * @return Whether another frame will follow.
+     */
+    public boolean endFrame() {
+        if (isAnimating()) {
+            invalidate(DIRTY_ANIMATION);
+        }
+        synchronized (this) {
+            return mRequested;
+        }
+    }
+
+    /** Whether the animation window is still open; closes it once the clock has passed its end. */
+    public synchronized boolean isAnimating() {
+        if (mAnimating && mClock.nanoTime() - mAnimationEnd >= 0) {
+            mAnimating = false;
+        }
+        return mAnimating;
+    }
+
+    /** Whether no frame is requested and no animation is running. */
+    public synchronized boolean isIdle() {
+        return !mRequested && !isAnimating();
+    }
+
+    /** Number of frames begun. */
+    public synchronized int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /** Number of renders requested from the view. */
+    public synchronized int getRequestCount() {
+        return mRequestCount;
+    }
+
+    /** Number of invalidations; those beyond the request count were coalesced into an already requested frame. */
+    public synchronized int getInvalidateCount() {
+        return mInvalidateCount;
+    }
+}
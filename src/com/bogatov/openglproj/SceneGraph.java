@@ -0,0 +1,185 @@
+package com.bogatov.openglproj;
+
+/**
+ * A transform hierarchy that caches the world, modelview and MVP matrix of every node and only recomputes them
+ * for nodes whose local transform, or an ancestor's, changed since the last {@link #update()}, or for all nodes
+ * when the camera changed.
+ *
+ * Nodes are plain int indices into flat float[] pools, 16 floats per node, so a grid of thousands of cells is
+ * four arrays rather than thousands of objects. A node's parent is always added before it, which lets one
+ * forward pass over the pools update the whole hierarchy.
+ */
+public class SceneGraph {
+
+    public static final int NO_PARENT = -1;
+
+    private static final int MATRIX_SIZE = 16;
+
+    /** The local transform changed. */
+    private static final byte FLAG_DIRTY = 1;
+
+    /** The local transform is a pure translation, so the world matrix can take the translation fast path. */
+    private static final byte FLAG_TRANSLATION = 2;
+
+    private float[] mLocal;
+    private float[] mWorld;
+    private float[] mModelView;
+    private float[] mMVP;
+    private int[] mParent;
+    private byte[] mFlags;
+
+    /** Scratch for {@link #update()}: whether the node's world matrix changed in this pass. */
+    private boolean[] mChanged;
+
+    private int mCount;
+
+    private final float[] mView = new float[MATRIX_SIZE];
+    private final float[] mViewProjection = new float[MATRIX_SIZE];
+    private boolean mCameraChanged;
+
+    private int mLastUpdateCount;
+
+    public SceneGraph(int initialCapacity) {
+        allocate(Math.max(1, initialCapacity));
+        MatrixMath.setIdentity(mView, 0);
+        MatrixMath.setIdentity(mViewProjection, 0);
+    }
+
+    /** Offset of a node's matrix in the arrays returned by the getters. */
+    public static int getOffset(int node) {
+        return node * MATRIX_SIZE;
+    }
+
+    /**
+     * Adds a node with an identity local transform.
+     *
+     * @param parent An existing node, or {@link #NO_PARENT}.
+     * @return The new node.
+     */
+    public int addNode(int parent) {
+        if (parent >= mCount || parent < NO_PARENT) {
+            throw new IllegalArgumentException("Unknown parent node " + parent);
+        }
+        if (mCount == mParent.length) {
+            allocate(mCount * 2);
+        }
+
+        final int node = mCount++;
+        mParent[node] = parent;
+        MatrixMath.setIdentity(mLocal, getOffset(node));
+        mFlags[node] = FLAG_DIRTY | FLAG_TRANSLATION;
+        return node;
+    }
+
+    /** Removes all nodes, keeping the pools. */
+    public void clear() {
+        mCount = 0;
+    }
+
+    public void setTranslation(int node, float x, float y, float z) {
+        MatrixMath.setTranslation(mLocal, getOffset(node), x, y, z);
+        mFlags[node] = FLAG_DIRTY | FLAG_TRANSLATION;
+    }
+
+    public void setLocalMatrix(int node, float[] m, int offset) {
+        System.arraycopy(m, offset, mLocal, getOffset(node), MATRIX_SIZE);
+        mFlags[node] = FLAG_DIRTY;
+    }
+
+    /**
+     * Sets the view and projection matrices; every node's modelview and MVP are recomputed on the next update.
+     */
+    public void setCamera(float[] view, int viewOffset, float[] projection, int projectionOffset) {
+        System.arraycopy(view, viewOffset, mView, 0, MATRIX_SIZE);
+        MatrixMath.multiply(mViewProjection, 0, projection, projectionOffset, view, viewOffset);
+        mCameraChanged = true;
+    }
+
+    /**
+     * Brings the cached matrices of all changed nodes up to date.
+     *
+     * @return Number of nodes whose matrices were recomputed.
+     */
+    public int update() {
+        int updated = 0;
+        for (int node = 0; node < mCount; node++) {
+            final int parent = mParent[node];
+            final byte flags = mFlags[node];
+            final boolean changed = (flags & FLAG_DIRTY) != 0 || (parent != NO_PARENT && mChanged[parent]);
+            mChanged[node] = changed;
+
+            final int offset = getOffset(node);
+            if (changed) {
+                if (parent == NO_PARENT) {
+                    System.arraycopy(mLocal, offset, mWorld, offset, MATRIX_SIZE);
+                } else if ((flags & FLAG_TRANSLATION) != 0) {
+                    MatrixMath.translate(mWorld, offset, mWorld, getOffset(parent),
+                            mLocal[offset + 12], mLocal[offset + 13], mLocal[offset + 14]);
+                } else {
+                    MatrixMath.multiply(mWorld, offset, mWorld, getOffset(parent), mLocal, offset);
+                }
+                mFlags[node] = (byte) (flags & ~FLAG_DIRTY);
+            }
+
+            if (changed || mCameraChanged) {
+                MatrixMath.multiply(mModelView, offset, mView, 0, mWorld, offset);
+                MatrixMath.multiply(mMVP, offset, mViewProjection, 0, mWorld, offset);
+                updated++;
+            }
+        }
+
+        mCameraChanged = false;
+        mLastUpdateCount = updated;
+        return updated;
+    }
+
+    private void allocate(int capacity) {
+        final float[] local = new float[capacity * MATRIX_SIZE];
+        final float[] world = new float[capacity * MATRIX_SIZE];
+        final float[] modelView = new float[capacity * MATRIX_SIZE];
+        final float[] mvp = new float[capacity * MATRIX_SIZE];
+        final int[] parent = new int[capacity];
+        final byte[] flags = new byte[capacity];
+        if (mCount > 0) {
+            System.arraycopy(mLocal, 0, local, 0, mCount * MATRIX_SIZE);
+            System.arraycopy(mWorld, 0, world, 0, mCount * MATRIX_SIZE);
+            System.arraycopy(mModelView, 0, modelView, 0, mCount * MATRIX_SIZE);
+            System.arraycopy(mMVP, 0, mvp, 0, mCount * MATRIX_SIZE);
+            System.arraycopy(mParent, 0, parent, 0, mCount);
+            System.arraycopy(mFlags, 0, flags, 0, mCount);
+        }
+        mLocal = local;
+        mWorld = world;
+        mModelView = modelView;
+        mMVP = mvp;
+        mParent = parent;
+        mFlags = flags;
+        mChanged = new boolean[capacity];
+    }
+
+    public int getNodeCount() {
+        return mCount;
+    }
+
+    public int getParent(int node) {
+        return mParent[node];
+    }
+
+    /** Number of nodes recomputed by the last {@link #update()}. */
+    public int getLastUpdateCount() {
+        return mLastUpdateCount;
+    }
+
+    /** World matrices of all nodes; node i starts at {@link #getOffset(int)}. Valid after {@link #update()}. */
+    public float[] getWorldMatrices() {
+        return mWorld;
+    }
+
+    public float[] getModelViewMatrices() {
+        return mModelView;
+    }
+
+    public float[] getMVPMatrices() {
+        return mMVP;
+    }
+}
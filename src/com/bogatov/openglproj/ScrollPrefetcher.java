@@ -0,0 +1,215 @@
+package com.bogatov.openglproj;
+
+/**
+ * Requests the items of the rows a scroll is heading into before they become visible, so their textures are
+ * decoded by the time they are bound instead of popping in.
+ *
+ * The prefetched rows are a range just past the bound window in the direction of motion, as long as the smoothed
+ * velocity covers in {@link #LOOKAHEAD_SECONDS}. Rows leaving the range are released: as hits if the window has
+ * reached them, or as wasted if the scroll slowed down or turned around first.
+ *
+ * Has no GL dependencies and does not allocate after construction, so it can be driven by a recorded scroll
+ * trace on a plain JVM.
+ */
+public class ScrollPrefetcher {
+
+    /** How far ahead to prefetch, as time at the current velocity. */
+    public static final float LOOKAHEAD_SECONDS = 0.5f;
+
+    /** Slower scrolls, in rows per second, do not prefetch. */
+    private static final float MIN_VELOCITY = 0.5f;
+
+    /** Weight of the newest frame in the smoothed velocity. */
+    private static final float VELOCITY_SMOOTHING = 0.3f;
+
+    /** Starts and stops loads for prefetched items. */
+    public interface ITarget {
+        /**
+         * @param priority Rows between the item and the bound window, 1 for the adjacent row.
+         * @return A token passed back to {@link #release}.
+         */
+        public int prefetch(int index, int priority);
+
+        /**
+         * @param used Whether the item was bound while prefetched; otherwise its load may be cancelled.
+         */
+        public void release(int index, int token, boolean used);
+    }
+
+    private final ITarget mTarget;
+    private final int mMaxRows;
+
+    private int mColumns;
+    private int mItemCount;
+    private int mRowCount;
+
+    /** Tokens of prefetched items, at index % length; the prefetched range never holds more items than that. */
+    private int[] mTokens = new int[0];
+
+    private int mFirstRow;
+    private int mLastRow = -1;
+
+    private float mLastPosition;
+    private boolean mHasPosition;
+    private float mVelocity;
+
+    private int mRequestCount;
+    private int mHitCount;
+    private int mWastedCount;
+
+    /**
+     * @param maxRows Most rows prefetched at once.
+     */
+    public ScrollPrefetcher(ITarget target, int maxRows) {
+        mTarget = target;
+        mMaxRows = maxRows;
+    }
+
+    /**
+     * Sets the grid shape, releasing all prefetched items. Allocates when the column count grows.
+     */
+    public void setLayout(int columns, int itemCount) {
+        clear();
+        mColumns = columns;
+        mItemCount = itemCount;
+        mRowCount = (itemCount + columns - 1) / columns;
+        if (mTokens.length < mMaxRows * columns) {
+            mTokens = new int[mMaxRows * columns];
+        }
+        mHasPosition = false;
+        mVelocity = 0.0f;
+    }
+
+    /**
+     * Updates the velocity estimate and the prefetched range for one frame.
+     *
+     * @param position Scroll position in rows.
+     * @param elapsedNanos Time since the previous update.
+     * @param firstBoundRow First row whose items are bound.
+     * @param lastBoundRow Last row whose items are bound.
+     */
+    public void update(float position, long elapsedNanos, int firstBoundRow, int lastBoundRow) {
+        if (mHasPosition && elapsedNanos > 0) {
+            final float velocity = (position - mLastPosition) * 1e9f / elapsedNanos;
+            mVelocity += VELOCITY_SMOOTHING * (velocity - mVelocity);
+        }
+        mLastPosition = position;
+        mHasPosition = true;
+
+        final int rows = Math.min(mMaxRows, (int) Math.ceil(Math.abs(mVelocity) * LOOKAHEAD_SECONDS));
+        int first = 0;
+        int last = -1;
+        if (Math.abs(mVelocity) >= MIN_VELOCITY && rows > 0) {
+            if (mVelocity > 0.0f) {
+                first = lastBoundRow + 1;
+                last = Math.min(mRowCount - 1, lastBoundRow + rows);
+            } else {
+                first = Math.max(0, firstBoundRow - rows);
+                last = firstBoundRow - 1;
+            }
+        }
+        setRange(first, last, firstBoundRow, lastBoundRow);
+    }
+
+    private void setRange(int first, int last, int firstBoundRow, int lastBoundRow) {
+        if (first > last) {
+            first = 0;
+            last = -1;
+        }
+
+        // Release rows leaving the range.
+        for (int row = mFirstRow; row <= mLastRow; row++) {
+            if (row < first || row > last) {
+                final boolean used = row >= firstBoundRow && row <= lastBoundRow;
+                releaseRow(row, used);
+            }
+        }
+
+        // Request rows entering it, nearest to the bound window first.
+        if (first <= last) {
+            final boolean down = first > lastBoundRow;
+            for (int i = 0; i <= last - first; i++) {
+                final int row = down ? first + i : last - i;
+                if (row < mFirstRow || row > mLastRow) {
+                    requestRow(row, down ? row - lastBoundRow : firstBoundRow - row);
+                }
+            }
+        }
+
+        mFirstRow = first;
+        mLastRow = last;
+    }
+
+    private void requestRow(int row, int priority) {
+        final int end = Math.min(mItemCount, (row + 1) * mColumns);
+        for (int index = row * mColumns; index < end; index++) {
+            mTokens[index % mTokens.length] = mTarget.prefetch(index, priority);
+            mRequestCount++;
+        }
+    }
+
+    private void releaseRow(int row, boolean used) {
+        final int end = Math.min(mItemCount, (row + 1) * mColumns);
+        for (int index = row * mColumns; index < end; index++) {
+            mTarget.release(index, mTokens[index % mTokens.length], used);
+            if (used) {
+                mHitCount++;
+            } else {
+                mWastedCount++;
+            }
+        }
+    }
+
+    /** Releases every prefetched item as unused. */
+    public void clear() {
+        for (int row = mFirstRow; row <= mLastRow; row++) {
+            releaseRow(row, false);
+        }
+        mFirstRow = 0;
+        mLastRow = -1;
+    }
+
+    /**
+     * Forgets the prefetched items without releasing them, for when what the tokens refer to is already gone,
+     * e.g. with the GL context.
+     */
+    public void invalidate() {
+        mFirstRow = 0;
+        mLastRow = -1;
+    }
+
+    /** Smoothed scroll velocity in rows per second. */
+    public float getVelocity() {
+        return mVelocity;
+    }
+
+    public int getFirstRow() {
+        return mFirstRow;
+    }
+
+    /** Last prefetched row, inclusive; less than the first when nothing is prefetched. */
+    public int getLastRow() {
+        return mLastRow;
+    }
+
+    /** Number of items requested. */
+    public int getRequestCount() {
+        return mRequestCount;
+    }
+
+    /** Number of prefetched items that were bound before being released. */
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    /** Number of prefetched items released without being bound. */
+    public int getWastedCount() {
+        return mWastedCount;
+    }
+
+    /** Fraction of released prefetches that were used. */
+    public float getHitRate() {
+        final int released = mHitCount + mWastedCount;
+        return released == 0 ? 0.0f : (float) mHitCount / released;
+    }
+}
@@ -0,0 +1,93 @@
+package com.bogatov.openglproj;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.Context;
+
+/**
+ * Hands out linked programs for one GL context. Programs are keyed by their fully expanded sources and
+ * attribute bindings, so every distinct variant is compiled (or loaded from the {@link ProgramCache}) exactly
+ * once per context, however many times and under whatever names it is asked for.
+ */
+public class ShaderLibrary {
+
+    /** res/raw/basic_*_shader.txt and their variant defines. */
+    public static final String BASIC_VERTEX_SHADER = "basic_vertex_shader";
+    public static final String BASIC_FRAGMENT_SHADER = "basic_fragment_shader";
+    public static final String USE_TEXTURE = "USE_TEXTURE";
+    public static final String USE_VERTEX_COLOR = "USE_VERTEX_COLOR";
+
+    private final ShaderPreprocessor mPreprocessor;
+    private final ProgramCache mProgramCache;
+
+    private final Map<String, Integer> mPrograms = new HashMap<String, Integer>();
+
+    private int mRequestCount;
+
+    public ShaderLibrary(ShaderPreprocessor preprocessor, ProgramCache programCache) {
+        mPreprocessor = preprocessor;
+        mProgramCache = programCache;
+    }
+
+    /**
+     * Library reading sources from res/raw and caching program binaries in the app's cache directory.
+     */
+    public ShaderLibrary(Context context) {
+        this(ShaderPreprocessor.fromRawResources(context), new ProgramCache(context));
+    }
+
+    /**
+     * Returns the program built from the given variant of a vertex and a fragment source.
+     *
+     * @param defines Variant defines applied to both stages.
+     */
+    public int getProgram(String vertexName, String fragmentName, String[] defines, String[] attributes) {
+        return getProgramFromSource(mPreprocessor.expand(vertexName, defines), mPreprocessor.expand(fragmentName, defines),
+                attributes);
+    }
+
+    /**
+     * Returns the program for already expanded sources.
+     */
+    public int getProgramFromSource(String vertexShader, String fragmentShader, String[] attributes) {
+        mRequestCount++;
+
+        final StringBuilder key = new StringBuilder(vertexShader.length() + fragmentShader.length() + 32);
+        key.append(vertexShader).append('\0').append(fragmentShader);
+        if (attributes != null) {
+            for (String attribute : attributes) {
+                key.append('\0').append(attribute);
+            }
+        }
+
+        final String programKey = key.toString();
+        Integer program = mPrograms.get(programKey);
+        if (program == null) {
+            program = mProgramCache.getProgram(vertexShader, fragmentShader, attributes);
+            mPrograms.put(programKey, program);
+        }
+        return program;
+    }
+
+    public ShaderPreprocessor getPreprocessor() {
+        return mPreprocessor;
+    }
+
+    /**
+     * Forgets all program handles. Call from onSurfaceCreated, since the previous context took them with it.
+     */
+    public void onContextCreated() {
+        mPrograms.clear();
+    }
+
+    /** Distinct programs built in the current context. */
+    public int getProgramCount() {
+        return mPrograms.size();
+    }
+
+    /** Program requests served, including the ones answered from memory. */
+    public int getRequestCount() {
+        return mRequestCount;
+    }
+}
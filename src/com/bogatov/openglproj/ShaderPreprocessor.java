@@ -0,0 +1,233 @@
+package com.bogatov.openglproj;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import android.content.Context;
+
+/**
+ * Expands shader sources before they are compiled:
+ * <ul>
+ * <li>{@code #include "name"} lines are replaced by the named source. Each source is included at most once per
+ * expansion, as if it started with #pragma once, and include cycles are reported as errors. Includes inside
+ * comments and inside {@code #if 0} blocks are left alone; other conditionals are not evaluated, so an include
+ * under {@code #ifdef} is always resolved.</li>
+ * <li>Variant defines are injected at the top (after #version, if present) as {@code #define NAME 1}, so one
+ * source can be compiled with or without optional features by way of #ifdef.</li>
+ * </ul>
+ * Expanded sources are kept per variant key, so asking for the same variant twice does not resolve it again.
+ */
+public class ShaderPreprocessor {
+
+    /** Supplies the text of a named source. */
+    public interface ISourceResolver {
+
+        /**
+         * @return The source text, or null if there is no source with this name.
+         */
+        public String resolve(String name);
+    }
+
+    private static final String INCLUDE = "#include";
+    private static final String VERSION = "#version";
+    private static final String IF = "#if";
+    private static final String ELSE = "#else";
+    private static final String ELIF = "#elif";
+    private static final String ENDIF = "#endif";
+
+    private final ISourceResolver mResolver;
+
+    private final Map<String, String> mExpanded = new HashMap<String, String>();
+
+    public ShaderPreprocessor(ISourceResolver resolver) {
+        mResolver = resolver;
+    }
+
+    /**
+     * Resolves sources from res/raw by resource name.
+     */
+    public static ShaderPreprocessor fromRawResources(final Context context) {
+        return new ShaderPreprocessor(new ISourceResolver() {
+            @Override
+            public String resolve(String name) {
+                return RawResourceReader.readTextFileFromRawResource(context, name);
+            }
+        });
+    }
+
+    /**
+     * Key identifying one variant of a source. Defines are sorted, so their order does not matter, and duplicates
+     * are ignored.
+     */
+    public static String getVariantKey(String name, String... defines) {
+        final StringBuilder key = new StringBuilder(name);
+        if (defines != null && defines.length > 0) {
+            final String[] sorted = defines.clone();
+            Arrays.sort(sorted);
+            String previous = null;
+            for (String define : sorted) {
+                if (!define.equals(previous)) {
+                    key.append(key.length() == name.length() ? '?' : ',').append(define);
+                }
+                previous = define;
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the named source with all includes resolved and the given defines injected.
+     *
+     * @throws RuntimeException if a source cannot be found or the includes form a cycle.
+     */
+    public String expand(String name, String... defines) {
+        final String key = getVariantKey(name, defines);
+        String expanded = mExpanded.get(key);
+        if (expanded == null) {
+            final StringBuilder body = new StringBuilder();
+            include(name, new ArrayList<String>(), new HashSet<String>(), body);
+            expanded = injectDefines(body.toString(), defines);
+            mExpanded.put(key, expanded);
+        }
+        return expanded;
+    }
+
+    private void include(String name, List<String> stack, Set<String> included, StringBuilder body) {
+        if (stack.contains(name)) {
+            final StringBuilder cycle = new StringBuilder();
+            for (String entry : stack.subList(stack.indexOf(name), stack.size())) {
+                cycle.append(entry).append(" -> ");
+            }
+            throw new RuntimeException("Include cycle: " + cycle + name);
+        }
+        if (!included.add(name)) {
+            return;
+        }
+
+        final String source = mResolver.resolve(name);
+        if (source == null) {
+            throw new RuntimeException("Shader source not found: " + name
+                    + (stack.isEmpty() ? "" : " (included from " + stack.get(stack.size() - 1) + ")"));
+        }
+
+        stack.add(name);
+        boolean inComment = false;
+        // Nesting depth of conditionals inside an #if 0 block, 0 outside of one.
+        int disabledDepth = 0;
+        int start = 0;
+        while (start < source.length()) {
+            int end = source.indexOf('\n', start);
+            if (end < 0) {
+                end = source.length();
+            }
+
+            final String line = source.substring(start, end);
+            final String trimmed = line.trim();
+            if (inComment) {
+                body.append(line).append('\n');
+            } else if (disabledDepth > 0) {
+                if (trimmed.startsWith(IF)) {
+                    disabledDepth++;
+                } else if (trimmed.startsWith(ENDIF)) {
+                    disabledDepth--;
+                } else if (disabledDepth == 1 && (trimmed.startsWith(ELSE) || trimmed.startsWith(ELIF))) {
+                    disabledDepth = 0;
+                }
+                body.append(line).append('\n');
+            } else if (trimmed.startsWith(INCLUDE)) {
+                include(parseIncludeName(trimmed, name), stack, included, body);
+            } else {
+                if (isIfZero(trimmed)) {
+                    disabledDepth = 1;
+                }
+                body.append(line).append('\n');
+            }
+            inComment = endsInComment(line, inComment);
+            start = end + 1;
+        }
+        stack.remove(stack.size() - 1);
+    }
+
+    private static boolean isIfZero(String line) {
+        if (!line.startsWith(IF) || line.length() == IF.length() || !Character.isWhitespace(line.charAt(IF.length()))) {
+            return false;
+        }
+        final String condition = line.substring(IF.length()).trim();
+        return condition.startsWith("0") && (condition.length() == 1 || !Character.isLetterOrDigit(condition.charAt(1)));
+    }
+
+    /** Whether a line, starting inside a block comment or not, ends inside one. */
+    private static boolean endsInComment(String line, boolean inComment) {
+        int i = 0;
+        while (i < line.length() - 1) {
+            if (inComment) {
+                if (line.charAt(i) == '*' && line.charAt(i + 1) == '/') {
+                    inComment = false;
+                    i++;
+                }
+            } else if (line.charAt(i) == '/') {
+                if (line.charAt(i + 1) == '/') {
+                    return false;
+                }
+                if (line.charAt(i + 1) == '*') {
+                    inComment = true;
+                    i++;
+                }
+            }
+            i++;
+        }
+        return inComment;
+    }
+
+    private static String parseIncludeName(String line, String source) {
+        final int open = line.indexOf('"');
+        final int close = line.lastIndexOf('"');
+        if (open < 0 || close <= open + 1) {
+            throw new RuntimeException("Malformed include in " + source + ": " + line);
+        }
+        return line.substring(open + 1, close);
+    }
+
+    private static String injectDefines(String source, String[] defines) {
+        if (defines == null || defines.length == 0) {
+            return source;
+        }
+
+        final StringBuilder header = new StringBuilder();
+        for (String define : defines) {
+            header.append("#define ").append(define).append(" 1\n");
+        }
+
+        // #version has to stay the first directive; only comments and blank lines may come before it.
+        boolean inComment = false;
+        int start = 0;
+        while (start < source.length()) {
+            int end = source.indexOf('\n', start);
+            if (end < 0) {
+                end = source.length();
+            }
+            final String line = source.substring(start, end);
+            final String trimmed = line.trim();
+            if (!inComment && trimmed.startsWith(VERSION)) {
+                return end == source.length() ? source + '\n' + header
+                        : source.substring(0, end + 1) + header + source.substring(end + 1);
+            }
+            if (!inComment && trimmed.length() > 0 && !trimmed.startsWith("//") && !trimmed.startsWith("/*")) {
+                break;
+            }
+            inComment = endsInComment(line, inComment);
+            start = end + 1;
+        }
+        return header + source;
+    }
+
+    /** Drops all expanded sources, e.g. when the underlying sources may have changed. */
+    public void clear() {
+        mExpanded.clear();
+    }
+}
@@ -0,0 +1,211 @@
+package com.bogatov.openglproj;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.opengl.GLES20;
+
+/**
+ * Wraps a linked program handle. All active uniform and attribute locations are looked up once when the
+ * program is wrapped, and the setters keep a shadow copy of every uniform so unchanged values are not
+ * uploaded again.
+ *
+ * Uniforms are addressed by the index returned from {@link #getUniform(String)}, which lets the setters
+ * reach their shadow slot without a map lookup or boxing. Like glUniform*, the setters act on the program
+ * in use, so call {@link #use()} first.
+ */
+public class ShaderProgram {
+
+    /** Floats reserved per uniform in the shadow cache, enough for a mat4. */
+    private static final int SHADOW_SIZE = 16;
+
+    private final IGL mGL;
+    private final int mHandle;
+
+    private final Map<String, Integer> mUniformIndices = new HashMap<String, Integer>();
+    private final Map<String, Integer> mAttributeLocations = new HashMap<String, Integer>();
+
+    private final int[] mUniformLocations;
+    private final int[] mUniformTypes;
+
+    private final float[] mFloatShadow;
+    private final int[] mIntShadow;
+    private final boolean[] mShadowValid;
+
+    private int mUploadCount;
+    private int mSkippedCount;
+
+    /**
+     * @param programHandle A handle returned by {@link ShaderUtils#createAndLinkProgram}.
+     */
+    public ShaderProgram(IGL gl, int programHandle) {
+        mGL = gl;
+        mHandle = programHandle;
+
+        final int[] count = new int[1];
+        final int[] size = new int[1];
+        final int[] type = new int[1];
+
+        mGL.glGetProgramiv(mHandle, GLES20.GL_ACTIVE_UNIFORMS, count, 0);
+        final int uniformCount = count[0];
+        mUniformLocations = new int[uniformCount];
+        mUniformTypes = new int[uniformCount];
+        for (int i = 0; i < uniformCount; i++) {
+            final String name = stripArraySuffix(mGL.glGetActiveUniform(mHandle, i, size, type));
+            mUniformIndices.put(name, i);
+            mUniformLocations[i] = mGL.glGetUniformLocation(mHandle, name);
+            mUniformTypes[i] = type[0];
+        }
+
+        mGL.glGetProgramiv(mHandle, GLES20.GL_ACTIVE_ATTRIBUTES, count, 0);
+        for (int i = 0; i < count[0]; i++) {
+            final String name = stripArraySuffix(mGL.glGetActiveAttrib(mHandle, i, size, type));
+            mAttributeLocations.put(name, mGL.glGetAttribLocation(mHandle, name));
+        }
+
+        mFloatShadow = new float[uniformCount * SHADOW_SIZE];
+        mIntShadow = new int[uniformCount];
+        mShadowValid = new boolean[uniformCount];
+    }
+
+    /** Array uniforms are reported as "name[0]". */
+    private static String stripArraySuffix(String name) {
+        final int bracket = name.indexOf('[');
+        return bracket < 0 ? name : name.substring(0, bracket);
+    }
+
+    public void use() {
+        mGL.glUseProgram(mHandle);
+    }
+
+    public int getHandle() {
+        return mHandle;
+    }
+
+    /**
+     * @return Index of the active uniform to pass to the setters, or -1 if the program has no such uniform.
+     */
+    public int getUniform(String name) {
+        final Integer index = mUniformIndices.get(name);
+        return index == null ? -1 : index;
+    }
+
+    public int getUniformLocation(int uniform) {
+        return uniform < 0 ? -1 : mUniformLocations[uniform];
+    }
+
+    public int getUniformType(int uniform) {
+        return mUniformTypes[uniform];
+    }
+
+    /**
+     * @return Location of the active attribute, or -1 if the program has no such attribute.
+     */
+    public int getAttribLocation(String name) {
+        final Integer location = mAttributeLocations.get(name);
+        return location == null ? -1 : location;
+    }
+
+    public int getUniformCount() {
+        return mUniformLocations.length;
+    }
+
+    public int getAttributeCount() {
+        return mAttributeLocations.size();
+    }
+
+    public void setInt(int uniform, int value) {
+        if (uniform < 0) {
+            return;
+        }
+        if (mShadowValid[uniform] && mIntShadow[uniform] == value) {
+            mSkippedCount++;
+            return;
+        }
+        mIntShadow[uniform] = value;
+        mShadowValid[uniform] = true;
+        mGL.glUniform1i(mUniformLocations[uniform], value);
+        mUploadCount++;
+    }
+
+    public void setFloat(int uniform, float value) {
+        if (uniform < 0) {
+            return;
+        }
+        final int slot = uniform * SHADOW_SIZE;
+        if (mShadowValid[uniform] && mFloatShadow[slot] == value) {
+            mSkippedCount++;
+            return;
+        }
+        mFloatShadow[slot] = value;
+        mShadowValid[uniform] = true;
+        mGL.glUniform1f(mUniformLocations[uniform], value);
+        mUploadCount++;
+    }
+
+    public void setVec4(int uniform, float x, float y, float z, float w) {
+        if (uniform < 0) {
+            return;
+        }
+        final int slot = uniform * SHADOW_SIZE;
+        final float[] shadow = mFloatShadow;
+        if (mShadowValid[uniform] && shadow[slot] == x && shadow[slot + 1] == y && shadow[slot + 2] == z && shadow[slot + 3] == w) {
+            mSkippedCount++;
+            return;
+        }
+        shadow[slot] = x;
+        shadow[slot + 1] = y;
+        shadow[slot + 2] = z;
+        shadow[slot + 3] = w;
+        mShadowValid[uniform] = true;
+        mGL.glUniform4f(mUniformLocations[uniform], x, y, z, w);
+        mUploadCount++;
+    }
+
+    public void setVec4(int uniform, float[] value, int offset) {
+        setVec4(uniform, value[offset], value[offset + 1], value[offset + 2], value[offset + 3]);
+    }
+
+    public void setMatrix4(int uniform, float[] matrix, int offset) {
+        if (uniform < 0) {
+            return;
+        }
+        final int slot = uniform * SHADOW_SIZE;
+        if (mShadowValid[uniform] && equals(mFloatShadow, slot, matrix, offset, 16)) {
+            mSkippedCount++;
+            return;
+        }
+        System.arraycopy(matrix, offset, mFloatShadow, slot, 16);
+        mShadowValid[uniform] = true;
+        mGL.glUniformMatrix4fv(mUniformLocations[uniform], 1, false, matrix, offset);
+        mUploadCount++;
+    }
+
+    private static boolean equals(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[aOffset + i] != b[bOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Forgets all shadowed values, e.g. after the program was relinked or its uniforms were set elsewhere.
+     */
+    public void invalidate() {
+        for (int i = 0; i < mShadowValid.length; i++) {
+            mShadowValid[i] = false;
+        }
+    }
+
+    /** Number of uniform uploads that reached GL. */
+    public int getUploadCount() {
+        return mUploadCount;
+    }
+
+    /** Number of uniform uploads skipped because the value was unchanged. */
+    public int getSkippedCount() {
+        return mSkippedCount;
+    }
+}
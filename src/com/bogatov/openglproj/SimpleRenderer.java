@@ -4,16 +4,30 @@ import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
 
 public class SimpleRenderer implements GLSurfaceView.Renderer {   
     
-    private float[] mModelMatrix = new float[16];
+    private static final int FRAME_STATS_CAPACITY = 120;
+    
+    /** Time each frame may spend recreating resources the first frame did not need. */
+    private static final long RESTORE_BUDGET_NANOS = 2000000L;
+    
+    /** Shader sources are small; keeping them saves reading and preprocessing them again after a context loss. */
+    private static final long RETAINED_BYTES_BUDGET = 64 * 1024;
+    
+    /** The decoded 256x256 brick texture. */
+    private static final int TEXTURE_BYTES = 256 * 256 * 4;
+    
     private float[] mViewMatrix = new float[16];
     private float[] mProjectionMatrix = new float[16];
-    private float[] mMVPMatrix = new float[16];
+    
+    /** Caches the square's matrices, which only change with the camera. */
+    private final SceneGraph mSceneGraph = new SceneGraph(1);
+    private final int mSquareNode = mSceneGraph.addNode(SceneGraph.NO_PARENT);
     
     private Context mContext;
     
@@ -31,20 +45,162 @@ public class SimpleRenderer implements GLSurfaceView.Renderer {
 
     /** Store our model data in a float buffer. */
     private Square mSquare;
+    
+    /** Costs of recent frames; every call through mGL that is not elided as redundant is counted. */
+    private final FrameStats mFrameStats = new FrameStats(FRAME_STATS_CAPACITY);
+    private final GLState mGL = new GLState(new InstrumentedGL(new AndroidGL(), mFrameStats));
+    private BufferManager mBufferManager;
+    private final ShaderLibrary mShaderLibrary;
+    
+    /** Everything created in the GL context, so it can be recreated in priority order when the context is lost. */
+    private final GpuResourceRegistry mResources = new GpuResourceRegistry(
+            GpuResourceRegistry.retainUpTo(RETAINED_BYTES_BUDGET, GpuResourceRegistry.PRIORITY_FIRST_FRAME));
+    private final GpuResourceRegistry.Resource mTextureProgram;
+    
+    private volatile RenderScheduler mScheduler;
 
     public SimpleRenderer(final Context context) {  
         mContext = context;
+        mShaderLibrary = new ShaderLibrary(context);
+        
+        // The first frame only draws the square; the textured program and its texture follow over the next frames.
+        mTextureProgram = mResources.register(GpuResourceRegistry.KIND_PROGRAM, "texture", 
+                GpuResourceRegistry.PRIORITY_VISIBLE, 0, new GpuResourceRegistry.IRecipe() {
+            @Override
+            public int create(Object retained) {
+                // The library keeps the preprocessed sources itself.
+                final int program = mShaderLibrary.getProgram(ShaderLibrary.BASIC_VERTEX_SHADER, 
+                        ShaderLibrary.BASIC_FRAGMENT_SHADER, new String[] {ShaderLibrary.USE_TEXTURE}, 
+                        new String[] {"a_Position",  "a_TexCoordinate"});
+                initTextureShaders(program);
+                return program;
+            }
+
+            @Override
+            public Object retain(boolean allowed) {
+                return null;
+            }
+
+            @Override
+            public void delete(int handle) {
+                // Shared through the shader library, which owns it for the lifetime of the context.
+            }
+        });
+        
+        mResources.register(GpuResourceRegistry.KIND_PROGRAM, "color", 
+                GpuResourceRegistry.PRIORITY_FIRST_FRAME, 4 * 1024, new GpuResourceRegistry.IRecipe() {
+            private String[] mSources;
+            
+            @Override
+            public int create(Object retained) {
+                mSources = retained != null ? (String[]) retained : new String[] {
+                        RawResourceReader.readTextFileFromRawResource(mContext, R.raw.color_vertex_shader),
+                        RawResourceReader.readTextFileFromRawResource(mContext, R.raw.color_fragment_shader)};
+                final int program = mShaderLibrary.getProgramFromSource(mSources[0], mSources[1], 
+                        new String[] {"aPosition"});
+                initColorShaders(program);
+                return program;
+            }
+
+            @Override
+            public Object retain(boolean allowed) {
+                final String[] sources = mSources;
+                mSources = null;
+                return allowed ? sources : null;
+            }
+
+            @Override
+            public void delete(int handle) {
+                // Shared through the shader library, which owns it for the lifetime of the context.
+            }
+        });
+        
+        mResources.register(GpuResourceRegistry.KIND_BUFFER, "square", 
+                GpuResourceRegistry.PRIORITY_FIRST_FRAME, 0, new GpuResourceRegistry.IRecipe() {
+            @Override
+            public int create(Object retained) {
+                mSquare = new Square(mBufferManager);
+                return mSquare.getVertexBufferObject().getHandle();
+            }
+
+            @Override
+            public Object retain(boolean allowed) {
+                return null;
+            }
+
+            @Override
+            public void delete(int handle) {
+                mSquare.release();
+            }
+        });
+        
+        mResources.register(GpuResourceRegistry.KIND_TEXTURE, "bricks", 
+                GpuResourceRegistry.PRIORITY_BACKGROUND, TEXTURE_BYTES, new GpuResourceRegistry.IRecipe() {
+            /** Decoded by the last creation that did not start from a kept copy. */
+            private Bitmap mBitmap;
+            
+            @Override
+            public int create(Object retained) {
+                final Bitmap bitmap;
+                if (retained != null) {
+                    bitmap = (Bitmap) retained;
+                } else {
+                    mBitmap = TextureUtils.decodeResource(mContext, R.drawable.bumpy_bricks_public_domain);
+                    bitmap = mBitmap;
+                }
+                mTextureDataHandle = TextureUtils.createTexture();
+                TextureUtils.uploadTexture(mTextureDataHandle, bitmap);
+                return mTextureDataHandle;
+            }
+
+            @Override
+            public Object retain(boolean allowed) {
+                final Bitmap bitmap = mBitmap;
+                mBitmap = null;
+                if (!allowed) {
+                    bitmap.recycle();
+                    return null;
+                }
+                return bitmap;
+            }
+
+            @Override
+            public void delete(int handle) {
+                GLES20.glDeleteTextures(1, new int[] {handle}, 0);
+            }
+        });
+    }
+    
+    /** Costs of recent frames; may be read from any thread. */
+    public FrameStats getFrameStats() {
+        return mFrameStats;
+    }
+
+    /**
+     * Lets the renderer ask for the frames that restore its remaining resources, for a view in RENDERMODE_WHEN_DIRTY.
+     */
+    public void setRenderScheduler(RenderScheduler scheduler) {
+        mScheduler = scheduler;
     }
 
     @Override
     public void onSurfaceCreated(GL10 glUnused, EGLConfig config) {
         GLES20.glClearColor(1.0f, 1.0f, 1.0f, 1.0f);
-        GLES20.glEnable(GLES20.GL_DEPTH_TEST | GLES20.GL_TEXTURE_2D | GLES20.GL_CULL_FACE);
         
         ininViewMatrix();
-        initShaders();
-
-        mSquare = new Square();
+        
+        // Whatever existed in the previous context is gone; recreate what the first frame draws with right away.
+        mShaderLibrary.onContextCreated();
+        mBufferManager = new BufferManager(mGL);
+        mResources.onContextLost();
+        mResources.restore(GpuResourceRegistry.PRIORITY_FIRST_FRAME);
+        
+        // The shaders were set up with direct GLES20 calls, and anything known about the previous context is gone.
+        mGL.invalidate();
+        // Capabilities are enabled one at a time; or-ing them together is GL_INVALID_ENUM and enables nothing.
+        // ES 2.0 has no GL_TEXTURE_2D capability at all.
+        mGL.glEnable(GLES20.GL_DEPTH_TEST);
+        mGL.glEnable(GLES20.GL_CULL_FACE);
     }   
     
     private void ininViewMatrix() {
@@ -63,23 +219,8 @@ public class SimpleRenderer implements GLSurfaceView.Renderer {
         Matrix.setLookAtM(mViewMatrix, 0, eyeX, eyeY, eyeZ, lookX, lookY, lookZ, upX, upY, upZ);
     }
     
-    private void initShaders() {
-        initTextureShaders(); 
-        initColorShaders();
-    }
-    
-    private void initTextureShaders() {
-        final String vertexShader = RawResourceReader.readTextFileFromRawResource(mContext, R.raw.per_pixel_vertex_shader);      
-        final String fragmentShader = RawResourceReader.readTextFileFromRawResource(mContext, R.raw.per_pixel_fragment_shader);
-        
-        final int vertexShaderHandle = ShaderUtils.compileShader(GLES20.GL_VERTEX_SHADER, vertexShader);       
-        final int fragmentShaderHandle = ShaderUtils.compileShader(GLES20.GL_FRAGMENT_SHADER, fragmentShader);     
-        
-        mTextureProgramHandle = ShaderUtils.createAndLinkProgram(vertexShaderHandle, fragmentShaderHandle, new String[] {"a_Position",  "a_TexCoordinate"});
-        
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureDataHandle);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+    private void initTextureShaders(int program) {
+        mTextureProgramHandle = program;
         
         // Set our per-vertex lighting program.
         GLES20.glUseProgram(mTextureProgramHandle);
@@ -92,19 +233,13 @@ public class SimpleRenderer implements GLSurfaceView.Renderer {
         mTextureCoordinateHandle = GLES20.glGetAttribLocation(mTextureProgramHandle, "a_TexCoordinate");
     }
     
-    private void initColorShaders() {
-        final String vertexShader = RawResourceReader.readTextFileFromRawResource(mContext, R.raw.color_vertex_shader);    
-        final String fragmentShader = RawResourceReader.readTextFileFromRawResource(mContext, R.raw.color_fragment_shader); 
-        
-        final int vertexShaderHandle = ShaderUtils.compileShader(GLES20.GL_VERTEX_SHADER, vertexShader);       
-        final int fragmentShaderHandle = ShaderUtils.compileShader(GLES20.GL_FRAGMENT_SHADER, fragmentShader);     
-        
-        mColorProgramHandler = ShaderUtils.createAndLinkProgram(vertexShaderHandle, fragmentShaderHandle, new String[] {"aPosition"});
+    private void initColorShaders(int program) {
+        mColorProgramHandler = program;
         
         GLES20.glUseProgram(mColorProgramHandler);
         
-        mColorPositionHandler = GLES20.glGetAttribLocation(mTextureProgramHandle, "aPosition");
-        mColorColorHandler = GLES20.glGetUniformLocation(mTextureProgramHandle, "uColor");
+        mColorPositionHandler = GLES20.glGetAttribLocation(mColorProgramHandler, "aPosition");
+        mColorColorHandler = GLES20.glGetUniformLocation(mColorProgramHandler, "uColor");
     }
     
     @Override
@@ -121,22 +256,43 @@ public class SimpleRenderer implements GLSurfaceView.Renderer {
         final float far = 10.0f;
         
         Matrix.frustumM(mProjectionMatrix, 0, left, right, bottom, top, near, far);
+        mSceneGraph.setCamera(mViewMatrix, 0, mProjectionMatrix, 0);
     }   
     
     @Override
     public void onDrawFrame(GL10 glUnused) 
     {
+        final RenderScheduler scheduler = mScheduler;
+        if (scheduler != null) {
+            scheduler.beginFrame();
+        }
+        mFrameStats.beginFrame();
+        if (!mResources.isRestored()) {
+            mResources.restorePending(RESTORE_BUDGET_NANOS);
+            // The recipes set up their programs with direct GLES20 calls.
+            mGL.invalidate();
+        }
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);   
         
-        Matrix.setIdentityM(mModelMatrix, 0);
+        mSceneGraph.update();
+        final int offset = SceneGraph.getOffset(mSquareNode);
         
-        Matrix.multiplyMM(mMVPMatrix, 0, mViewMatrix, 0, mModelMatrix, 0);   
-        GLES20.glUniformMatrix4fv(mMVMatrixHandle, 1, false, mMVPMatrix, 0);                
+        if (mTextureProgram.isCreated()) {
+            mGL.glUseProgram(mTextureProgramHandle);
+            mGL.glUniformMatrix4fv(mMVMatrixHandle, 1, false, mSceneGraph.getModelViewMatrices(), offset);
+            mGL.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mSceneGraph.getMVPMatrices(), offset);
+        }
         
-        Matrix.multiplyMM(mMVPMatrix, 0, mProjectionMatrix, 0, mMVPMatrix, 0);
-        GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mMVPMatrix, 0);
+        mGL.glUseProgram(mColorProgramHandler);
+        mSquare.draw(mGL, mColorProgramHandler, mColorColorHandler, mColorPositionHandler);    
+        mFrameStats.endFrame();
         
-        GLES20.glUseProgram(mColorProgramHandler);
-        mSquare.draw(mColorProgramHandler, mColorColorHandler, mColorPositionHandler);    
+        if (scheduler != null) {
+            // Resources left for later frames only get created if those frames are drawn.
+            if (!mResources.isRestored()) {
+                scheduler.invalidate(RenderScheduler.DIRTY_TEXTURES);
+            }
+            scheduler.endFrame();
+        }
     }               
 }
@@ -0,0 +1,229 @@
+package com.bogatov.openglproj;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Packs rectangles into a fixed size page with the skyline bottom-left heuristic: the page keeps the outline of
+ * the top edges of what has been placed so far, and every rectangle goes where its top edge ends up lowest.
+ *
+ * Skyline packing cannot give space back, so {@link #remove} only updates the accounting; the freed area is
+ * reclaimed by repacking the remaining rectangles with {@link #repack}.
+ */
+public class SkylinePacker {
+
+    private final int mWidth;
+    private final int mHeight;
+
+    /** Skyline segments, left to right: start x, height, width. */
+    private int[] mX;
+    private int[] mY;
+    private int[] mW;
+    private int mCount;
+
+    private long mUsedArea;
+    private long mFreedArea;
+
+    public SkylinePacker(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mX = new int[16];
+        mY = new int[16];
+        mW = new int[16];
+        reset();
+    }
+
+    public void reset() {
+        mCount = 1;
+        mX[0] = 0;
+        mY[0] = 0;
+        mW[0] = mWidth;
+        mUsedArea = 0;
+        mFreedArea = 0;
+    }
+
+    /**
+     * Finds room for a rectangle and reserves it.
+     *
+     * @param out Receives x at out[0] and y at out[1].
+     * @return false if the rectangle does not fit anywhere on the page.
+     */
+    public boolean insert(int width, int height, int[] out) {
+        if (width <= 0 || height <= 0 || width > mWidth || height > mHeight) {
+            return false;
+        }
+
+        int bestIndex = -1;
+        int bestTop = Integer.MAX_VALUE;
+        int bestWidth = Integer.MAX_VALUE;
+        int bestY = 0;
+        for (int i = 0; i < mCount; i++) {
+            final int y = fit(i, width, height);
+            if (y < 0) {
+                continue;
+            }
+            final int top = y + height;
+            if (top < bestTop || (top == bestTop && mW[i] < bestWidth)) {
+                bestIndex = i;
+                bestTop = top;
+                bestWidth = mW[i];
+                bestY = y;
+            }
+        }
+        if (bestIndex < 0) {
+            return false;
+        }
+
+        final int x = mX[bestIndex];
+        addSegment(bestIndex, x, bestY + height, width);
+        mUsedArea += (long) width * height;
+
+        out[0] = x;
+        out[1] = bestY;
+        return true;
+    }
+
+    /**
+     * @return The y a rectangle starting at segment index would rest on, or -1 if it does not fit there.
+     */
+    private int fit(int index, int width, int height) {
+        final int x = mX[index];
+        if (x + width > mWidth) {
+            return -1;
+        }
+
+        int remaining = width;
+        int y = 0;
+        int i = index;
+        while (remaining > 0) {
+            y = Math.max(y, mY[i]);
+            if (y + height > mHeight) {
+                return -1;
+            }
+            remaining -= mW[i];
+            i++;
+        }
+        return y;
+    }
+
+    private void addSegment(int index, int x, int y, int width) {
+        ensureCapacity(mCount + 1);
+        System.arraycopy(mX, index, mX, index + 1, mCount - index);
+        System.arraycopy(mY, index, mY, index + 1, mCount - index);
+        System.arraycopy(mW, index, mW, index + 1, mCount - index);
+        mX[index] = x;
+        mY[index] = y;
+        mW[index] = width;
+        mCount++;
+
+        // Cut the segments now covered by the new one.
+        final int right = x + width;
+        int i = index + 1;
+        while (i < mCount && mX[i] < right) {
+            final int shrink = right - mX[i];
+            if (mW[i] <= shrink) {
+                removeSegment(i);
+            } else {
+                mX[i] += shrink;
+                mW[i] -= shrink;
+                break;
+            }
+        }
+
+        // Merge neighbours of equal height.
+        i = 0;
+        while (i < mCount - 1) {
+            if (mY[i] == mY[i + 1]) {
+                mW[i] += mW[i + 1];
+                removeSegment(i + 1);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private void removeSegment(int index) {
+        System.arraycopy(mX, index + 1, mX, index, mCount - index - 1);
+        System.arraycopy(mY, index + 1, mY, index, mCount - index - 1);
+        System.arraycopy(mW, index + 1, mW, index, mCount - index - 1);
+        mCount--;
+    }
+
+    private void ensureCapacity(int count) {
+        if (count <= mX.length) {
+            return;
+        }
+        final int capacity = Math.max(count, mX.length * 2);
+        final int[] x = new int[capacity];
+        final int[] y = new int[capacity];
+        final int[] w = new int[capacity];
+        System.arraycopy(mX, 0, x, 0, mCount);
+        System.arraycopy(mY, 0, y, 0, mCount);
+        System.arraycopy(mW, 0, w, 0, mCount);
+        mX = x;
+        mY = y;
+        mW = w;
+    }
+
+    /** Accounts for a rectangle no longer in use. */
+    public void remove(int width, int height) {
+        mFreedArea += (long) width * height;
+    }
+
+    /**
+     * Clears the page and packs the given rectangles again, tallest first.
+     *
+     * @param widths Widths of the rectangles to keep.
+     * @param heights Heights of the rectangles to keep.
+     * @param outXY Receives the new x, y of rectangle i at 2 * i.
+     * @return false if they no longer fit, in which case the packer is left empty.
+     */
+    public boolean repack(final int[] widths, final int[] heights, int count, int[] outXY) {
+        final Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return heights[b] != heights[a] ? heights[b] - heights[a] : widths[b] - widths[a];
+            }
+        });
+
+        reset();
+        final int[] position = new int[2];
+        for (int i = 0; i < count; i++) {
+            final int rect = order[i];
+            if (!insert(widths[rect], heights[rect], position)) {
+                reset();
+                return false;
+            }
+            outXY[2 * rect] = position[0];
+            outXY[2 * rect + 1] = position[1];
+        }
+        return true;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /** Area of the rectangles currently in use. */
+    public long getUsedArea() {
+        return mUsedArea - mFreedArea;
+    }
+
+    /** Area lost to removed rectangles until the next repack. */
+    public long getFreedArea() {
+        return mFreedArea;
+    }
+
+    /** Fraction of the page covered by rectangles in use. */
+    public float getOccupancy() {
+        return (float) getUsedArea() / ((long) mWidth * mHeight);
+    }
+}
@@ -0,0 +1,290 @@
+package com.bogatov.openglproj;
+
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import android.opengl.GLES20;
+
+/**
+ * Draws many 2D quads, plain colored or showing a texture region, in as few draw calls as possible: quads are
+ * collected into an interleaved vertex array between {@link #begin} and {@link #end} and drawn with one
+ * glDrawElements per flush, all flushes sharing one static index buffer of quad triangles.
+ *
+ * A flush happens when the texture changes, when switching between colored and textured quads (which use
+ * different programs), when the batch is full, and at {@link #end}. Submitting quads sorted by texture keeps
+ * flushes down; the flush counts of the last frame tell how well that worked.
+ *
+ * Uses the basic shader with per-vertex color. Blending and depth testing are up to the caller. Leaves the
+ * program, buffers and texture bound. Does not allocate after {@link #onContextCreated}.
+ */
+public class SpriteBatch {
+
+    /** Quads addressable with 16-bit indices. */
+    public static final int MAX_QUADS = 65536 / 4;
+
+    /** X, Y, S, T as floats, then R, G, B, A as normalized bytes, all stored as ints. */
+    private static final int INTS_PER_VERTEX = 5;
+    private static final int STRIDE = INTS_PER_VERTEX * 4;
+    private static final int INTS_PER_QUAD = 4 * INTS_PER_VERTEX;
+
+    private static final int POSITION_LOCATION = 0;
+    private static final int TEXTURE_COORDINATE_LOCATION = 1;
+    private static final int COLOR_LOCATION = 2;
+    private static final String[] ATTRIBUTES = {"a_Position", "a_TexCoordinate", "a_Color"};
+
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    private final int mCapacity;
+
+    /** Vertices of the quads since the last flush. */
+    private final int[] mVertexData;
+    private IntBuffer mVertices;
+
+    private IGL mGL;
+    private BufferObject mVertexBuffer;
+    private BufferObject mIndexBuffer;
+
+    private int mColorProgram;
+    private int mTextureProgram;
+    private int mColorMVPMatrixHandle;
+    private int mTextureMVPMatrixHandle;
+    private int mTextureUniformHandle;
+
+    private final float[] mMVPMatrix = new float[16];
+    private boolean mDrawing;
+    private int mQuadCount;
+    private int mTexture;
+
+    /** Program used by the current frame's previous flush, 0 before the first one. */
+    private int mBoundProgram;
+
+    private int mFlushCount;
+    private int mTextureFlushCount;
+    private int mProgramFlushCount;
+    private int mFullFlushCount;
+    private int mFrameQuadCount;
+    private long mTotalQuadCount;
+    private long mTotalFlushCount;
+
+    /**
+     * @param capacity Quads per flush, at most {@link #MAX_QUADS}.
+     */
+    public SpriteBatch(int capacity) {
+        if (capacity <= 0 || capacity > MAX_QUADS) {
+            throw new IllegalArgumentException("Capacity must be within 1 and " + MAX_QUADS + ": " + capacity);
+        }
+        mCapacity = capacity;
+        mVertexData = new int[capacity * INTS_PER_QUAD];
+    }
+
+    /**
+     * Builds the programs and buffers; call from onSurfaceCreated after {@link ShaderLibrary#onContextCreated()}.
+     *
+     * @param gl Used for every draw of the batch.
+     */
+    public void onContextCreated(IGL gl, ShaderLibrary library) {
+        mGL = gl;
+        mColorProgram = library.getProgram(ShaderLibrary.BASIC_VERTEX_SHADER, ShaderLibrary.BASIC_FRAGMENT_SHADER,
+                new String[] {ShaderLibrary.USE_VERTEX_COLOR}, ATTRIBUTES);
+        mTextureProgram = library.getProgram(ShaderLibrary.BASIC_VERTEX_SHADER, ShaderLibrary.BASIC_FRAGMENT_SHADER,
+                new String[] {ShaderLibrary.USE_TEXTURE, ShaderLibrary.USE_VERTEX_COLOR}, ATTRIBUTES);
+        mColorMVPMatrixHandle = gl.glGetUniformLocation(mColorProgram, "u_MVPMatrix");
+        mTextureMVPMatrixHandle = gl.glGetUniformLocation(mTextureProgram, "u_MVPMatrix");
+        mTextureUniformHandle = gl.glGetUniformLocation(mTextureProgram, "u_Texture");
+
+        final DirectBufferPool pool = DirectBufferPool.getShared();
+        if (mVertices == null) {
+            mVertices = pool.allocate(mVertexData.length * 4).asIntBuffer();
+        }
+
+        final BufferManager bufferManager = new BufferManager(gl);
+        mVertexBuffer = bufferManager.createVertexBuffer(GLES20.GL_STREAM_DRAW);
+        mVertexBuffer.upload(null, mVertexData.length * 4);
+
+        // Every quad is the two triangles 0 1 2 and 2 3 0 of its four vertices; the same for every flush.
+        final ShortBuffer indices = pool.allocateShorts(mCapacity * 6);
+        for (int quad = 0; quad < mCapacity; quad++) {
+            final int first = 4 * quad;
+            indices.put((short) first).put((short) (first + 1)).put((short) (first + 2));
+            indices.put((short) (first + 2)).put((short) (first + 3)).put((short) first);
+        }
+        mIndexBuffer = bufferManager.createIndexBuffer(GLES20.GL_STATIC_DRAW, indices, mCapacity * 6 * 2);
+        pool.release(indices);
+    }
+
+    /**
+     * Starts a frame of quads.
+     *
+     * @param mvpMatrix Maps quad coordinates to clip space.
+     */
+    public void begin(float[] mvpMatrix, int offset) {
+        if (mDrawing) {
+            throw new IllegalStateException("begin() called twice without end()");
+        }
+        System.arraycopy(mvpMatrix, offset, mMVPMatrix, 0, 16);
+        mDrawing = true;
+        mQuadCount = 0;
+        mTexture = 0;
+        mBoundProgram = 0;
+        mFlushCount = 0;
+        mTextureFlushCount = 0;
+        mProgramFlushCount = 0;
+        mFullFlushCount = 0;
+        mFrameQuadCount = 0;
+    }
+
+    /**
+     * Adds a plain colored quad.
+     *
+     * @param color ARGB, as in android.graphics.Color.
+     */
+    public void draw(float x, float y, float width, float height, int color) {
+        draw(x, y, width, height, color, 0, 0.0f, 0.0f, 0.0f, 0.0f);
+    }
+
+    /** Adds a quad showing an atlas region, tinted by color. */
+    public void draw(float x, float y, float width, float height, int color, TextureAtlas.Region region) {
+        draw(x, y, width, height, color, region.textureHandle, region.u0, region.v0, region.u1, region.v1);
+    }
+
+    /**
+     * Adds a quad. Y points up; the top left corner of the quad shows (u0, v0).
+     *
+     * @param color ARGB tint, or the quad's color if texture is 0.
+     * @param texture Texture to show, or 0 for a plain colored quad.
+     */
+    public void draw(float x, float y, float width, float height, int color, int texture, float u0, float v0,
+            float u1, float v1) {
+        if (!mDrawing) {
+            throw new IllegalStateException("draw() called outside of begin() and end()");
+        }
+        if (mQuadCount > 0 && texture != mTexture) {
+            if ((texture == 0) != (mTexture == 0)) {
+                mProgramFlushCount++;
+            } else {
+                mTextureFlushCount++;
+            }
+            flush();
+        } else if (mQuadCount == mCapacity) {
+            mFullFlushCount++;
+            flush();
+        }
+        mTexture = texture;
+
+        final int rgba = toVertexColor(color);
+        final int[] data = mVertexData;
+        int i = mQuadCount * INTS_PER_QUAD;
+        i = putVertex(data, i, x, y, u0, v1, rgba);
+        i = putVertex(data, i, x + width, y, u1, v1, rgba);
+        i = putVertex(data, i, x + width, y + height, u1, v0, rgba);
+        putVertex(data, i, x, y + height, u0, v0, rgba);
+        mQuadCount++;
+    }
+
+    private static int putVertex(int[] data, int i, float x, float y, float s, float t, int rgba) {
+        data[i] = Float.floatToRawIntBits(x);
+        data[i + 1] = Float.floatToRawIntBits(y);
+        data[i + 2] = Float.floatToRawIntBits(s);
+        data[i + 3] = Float.floatToRawIntBits(t);
+        data[i + 4] = rgba;
+        return i + INTS_PER_VERTEX;
+    }
+
+    /** Reorders ARGB so its bytes lie in memory as R, G, B, A. */
+    static int toVertexColor(int argb) {
+        if (LITTLE_ENDIAN) {
+            return (argb & 0xFF00FF00) | ((argb >>> 16) & 0xFF) | ((argb & 0xFF) << 16);
+        }
+        return (argb << 8) | (argb >>> 24);
+    }
+
+    /** Draws the remaining quads and ends the frame. */
+    public void end() {
+        if (!mDrawing) {
+            throw new IllegalStateException("end() called without begin()");
+        }
+        flush();
+        mDrawing = false;
+    }
+
+    private void flush() {
+        if (mQuadCount == 0) {
+            return;
+        }
+        final IGL gl = mGL;
+        final int ints = mQuadCount * INTS_PER_QUAD;
+        mVertices.clear();
+        mVertices.put(mVertexData, 0, ints).position(0);
+        mVertexBuffer.set(mVertices, ints * 4);
+
+        final boolean textured = mTexture != 0;
+        final int program = textured ? mTextureProgram : mColorProgram;
+        gl.glUseProgram(program);
+        if (program != mBoundProgram) {
+            gl.glUniformMatrix4fv(textured ? mTextureMVPMatrixHandle : mColorMVPMatrixHandle, 1, false, mMVPMatrix, 0);
+            if (textured) {
+                gl.glUniform1i(mTextureUniformHandle, 0);
+            }
+            mBoundProgram = program;
+        }
+        if (textured) {
+            gl.glActiveTexture(GLES20.GL_TEXTURE0);
+            gl.glBindTexture(GLES20.GL_TEXTURE_2D, mTexture);
+        }
+
+        mVertexBuffer.bind();
+        gl.glVertexAttribPointer(POSITION_LOCATION, 2, GLES20.GL_FLOAT, false, STRIDE, 0);
+        gl.glVertexAttribPointer(TEXTURE_COORDINATE_LOCATION, 2, GLES20.GL_FLOAT, false, STRIDE, 8);
+        gl.glVertexAttribPointer(COLOR_LOCATION, 4, GLES20.GL_UNSIGNED_BYTE, true, STRIDE, 16);
+        gl.glEnableVertexAttribArray(POSITION_LOCATION);
+        gl.glEnableVertexAttribArray(TEXTURE_COORDINATE_LOCATION);
+        gl.glEnableVertexAttribArray(COLOR_LOCATION);
+
+        mIndexBuffer.bind();
+        gl.glDrawElements(GLES20.GL_TRIANGLES, mQuadCount * 6, GLES20.GL_UNSIGNED_SHORT, 0);
+
+        mFlushCount++;
+        mTotalFlushCount++;
+        mFrameQuadCount += mQuadCount;
+        mTotalQuadCount += mQuadCount;
+        mQuadCount = 0;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /** Number of draw calls of the last frame. */
+    public int getFlushCount() {
+        return mFlushCount;
+    }
+
+    /** Flushes of the last frame caused by a texture change. */
+    public int getTextureFlushCount() {
+        return mTextureFlushCount;
+    }
+
+    /** Flushes of the last frame caused by switching between colored and textured quads. */
+    public int getProgramFlushCount() {
+        return mProgramFlushCount;
+    }
+
+    /** Flushes of the last frame caused by a full batch. */
+    public int getFullFlushCount() {
+        return mFullFlushCount;
+    }
+
+    /** Quads drawn in the last frame. */
+    public int getQuadCount() {
+        return mFrameQuadCount;
+    }
+
+    public long getTotalQuadCount() {
+        return mTotalQuadCount;
+    }
+
+    public long getTotalFlushCount() {
+        return mTotalFlushCount;
+    }
+}
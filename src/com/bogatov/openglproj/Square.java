@@ -2,15 +2,13 @@ package com.bogatov.openglproj;
 
 import android.opengl.GLES20;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
 
 public class Square {
 
-    private FloatBuffer mVertexBuffer;
-    private ShortBuffer mDrawListBuffer;
+    private BufferObject mVertexBufferObject;
+    private BufferObject mDrawListBufferObject;
     
     // number of coordinates per vertex in this array
     private static final int COORDS_PER_VERTEX = 3;
@@ -23,38 +21,54 @@ public class Square {
     private float color[] = { 0.63671875f, 0.76953125f, 0.22265625f, 1.0f };
 
     private static final int vertexStride = COORDS_PER_VERTEX * 4;
-    private static final int vertexCount = 4;
 
-    public Square() {
+    public Square(BufferManager bufferManager) {
+        final DirectBufferPool pool = DirectBufferPool.getShared();
+        
         // initialize vertex byte buffer for shape coordinates
-        ByteBuffer bb = ByteBuffer.allocateDirect(squareCoords.length * 4);
-        bb.order(ByteOrder.nativeOrder());
-        mVertexBuffer = bb.asFloatBuffer();
-        mVertexBuffer.put(squareCoords);
-        mVertexBuffer.position(0);
+        final FloatBuffer vertexBuffer = pool.allocateFloats(squareCoords.length);
+        vertexBuffer.put(squareCoords);
+        vertexBuffer.position(0);
 
         // initialize byte buffer for the draw list
-        ByteBuffer dlb = ByteBuffer.allocateDirect(drawOrder.length * 2);
-        dlb.order(ByteOrder.nativeOrder());
-        mDrawListBuffer = dlb.asShortBuffer();
-        mDrawListBuffer.put(drawOrder);
-        mDrawListBuffer.position(0);
+        final ShortBuffer drawListBuffer = pool.allocateShorts(drawOrder.length);
+        drawListBuffer.put(drawOrder);
+        drawListBuffer.position(0);
+        
+        // upload both once, draws only reference the buffer objects
+        mVertexBufferObject = bufferManager.createVertexBuffer(GLES20.GL_STATIC_DRAW, vertexBuffer, squareCoords.length * 4);
+        mDrawListBufferObject = bufferManager.createIndexBuffer(GLES20.GL_STATIC_DRAW, drawListBuffer, drawOrder.length * 2);
+        
+        // the buffer objects hold the data now
+        pool.release(vertexBuffer);
+        pool.release(drawListBuffer);
     }
 
-    public void draw(int programHandler, int colorHandler, int positionHandler) {
+    public void draw(IGL gl, int programHandler, int colorHandler, int positionHandler) {
         // Enable a handle to the triangle vertices
-        GLES20.glEnableVertexAttribArray(positionHandler);
+        gl.glEnableVertexAttribArray(positionHandler);
 
         // Prepare the triangle coordinate data
-        GLES20.glVertexAttribPointer(positionHandler, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, vertexStride, mVertexBuffer);
+        mVertexBufferObject.bind();
+        gl.glVertexAttribPointer(positionHandler, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, vertexStride, 0);
 
         // Set color for drawing the triangle
-        GLES20.glUniform4fv(colorHandler, 1, color, 0);
+        gl.glUniform4f(colorHandler, color[0], color[1], color[2], color[3]);
 
-        // Draw the triangle
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_FAN, 0, vertexCount);
+        // Draw the two triangles
+        mDrawListBufferObject.bind();
+        gl.glDrawElements(GLES20.GL_TRIANGLES, drawOrder.length, GLES20.GL_UNSIGNED_SHORT, 0);
 
-        // Disable vertex array
-        GLES20.glDisableVertexAttribArray(positionHandler);
+        // The array and buffers are left enabled and bound; through a GLState the next draw does not touch them.
+    }
+
+    public BufferObject getVertexBufferObject() {
+        return mVertexBufferObject;
+    }
+
+    /** Deletes both buffer objects. */
+    public void release() {
+        mVertexBufferObject.release();
+        mDrawListBufferObject.release();
     }
 }
\ No newline at end of file
@@ -0,0 +1,148 @@
+package com.bogatov.openglproj;
+
+/**
+ * Hands out byte ranges of a fixed-size streaming buffer for per-frame data, wrapping around at the end, and
+ * frees each frame's ranges once the GPU can no longer be reading them.
+ *
+ * ES 2.0 has no fences, so retirement goes by frame index: data written in frame n is assumed to be consumed once
+ * frame n + framesInFlight begins, the same assumption a triple-buffered swap chain makes. Allocation fails
+ * rather than overwrite the data of a frame still in flight.
+ *
+ * Has no GL dependencies; frame indices come from the caller, so the wrap-around and retirement logic can be
+ * driven by a simulated frame clock.
+ */
+public class StreamRing {
+
+    private final int mCapacity;
+    private final int mFramesInFlight;
+
+    /** Index and bytes used of every frame not retired yet, oldest first, in a ring of framesInFlight + 1. */
+    private final long[] mFrameIndices;
+    private final int[] mFrameBytes;
+    private int mOldestFrame;
+    private int mFrameCount;
+
+    private long mCurrentFrame = -1;
+    private int mCurrentBytes;
+
+    /** Next byte to hand out; the used bytes end here. */
+    private int mHead;
+    private int mUsed;
+
+    private int mPeakUsed;
+    private int mWrapCount;
+    private int mOverflowCount;
+
+    /**
+     * @param capacityBytes Size of the streaming buffer.
+     * @param framesInFlight Number of frames the GPU may still be reading, including the current one; 3 for
+     *            triple buffering.
+     */
+    public StreamRing(int capacityBytes, int framesInFlight) {
+        if (capacityBytes <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacityBytes);
+        }
+        if (framesInFlight <= 0) {
+            throw new IllegalArgumentException("Frames in flight must be positive: " + framesInFlight);
+        }
+        mCapacity = capacityBytes;
+        mFramesInFlight = framesInFlight;
+        mFrameIndices = new long[framesInFlight + 1];
+        mFrameBytes = new int[framesInFlight + 1];
+    }
+
+    /**
+     * Ends the current frame, if any, and starts the given one, freeing the ranges of frames that are at least
+     * framesInFlight behind it.
+     *
+     * @param frameIndex Increases by at least one every call.
+     */
+    public void beginFrame(long frameIndex) {
+        if (frameIndex <= mCurrentFrame) {
+            throw new IllegalArgumentException("Frame " + frameIndex + " does not follow frame " + mCurrentFrame);
+        }
+        if (mCurrentFrame >= 0 && mCurrentBytes > 0) {
+            final int slot = (mOldestFrame + mFrameCount) % mFrameIndices.length;
+            mFrameIndices[slot] = mCurrentFrame;
+            mFrameBytes[slot] = mCurrentBytes;
+            mFrameCount++;
+        }
+        while (mFrameCount > 0 && mFrameIndices[mOldestFrame] <= frameIndex - mFramesInFlight) {
+            mUsed -= mFrameBytes[mOldestFrame];
+            mOldestFrame = (mOldestFrame + 1) % mFrameIndices.length;
+            mFrameCount--;
+        }
+        if (mUsed == 0) {
+            // Nothing is in flight, so the next allocation may start at 0 without skipping the tail as padding.
+            mHead = 0;
+        }
+        mCurrentFrame = frameIndex;
+        mCurrentBytes = 0;
+    }
+
+    /**
+     * Reserves a range in the current frame.
+     *
+     * @param alignment Power of two the offset must be a multiple of; the capacity should be one too.
+     * @return Offset of the range, or -1 if it does not fit beside the frames in flight.
+     */
+    public int allocate(int bytes, int alignment) {
+        if (mCurrentFrame < 0) {
+            throw new IllegalStateException("allocate() called before beginFrame()");
+        }
+        if (bytes <= 0 || bytes > mCapacity) {
+            throw new IllegalArgumentException("Cannot allocate " + bytes + " bytes from a ring of " + mCapacity);
+        }
+        int offset = (mHead + alignment - 1) & -alignment;
+        boolean wrapped = false;
+        if (offset + bytes > mCapacity) {
+            // The tail end is too short; skip it and start over at 0.
+            offset = 0;
+            wrapped = true;
+        }
+        final int consumed = (wrapped ? mCapacity - mHead : offset - mHead) + bytes;
+        if (mUsed + consumed > mCapacity) {
+            mOverflowCount++;
+            return -1;
+        }
+        if (wrapped) {
+            mWrapCount++;
+        }
+        mHead = (offset + bytes) % mCapacity;
+        mUsed += consumed;
+        mCurrentBytes += consumed;
+        mPeakUsed = Math.max(mPeakUsed, mUsed);
+        return offset;
+    }
+
+    /** Forgets every frame, e.g. when the buffer was orphaned or the context lost. */
+    public void reset() {
+        mFrameCount = 0;
+        mOldestFrame = 0;
+        mCurrentBytes = 0;
+        mHead = 0;
+        mUsed = 0;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /** Bytes held by frames in flight, including the current one and the padding skipped at wrap-arounds. */
+    public int getUsedBytes() {
+        return mUsed;
+    }
+
+    public int getPeakUsedBytes() {
+        return mPeakUsed;
+    }
+
+    public int getWrapCount() {
+        return mWrapCount;
+    }
+
+    /** Number of allocations that failed because the ring was full. */
+    public int getOverflowCount() {
+        return mOverflowCount;
+    }
+}
@@ -0,0 +1,89 @@
+package com.bogatov.openglproj;
+
+import java.nio.FloatBuffer;
+
+import android.opengl.GLES20;
+
+/**
+ * One large GL_STREAM_DRAW vertex buffer that per-frame geometry is appended to, instead of allocating buffers or
+ * passing client arrays every frame. Space is handed out by a {@link StreamRing}, so each frame writes where no
+ * frame still in flight reads, and the data goes in with glBufferSubData; draws point their attributes at the
+ * offset {@link #write} returns.
+ *
+ * Must be used on the GL thread. Create it again, or call {@link #onContextCreated}, when the context is recreated.
+ */
+public class StreamingVertexBuffer {
+
+    /** Offsets are aligned so any vertex attribute type can start at them. */
+    private static final int ALIGNMENT = 4;
+
+    private final StreamRing mRing;
+    private BufferObject mBuffer;
+    private long mFrameIndex = -1;
+
+    /** Staging copy of the floats being written; grows to the largest write. */
+    private FloatBuffer mStaging;
+
+    /**
+     * @param framesInFlight Number of frames the GPU may lag behind, including the current one; 3 for triple
+     *            buffering.
+     */
+    public StreamingVertexBuffer(BufferManager bufferManager, int capacityBytes, int framesInFlight) {
+        mRing = new StreamRing(capacityBytes, framesInFlight);
+        onContextCreated(bufferManager);
+    }
+
+    /** Creates the buffer store in a new context; everything written before is gone. */
+    public void onContextCreated(BufferManager bufferManager) {
+        mBuffer = bufferManager.createVertexBuffer(GLES20.GL_STREAM_DRAW);
+        mBuffer.upload(null, mRing.getCapacity());
+        mRing.reset();
+    }
+
+    /** Starts a frame; call once per frame before writing. */
+    public void beginFrame() {
+        mRing.beginFrame(++mFrameIndex);
+    }
+
+    /**
+     * Appends vertex data for the current frame and leaves the buffer bound.
+     *
+     * @return Byte offset of the data in the buffer, for glVertexAttribPointer, or -1 if the frames in flight
+     *         leave no room; the caller then has to draw from a client array or skip the draw.
+     */
+    public int write(float[] data, int offset, int count) {
+        final int bytes = count * 4;
+        final int position = mRing.allocate(bytes, ALIGNMENT);
+        if (position < 0) {
+            return -1;
+        }
+        if (mStaging == null || mStaging.capacity() < count) {
+            final DirectBufferPool pool = DirectBufferPool.getShared();
+            pool.release(mStaging);
+            mStaging = pool.allocateFloats(count);
+        }
+        mStaging.clear();
+        mStaging.put(data, offset, count).position(0);
+        mBuffer.update(position, mStaging, bytes);
+        return position;
+    }
+
+    public void bind() {
+        mBuffer.bind();
+    }
+
+    public BufferObject getBufferObject() {
+        return mBuffer;
+    }
+
+    /** Allocation state, e.g. for the wrap and overflow counts. */
+    public StreamRing getRing() {
+        return mRing;
+    }
+
+    public void release() {
+        mBuffer.release();
+        DirectBufferPool.getShared().release(mStaging);
+        mStaging = null;
+    }
+}
@@ -0,0 +1,358 @@
+package com.bogatov.openglproj;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+
+/**
+ * Packs many small images into a few large textures ("pages"), so cells showing different images can still be
+ * drawn from one texture in one batch. Each image gets a {@link Region} with its page and texture coordinates.
+ *
+ * Images can be added and removed at any time. Removing only frees the space logically; once enough of a page
+ * is unused, {@link #defragment(IImageSource)} repacks it and uploads its images again. A page whose last image
+ * is removed is free again right away, and {@link #evictPage} empties a whole page when the images cannot be
+ * reloaded.
+ */
+public class TextureAtlas {
+
+    /** Empty texels kept around every image, so linear filtering does not bleed neighbours in. */
+    private static final int PADDING = 1;
+
+    /** A page is repacked once this fraction of it belongs to removed images. */
+    private static final float DEFRAGMENT_THRESHOLD = 0.25f;
+
+    /** Creates page textures and fills them; called on the GL thread. */
+    public interface IPageUploader {
+        /** @return Handle of a new, empty texture of the given width and height. */
+        public int createPage(int size);
+
+        public void upload(int textureHandle, int x, int y, Bitmap bitmap);
+    }
+
+    /** Uploads with GLES20 into RGBA pages filtered linearly. */
+    private static final IPageUploader GL_UPLOADER = new IPageUploader() {
+        @Override
+        public int createPage(int size) {
+            final int textureHandle = TextureUtils.createTexture();
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, size, size, 0, GLES20.GL_RGBA,
+                    GLES20.GL_UNSIGNED_BYTE, null);
+            return textureHandle;
+        }
+
+        @Override
+        public void upload(int textureHandle, int x, int y, Bitmap bitmap) {
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle);
+            GLUtils.texSubImage2D(GLES20.GL_TEXTURE_2D, 0, x, y, bitmap);
+        }
+    };
+
+    /** Reloads an image by id when its page is repacked. */
+    public interface IImageSource {
+        public Bitmap load(int id);
+    }
+
+    /** Picks regions, e.g. the ones still in use for {@link #evictPage}. */
+    public interface IRegionFilter {
+        public boolean matches(Region region);
+    }
+
+    public static class Region {
+        public final int id;
+        public int page;
+        public int textureHandle;
+        public int x;
+        public int y;
+        public int width;
+        public int height;
+        public float u0;
+        public float v0;
+        public float u1;
+        public float v1;
+
+        Region(int id) {
+            this.id = id;
+        }
+    }
+
+    private static class Page {
+        final int textureHandle;
+        final SkylinePacker packer;
+        final List<Region> regions = new ArrayList<Region>();
+
+        Page(int textureHandle, int size) {
+            this.textureHandle = textureHandle;
+            this.packer = new SkylinePacker(size, size);
+        }
+    }
+
+    private final int mPageSize;
+    private final int mMaxPages;
+    private final IPageUploader mUploader;
+    private final List<Page> mPages = new ArrayList<Page>();
+
+    /** By id; looked up for every cell drawn, so the ids are not boxed. */
+    private final LongHashMap<Region> mRegions = new LongHashMap<Region>();
+
+    private final int[] mPosition = new int[2];
+
+    /** Incremented whenever a region is added, removed or moved. */
+    private int mVersion;
+
+    /**
+     * @param pageSize Width and height of each page texture, a power of two no larger than GL_MAX_TEXTURE_SIZE.
+     */
+    public TextureAtlas(int pageSize) {
+        this(pageSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param pageSize Width and height of each page texture, a power of two no larger than GL_MAX_TEXTURE_SIZE.
+     * @param maxPages Most pages to create; images that do not fit once they all exist are not added.
+     */
+    public TextureAtlas(int pageSize, int maxPages) {
+        this(pageSize, maxPages, GL_UPLOADER);
+    }
+
+    public TextureAtlas(int pageSize, int maxPages, IPageUploader uploader) {
+        if (maxPages <= 0) {
+            throw new IllegalArgumentException("Max pages must be positive: " + maxPages);
+        }
+        mPageSize = pageSize;
+        mMaxPages = maxPages;
+        mUploader = uploader;
+    }
+
+    /**
+     * Packs an image and uploads it into its page. Must be called on the GL thread. The bitmap is not recycled.
+     *
+     * @return The region of the image, or null if it is larger than a page or no page has room left.
+     */
+    public Region add(int id, Bitmap bitmap) {
+        remove(id);
+
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        if (width + 2 * PADDING > mPageSize || height + 2 * PADDING > mPageSize) {
+            return null;
+        }
+
+        Page page = null;
+        for (int i = 0; i < mPages.size() && page == null; i++) {
+            if (mPages.get(i).packer.insert(width + 2 * PADDING, height + 2 * PADDING, mPosition)) {
+                page = mPages.get(i);
+            }
+        }
+        if (page == null) {
+            if (mPages.size() >= mMaxPages) {
+                return null;
+            }
+            page = createPage();
+            page.packer.insert(width + 2 * PADDING, height + 2 * PADDING, mPosition);
+        }
+
+        final Region region = new Region(id);
+        region.page = mPages.indexOf(page);
+        region.textureHandle = page.textureHandle;
+        region.width = width;
+        region.height = height;
+        place(region, mPosition[0], mPosition[1]);
+
+        page.regions.add(region);
+        mRegions.put(id, region);
+        upload(region, bitmap);
+        mVersion++;
+        return region;
+    }
+
+    private Page createPage() {
+        final Page page = new Page(mUploader.createPage(mPageSize), mPageSize);
+        mPages.add(page);
+        return page;
+    }
+
+    /** Sets the region's position from its padded slot and derives the texture coordinates. */
+    private void place(Region region, int slotX, int slotY) {
+        region.x = slotX + PADDING;
+        region.y = slotY + PADDING;
+        region.u0 = (float) region.x / mPageSize;
+        region.v0 = (float) region.y / mPageSize;
+        region.u1 = (float) (region.x + region.width) / mPageSize;
+        region.v1 = (float) (region.y + region.height) / mPageSize;
+    }
+
+    private void upload(Region region, Bitmap bitmap) {
+        mUploader.upload(region.textureHandle, region.x, region.y, bitmap);
+    }
+
+    /**
+     * Frees the image's space. The texels stay in the page until it is defragmented.
+     */
+    public void remove(int id) {
+        final Region region = mRegions.remove(id);
+        if (region == null) {
+            return;
+        }
+        final Page page = mPages.get(region.page);
+        page.regions.remove(region);
+        if (page.regions.isEmpty()) {
+            page.packer.reset();
+        } else {
+            page.packer.remove(region.width + 2 * PADDING, region.height + 2 * PADDING);
+        }
+        mVersion++;
+    }
+
+    /**
+     * Empties the page whose images in use cover the least area, so new images fit again without reloading the
+     * ones that stay. Images on it that are still in use are dropped as well; callers fall back to drawing them
+     * from their own textures.
+     *
+     * @param inUse Matches the images that are still wanted.
+     * @param maxInUse Largest fraction of the page the images in use may cover for it to be emptied.
+     * @return Index of the emptied page, or -1 if every page has more than maxInUse in use.
+     */
+    public int evictPage(IRegionFilter inUse, float maxInUse) {
+        int best = -1;
+        long bestArea = (long) (maxInUse * mPageSize * mPageSize);
+        for (int p = 0; p < mPages.size(); p++) {
+            final List<Region> regions = mPages.get(p).regions;
+            long area = 0;
+            for (int i = 0; i < regions.size() && area <= bestArea; i++) {
+                final Region region = regions.get(i);
+                if (inUse.matches(region)) {
+                    area += (long) (region.width + 2 * PADDING) * (region.height + 2 * PADDING);
+                }
+            }
+            if (area < bestArea || (area == bestArea && best < 0)) {
+                best = p;
+                bestArea = area;
+            }
+        }
+        if (best < 0) {
+            return -1;
+        }
+        final Page page = mPages.get(best);
+        dropRegions(page);
+        page.packer.reset();
+        mVersion++;
+        return best;
+    }
+
+    public Region getRegion(int id) {
+        return mRegions.get(id);
+    }
+
+    /**
+     * Repacks every page where removed images take up a large part of the space, reloading the images that stay.
+     * Must be called on the GL thread. Regions are updated in place, so callers should rebuild anything derived
+     * from their texture coordinates when {@link #getVersion()} changes.
+     *
+     * Repacking goes tallest first, which may not fit images that fitted in the order they were added; the page
+     * is then emptied. Images the source cannot reload are dropped too, rather than left showing stale texels.
+     *
+     * @return Number of pages repacked.
+     */
+    public int defragment(IImageSource source) {
+        int repacked = 0;
+        for (int p = 0; p < mPages.size(); p++) {
+            final Page page = mPages.get(p);
+            final float freed = (float) page.packer.getFreedArea() / ((long) mPageSize * mPageSize);
+            if (freed < DEFRAGMENT_THRESHOLD) {
+                continue;
+            }
+
+            final int count = page.regions.size();
+            final int[] widths = new int[count];
+            final int[] heights = new int[count];
+            final int[] positions = new int[2 * count];
+            for (int i = 0; i < count; i++) {
+                widths[i] = page.regions.get(i).width + 2 * PADDING;
+                heights[i] = page.regions.get(i).height + 2 * PADDING;
+            }
+            if (!page.packer.repack(widths, heights, count, positions)) {
+                // The packer is left empty; so must the page be.
+                dropRegions(page);
+                repacked++;
+                mVersion++;
+                continue;
+            }
+
+            for (int i = count - 1; i >= 0; i--) {
+                final Region region = page.regions.get(i);
+                place(region, positions[2 * i], positions[2 * i + 1]);
+
+                final Bitmap bitmap = source.load(region.id);
+                if (bitmap != null) {
+                    upload(region, bitmap);
+                    bitmap.recycle();
+                } else {
+                    remove(region.id);
+                }
+            }
+            repacked++;
+            mVersion++;
+        }
+        return repacked;
+    }
+
+    /** Forgets every region of the page; its packer must already be empty. */
+    private void dropRegions(Page page) {
+        for (int i = 0; i < page.regions.size(); i++) {
+            mRegions.remove(page.regions.get(i).id);
+        }
+        page.regions.clear();
+    }
+
+    /**
+     * Deletes all page textures. Must be called on the GL thread.
+     */
+    public void release() {
+        final int[] handles = new int[mPages.size()];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = mPages.get(i).textureHandle;
+        }
+        if (handles.length > 0) {
+            GLES20.glDeleteTextures(handles.length, handles, 0);
+        }
+        clear();
+    }
+
+    /**
+     * Forgets all pages and regions without deleting textures, for when the GL context is already gone.
+     */
+    public void clear() {
+        mPages.clear();
+        mRegions.clear();
+        mVersion++;
+    }
+
+    /** Number of images in the atlas. */
+    public int getRegionCount() {
+        return mRegions.size();
+    }
+
+    public int getPageCount() {
+        return mPages.size();
+    }
+
+    public int getPageTexture(int page) {
+        return mPages.get(page).textureHandle;
+    }
+
+    /** Fraction of the page covered by images in use. */
+    public float getOccupancy(int page) {
+        return mPages.get(page).packer.getOccupancy();
+    }
+
+    public int getVersion() {
+        return mVersion;
+    }
+}
@@ -0,0 +1,371 @@
+package com.bogatov.openglproj;
+
+/**
+ * Shares textures between users by resource id and level, counts references to them and keeps the estimated GPU
+ * memory of unreferenced textures under a budget by evicting the least recently used ones.
+ *
+ * All methods are synchronized, so a decode thread may insert or resize entries while the GL thread acquires
+ * them. Evicted textures are only queued; {@link #deleteEvicted(IGL)} deletes them and must run on the GL thread.
+ *
+ * Textures still waiting for their image are never evicted for the budget, since the upload would go into a
+ * deleted name; see {@link #setLoadTracker}.
+ *
+ * Entries are looked up in primitive maps and reused once evicted, so hits and misses do not allocate.
+ */
+public class TextureCache {
+
+    /** Creates the texture for a cache miss; called on the GL thread. */
+    public interface ITextureFactory {
+        public int createTexture(int resourceId, int level);
+    }
+
+    /** Tells which textures still have an upload coming, e.g. an {@link AsyncTextureLoader}. */
+    public interface ILoadTracker {
+        public boolean isLoading(int textureHandle);
+    }
+
+    /** Told about every texture {@link #deleteEvicted} deletes; called on the GL thread. */
+    public interface IDeleteListener {
+        public void onTextureDeleted(int textureHandle);
+    }
+
+    private static class Entry {
+        long key;
+        int textureHandle;
+        long bytes;
+        int refCount;
+
+        /** Neighbours in the list from least to most recently used; newer also links the free entries. */
+        Entry older;
+        Entry newer;
+    }
+
+    private final LongHashMap<Entry> mEntries = new LongHashMap<Entry>();
+    private final LongHashMap<Entry> mEntriesByHandle = new LongHashMap<Entry>();
+
+    /** Ends of the recently used list. */
+    private Entry mOldest;
+    private Entry mNewest;
+
+    /** Entries to reuse. */
+    private Entry mFree;
+
+    private int[] mEvicted = new int[16];
+    private int mEvictedCount;
+
+    /** Handed to glDeleteTextures outside the lock; only used on the GL thread. */
+    private int[] mDeleting = new int[16];
+
+    private ILoadTracker mLoadTracker;
+    private IDeleteListener mDeleteListener;
+
+    private long mBudgetBytes;
+    private long mTotalBytes;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    public TextureCache(long budgetBytes) {
+        mBudgetBytes = budgetBytes;
+    }
+
+    /**
+     * @param level Variant of the image, e.g. the {@link ThumbnailLod} size it was decoded at; 0 for the image as is.
+     */
+    public static long getKey(int resourceId, int level) {
+        return ((long) resourceId << 32) | (level & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Estimated GPU size of a texture. A full mip chain adds a third to the base level.
+     */
+    public static long estimateBytes(int width, int height, int bytesPerPixel, boolean mipmapped) {
+        final long base = (long) width * height * bytesPerPixel;
+        return mipmapped ? base * 4 / 3 : base;
+    }
+
+    /**
+     * Returns the cached texture and takes a reference to it.
+     *
+     * @return The texture handle, or 0 if it is not cached.
+     */
+    public synchronized int acquire(int resourceId, int level) {
+        final Entry entry = mEntries.get(getKey(resourceId, level));
+        if (entry == null) {
+            mMissCount++;
+            return 0;
+        }
+        mHitCount++;
+        entry.refCount++;
+        touch(entry);
+        return entry.textureHandle;
+    }
+
+    /**
+     * Returns the cached texture or creates it with the factory, and takes a reference to it.
+     */
+    public int acquire(int resourceId, int level, ITextureFactory factory) {
+        final int cached = acquire(resourceId, level);
+        if (cached != 0) {
+            return cached;
+        }
+
+        final int textureHandle = factory.createTexture(resourceId, level);
+        synchronized (this) {
+            // Another thread may have inserted the same texture meanwhile; keep theirs.
+            final Entry existing = mEntries.get(getKey(resourceId, level));
+            if (existing != null) {
+                existing.refCount++;
+                touch(existing);
+                addEvicted(textureHandle);
+                return existing.textureHandle;
+            }
+            put(resourceId, level, textureHandle).refCount = 1;
+        }
+        return textureHandle;
+    }
+
+    /**
+     * Inserts a texture without taking a reference to it. Its size is unknown until {@link #setSize} is called.
+     */
+    public synchronized void insert(int resourceId, int level, int textureHandle) {
+        put(resourceId, level, textureHandle);
+        trim();
+    }
+
+    private Entry put(int resourceId, int level, int textureHandle) {
+        final long key = getKey(resourceId, level);
+        final Entry previous = mEntries.remove(key);
+        if (previous != null) {
+            mEntriesByHandle.remove(previous.textureHandle);
+            mTotalBytes -= previous.bytes;
+            if (previous.textureHandle != textureHandle) {
+                addEvicted(previous.textureHandle);
+            }
+            unlink(previous);
+            recycle(previous);
+        }
+
+        Entry entry = mFree;
+        if (entry != null) {
+            mFree = entry.newer;
+        } else {
+            entry = new Entry();
+        }
+        entry.key = key;
+        entry.textureHandle = textureHandle;
+        entry.bytes = 0;
+        entry.refCount = 0;
+        link(entry);
+        mEntries.put(key, entry);
+        mEntriesByHandle.put(textureHandle, entry);
+        return entry;
+    }
+
+    /** Appends the entry to the recently used list as the newest. */
+    private void link(Entry entry) {
+        entry.older = mNewest;
+        entry.newer = null;
+        if (mNewest != null) {
+            mNewest.newer = entry;
+        } else {
+            mOldest = entry;
+        }
+        mNewest = entry;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.older != null) {
+            entry.older.newer = entry.newer;
+        } else {
+            mOldest = entry.newer;
+        }
+        if (entry.newer != null) {
+            entry.newer.older = entry.older;
+        } else {
+            mNewest = entry.older;
+        }
+        entry.older = null;
+        entry.newer = null;
+    }
+
+    private void touch(Entry entry) {
+        if (entry != mNewest) {
+            unlink(entry);
+            link(entry);
+        }
+    }
+
+    private void recycle(Entry entry) {
+        entry.newer = mFree;
+        mFree = entry;
+    }
+
+    private void addEvicted(int textureHandle) {
+        if (mEvictedCount == mEvicted.length) {
+            final int[] evicted = new int[2 * mEvicted.length];
+            System.arraycopy(mEvicted, 0, evicted, 0, mEvictedCount);
+            mEvicted = evicted;
+        }
+        mEvicted[mEvictedCount++] = textureHandle;
+    }
+
+    /**
+     * Records the dimensions of a texture once its image is known, e.g. after a background decode.
+     */
+    public synchronized void setSize(int textureHandle, int width, int height, int bytesPerPixel, boolean mipmapped) {
+        final Entry entry = mEntriesByHandle.get(textureHandle);
+        if (entry == null) {
+            return;
+        }
+        mTotalBytes -= entry.bytes;
+        entry.bytes = estimateBytes(width, height, bytesPerPixel, mipmapped);
+        mTotalBytes += entry.bytes;
+        trim();
+    }
+
+    /**
+     * Drops a reference taken by acquire. The texture stays cached until it is evicted.
+     */
+    public synchronized void release(int textureHandle) {
+        final Entry entry = mEntriesByHandle.get(textureHandle);
+        if (entry == null || entry.refCount == 0) {
+            throw new IllegalStateException("Texture " + textureHandle + " is not referenced");
+        }
+        entry.refCount--;
+        trim();
+    }
+
+    /**
+     * Evicts a texture right away if nothing references it, e.g. because its load was cancelled and the
+     * placeholder it still shows should not be handed out again.
+     *
+     * @return Whether the texture was evicted.
+     */
+    public synchronized boolean discard(int textureHandle) {
+        final Entry entry = mEntriesByHandle.get(textureHandle);
+        if (entry == null || entry.refCount > 0) {
+            return false;
+        }
+        removeEntry(entry);
+        return true;
+    }
+
+    /**
+     * Keeps textures the tracker reports as loading out of budget eviction. They can still be dropped with
+     * {@link #discard} once their load is cancelled.
+     */
+    public synchronized void setLoadTracker(ILoadTracker tracker) {
+        mLoadTracker = tracker;
+    }
+
+    public synchronized void setDeleteListener(IDeleteListener listener) {
+        mDeleteListener = listener;
+    }
+
+    public synchronized void setBudget(long budgetBytes) {
+        mBudgetBytes = budgetBytes;
+        trim();
+    }
+
+    /**
+     * Evicts unreferenced textures that are not loading, least recently used first, until the total fits the
+     * budget.
+     */
+    private void trim() {
+        Entry entry = mOldest;
+        while (mTotalBytes > mBudgetBytes && entry != null) {
+            final Entry newer = entry.newer;
+            if (entry.refCount == 0 && (mLoadTracker == null || !mLoadTracker.isLoading(entry.textureHandle))) {
+                removeEntry(entry);
+                mEvictionCount++;
+            }
+            entry = newer;
+        }
+    }
+
+    private void removeEntry(Entry entry) {
+        mEntries.remove(entry.key);
+        mEntriesByHandle.remove(entry.textureHandle);
+        mTotalBytes -= entry.bytes;
+        addEvicted(entry.textureHandle);
+        unlink(entry);
+        recycle(entry);
+    }
+
+    /**
+     * Deletes the textures evicted since the last call. Must be called on the GL thread.
+     *
+     * @return Number of textures deleted.
+     */
+    public int deleteEvicted(IGL gl) {
+        final int count;
+        final IDeleteListener listener;
+        synchronized (this) {
+            count = mEvictedCount;
+            if (count == 0) {
+                return 0;
+            }
+            listener = mDeleteListener;
+            if (mDeleting.length < count) {
+                mDeleting = new int[mEvicted.length];
+            }
+            System.arraycopy(mEvicted, 0, mDeleting, 0, count);
+            mEvictedCount = 0;
+        }
+        final int[] handles = mDeleting;
+        gl.glDeleteTextures(count, handles, 0);
+        if (listener != null) {
+            for (int i = 0; i < count; i++) {
+                listener.onTextureDeleted(handles[i]);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Forgets every texture without deleting it, for when the GL context that owned them is already gone.
+     */
+    public synchronized void clear() {
+        while (mOldest != null) {
+            final Entry entry = mOldest;
+            unlink(entry);
+            recycle(entry);
+        }
+        mEntries.clear();
+        mEntriesByHandle.clear();
+        mEvictedCount = 0;
+        mTotalBytes = 0;
+    }
+
+    public synchronized int getCount() {
+        return mEntries.size();
+    }
+
+    public synchronized int getRefCount(int textureHandle) {
+        final Entry entry = mEntriesByHandle.get(textureHandle);
+        return entry == null ? 0 : entry.refCount;
+    }
+
+    /** Estimated GPU bytes of all cached textures. */
+    public synchronized long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    public synchronized long getBudget() {
+        return mBudgetBytes;
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+}
@@ -1,6 +1,14 @@
 package com.bogatov.openglproj;
 
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.opengl.GLES20;
@@ -9,36 +17,220 @@ import android.opengl.GLUtils;
 public class TextureUtils {
 
     public static int loadTexture(final Context context, final int resourceId) {
+        final int textureHandle = createTexture();
+
+        // Read in the resource
+        final Bitmap bitmap = decodeResource(context, resourceId);
+
+        uploadTexture(textureHandle, bitmap);
+
+        // Recycle the bitmap, since its data has been loaded into OpenGL.
+        bitmap.recycle();
+
+        return textureHandle;
+    }
+
+    public static Bitmap decodeResource(final Context context, final int resourceId) {
+        return decodeResource(context, resourceId, 0);
+    }
+
+    /**
+     * Decodes a resource subsampled by a power of two, as far as the shorter side stays at least the given size.
+     *
+     * @param size Size the shorter side is needed at, or 0 for full size.
+     */
+    public static Bitmap decodeResource(final Context context, final int resourceId, final int size) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;   // No pre-scaling
+        
+        if (size > 0) {
+            // Read only the dimensions first to pick the subsampling.
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeResource(context.getResources(), resourceId, options);
+            options.inSampleSize = ThumbnailLod.getSampleSize(options.outWidth, options.outHeight, size);
+            options.inJustDecodeBounds = false;
+        }
+
+        final Bitmap bitmap = BitmapFactory.decodeResource(context.getResources(), resourceId, options);
+        if (bitmap == null) {
+            throw new RuntimeException("Error decoding texture resource " + resourceId);
+        }
+        return bitmap;
+    }
+
+    public static int createTexture() {
         final int[] textureHandle = new int[1];
-     
+
         GLES20.glGenTextures(1, textureHandle, 0);
-     
-        if (textureHandle[0] != 0) {
-            final BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inScaled = false;   // No pre-scaling
-     
-            // Read in the resource
-            final Bitmap bitmap = BitmapFactory.decodeResource(context.getResources(), resourceId, options);
-     
-            // Bind to the texture in OpenGL
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[0]);
-     
-            // Set filtering
-            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
-            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
-     
-            // Load the bitmap into the bound texture.
-            GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
-     
-            // Recycle the bitmap, since its data has been loaded into OpenGL.
-            bitmap.recycle();
-        }
-     
+
         if (textureHandle[0] == 0) {
             throw new RuntimeException("Error loading texture.");
         }
-     
+
         return textureHandle[0];
     }
-    
+
+    /**
+     * Creates a texture holding a single opaque grey texel, to draw with until the real image is uploaded.
+     */
+    public static int createPlaceholderTexture() {
+        final int textureHandle = createTexture();
+
+        final ByteBuffer texel = ByteBuffer.allocateDirect(4);
+        texel.put((byte) 0xC0).put((byte) 0xC0).put((byte) 0xC0).put((byte) 0xFF).position(0);
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, 1, 1, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, texel);
+
+        return textureHandle;
+    }
+
+    /**
+     * Replaces the image of an existing texture with the bitmap. The bitmap is not recycled.
+     */
+    public static void uploadTexture(final int textureHandle, final Bitmap bitmap) {
+        // Bind to the texture in OpenGL
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle);
+
+        // Set filtering
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+
+        // Load the bitmap into the bound texture.
+        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+    }
+
+    /**
+     * Replaces the image of an existing texture with the bitmap and a mip chain scaled down from it on the CPU,
+     * and sets trilinear filtering. ES 2.0 only mipmaps power of two textures, so other sizes get a single level
+     * with linear filtering and clamped edges. The bitmap is not recycled.
+     */
+    public static void uploadMipmappedTexture(final int textureHandle, final Bitmap bitmap) {
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        final boolean mipmapped = CompressedTexture.isPowerOfTwo(width) && CompressedTexture.isPowerOfTwo(height);
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle);
+        setFiltering(mipmapped);
+        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+        if (!mipmapped) {
+            return;
+        }
+
+        // Halve the previous level each time, so every level is filtered from one twice its size.
+        final int levels = CompressedTexture.getMipLevelCount(width, height);
+        Bitmap previous = bitmap;
+        for (int level = 1; level < levels; level++) {
+            final Bitmap scaled = Bitmap.createScaledBitmap(previous,
+                    CompressedTexture.getMipSize(width, level), CompressedTexture.getMipSize(height, level), true);
+            GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, level, scaled, 0);
+            if (previous != bitmap) {
+                previous.recycle();
+            }
+            previous = scaled;
+        }
+        if (previous != bitmap) {
+            previous.recycle();
+        }
+    }
+
+    /**
+     * Loads a pre-compressed PKM or KTX raw resource, with all mip levels the container holds, into a new texture.
+     * The resource should be stored uncompressed in the APK so it can be memory mapped instead of copied.
+     */
+    public static int loadCompressedTexture(final Context context, final int resourceId) {
+        final CompressedTexture texture;
+        try {
+            texture = CompressedTexture.parse(mapRawResource(context, resourceId));
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading compressed texture resource " + resourceId, e);
+        }
+
+        if (texture.getInternalFormat() == CompressedTexture.GL_ETC1_RGB8_OES && !isEtc1Supported()) {
+            throw new RuntimeException("ETC1 textures are not supported by this device");
+        }
+
+        final int textureHandle = createTexture();
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle);
+        setFiltering(texture.hasCompleteMipChain());
+        for (int level = 0; level < texture.getLevelCount(); level++) {
+            final ByteBuffer data = texture.getLevelData(level);
+            GLES20.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, level, texture.getInternalFormat(),
+                    texture.getLevelWidth(level), texture.getLevelHeight(level), 0, data.remaining(), data);
+        }
+
+        return textureHandle;
+    }
+
+    /**
+     * Maps a raw resource into memory. Resources compressed inside the APK cannot be mapped and are read into a
+     * direct buffer instead.
+     */
+    public static ByteBuffer mapRawResource(final Context context, final int resourceId) throws IOException {
+        final AssetFileDescriptor descriptor;
+        try {
+            descriptor = context.getResources().openRawResourceFd(resourceId);
+        } catch (Resources.NotFoundException e) {
+            // Thrown, not null, for a resource that is compressed in the APK.
+            return readRawResource(context, resourceId);
+        }
+        if (descriptor == null) {
+            return readRawResource(context, resourceId);
+        }
+
+        final FileInputStream stream = new FileInputStream(descriptor.getFileDescriptor());
+        try {
+            // The mapping stays valid after the channel is closed.
+            return stream.getChannel().map(FileChannel.MapMode.READ_ONLY, descriptor.getStartOffset(),
+                    descriptor.getLength());
+        } finally {
+            stream.close();
+            descriptor.close();
+        }
+    }
+
+    private static ByteBuffer readRawResource(final Context context, final int resourceId) throws IOException {
+        final InputStream stream = context.getResources().openRawResource(resourceId);
+        try {
+            final byte[] chunk = new byte[8192];
+            ByteBuffer data = ByteBuffer.allocateDirect(chunk.length * 8);
+            int read;
+            while ((read = stream.read(chunk)) > 0) {
+                if (data.remaining() < read) {
+                    final ByteBuffer grown = ByteBuffer.allocateDirect(data.capacity() * 2);
+                    data.flip();
+                    grown.put(data);
+                    data = grown;
+                }
+                data.put(chunk, 0, read);
+            }
+            data.flip();
+            return data;
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static boolean isEtc1Supported() {
+        final String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+        return extensions != null && extensions.contains("GL_OES_compressed_ETC1_RGB8_texture");
+    }
+
+    private static void setFiltering(final boolean mipmapped) {
+        if (mipmapped) {
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR);
+        } else {
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        }
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+    }
+
+    /** Size of the bitmap's pixel data in bytes. */
+    public static int getByteCount(final Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
 }
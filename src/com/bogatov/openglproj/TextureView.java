@@ -1,9 +1,5 @@
 package com.bogatov.openglproj;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
@@ -16,9 +12,19 @@ import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
 import android.util.AttributeSet;
 
-public class TextureView extends GLSurfaceView implements IViewDataHandler {
+public class TextureView extends GLSurfaceView implements IViewDataHandler, RenderScheduler.IRenderRequester {
     
     private int mColumnCount = 4;
+    
+    /**
+     * Nothing on screen moves by itself, so frames are drawn on demand: when the renderer still has resources to
+     * restore, or, for the grid, on scrolls, data changes and texture loads.
+     */
+    private final RenderScheduler mRenderScheduler = new RenderScheduler(this);
+    
+    /** Demo data set: the bundled drawables repeated this many times in turn. */
+    private static final int ITEM_COUNT = 100000;
+    private static final int[] ITEM_DRAWABLES = { R.drawable.pirate, R.drawable.bumpy_bricks_public_domain };
 
     public TextureView(Context context){
         this(context, null);
@@ -37,8 +43,9 @@ public class TextureView extends GLSurfaceView implements IViewDataHandler {
         
 //        GridViewRenderer renderer = new GridViewRenderer(context, this);
         SimpleRenderer renderer = new SimpleRenderer(context);
-//        renderer.
+        renderer.setRenderScheduler(mRenderScheduler);
         setRenderer(renderer);
+        setRenderMode(RENDERMODE_WHEN_DIRTY);
 //        setRenderer(new TextureViewRenderer());
         
         getHolder().setFormat(PixelFormat.TRANSLUCENT);
@@ -48,34 +55,53 @@ public class TextureView extends GLSurfaceView implements IViewDataHandler {
 //        setRenderer(new TextureViewRenderer());
     }
     
+    /** Requests frames for whatever the renderer shows; the view also draws on its own when its surface changes. */
+    public RenderScheduler getRenderScheduler() {
+        return mRenderScheduler;
+    }
+    
     @Override
     public int getColumnCount() {
         return mColumnCount;
     }
     
+    @Override
+    public int getItemCount() {
+        return ITEM_COUNT;
+    }
+    
+    @Override
+    public void bindCell(int index, GridCellPool.Cell cell) {
+        cell.resourceId = ITEM_DRAWABLES[index % ITEM_DRAWABLES.length];
+    }
+    
     private class TextureViewRenderer implements GLSurfaceView.Renderer {
         
-        private int mProgramHandle;
+        private ShaderProgram mProgram;
         private int maPositionHandle;
         private int maTextureCoordinateHandle;
-        private int muMVPMatrixHandle;
-        private int muMVMatrixHandle;
-        private int muTextureHandle;
-        private int muLightPosHandle;
+        private int muMVPMatrix;
+        private int muMVMatrix;
+        private int muTexture;
+        private int muLightPos;
         private int maColorHandle;
         private int maNormalHandle;
         
         private int mTextureDataHandle;
         
-        private float[] mMVPMatrix = new float[16];
         private float[] mViewMatrix = new float[16];
-        private float[] mModelMatrix = new float[16];
         private float[] mProjMatrix = new float[16];
         
-        private FloatBuffer mPositionsData;
-        private FloatBuffer mTextureCoordinatesData;
-        private FloatBuffer mColorsData;
-        private FloatBuffer mNormalsData;
+        /** Caches the matrices of the figure, which only change with the camera. */
+        private final SceneGraph mSceneGraph = new SceneGraph(1);
+        private final int mFigureNode = mSceneGraph.addNode(SceneGraph.NO_PARENT);
+        
+        /** Position, color, normal and texture coordinate of each vertex, interleaved. */
+        private Mesh mMesh;
+        
+        private final IGL mGL = new AndroidGL();
+        private BufferManager mBufferManager;
+        private final ShaderLibrary mShaderLibrary = new ShaderLibrary(getContext());
         
         public void onSurfaceCreated(GL10 unused, EGLConfig config) {
             // Set the background frame color
@@ -111,14 +137,20 @@ public class TextureView extends GLSurfaceView implements IViewDataHandler {
             // view matrix. In OpenGL 2, we can keep track of these matrices separately if we choose.
             Matrix.setLookAtM(mViewMatrix, 0, eyeX, eyeY, eyeZ, lookX, lookY, lookZ, upX, upY, upZ);
             
-            String vertexShaderCode = RawResourceReader.readTextFileFromRawResource(getContext(), R.raw.per_pixel_vertex_shader);
-            String fragmentShaderCode = RawResourceReader.readTextFileFromRawResource(getContext(), R.raw.per_pixel_fragment_shader);
+            mShaderLibrary.onContextCreated();
+            int programHandle = mShaderLibrary.getProgram(ShaderLibrary.BASIC_VERTEX_SHADER, ShaderLibrary.BASIC_FRAGMENT_SHADER, 
+                    new String[] {ShaderLibrary.USE_TEXTURE}, new String[] {"a_Position",  "a_Color", "a_Normal", "a_TexCoordinate"});
             
-            int vertexShader = ShaderUtils.compileShader(GLES20.GL_VERTEX_SHADER, vertexShaderCode);
-            int fragmentShader = ShaderUtils.compileShader(GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode);
-            
-            mProgramHandle = ShaderUtils.createAndLinkProgram(vertexShader, fragmentShader, 
-                    new String[] {"a_Position",  "a_Color", "a_Normal", "a_TexCoordinate"});
+            // Look up every uniform and attribute once instead of on each frame.
+            mProgram = new ShaderProgram(mGL, programHandle);
+            muMVPMatrix = mProgram.getUniform("u_MVPMatrix");
+            muMVMatrix = mProgram.getUniform("u_MVMatrix"); 
+            muTexture = mProgram.getUniform("u_Texture");
+            muLightPos = mProgram.getUniform("u_LightPos");
+            maPositionHandle = mProgram.getAttribLocation("a_Position");
+            maTextureCoordinateHandle = mProgram.getAttribLocation("a_TexCoordinate");
+            maColorHandle = mProgram.getAttribLocation("a_Color");
+            maNormalHandle = mProgram.getAttribLocation("a_Normal"); 
             
             mTextureDataHandle = TextureUtils.loadTexture(getContext(), R.drawable.ic_launcher);
         }
@@ -132,6 +164,7 @@ public class TextureView extends GLSurfaceView implements IViewDataHandler {
             // this projection matrix is applied to object coodinates
             // in the onDrawFrame() method
             Matrix.frustumM(mProjMatrix, 0, -ratio, ratio, -1, 1, 3, 7);
+            mSceneGraph.setCamera(mViewMatrix, 0, mProjMatrix, 0);
         }
         
         public void onDrawFrame(GL10 unused) {
@@ -139,18 +172,7 @@ public class TextureView extends GLSurfaceView implements IViewDataHandler {
             GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
             
             // Add program to OpenGL environment
-            GLES20.glUseProgram(mProgramHandle);
-            
-            // Set program handles for cube drawing.
-            muMVPMatrixHandle = GLES20.glGetUniformLocation(mProgramHandle, "uMVPMatrix");
-            muMVMatrixHandle = GLES20.glGetUniformLocation(mProgramHandle, "u_MVMatrix"); 
-            muTextureHandle = GLES20.glGetUniformLocation(mProgramHandle, "u_Texture");
-            maPositionHandle = GLES20.glGetAttribLocation(mProgramHandle, "a_Position");
-            maTextureCoordinateHandle = GLES20.glGetAttribLocation(mProgramHandle, "a_TexCoordinate");
-            muLightPosHandle = GLES20.glGetUniformLocation(mProgramHandle, "u_LightPos");
-            maColorHandle = GLES20.glGetAttribLocation(mProgramHandle, "a_Color");
-            maNormalHandle = GLES20.glGetAttribLocation(mProgramHandle, "a_Normal"); 
-            
+            mProgram.use();
             
             // Set the active texture unit to texture unit 0.
             GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
@@ -159,38 +181,27 @@ public class TextureView extends GLSurfaceView implements IViewDataHandler {
             GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureDataHandle);
             
             // Tell the texture uniform sampler to use this texture in the shader by binding to texture unit 0.
-            GLES20.glUniform1i(muTextureHandle, 0);       
+            mProgram.setInt(muTexture, 0);       
             
             drawTexture();
         }
         
         private void drawTexture() {
-            // Pass in the position information
-            mPositionsData.position(0);     
-            GLES20.glVertexAttribPointer(maPositionHandle, 3, GLES20.GL_FLOAT, false, 0, mPositionsData);        
-            GLES20.glEnableVertexAttribArray(maPositionHandle);        
-            
-            // Pass in the texture coordinate information
-            mTextureCoordinatesData.position(0);
-            GLES20.glVertexAttribPointer(maTextureCoordinateHandle, 2, GLES20.GL_FLOAT, false, 0, mTextureCoordinatesData);
-            GLES20.glEnableVertexAttribArray(maTextureCoordinateHandle);
+            // Pass in all vertex attributes from the interleaved buffer
+            mMesh.bind(mGL, maPositionHandle, maColorHandle, maNormalHandle, maTextureCoordinateHandle);
             
-            // This multiplies the view matrix by the model matrix, and stores the result in the MVP matrix
-            // (which currently contains model * view).
-            Matrix.multiplyMM(mMVPMatrix, 0, mViewMatrix, 0, mModelMatrix, 0);   
+            // Recomputes the modelview and combined matrices only if the camera moved.
+            mSceneGraph.update();
+            final int offset = SceneGraph.getOffset(mFigureNode);
             
             // Pass in the modelview matrix.
-            GLES20.glUniformMatrix4fv(muMVMatrixHandle, 1, false, mMVPMatrix, 0);                
-            
-            // This multiplies the modelview matrix by the projection matrix, and stores the result in the MVP matrix
-            // (which now contains model * view * projection).
-            Matrix.multiplyMM(mMVPMatrix, 0, mProjMatrix, 0, mMVPMatrix, 0);
+            mProgram.setMatrix4(muMVMatrix, mSceneGraph.getModelViewMatrices(), offset);                
 
             // Pass in the combined matrix.
-            GLES20.glUniformMatrix4fv(muMVPMatrixHandle, 1, false, mMVPMatrix, 0);
+            mProgram.setMatrix4(muMVPMatrix, mSceneGraph.getMVPMatrices(), offset);
             
             // Draw the cube.
-            GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 6);      
+            mMesh.draw(mGL, GLES20.GL_TRIANGLES);      
         }
         
         private void initShapes() {
@@ -234,17 +245,23 @@ public class TextureView extends GLSurfaceView implements IViewDataHandler {
                 0.0f, 0.0f, 1.0f
             };
             
-            mPositionsData = ByteBuffer.allocateDirect(figureCoordsData.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();                            
-            mPositionsData.put(figureCoordsData).position(0);       
-            
-            mTextureCoordinatesData = ByteBuffer.allocateDirect(textureCoords.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();                            
-            mTextureCoordinatesData.put(textureCoords).position(0); 
-            
-            mColorsData = ByteBuffer.allocateDirect(colorsData.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();                            
-            mColorsData.put(colorsData).position(0); 
+            // The previous mesh's buffer object went with the old context; only its CPU copy is left.
+            if (mMesh != null) {
+                mMesh.dispose();
+            }
+            mMesh = new Mesh(new VertexLayout(
+                    VertexAttribute.floats("a_Position", 3),
+                    VertexAttribute.normalizedUnsignedBytes("a_Color", 4),
+                    VertexAttribute.normalizedBytes("a_Normal", 3),
+                    VertexAttribute.normalizedUnsignedShorts("a_TexCoordinate", 2)), 6);
+            mMesh.setAttribute(0, figureCoordsData);
+            mMesh.setAttribute(1, colorsData);
+            mMesh.setAttribute(2, normalsData);
+            mMesh.setAttribute(3, textureCoords);
             
-            mNormalsData = ByteBuffer.allocateDirect(normalsData.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();                            
-            mNormalsData.put(normalsData).position(0); 
+            // upload once, the draws only reference the buffer object
+            mBufferManager = new BufferManager(mGL);
+            mMesh.upload(mBufferManager);
         }
     }
 }
@@ -0,0 +1,123 @@
+package com.bogatov.openglproj;
+
+/**
+ * Picks the resolution grid thumbnails are decoded at from the size of a cell on screen, so small cells do not
+ * sample full-size images. Levels are powers of two: the smallest one at or above the cell's pixel size.
+ *
+ * The level only changes when the cell size has moved clearly past a level boundary, so a cell size hovering
+ * around one does not swap every texture back and forth. Going up happens as soon as the cell is noticeably
+ * magnified; going down waits until the cell is well inside the lower level, since a slightly too sharp texture
+ * costs memory but no quality.
+ *
+ * Has no GL dependencies.
+ */
+public class ThumbnailLod {
+
+    public static final int DEFAULT_MIN_SIZE = 32;
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    /** How far a cell may grow past the current level before it is upgraded, as a fraction of the level. */
+    public static final float DEFAULT_UPGRADE_MARGIN = 0.125f;
+
+    /** How far a cell has to shrink below the next lower level before it is downgraded, as a fraction of it. */
+    public static final float DEFAULT_DOWNGRADE_MARGIN = 0.25f;
+
+    private final int mMinSize;
+    private final int mMaxSize;
+    private final float mUpgradeMargin;
+    private final float mDowngradeMargin;
+
+    /** Current level, 0 before the first {@link #update}. */
+    private int mSize;
+
+    private int mChangeCount;
+
+    /**
+     * @param minSize Smallest level; a power of two.
+     * @param maxSize Largest level, e.g. the size of the source images; a power of two.
+     */
+    public ThumbnailLod(int minSize, int maxSize, float upgradeMargin, float downgradeMargin) {
+        if (!CompressedTexture.isPowerOfTwo(minSize) || !CompressedTexture.isPowerOfTwo(maxSize) || minSize > maxSize) {
+            throw new IllegalArgumentException("Level sizes must be powers of two with min <= max: " + minSize + ", "
+                    + maxSize);
+        }
+        if (upgradeMargin < 0.0f || downgradeMargin < 0.0f || downgradeMargin >= 1.0f) {
+            throw new IllegalArgumentException("Margins out of range: " + upgradeMargin + ", " + downgradeMargin);
+        }
+        mMinSize = minSize;
+        mMaxSize = maxSize;
+        mUpgradeMargin = upgradeMargin;
+        mDowngradeMargin = downgradeMargin;
+    }
+
+    public ThumbnailLod() {
+        this(DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE, DEFAULT_UPGRADE_MARGIN, DEFAULT_DOWNGRADE_MARGIN);
+    }
+
+    /** Smallest level at or above the given pixel size, without hysteresis. */
+    public int getLevelFor(int cellPixels) {
+        int size = mMinSize;
+        while (size < cellPixels && size < mMaxSize) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    /**
+     * Moves to the level for a new cell size, unless the size is within the hysteresis band of the current one.
+     *
+     * @return Whether the level changed.
+     */
+    public boolean update(int cellPixels) {
+        final int target = getLevelFor(cellPixels);
+        final int size = mSize;
+        if (size == 0) {
+            mSize = target;
+            return true;
+        }
+        if (target > size) {
+            if (cellPixels <= size * (1.0f + mUpgradeMargin)) {
+                return false;
+            }
+        } else if (target < size) {
+            // Only drop to the level the cell fits in with room to spare.
+            int lower = size;
+            while (lower > target && cellPixels <= (lower >> 1) * (1.0f - mDowngradeMargin)) {
+                lower >>= 1;
+            }
+            if (lower == size) {
+                return false;
+            }
+            mSize = lower;
+            mChangeCount++;
+            return true;
+        } else {
+            return false;
+        }
+        mSize = target;
+        mChangeCount++;
+        return true;
+    }
+
+    /** Current level, 0 before the first {@link #update}. */
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Largest power-of-two inSampleSize that keeps the shorter side of the image at least the given size.
+     */
+    public static int getSampleSize(int width, int height, int size) {
+        final int shorter = Math.min(width, height);
+        int sampleSize = 1;
+        while (size > 0 && shorter / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /** Number of level changes after the first. */
+    public int getChangeCount() {
+        return mChangeCount;
+    }
+}
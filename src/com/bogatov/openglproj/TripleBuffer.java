@@ -0,0 +1,71 @@
+package com.bogatov.openglproj;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands objects from one producer thread to one consumer thread without locks or allocation. The producer fills
+ * the back object and publishes it; the consumer takes the most recently published one. Neither waits for the
+ * other: the producer always has a free object to fill, and the consumer keeps its current one until a newer one
+ * is published. Frames the consumer did not get to in time are skipped, not queued.
+ *
+ * The slots rotate through a single atomic int holding the index of the middle object and whether it is newer
+ * than what the consumer has.
+ */
+public class TripleBuffer<T> {
+
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4;
+
+    private final T[] mSlots;
+    private final AtomicInteger mMiddle = new AtomicInteger(1);
+
+    /** Owned by the producer. */
+    private int mBack = 0;
+
+    /** Owned by the consumer. */
+    private int mFront = 2;
+    private boolean mHasFront;
+
+    /**
+     * @param slots Exactly three distinct objects.
+     */
+    public TripleBuffer(T[] slots) {
+        if (slots.length != 3) {
+            throw new IllegalArgumentException("A triple buffer needs three slots, got " + slots.length);
+        }
+        mSlots = slots;
+    }
+
+    /** The object to fill; producer thread only. */
+    public T getBack() {
+        return mSlots[mBack];
+    }
+
+    /**
+     * Makes the back object available to the consumer and gives the producer a new back object. Producer thread
+     * only.
+     */
+    public void publish() {
+        mBack = mMiddle.getAndSet(mBack | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Takes the most recently published object if there is one the consumer has not taken yet. Consumer thread
+     * only.
+     *
+     * @return The newest published object, which stays the consumer's until the next call; null if nothing was
+     *         ever published.
+     */
+    public T acquire() {
+        if ((mMiddle.get() & FRESH) != 0) {
+            mFront = mMiddle.getAndSet(mFront) & INDEX_MASK;
+            mHasFront = true;
+        }
+        return mHasFront ? mSlots[mFront] : null;
+    }
+
+    /** Whether an object was published that the consumer has not taken yet. */
+    public boolean hasFresh() {
+        return (mMiddle.get() & FRESH) != 0;
+    }
+}
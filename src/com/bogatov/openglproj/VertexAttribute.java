@@ -0,0 +1,93 @@
+package com.bogatov.openglproj;
+
+import android.opengl.GLES20;
+
+/**
+ * One attribute of an interleaved vertex: how many components it has and how each one is stored.
+ */
+public class VertexAttribute {
+
+    /** GL_HALF_FLOAT_OES, needs the OES_vertex_half_float extension. */
+    public static final int GL_HALF_FLOAT_OES = 0x8D61;
+
+    private final String mName;
+    private final int mComponents;
+    private final int mType;
+    private final boolean mNormalized;
+
+    public VertexAttribute(String name, int components, int type, boolean normalized) {
+        if (components < 1 || components > 4) {
+            throw new IllegalArgumentException("Attribute " + name + " must have 1 to 4 components, not " + components);
+        }
+        mName = name;
+        mComponents = components;
+        mType = type;
+        mNormalized = normalized;
+        getComponentSize(type);
+    }
+
+    public static VertexAttribute floats(String name, int components) {
+        return new VertexAttribute(name, components, GLES20.GL_FLOAT, false);
+    }
+
+    public static VertexAttribute halfFloats(String name, int components) {
+        return new VertexAttribute(name, components, GL_HALF_FLOAT_OES, false);
+    }
+
+    /** Values in [0, 1] stored as unsigned shorts, e.g. texture coordinates. */
+    public static VertexAttribute normalizedUnsignedShorts(String name, int components) {
+        return new VertexAttribute(name, components, GLES20.GL_UNSIGNED_SHORT, true);
+    }
+
+    /** Values in [-1, 1] stored as signed shorts. */
+    public static VertexAttribute normalizedShorts(String name, int components) {
+        return new VertexAttribute(name, components, GLES20.GL_SHORT, true);
+    }
+
+    /** Values in [0, 1] stored as unsigned bytes, e.g. RGBA colors. */
+    public static VertexAttribute normalizedUnsignedBytes(String name, int components) {
+        return new VertexAttribute(name, components, GLES20.GL_UNSIGNED_BYTE, true);
+    }
+
+    /** Values in [-1, 1] stored as signed bytes, e.g. normals. */
+    public static VertexAttribute normalizedBytes(String name, int components) {
+        return new VertexAttribute(name, components, GLES20.GL_BYTE, true);
+    }
+
+    public static int getComponentSize(int type) {
+        switch (type) {
+        case GLES20.GL_FLOAT:
+            return 4;
+        case GL_HALF_FLOAT_OES:
+        case GLES20.GL_SHORT:
+        case GLES20.GL_UNSIGNED_SHORT:
+            return 2;
+        case GLES20.GL_BYTE:
+        case GLES20.GL_UNSIGNED_BYTE:
+            return 1;
+        default:
+            throw new IllegalArgumentException("Unsupported attribute type: " + type);
+        }
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getComponents() {
+        return mComponents;
+    }
+
+    public int getType() {
+        return mType;
+    }
+
+    public boolean isNormalized() {
+        return mNormalized;
+    }
+
+    /** Size of the attribute in bytes, without padding. */
+    public int getSize() {
+        return mComponents * getComponentSize(mType);
+    }
+}
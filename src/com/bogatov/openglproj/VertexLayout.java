@@ -0,0 +1,74 @@
+package com.bogatov.openglproj;
+
+/**
+ * Describes an interleaved vertex. Every attribute starts on a 4 byte boundary, which is what
+ * GLES drivers expect for fast attribute fetch, and the stride is padded the same way.
+ */
+public class VertexLayout {
+
+    private static final int ALIGNMENT = 4;
+
+    private final VertexAttribute[] mAttributes;
+    private final int[] mOffsets;
+    private final int mStride;
+
+    public VertexLayout(VertexAttribute... attributes) {
+        if (attributes.length == 0) {
+            throw new IllegalArgumentException("A vertex layout needs at least one attribute");
+        }
+        mAttributes = attributes.clone();
+        mOffsets = new int[attributes.length];
+
+        int offset = 0;
+        for (int i = 0; i < mAttributes.length; i++) {
+            mOffsets[i] = offset;
+            offset = align(offset + mAttributes[i].getSize());
+        }
+        mStride = offset;
+    }
+
+    private static int align(int bytes) {
+        return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    public int getAttributeCount() {
+        return mAttributes.length;
+    }
+
+    public VertexAttribute getAttribute(int index) {
+        return mAttributes[index];
+    }
+
+    /** Byte offset of the attribute from the start of the vertex. */
+    public int getOffset(int index) {
+        return mOffsets[index];
+    }
+
+    public int indexOf(String name) {
+        for (int i = 0; i < mAttributes.length; i++) {
+            if (mAttributes[i].getName().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Bytes per vertex, including padding. */
+    public int getStride() {
+        return mStride;
+    }
+
+    /** Bytes per vertex if every component were stored as a float, as the separate FloatBuffers did. */
+    public int getFloatStride() {
+        int components = 0;
+        for (VertexAttribute attribute : mAttributes) {
+            components += attribute.getComponents();
+        }
+        return components * 4;
+    }
+
+    /** How many bytes this layout saves over float-only storage for the given number of vertices. */
+    public int getSavedBytes(int vertexCount) {
+        return (getFloatStride() - mStride) * vertexCount;
+    }
+}
@@ -0,0 +1,144 @@
+package com.bogatov.openglproj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import junit.framework.TestCase;
+
+import android.graphics.Bitmap;
+
+public class AsyncTextureLoaderTest extends TestCase {
+
+    /** Resource ids the fake decoder fails on, and how. */
+    private static final int RESOURCE_NULL = 1;
+    private static final int RESOURCE_THROWS = 2;
+    private static final int RESOURCE_OUT_OF_MEMORY = 3;
+    private static final int RESOURCE_OK = 4;
+
+    /** Decodes are run by the test, one at a time. */
+    private final List<Runnable> mQueued = new ArrayList<Runnable>();
+    private final List<Integer> mUploaded = new ArrayList<Integer>();
+    private final List<Integer> mDecoded = new ArrayList<Integer>();
+    private int mNextHandle = 1;
+    private AsyncTextureLoader mLoader;
+
+    @Override
+    protected void setUp() {
+        mLoader = new AsyncTextureLoader(new AsyncTextureLoader.IDecoder() {
+            @Override
+            public Bitmap decode(int resourceId, int size) {
+                switch (resourceId) {
+                case RESOURCE_NULL:
+                    return null;
+                case RESOURCE_THROWS:
+                    throw new IllegalStateException("Corrupt image");
+                case RESOURCE_OUT_OF_MEMORY:
+                    throw new OutOfMemoryError("Bitmap too large");
+                default:
+                    return Bitmap.createBitmap(4, 4, Bitmap.Config.ARGB_8888);
+                }
+            }
+        }, new AsyncTextureLoader.IUploader() {
+            @Override
+            public int createPlaceholder() {
+                return mNextHandle++;
+            }
+
+            @Override
+            public void upload(int textureHandle, Bitmap bitmap) {
+                mUploaded.add(textureHandle);
+            }
+        }, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mQueued.add(command);
+            }
+        });
+        mLoader.setDecodeListener(new AsyncTextureLoader.IDecodeListener() {
+            @Override
+            public void onTextureDecoded(int textureHandle) {
+                mDecoded.add(textureHandle);
+            }
+        });
+    }
+
+    private void runDecodes() {
+        while (!mQueued.isEmpty()) {
+            mQueued.remove(0).run();
+        }
+    }
+
+    public void testLoadUploadsIntoPlaceholder() {
+        final int handle = mLoader.load(RESOURCE_OK);
+        assertTrue(mLoader.isLoading(handle));
+        runDecodes();
+        assertTrue(mLoader.isLoading(handle));
+        assertEquals(1, mLoader.processUploads(0, 0));
+        assertFalse(mLoader.isLoading(handle));
+        assertFalse(mLoader.isFailed(handle));
+        assertEquals(handle, (int) mUploaded.get(0));
+        assertTrue(mLoader.isIdle());
+    }
+
+    private void assertFails(int resourceId) {
+        final int handle = mLoader.load(resourceId);
+        runDecodes();
+        assertFalse(mLoader.isLoading(handle));
+        assertTrue(mLoader.isFailed(handle));
+        assertTrue(mDecoded.contains(handle));
+        assertEquals(0, mLoader.processUploads(0, 0));
+        assertTrue(mLoader.isIdle());
+    }
+
+    public void testNullDecodeFails() {
+        assertFails(RESOURCE_NULL);
+    }
+
+    public void testThrowingDecodeFails() {
+        assertFails(RESOURCE_THROWS);
+    }
+
+    public void testOutOfMemoryDecodeFails() {
+        assertFails(RESOURCE_OUT_OF_MEMORY);
+        assertEquals(1, mLoader.getFailedCount());
+    }
+
+    public void testCancelledLoadIsNotUploaded() {
+        final int handle = mLoader.load(RESOURCE_OK);
+        assertTrue(mLoader.cancel(handle));
+        assertFalse(mLoader.cancel(handle));
+        runDecodes();
+        assertEquals(0, mLoader.processUploads(0, 0));
+        assertFalse(mLoader.isLoading(handle));
+        assertFalse(mLoader.isFailed(handle));
+    }
+
+    public void testCancelAfterDecodeDropsUpload() {
+        final int handle = mLoader.load(RESOURCE_OK);
+        runDecodes();
+        assertTrue(mLoader.cancel(handle));
+        assertEquals(0, mLoader.processUploads(0, 0));
+        assertTrue(mUploaded.isEmpty());
+    }
+
+    public void testByteBudgetStillUploadsOne() {
+        mLoader.load(RESOURCE_OK);
+        mLoader.load(RESOURCE_OK);
+        runDecodes();
+        assertEquals(1, mLoader.processUploads(1, 0));
+        assertEquals(1, mLoader.processUploads(1, 0));
+        assertEquals(2, mLoader.getUploadedCount());
+    }
+
+    public void testCancelAllDropsEverything() {
+        final int failed = mLoader.load(RESOURCE_NULL);
+        runDecodes();
+        final int queued = mLoader.load(RESOURCE_OK);
+        mLoader.cancelAll();
+        runDecodes();
+        assertEquals(0, mLoader.processUploads(0, 0));
+        assertFalse(mLoader.isLoading(queued));
+        assertFalse(mLoader.isFailed(failed));
+    }
+}
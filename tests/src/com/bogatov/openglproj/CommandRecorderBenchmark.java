@@ -0,0 +1,124 @@
+package com.bogatov.openglproj;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+/**
+ * Measures how recording a grid's per-cell draws with {@link CommandRecorder} scales with the number of parts, the
+ * way {@link GridViewRenderer} records and then replays within one frame. Replay goes to a GL that does nothing
+ * but count draws. Results go to the log; the assertions only catch regressions far outside noise.
+ */
+public class CommandRecorderBenchmark extends TestCase {
+
+    private static final String TAG = CommandRecorderBenchmark.class.getSimpleName();
+
+    private static final int CELLS = 10000;
+    private static final int FRAMES = 50;
+
+    private final float[] mMatrices = new float[16 * CELLS];
+    private volatile int mParts;
+    private int mDraws;
+
+    private final IGL mGL = (IGL) Proxy.newProxyInstance(IGL.class.getClassLoader(), new Class<?>[] {IGL.class},
+            new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getName().equals("glDrawArrays")) {
+                mDraws++;
+            }
+            return null;
+        }
+    });
+
+    /** Records a slice of the cells per part, as GridViewRenderer's cell recorder does. */
+    private final CommandRecorder.IRecorder mRecorder = new CommandRecorder.IRecorder() {
+        @Override
+        public void record(int part, CommandList list) {
+            final int parts = mParts;
+            final int end = (int) ((long) CELLS * (part + 1) / parts);
+            for (int i = (int) ((long) CELLS * part / parts); i < end; i++) {
+                list.bindTexture(GLES20.GL_TEXTURE_2D, 1 + (i & 63));
+                list.uniformMatrix4(1, mMatrices, 16 * i);
+                list.uniformMatrix4(2, mMatrices, 16 * i);
+                list.drawArrays(GLES20.GL_TRIANGLES, 0, 36);
+            }
+        }
+    };
+
+    /** @return Average nanoseconds to record a frame. */
+    private long recordFrames(CommandRecorder recorder) {
+        long nanos = 0;
+        for (int frame = 0; frame < 2 * FRAMES; frame++) {
+            final long start = System.nanoTime();
+            recorder.record(mRecorder);
+            // The first half warms up.
+            if (frame >= FRAMES) {
+                nanos += System.nanoTime() - start;
+            }
+            recorder.replay(mGL);
+        }
+        return nanos / FRAMES;
+    }
+
+    public void testRecordingScalesWithParts() {
+        final int cores = Runtime.getRuntime().availableProcessors();
+        long single = 0;
+        for (int parts = 1; parts <= Math.max(4, cores); parts <<= 1) {
+            final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parts - 1));
+            try {
+                mParts = parts;
+                mDraws = 0;
+                final CommandRecorder recorder = new CommandRecorder(parts, executor);
+                final long nanos = recordFrames(recorder);
+                assertEquals(2 * FRAMES * CELLS, mDraws);
+                assertEquals(2 * FRAMES, recorder.getReplayedCount());
+
+                if (parts == 1) {
+                    single = nanos;
+                }
+                Log.i(TAG, CELLS + " cells in " + parts + " parts on " + cores + " cores: " + nanos / 1000
+                        + " us per frame, " + (float) single / nanos + "x of one part");
+                // Extra parts may not pay off on few cores, but handing them out must stay cheap.
+                assertTrue("Recording in " + parts + " parts took " + nanos + " ns", nanos < 3 * single + 1000000);
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    public void testForkJoinOverhead() {
+        // With almost nothing to record, the time is what a frame pays to hand out parts and wait for them.
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final CommandRecorder recorder = new CommandRecorder(4, executor);
+            final CommandRecorder.IRecorder empty = new CommandRecorder.IRecorder() {
+                @Override
+                public void record(int part, CommandList list) {
+                    list.drawArrays(GLES20.GL_TRIANGLES, 0, 36);
+                }
+            };
+            long nanos = 0;
+            for (int frame = 0; frame < 2000; frame++) {
+                final long start = System.nanoTime();
+                recorder.record(empty);
+                if (frame >= 1000) {
+                    nanos += System.nanoTime() - start;
+                }
+            }
+            final long nanosPerFrame = nanos / 1000;
+            Log.i(TAG, "Fork and join of 4 parts: " + nanosPerFrame / 1000 + " us");
+            // A small part of a 16 ms frame.
+            assertTrue("Fork and join took " + nanosPerFrame + " ns", nanosPerFrame < 2000000);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.bogatov.openglproj;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import junit.framework.TestCase;
+
+/**
+ * Parses the sample containers next to this class. Level data in them is filler, but the first byte of each level
+ * is distinct: 11 for the PKM image, and 22, 33, 44, ... for the KTX levels.
+ */
+public class CompressedTextureTest extends TestCase {
+
+    private ByteBuffer read(String name) throws IOException {
+        final InputStream in = getClass().getResourceAsStream(name);
+        assertNotNull(name, in);
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[256];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+            return ByteBuffer.wrap(out.toByteArray());
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void assertRejected(ByteBuffer data) {
+        try {
+            CompressedTexture.parse(data);
+            fail();
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+
+    public void testParsesPkm() throws IOException {
+        final CompressedTexture texture = CompressedTexture.parse(read("sample_etc1.pkm"));
+        assertEquals(CompressedTexture.GL_ETC1_RGB8_OES, texture.getInternalFormat());
+        // The original size, not the padded one.
+        assertEquals(14, texture.getWidth());
+        assertEquals(6, texture.getHeight());
+        assertEquals(1, texture.getLevelCount());
+        assertEquals(4 * 2 * 8, texture.getLevelData(0).remaining());
+        assertEquals(11, texture.getLevelData(0).get(0));
+        assertFalse(texture.hasCompleteMipChain());
+    }
+
+    public void testParsesMipmappedKtx() throws IOException {
+        final CompressedTexture texture = CompressedTexture.parse(read("sample_etc1_mipmapped.ktx"));
+        assertEquals(CompressedTexture.GL_ETC1_RGB8_OES, texture.getInternalFormat());
+        assertEquals(8, texture.getWidth());
+        assertEquals(8, texture.getHeight());
+        assertEquals(4, texture.getLevelCount());
+        assertTrue(texture.hasCompleteMipChain());
+
+        // Levels below 4x4 still take a whole block.
+        final int[] sizes = {32, 8, 8, 8};
+        final int[] dimensions = {8, 4, 2, 1};
+        long total = 0;
+        for (int level = 0; level < 4; level++) {
+            assertEquals(dimensions[level], texture.getLevelWidth(level));
+            assertEquals(dimensions[level], texture.getLevelHeight(level));
+            final ByteBuffer data = texture.getLevelData(level);
+            assertEquals(sizes[level], data.remaining());
+            assertEquals(11 * (level + 2), data.get(0));
+            total += sizes[level];
+        }
+        assertEquals(total, texture.getByteCount());
+    }
+
+    public void testParsesBigEndianKtx() throws IOException {
+        final CompressedTexture texture = CompressedTexture.parse(read("sample_etc1_big_endian.ktx"));
+        assertEquals(CompressedTexture.GL_ETC1_RGB8_OES, texture.getInternalFormat());
+        assertEquals(8, texture.getWidth());
+        assertEquals(4, texture.getHeight());
+        assertEquals(1, texture.getLevelCount());
+        assertEquals(16, texture.getLevelData(0).remaining());
+        assertEquals(22, texture.getLevelData(0).get(0));
+        assertFalse(texture.hasCompleteMipChain());
+    }
+
+    public void testParsesFromBufferPosition() throws IOException {
+        final ByteBuffer sample = read("sample_etc1.pkm");
+        final ByteBuffer data = ByteBuffer.allocate(sample.remaining() + 5);
+        data.position(5);
+        data.put(sample);
+        data.position(5);
+        final CompressedTexture texture = CompressedTexture.parse(data);
+        assertEquals(14, texture.getWidth());
+        assertEquals(11, texture.getLevelData(0).get(0));
+        // Parsing leaves the caller's buffer alone.
+        assertEquals(5, data.position());
+    }
+
+    public void testRejectsPkmOfOtherFormatsAndVersions() throws IOException {
+        final ByteBuffer etc2 = read("sample_etc1.pkm");
+        etc2.put(4, (byte) '2').putShort(6, (short) 1);
+        assertRejected(etc2);
+
+        final ByteBuffer version = read("sample_etc1.pkm");
+        version.put(4, (byte) '3');
+        assertRejected(version);
+
+        // Version 2.0 is fine as long as it holds ETC1.
+        final ByteBuffer etc1 = read("sample_etc1.pkm");
+        etc1.put(4, (byte) '2');
+        assertEquals(14, CompressedTexture.parse(etc1).getWidth());
+    }
+
+    public void testRejectsPkmWithMismatchedPaddedSize() throws IOException {
+        final ByteBuffer data = read("sample_etc1.pkm");
+        data.putShort(8, (short) 20);
+        assertRejected(data);
+    }
+
+    public void testRejectsTruncatedContainers() throws IOException {
+        final ByteBuffer pkm = read("sample_etc1.pkm");
+        pkm.limit(pkm.limit() - 1);
+        assertRejected(pkm);
+
+        final ByteBuffer ktx = read("sample_etc1_mipmapped.ktx");
+        ktx.limit(ktx.limit() - 8);
+        assertRejected(ktx);
+
+        final ByteBuffer header = read("sample_etc1_mipmapped.ktx");
+        header.limit(40);
+        assertRejected(header);
+    }
+
+    public void testRejectsKtxWithWrongLevelSizeOrTooManyLevels() throws IOException {
+        final ByteBuffer size = read("sample_etc1_mipmapped.ktx");
+        // The first level size follows the header and the 16 bytes of key/value data.
+        size.order(ByteOrder.LITTLE_ENDIAN).putInt(64 + 16, 24);
+        assertRejected(size);
+
+        final ByteBuffer levels = read("sample_etc1_mipmapped.ktx");
+        levels.order(ByteOrder.LITTLE_ENDIAN).putInt(56, 5);
+        assertRejected(levels);
+    }
+
+    public void testMipHelpers() {
+        assertEquals(1, CompressedTexture.getMipLevelCount(1, 1));
+        assertEquals(4, CompressedTexture.getMipLevelCount(8, 8));
+        assertEquals(11, CompressedTexture.getMipLevelCount(1024, 3));
+        assertEquals(3, CompressedTexture.getMipLevelCount(7, 5));
+
+        assertEquals(256, CompressedTexture.getMipSize(1024, 2));
+        assertEquals(1, CompressedTexture.getMipSize(3, 2));
+        assertEquals(1, CompressedTexture.getMipSize(1024, 20));
+
+        assertEquals(8, CompressedTexture.getEtc1DataSize(1, 1));
+        assertEquals(8, CompressedTexture.getEtc1DataSize(4, 4));
+        assertEquals(4 * 2 * 8, CompressedTexture.getEtc1DataSize(14, 6));
+        assertEquals(256 * 256 * 8, CompressedTexture.getEtc1DataSize(1024, 1024));
+    }
+}
@@ -0,0 +1,104 @@
+package com.bogatov.openglproj;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import junit.framework.TestCase;
+
+import android.util.Log;
+
+/**
+ * Times getting a native-order float buffer from {@link DirectBufferPool} and releasing it, against calling
+ * ByteBuffer.allocateDirect each time, for a cell's quad up to a whole grid's vertex data. Results go to the log;
+ * the assertions only catch regressions far outside noise.
+ */
+public class DirectBufferPoolBenchmark extends TestCase {
+
+    private static final String TAG = DirectBufferPoolBenchmark.class.getSimpleName();
+
+    /** Bytes requested per measurement, spread over rounds for small buffers. */
+    private static final long WORK = 256L * 1024 * 1024;
+
+    private static final int MAX_ROUNDS = 100000;
+
+    /** Keeps the results from being optimized away. */
+    private float mChecksum;
+
+    private static int getRounds(int floats) {
+        return (int) Math.min(MAX_ROUNDS, Math.max(10, WORK / (4L * floats)));
+    }
+
+    /** @return Nanoseconds per buffer. */
+    private long timePool(DirectBufferPool pool, int floats) {
+        final int rounds = getRounds(floats);
+        final long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            final FloatBuffer buffer = pool.allocateFloats(floats);
+            buffer.put(0, round);
+            mChecksum += buffer.get(floats - 1);
+            pool.release(buffer);
+        }
+        return (System.nanoTime() - start) / rounds;
+    }
+
+    /** @return Nanoseconds per buffer. */
+    private long timeAllocateDirect(int floats) {
+        final int rounds = getRounds(floats);
+        final long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            final FloatBuffer buffer = ByteBuffer.allocateDirect(floats * 4).order(ByteOrder.nativeOrder())
+                    .asFloatBuffer();
+            buffer.put(0, round);
+            mChecksum += buffer.get(floats - 1);
+        }
+        return (System.nanoTime() - start) / rounds;
+    }
+
+    public void testAllocateAndRelease() {
+        // A quad of position and texture coordinates, a 100-cell batch, and 10,000 cells.
+        final int[] sizes = {20, 2000, 200000};
+        for (int floats : sizes) {
+            final DirectBufferPool pool = new DirectBufferPool();
+            // Warm up, then measure.
+            timePool(pool, floats);
+            final long pooled = timePool(pool, floats);
+            timeAllocateDirect(floats);
+            final long raw = timeAllocateDirect(floats);
+            final String line = floats + " floats: pool " + pooled + " ns, allocateDirect " + raw + " ns";
+            Log.i(TAG, line);
+
+            // Every round after the first reuses the block, so no native memory is claimed or zeroed.
+            assertEquals(1, pool.getAllocationCount() - pool.getReuseCount());
+            assertTrue(line, pooled < raw + 1000);
+        }
+        assertFalse(Float.isNaN(mChecksum));
+    }
+
+    public void testMixedSizes() {
+        // A rebuild of differently sized meshes, released together as on a surface change.
+        final int[] sizes = {20, 36, 120, 600, 2000, 12, 4800, 20};
+        final DirectBufferPool pool = new DirectBufferPool();
+        final FloatBuffer[] buffers = new FloatBuffer[sizes.length];
+        final int rounds = 2000;
+        long nanos = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            final long start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (int i = 0; i < sizes.length; i++) {
+                    buffers[i] = pool.allocateFloats(sizes[i]);
+                }
+                for (int i = 0; i < sizes.length; i++) {
+                    pool.release(buffers[i]);
+                }
+            }
+            nanos = (System.nanoTime() - start) / ((long) rounds * sizes.length);
+        }
+        Log.i(TAG, "Mixed sizes: " + nanos + " ns per buffer, " + pool.getReservedBytes() + " bytes reserved");
+
+        // The first rebuild carves two slabs and every later one reuses their blocks.
+        assertEquals(2 * DirectBufferPool.SLAB_BYTES, pool.getReservedBytes());
+        assertEquals(2 * rounds * sizes.length - sizes.length, pool.getReuseCount());
+        assertTrue(Long.toString(nanos), nanos < 5000);
+    }
+}
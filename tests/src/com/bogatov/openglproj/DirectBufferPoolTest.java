@@ -0,0 +1,189 @@
+package com.bogatov.openglproj;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import junit.framework.TestCase;
+
+public class DirectBufferPoolTest extends TestCase {
+
+    private final DirectBufferPool mPool = new DirectBufferPool();
+
+    public void testSizeClasses() {
+        assertEquals(0, DirectBufferPool.getSizeClass(0));
+        assertEquals(0, DirectBufferPool.getSizeClass(DirectBufferPool.MIN_BLOCK_BYTES));
+        assertEquals(1, DirectBufferPool.getSizeClass(DirectBufferPool.MIN_BLOCK_BYTES + 1));
+        assertEquals(1, DirectBufferPool.getSizeClass(128));
+        assertEquals(2, DirectBufferPool.getSizeClass(129));
+        assertEquals(10, DirectBufferPool.getSizeClass(DirectBufferPool.SLAB_BYTES));
+        assertEquals(16, DirectBufferPool.getSizeClass(DirectBufferPool.MAX_POOLED_BYTES));
+    }
+
+    public void testBuffersHaveTheRequestedShape() {
+        final ByteBuffer bytes = mPool.allocate(100);
+        assertTrue(bytes.isDirect());
+        assertEquals(100, bytes.capacity());
+        assertEquals(0, bytes.position());
+        assertEquals(ByteOrder.nativeOrder(), bytes.order());
+
+        final FloatBuffer floats = mPool.allocateFloats(10);
+        assertTrue(floats.isDirect());
+        assertEquals(10, floats.capacity());
+        assertEquals(ByteOrder.nativeOrder(), floats.order());
+
+        final ShortBuffer shorts = mPool.allocateShorts(7);
+        assertEquals(7, shorts.capacity());
+        assertEquals(ByteOrder.nativeOrder(), shorts.order());
+
+        // Used bytes count whole size classes.
+        assertEquals(128 + 64 + 64, mPool.getUsedBytes());
+        assertEquals(3, mPool.getInUseCount());
+        assertEquals(0, mPool.allocate(0).capacity());
+    }
+
+    public void testRejectsNegativeSizes() {
+        try {
+            mPool.allocate(-1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        assertEquals(0, mPool.getInUseCount());
+    }
+
+    public void testSmallBlocksShareASlab() {
+        for (int i = 0; i < DirectBufferPool.SLAB_BYTES / 1024; i++) {
+            mPool.allocate(1000);
+        }
+        assertEquals(DirectBufferPool.SLAB_BYTES, mPool.getReservedBytes());
+        mPool.allocate(1);
+        assertEquals(2 * DirectBufferPool.SLAB_BYTES, mPool.getReservedBytes());
+        // A slab-sized block gets memory of its own.
+        mPool.allocate(DirectBufferPool.SLAB_BYTES);
+        assertEquals(3 * DirectBufferPool.SLAB_BYTES, mPool.getReservedBytes());
+    }
+
+    public void testCarvedBlocksAreAlignedToTheirSize() {
+        mPool.allocate(64);
+        // Starts at half the slab rather than right after the first block, so the slab is then full.
+        mPool.allocate(DirectBufferPool.SLAB_BYTES / 2);
+        assertEquals(DirectBufferPool.SLAB_BYTES, mPool.getReservedBytes());
+        mPool.allocate(64);
+        assertEquals(2 * DirectBufferPool.SLAB_BYTES, mPool.getReservedBytes());
+    }
+
+    public void testCarvedBlocksDoNotOverlap() {
+        final int[] sizes = {4, 64, 65, 300, 64, 2000, 8, 4096, 100};
+        final ByteBuffer[] buffers = new ByteBuffer[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            buffers[i] = mPool.allocate(sizes[i]);
+            while (buffers[i].hasRemaining()) {
+                buffers[i].put((byte) i);
+            }
+        }
+        for (int i = 0; i < sizes.length; i++) {
+            for (int j = 0; j < sizes[i]; j++) {
+                assertEquals(i, buffers[i].get(j));
+            }
+        }
+    }
+
+    public void testReleasedBlocksAreReused() {
+        final FloatBuffer floats = mPool.allocateFloats(100);
+        final long reserved = mPool.getReservedBytes();
+        mPool.release(floats);
+        assertEquals(0, mPool.getUsedBytes());
+        assertEquals(0, mPool.getInUseCount());
+
+        // Any request of the same class takes the block back, whatever its view type.
+        final ByteBuffer bytes = mPool.allocate(300);
+        assertEquals(1, mPool.getReuseCount());
+        assertEquals(2, mPool.getAllocationCount());
+        assertEquals(reserved, mPool.getReservedBytes());
+        assertEquals(512, mPool.getUsedBytes());
+        mPool.release(bytes);
+
+        // Other classes do not.
+        mPool.allocate(100);
+        assertEquals(1, mPool.getReuseCount());
+        assertEquals(512, mPool.getPeakUsedBytes());
+    }
+
+    public void testRejectsForeignAndReleasedBuffers() {
+        final ShortBuffer shorts = mPool.allocateShorts(10);
+        mPool.release(shorts);
+        try {
+            mPool.release(shorts);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        try {
+            mPool.release(ByteBuffer.allocateDirect(16));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        // A view of a pooled buffer is not the buffer that was handed out.
+        final ByteBuffer bytes = mPool.allocate(16);
+        try {
+            mPool.release(bytes.asFloatBuffer());
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        mPool.release(null);
+        assertEquals(1, mPool.getInUseCount());
+    }
+
+    public void testTrimAndOversizedBlocks() {
+        final ByteBuffer small = mPool.allocate(1000);
+        final ByteBuffer large = mPool.allocate(DirectBufferPool.SLAB_BYTES * 2);
+        final ByteBuffer huge = mPool.allocate(DirectBufferPool.MAX_POOLED_BYTES + 1);
+        final long reserved = DirectBufferPool.SLAB_BYTES * 3L + 2 * DirectBufferPool.MAX_POOLED_BYTES;
+        assertEquals(reserved, mPool.getReservedBytes());
+
+        // Blocks too large to pool go straight back to the GC.
+        mPool.release(huge);
+        assertEquals(reserved - 2 * DirectBufferPool.MAX_POOLED_BYTES, mPool.getReservedBytes());
+
+        // Trimming lets go of free blocks that own their memory, but not of carved ones.
+        mPool.release(large);
+        mPool.release(small);
+        mPool.trim();
+        assertEquals(DirectBufferPool.SLAB_BYTES, mPool.getReservedBytes());
+        assertEquals(0, mPool.getUsedBytes());
+        assertEquals(1024 + DirectBufferPool.SLAB_BYTES * 2L + 2 * DirectBufferPool.MAX_POOLED_BYTES,
+                mPool.getPeakUsedBytes());
+
+        mPool.allocate(DirectBufferPool.SLAB_BYTES * 2);
+        mPool.allocate(1000);
+        assertEquals(1, mPool.getReuseCount());
+    }
+
+    public void testConcurrentUse() throws InterruptedException {
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 2000; i++) {
+                        final FloatBuffer buffer = mPool.allocateFloats(1 + (i * 31 + seed) % 500);
+                        buffer.put(0, seed);
+                        mPool.release(buffer);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, mPool.getInUseCount());
+        assertEquals(0, mPool.getUsedBytes());
+        assertEquals(8000, mPool.getAllocationCount());
+    }
+}
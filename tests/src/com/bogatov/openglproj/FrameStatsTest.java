@@ -0,0 +1,199 @@
+package com.bogatov.openglproj;
+
+import junit.framework.TestCase;
+
+public class FrameStatsTest extends TestCase {
+
+    private long mNow;
+    private final RenderScheduler.IClock mClock = new RenderScheduler.IClock() {
+        @Override
+        public long nanoTime() {
+            return mNow;
+        }
+    };
+
+    /** Reports frame n's GPU time, n * 1000, two frames late. */
+    private static class FakeGpuTimer implements FrameStats.IGpuTimer {
+        int begun;
+        int ended;
+
+        @Override
+        public void begin() {
+            begun++;
+        }
+
+        @Override
+        public void end() {
+            ended++;
+        }
+
+        @Override
+        public long poll() {
+            return ended >= 2 ? (ended - 1) * 1000L : -1;
+        }
+    }
+
+    /** Records a frame taking the given CPU time, with one draw call of that many vertices. */
+    private void frame(FrameStats stats, long nanos) {
+        stats.beginFrame();
+        mNow += nanos;
+        stats.recordDrawCall((int) nanos);
+        stats.endFrame();
+    }
+
+    public void testRecordsMetricsOfAFrame() {
+        final FrameStats stats = new FrameStats(8, mClock);
+        stats.beginFrame();
+        mNow += 5000;
+        stats.recordDrawCall(36);
+        stats.recordDrawCall(6);
+        stats.recordStateChange();
+        stats.recordUpload(1024);
+        stats.recordUpload(512);
+        stats.endFrame();
+
+        assertEquals(1, stats.getFrameCount());
+        assertEquals(5000, stats.getSample(FrameStats.METRIC_CPU_NANOS, 0));
+        assertEquals(-1, stats.getSample(FrameStats.METRIC_GPU_NANOS, 0));
+        assertEquals(2, stats.getSample(FrameStats.METRIC_DRAW_CALLS, 0));
+        assertEquals(1, stats.getSample(FrameStats.METRIC_STATE_CHANGES, 0));
+        assertEquals(42, stats.getSample(FrameStats.METRIC_VERTICES, 0));
+        assertEquals(1536, stats.getSample(FrameStats.METRIC_UPLOAD_BYTES, 0));
+
+        // The next frame starts from zero.
+        frame(stats, 10);
+        assertEquals(1, stats.getSample(FrameStats.METRIC_DRAW_CALLS, 0));
+        assertEquals(0, stats.getSample(FrameStats.METRIC_UPLOAD_BYTES, 0));
+        assertEquals(2, stats.getSample(FrameStats.METRIC_DRAW_CALLS, 1));
+    }
+
+    public void testEndWithoutBeginIsIgnored() {
+        final FrameStats stats = new FrameStats(8, mClock);
+        stats.endFrame();
+        assertEquals(0, stats.getFrameCount());
+        frame(stats, 10);
+        stats.endFrame();
+        assertEquals(1, stats.getFrameCount());
+    }
+
+    public void testRingWrapsAround() {
+        final FrameStats stats = new FrameStats(4, mClock);
+        for (int i = 1; i <= 10; i++) {
+            frame(stats, i);
+        }
+        assertEquals(10, stats.getFrameCount());
+        assertEquals(4, stats.getWindowSize());
+        for (int framesAgo = 0; framesAgo < 4; framesAgo++) {
+            assertEquals(10 - framesAgo, stats.getSample(FrameStats.METRIC_CPU_NANOS, framesAgo));
+        }
+        // Outside the window.
+        assertEquals(0, stats.getSample(FrameStats.METRIC_CPU_NANOS, 4));
+        assertEquals(0, stats.getSample(FrameStats.METRIC_CPU_NANOS, -1));
+
+        final Histogram histogram = new Histogram();
+        stats.fillHistogram(FrameStats.METRIC_CPU_NANOS, histogram);
+        assertEquals(4, histogram.getCount());
+        assertEquals(7, histogram.getMin());
+        assertEquals(10, histogram.getMax());
+        assertEquals(10, stats.getPercentile(FrameStats.METRIC_CPU_NANOS, 100));
+        assertEquals(8, stats.getPercentile(FrameStats.METRIC_CPU_NANOS, 50));
+    }
+
+    public void testWindowBeforeItFills() {
+        final FrameStats stats = new FrameStats(4, mClock);
+        assertEquals(0, stats.getWindowSize());
+        assertEquals(0, stats.getPercentile(FrameStats.METRIC_CPU_NANOS, 50));
+        frame(stats, 3);
+        frame(stats, 5);
+        assertEquals(2, stats.getWindowSize());
+        assertEquals(0, stats.getSample(FrameStats.METRIC_CPU_NANOS, 2));
+        assertEquals(3, stats.getPercentile(FrameStats.METRIC_CPU_NANOS, 50));
+    }
+
+    public void testGpuTimeComesFromTheTimer() {
+        final FrameStats stats = new FrameStats(8, mClock);
+        frame(stats, 10);
+        assertEquals(-1, stats.getPercentile(FrameStats.METRIC_GPU_NANOS, 50));
+
+        final FakeGpuTimer timer = new FakeGpuTimer();
+        stats.setGpuTimer(timer);
+        frame(stats, 10);
+        frame(stats, 10);
+        assertEquals(-1, stats.getSample(FrameStats.METRIC_GPU_NANOS, 0));
+        assertEquals(2, timer.begun);
+        assertEquals(2, timer.ended);
+
+        // From now on each frame carries the latest result the timer had.
+        frame(stats, 10);
+        assertEquals(1000, stats.getSample(FrameStats.METRIC_GPU_NANOS, 0));
+        frame(stats, 10);
+        assertEquals(2000, stats.getSample(FrameStats.METRIC_GPU_NANOS, 0));
+
+        // Frames without a GPU time are left out of the percentiles.
+        assertEquals(Histogram.getBucketLimit(Histogram.getBucket(1000)),
+                stats.getPercentile(FrameStats.METRIC_GPU_NANOS, 0));
+        assertEquals(2000, stats.getPercentile(FrameStats.METRIC_GPU_NANOS, 100));
+    }
+
+    public void testClear() {
+        final FrameStats stats = new FrameStats(4, mClock);
+        frame(stats, 3);
+        stats.beginFrame();
+        stats.clear();
+        stats.endFrame();
+        assertEquals(0, stats.getFrameCount());
+        assertEquals(0, stats.getSample(FrameStats.METRIC_CPU_NANOS, 0));
+    }
+
+    public void testRejectsEmptyWindow() {
+        try {
+            new FrameStats(0, mClock);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    public void testReaderRacingEndFrame() throws InterruptedException {
+        // Every frame records its own number as its upload bytes, and up to 7 draw calls.
+        final FrameStats stats = new FrameStats(64, mClock);
+        final int frames = 200000;
+        final Thread writer = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < frames; i++) {
+                    stats.beginFrame();
+                    for (int call = 0; call < i % 8; call++) {
+                        stats.recordDrawCall(0);
+                    }
+                    stats.recordUpload(i);
+                    stats.endFrame();
+                }
+            }
+        };
+        writer.start();
+
+        final Histogram histogram = new Histogram();
+        int reads = 0;
+        while (writer.isAlive() || reads == 0) {
+            final int before = stats.getFrameCount();
+            final long newest = stats.getSample(FrameStats.METRIC_UPLOAD_BYTES, 0);
+            final int after = stats.getFrameCount();
+            if (before > 0) {
+                // The newest frame published, or one the writer went on to record into the same slot.
+                assertTrue(newest + " read between frames " + before + " and " + after, newest >= before - 1);
+                assertTrue(newest + " read between frames " + before + " and " + after, newest <= after);
+            }
+
+            histogram.clear();
+            stats.fillHistogram(FrameStats.METRIC_DRAW_CALLS, histogram);
+            assertTrue(histogram.getCount() <= 64);
+            assertTrue(histogram.getMax() < 8);
+            assertTrue(stats.getPercentile(FrameStats.METRIC_DRAW_CALLS, 99) < 8);
+            reads++;
+        }
+        writer.join();
+        assertEquals(frames, stats.getFrameCount());
+        assertEquals(frames - 1, stats.getSample(FrameStats.METRIC_UPLOAD_BYTES, 0));
+    }
+}
@@ -0,0 +1,99 @@
+package com.bogatov.openglproj;
+
+import junit.framework.TestCase;
+
+import android.opengl.Matrix;
+
+public class FrustumTest extends TestCase {
+
+    private static final float EPSILON = 1e-5f;
+
+    private final Frustum mFrustum = new Frustum();
+    private final float[] mMatrix = new float[16];
+
+    private void assertPlane(int plane, float a, float b, float c, float d) {
+        final float[] planes = mFrustum.getPlanes();
+        assertEquals(a, planes[4 * plane], EPSILON);
+        assertEquals(b, planes[4 * plane + 1], EPSILON);
+        assertEquals(c, planes[4 * plane + 2], EPSILON);
+        assertEquals(d, planes[4 * plane + 3], EPSILON);
+    }
+
+    public void testExtractsOrthographicPlanes() {
+        Matrix.orthoM(mMatrix, 0, -2, 2, -1, 1, 1, 10);
+        mFrustum.set(mMatrix, 0);
+        assertPlane(Frustum.LEFT, 1, 0, 0, 2);
+        assertPlane(Frustum.RIGHT, -1, 0, 0, 2);
+        assertPlane(Frustum.BOTTOM, 0, 1, 0, 1);
+        assertPlane(Frustum.TOP, 0, -1, 0, 1);
+        // The camera looks down -z.
+        assertPlane(Frustum.NEAR, 0, 0, -1, -1);
+        assertPlane(Frustum.FAR, 0, 0, 1, 10);
+    }
+
+    public void testExtractsNormalizedPerspectivePlanes() {
+        // A 90 degree frustum, offset into a larger matrix array.
+        final float[] matrices = new float[32];
+        Matrix.frustumM(matrices, 16, -1, 1, -1, 1, 1, 10);
+        mFrustum.set(matrices, 16);
+        final float diagonal = (float) Math.sqrt(0.5);
+        assertPlane(Frustum.LEFT, diagonal, 0, -diagonal, 0);
+        assertPlane(Frustum.RIGHT, -diagonal, 0, -diagonal, 0);
+        assertPlane(Frustum.BOTTOM, 0, diagonal, -diagonal, 0);
+        assertPlane(Frustum.TOP, 0, -diagonal, -diagonal, 0);
+        assertPlane(Frustum.NEAR, 0, 0, -1, -1);
+        assertPlane(Frustum.FAR, 0, 0, 1, 10);
+    }
+
+    public void testContainsPoint() {
+        Matrix.frustumM(mMatrix, 0, -1, 1, -1, 1, 1, 10);
+        mFrustum.set(mMatrix, 0);
+        assertTrue(mFrustum.containsPoint(0, 0, -5));
+        assertTrue(mFrustum.containsPoint(4.9f, -4.9f, -5));
+        assertFalse(mFrustum.containsPoint(5.1f, 0, -5));
+        assertFalse(mFrustum.containsPoint(0, 0, -0.5f));
+        assertFalse(mFrustum.containsPoint(0, 0, -10.5f));
+        assertFalse(mFrustum.containsPoint(0, 0, 5));
+    }
+
+    public void testPlanesOfViewProjectionAreInWorldSpace() {
+        final float[] projection = new float[16];
+        final float[] view = new float[16];
+        Matrix.frustumM(projection, 0, -1, 1, -1, 1, 1, 10);
+        Matrix.setLookAtM(view, 0, 0, 0, 5, 0, 0, 0, 0, 1, 0);
+        Matrix.multiplyMM(mMatrix, 0, projection, 0, view, 0);
+        mFrustum.set(mMatrix, 0);
+
+        assertTrue(mFrustum.containsPoint(0, 0, 0));
+        assertTrue(mFrustum.containsPoint(4.5f, 0, 0));
+        assertFalse(mFrustum.containsPoint(0, 0, 4.5f));
+        assertFalse(mFrustum.containsPoint(0, 0, 6));
+        assertPlane(Frustum.NEAR, 0, 0, -1, 4);
+    }
+
+    public void testIntersectsBox() {
+        Matrix.orthoM(mMatrix, 0, -2, 2, -1, 1, 1, 10);
+        mFrustum.set(mMatrix, 0);
+        assertTrue(mFrustum.intersectsBox(-1, -1, -6, 1, 1, -4));
+        // Boxes straddling a plane are visible, boxes wholly outside one are not.
+        assertTrue(mFrustum.intersectsBox(1.5f, 0, -5, 3, 0.5f, -5));
+        assertFalse(mFrustum.intersectsBox(2.1f, 0, -5, 3, 0.5f, -5));
+        assertFalse(mFrustum.intersectsBox(0, 0, -12, 1, 1, -11));
+        // Enclosing the whole frustum.
+        assertTrue(mFrustum.intersectsBox(-100, -100, -100, 100, 100, 100));
+    }
+
+    public void testIntersectsBoxIsConservativeNearCorners() {
+        Matrix.frustumM(mMatrix, 0, -1, 1, -1, 1, 1, 10);
+        mFrustum.set(mMatrix, 0);
+        // Beyond the edge where the right and far planes meet: every point is outside one of them, but no plane
+        // has the whole box outside.
+        final float[] x = {10.5f, 12};
+        final float[] z = {-12, -9};
+        for (int i = 0; i < 4; i++) {
+            assertFalse(mFrustum.containsPoint(x[i & 1], 0, z[i >> 1]));
+        }
+        assertFalse(mFrustum.containsPoint(11, 0, -10));
+        assertTrue(mFrustum.intersectsBox(10.5f, -1, -12, 12, 1, -9));
+    }
+}
@@ -0,0 +1,99 @@
+package com.bogatov.openglproj;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import android.opengl.GLES20;
+
+public class GLStateTest extends TestCase {
+
+    /** Calls that reached the wrapped GL, by method name. */
+    private final Map<String, Integer> mCalls = new HashMap<String, Integer>();
+    private GLState mGL;
+
+    @Override
+    protected void setUp() {
+        final IGL gl = (IGL) Proxy.newProxyInstance(IGL.class.getClassLoader(), new Class<?>[] {IGL.class},
+                new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                final Integer count = mCalls.get(method.getName());
+                mCalls.put(method.getName(), count == null ? 1 : count + 1);
+                return null;
+            }
+        });
+        mGL = new GLState(gl);
+    }
+
+    private int getCalls(String name) {
+        final Integer count = mCalls.get(name);
+        return count == null ? 0 : count;
+    }
+
+    public void testRepeatedStateIsElided() {
+        mGL.glUseProgram(3);
+        mGL.glUseProgram(3);
+        mGL.glEnable(GLES20.GL_DEPTH_TEST);
+        mGL.glEnable(GLES20.GL_DEPTH_TEST);
+        mGL.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 5);
+        mGL.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 5);
+        mGL.glEnableVertexAttribArray(1);
+        mGL.glEnableVertexAttribArray(1);
+
+        assertEquals(1, getCalls("glUseProgram"));
+        assertEquals(1, getCalls("glEnable"));
+        assertEquals(1, getCalls("glBindBuffer"));
+        assertEquals(1, getCalls("glEnableVertexAttribArray"));
+        assertEquals(4, mGL.getElidedCount());
+    }
+
+    public void testTextureBindsNeedKnownUnit() {
+        mGL.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+        mGL.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+        assertEquals(2, getCalls("glBindTexture"));
+
+        mGL.glActiveTexture(GLES20.GL_TEXTURE0);
+        mGL.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+        mGL.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+        mGL.glBindTexture(GLES20.GL_TEXTURE_2D, 8);
+        assertEquals(4, getCalls("glBindTexture"));
+        assertEquals(1, mGL.getElidedCount());
+    }
+
+    public void testTextureBindsAreShadowedPerUnit() {
+        mGL.glActiveTexture(GLES20.GL_TEXTURE0);
+        mGL.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+        mGL.glActiveTexture(GLES20.GL_TEXTURE1);
+        mGL.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+        mGL.glActiveTexture(GLES20.GL_TEXTURE0);
+        mGL.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+        assertEquals(2, getCalls("glBindTexture"));
+    }
+
+    public void testInvalidateTexturesForgetsBindingsOnly() {
+        mGL.glUseProgram(3);
+        mGL.glActiveTexture(GLES20.GL_TEXTURE0);
+        mGL.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+        mGL.invalidateTextures();
+
+        mGL.glUseProgram(3);
+        mGL.glActiveTexture(GLES20.GL_TEXTURE0);
+        mGL.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+        assertEquals(1, getCalls("glUseProgram"));
+        assertEquals(2, getCalls("glActiveTexture"));
+        assertEquals(2, getCalls("glBindTexture"));
+    }
+
+    public void testDeletingBoundTextureBindsZero() {
+        mGL.glActiveTexture(GLES20.GL_TEXTURE0);
+        mGL.glBindTexture(GLES20.GL_TEXTURE_2D, 7);
+        mGL.glDeleteTextures(1, new int[] {7}, 0);
+        mGL.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+        assertEquals(1, getCalls("glBindTexture"));
+    }
+}
@@ -0,0 +1,227 @@
+package com.bogatov.openglproj;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class GpuResourceRegistryTest extends TestCase {
+
+    /** Creations and deletions in order, as "create name", "delete name". */
+    private final List<String> mEvents = new ArrayList<String>();
+
+    /** Texture names of the fake GL's current context; a new context starts over. */
+    private int mNextName = 1;
+    private final List<Integer> mDeleted = new ArrayList<Integer>();
+
+    private final IGL mGL = (IGL) Proxy.newProxyInstance(IGL.class.getClassLoader(), new Class<?>[] {IGL.class},
+            new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getName().equals("glGenTextures")) {
+                ((int[]) args[1])[(Integer) args[2]] = mNextName++;
+            } else if (method.getName().equals("glDeleteTextures")) {
+                mDeleted.add(((int[]) args[1])[(Integer) args[2]]);
+            }
+            return null;
+        }
+    });
+
+    /** Keeps everything up to the visible priority within 100 bytes. */
+    private final GpuResourceRegistry mRegistry = new GpuResourceRegistry(
+            GpuResourceRegistry.retainUpTo(100, GpuResourceRegistry.PRIORITY_VISIBLE));
+
+    /** Creates a texture through the fake GL and offers a string as the copy to keep. */
+    private class FakeRecipe implements GpuResourceRegistry.IRecipe {
+        final String name;
+        final List<Object> createdFrom = new ArrayList<Object>();
+        int refused;
+        long sleepNanos;
+
+        FakeRecipe(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public int create(Object retained) {
+            mEvents.add("create " + name);
+            createdFrom.add(retained);
+            if (sleepNanos > 0) {
+                final long start = System.nanoTime();
+                while (System.nanoTime() - start < sleepNanos) {
+                    // Spin, the way a slow decode would take the time.
+                }
+            }
+            final int[] texture = new int[1];
+            mGL.glGenTextures(1, texture, 0);
+            return texture[0];
+        }
+
+        @Override
+        public Object retain(boolean allowed) {
+            if (!allowed) {
+                refused++;
+                return null;
+            }
+            return "copy of " + name;
+        }
+
+        @Override
+        public void delete(int handle) {
+            mEvents.add("delete " + name);
+            mGL.glDeleteTextures(1, new int[] {handle}, 0);
+        }
+    }
+
+    private FakeRecipe register(String name, int priority, int bytes) {
+        final FakeRecipe recipe = new FakeRecipe(name);
+        mRegistry.register(GpuResourceRegistry.KIND_TEXTURE, name, priority, bytes, recipe);
+        return recipe;
+    }
+
+    private void assertEvents(String... events) {
+        assertEquals(mEvents.toString(), events.length, mEvents.size());
+        for (int i = 0; i < events.length; i++) {
+            assertEquals(events[i], mEvents.get(i));
+        }
+        mEvents.clear();
+    }
+
+    private void loseContext() {
+        mNextName = 1;
+        mRegistry.onContextLost();
+    }
+
+    public void testRestoresInPriorityOrder() {
+        register("background", GpuResourceRegistry.PRIORITY_BACKGROUND, 0);
+        register("visible", GpuResourceRegistry.PRIORITY_VISIBLE, 0);
+        register("first", GpuResourceRegistry.PRIORITY_FIRST_FRAME, 0);
+        register("visible 2", GpuResourceRegistry.PRIORITY_VISIBLE, 0);
+        register("first 2", GpuResourceRegistry.PRIORITY_FIRST_FRAME, 0);
+        assertEquals("first", mRegistry.getResource(0).name);
+        assertEquals("background", mRegistry.getResource(4).name);
+        assertTrue(mEvents.isEmpty());
+
+        // onSurfaceCreated creates only what the first frame needs.
+        assertEquals(2, mRegistry.restore(GpuResourceRegistry.PRIORITY_FIRST_FRAME));
+        assertEvents("create first", "create first 2");
+        assertFalse(mRegistry.isRestored());
+        assertEquals(0, mRegistry.restore(GpuResourceRegistry.PRIORITY_FIRST_FRAME));
+
+        // The frames after it create the rest, most urgent first, registration order within a priority.
+        assertEquals(3, mRegistry.restorePending(0));
+        assertEvents("create visible", "create visible 2", "create background");
+        assertTrue(mRegistry.isRestored());
+        assertEquals(0, mRegistry.restorePending(0));
+
+        for (int i = 0; i < mRegistry.getResourceCount(); i++) {
+            final GpuResourceRegistry.Resource resource = mRegistry.getResource(i);
+            assertTrue(resource.isCreated());
+            assertEquals(i + 1, resource.getHandle());
+        }
+    }
+
+    public void testRestorePendingKeepsToItsBudget() {
+        register("first", GpuResourceRegistry.PRIORITY_FIRST_FRAME, 0);
+        for (int i = 0; i < 3; i++) {
+            register("slow " + i, GpuResourceRegistry.PRIORITY_BACKGROUND, 0).sleepNanos = 2000000L;
+        }
+        mRegistry.restore(GpuResourceRegistry.PRIORITY_FIRST_FRAME);
+        mEvents.clear();
+
+        // Each frame gets at least one resource, however slow, and no more once the budget is used up.
+        assertEquals(1, mRegistry.restorePending(1000000L));
+        assertEvents("create slow 0");
+        assertEquals(1, mRegistry.restorePending(1000000L));
+        assertEquals(1, mRegistry.restorePending(1000000L));
+        assertTrue(mRegistry.isRestored());
+        assertEquals(4, mRegistry.getRestoreCount());
+    }
+
+    public void testContextLossRecreatesEverything() {
+        final FakeRecipe first = register("first", GpuResourceRegistry.PRIORITY_FIRST_FRAME, 60);
+        final FakeRecipe visible = register("visible", GpuResourceRegistry.PRIORITY_VISIBLE, 60);
+        final FakeRecipe background = register("background", GpuResourceRegistry.PRIORITY_BACKGROUND, 10);
+        mRegistry.restorePending(0);
+        mEvents.clear();
+
+        // The first copy fits the budget; the second would not, and background ones are never kept.
+        assertTrue(mRegistry.getResource(0).isRetained());
+        assertFalse(mRegistry.getResource(1).isRetained());
+        assertFalse(mRegistry.getResource(2).isRetained());
+        assertEquals(60, mRegistry.getRetainedBytes());
+        assertEquals(1, visible.refused);
+        assertEquals(1, background.refused);
+
+        loseContext();
+        assertFalse(mRegistry.isRestored());
+        assertEquals(0, mRegistry.getResource(0).getHandle());
+        assertFalse(mRegistry.getResource(2).isCreated());
+        // The old context took its objects with it; nothing is deleted.
+        mRegistry.restore(GpuResourceRegistry.PRIORITY_FIRST_FRAME);
+        mRegistry.restorePending(0);
+        assertEvents("create first", "create visible", "create background");
+        assertTrue(mDeleted.isEmpty());
+
+        assertEquals("copy of first", first.createdFrom.get(1));
+        assertNull(visible.createdFrom.get(1));
+        // A copy is only offered after creating from scratch.
+        assertEquals(0, first.refused);
+        assertEquals(2, visible.refused);
+        assertEquals(2, mRegistry.getResource(0).getCreateCount());
+        assertEquals(6, mRegistry.getRestoreCount());
+    }
+
+    public void testDropCopies() {
+        final FakeRecipe first = register("first", GpuResourceRegistry.PRIORITY_FIRST_FRAME, 60);
+        mRegistry.restore(GpuResourceRegistry.PRIORITY_FIRST_FRAME);
+        mRegistry.dropCopies();
+        assertEquals(0, mRegistry.getRetainedBytes());
+
+        loseContext();
+        mRegistry.restore(GpuResourceRegistry.PRIORITY_FIRST_FRAME);
+        assertNull(first.createdFrom.get(1));
+        // Created from scratch, so the new copy is kept again.
+        assertEquals(60, mRegistry.getRetainedBytes());
+    }
+
+    public void testUnregisterDeletes() {
+        register("first", GpuResourceRegistry.PRIORITY_FIRST_FRAME, 60);
+        register("background", GpuResourceRegistry.PRIORITY_BACKGROUND, 0);
+        mRegistry.restore(GpuResourceRegistry.PRIORITY_FIRST_FRAME);
+        mEvents.clear();
+
+        final GpuResourceRegistry.Resource first = mRegistry.getResource(0);
+        mRegistry.unregister(first);
+        assertEvents("delete first");
+        assertEquals(1, mDeleted.size());
+        assertEquals(1, mDeleted.get(0).intValue());
+        assertEquals(0, first.getHandle());
+        assertEquals(0, mRegistry.getRetainedBytes());
+        assertEquals(1, mRegistry.getResourceCount());
+        mRegistry.unregister(first);
+
+        // A resource not created yet has nothing to delete, and the pending one moves up.
+        final GpuResourceRegistry.Resource background = mRegistry.getResource(0);
+        mRegistry.unregister(background);
+        assertTrue(mEvents.isEmpty());
+        assertTrue(mRegistry.isRestored());
+    }
+
+    public void testRegisteringAfterRestoreIsPicked() {
+        register("background", GpuResourceRegistry.PRIORITY_BACKGROUND, 0);
+        mRegistry.restorePending(0);
+        mEvents.clear();
+
+        // A resource added later, even ahead of existing ones, is created by the next call.
+        register("first", GpuResourceRegistry.PRIORITY_FIRST_FRAME, 0);
+        assertFalse(mRegistry.isRestored());
+        assertEquals(1, mRegistry.restore(GpuResourceRegistry.PRIORITY_FIRST_FRAME));
+        assertEvents("create first");
+        assertEquals(0, mRegistry.restorePending(0));
+        assertTrue(mRegistry.isRestored());
+    }
+}
@@ -0,0 +1,89 @@
+package com.bogatov.openglproj;
+
+import junit.framework.TestCase;
+
+import android.opengl.Matrix;
+import android.util.Log;
+
+/**
+ * Shows that culling a grid with {@link GridCuller} and visiting the visible cells costs the same however many
+ * cells the grid has, while testing every cell against the {@link Frustum} grows with the grid. Results go to the
+ * log; the assertions only catch regressions far outside noise.
+ */
+public class GridCullerBenchmark extends TestCase {
+
+    private static final String TAG = GridCullerBenchmark.class.getSimpleName();
+
+    private static final float HALF = 0.45f;
+    private static final int ROUNDS = 2000;
+
+    private final Frustum mFrustum = new Frustum();
+    private final GridCuller mCuller = new GridCuller();
+
+    /** Keeps the visited cells from being optimized away. */
+    private long mChecksum;
+
+    @Override
+    protected void setUp() {
+        // A phone screen's worth of cells: about 6 by 10 of them at the grid's depth.
+        final float[] projection = new float[16];
+        final float[] view = new float[16];
+        final float[] mvp = new float[16];
+        Matrix.frustumM(projection, 0, -0.6f, 0.6f, -1, 1, 1, 20);
+        Matrix.setLookAtM(view, 0, 0, 0, 5, 0, 0, 0, 0, 1, 0);
+        Matrix.multiplyMM(mvp, 0, projection, 0, view, 0);
+        mFrustum.set(mvp, 0);
+    }
+
+    private long timeCulled(int side) {
+        mCuller.setGrid(side, side, -side / 2, side / 2, 1, -1, HALF, HALF, 0, 0);
+        final long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            mCuller.cull(mFrustum);
+            for (int row = mCuller.getFirstRow(); row <= mCuller.getLastRow(); row++) {
+                for (int column = mCuller.getFirstColumn(); column <= mCuller.getLastColumn(); column++) {
+                    mChecksum += row * side + column;
+                }
+            }
+        }
+        return (System.nanoTime() - start) / ROUNDS;
+    }
+
+    private long timeEveryCell(int side, int rounds) {
+        final long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (int row = 0; row < side; row++) {
+                final float y = side / 2 - row;
+                for (int column = 0; column < side; column++) {
+                    final float x = column - side / 2;
+                    if (mFrustum.intersectsBox(x - HALF, y - HALF, 0, x + HALF, y + HALF, 0)) {
+                        mChecksum += row * side + column;
+                    }
+                }
+            }
+        }
+        return (System.nanoTime() - start) / rounds;
+    }
+
+    public void testCostFollowsVisibleCells() {
+        // Warm up.
+        timeCulled(1000);
+        timeEveryCell(100, 50);
+
+        long smallest = 0;
+        for (int side = 10; side <= 1000; side *= 10) {
+            final long culled = timeCulled(side);
+            final int visible = mCuller.cull(mFrustum);
+            final long everyCell = timeEveryCell(side, side >= 1000 ? 2 : 200);
+            Log.i(TAG, side * side + " cells, " + visible + " visible: culler " + culled + " ns, every cell "
+                    + everyCell + " ns");
+            if (side == 10) {
+                smallest = culled;
+            } else {
+                // The visible count stays the same, and so does the cost, give or take noise.
+                assertTrue("Culling " + side * side + " cells took " + culled + " ns", culled < 5 * smallest + 20000);
+            }
+        }
+        assertTrue(mChecksum != 0);
+    }
+}
@@ -0,0 +1,136 @@
+package com.bogatov.openglproj;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import android.opengl.Matrix;
+
+public class GridCullerTest extends TestCase {
+
+    private static final float HALF = 0.4f;
+    private static final float Z = -5.0f;
+
+    private final GridCuller mCuller = new GridCuller();
+    private final Frustum mFrustum = new Frustum();
+    private final float[] mMatrix = new float[16];
+
+    /** Looks down -z at x in [-2, 2] and y in [-1, 1]. */
+    private void setOrtho() {
+        Matrix.orthoM(mMatrix, 0, -2, 2, -1, 1, 1, 10);
+        mFrustum.set(mMatrix, 0);
+    }
+
+    private void assertRange(int firstColumn, int lastColumn, int firstRow, int lastRow) {
+        assertEquals(firstColumn, mCuller.getFirstColumn());
+        assertEquals(lastColumn, mCuller.getLastColumn());
+        assertEquals(firstRow, mCuller.getFirstRow());
+        assertEquals(lastRow, mCuller.getLastRow());
+    }
+
+    private void assertEmpty(int visible) {
+        assertEquals(0, visible);
+        assertTrue(mCuller.getLastColumn() < mCuller.getFirstColumn());
+        assertTrue(mCuller.getLastRow() < mCuller.getFirstRow());
+    }
+
+    public void testPositivePitch() {
+        setOrtho();
+        mCuller.setGrid(100, 100, -10, -10, 1, 1, HALF, HALF, Z, Z);
+        // Cells centred within 2.4 of x = 0 and 1.4 of y = 0 overlap the view.
+        assertEquals(15, mCuller.cull(mFrustum));
+        assertRange(8, 12, 9, 11);
+        assertEquals(15, mCuller.getVisibleCount());
+        assertEquals(10000, mCuller.getCellCount());
+    }
+
+    public void testNegativePitch() {
+        setOrtho();
+        // Rows running down from y = 10 and columns running left from x = 10, as the grid renderer lays out rows.
+        mCuller.setGrid(100, 100, 10, 10, -1, -1, HALF, HALF, Z, Z);
+        assertEquals(15, mCuller.cull(mFrustum));
+        assertRange(8, 12, 9, 11);
+
+        mCuller.setGrid(100, 100, -10, 10, 1, -1, HALF, HALF, Z, Z);
+        assertEquals(15, mCuller.cull(mFrustum));
+        assertRange(8, 12, 9, 11);
+    }
+
+    public void testZeroPitch() {
+        setOrtho();
+        mCuller.setGrid(3, 4, 0, 0, 0, 0, HALF, HALF, Z, Z);
+        assertEquals(12, mCuller.cull(mFrustum));
+        assertRange(0, 2, 0, 3);
+    }
+
+    public void testFullyVisibleGrid() {
+        setOrtho();
+        mCuller.setGrid(3, 2, -1, -0.5f, 1, 1, HALF, HALF, Z, Z);
+        assertEquals(6, mCuller.cull(mFrustum));
+        assertRange(0, 2, 0, 1);
+    }
+
+    public void testEmptyGrids() {
+        setOrtho();
+        mCuller.setGrid(0, 10, 0, 0, 1, 1, HALF, HALF, Z, Z);
+        assertEmpty(mCuller.cull(mFrustum));
+
+        // Beside the view.
+        mCuller.setGrid(10, 10, 3, 0, 1, 1, HALF, HALF, Z, Z);
+        assertEmpty(mCuller.cull(mFrustum));
+
+        // Beyond the far plane and behind the camera.
+        mCuller.setGrid(10, 10, -5, -5, 1, 1, HALF, HALF, -20, -11);
+        assertEmpty(mCuller.cull(mFrustum));
+        mCuller.setGrid(10, 10, -5, -5, 1, 1, HALF, HALF, 1, 2);
+        assertEmpty(mCuller.cull(mFrustum));
+
+        // Between two columns.
+        mCuller.setGrid(2, 10, -3.5f, 0, 7, 1, 1, HALF, Z, Z);
+        assertEmpty(mCuller.cull(mFrustum));
+    }
+
+    public void testDepthRangeWidensPerspectiveView() {
+        Matrix.frustumM(mMatrix, 0, -1, 1, -1, 1, 1, 10);
+        mFrustum.set(mMatrix, 0);
+        // At z = -2 the view spans x in [-2, 2]; cells reaching back to z = -4 can be seen out to 4.
+        mCuller.setGrid(101, 1, -50, 0, 1, 1, HALF, HALF, -2, -2);
+        mCuller.cull(mFrustum);
+        assertEquals(48, mCuller.getFirstColumn());
+        assertEquals(52, mCuller.getLastColumn());
+
+        mCuller.setGrid(101, 1, -50, 0, 1, 1, HALF, HALF, -4, -2);
+        mCuller.cull(mFrustum);
+        assertEquals(46, mCuller.getFirstColumn());
+        assertEquals(54, mCuller.getLastColumn());
+    }
+
+    public void testCoversEveryVisibleCellFromTiltedCameras() {
+        final float[] projection = new float[16];
+        final float[] view = new float[16];
+        Matrix.frustumM(projection, 0, -0.5f, 0.5f, -0.8f, 0.8f, 1, 20);
+        final Random random = new Random(3);
+        for (int i = 0; i < 200; i++) {
+            final float eyeX = random.nextFloat() * 20 - 10;
+            final float eyeY = random.nextFloat() * 20 - 10;
+            Matrix.setLookAtM(view, 0, eyeX, eyeY, 6, eyeX + random.nextFloat() * 4 - 2,
+                    eyeY + random.nextFloat() * 4 - 2, 0, 0, 1, 0);
+            Matrix.multiplyMM(mMatrix, 0, projection, 0, view, 0);
+            mFrustum.set(mMatrix, 0);
+            mCuller.setGrid(20, 30, -10, 15, 1, -1, HALF, HALF, -0.2f, 0.2f);
+            final int visible = mCuller.cull(mFrustum);
+
+            for (int row = 0; row < 30; row++) {
+                for (int column = 0; column < 20; column++) {
+                    final float x = -10 + column;
+                    final float y = 15 - row;
+                    if (mFrustum.containsPoint(x, y, 0)) {
+                        assertTrue(visible > 0);
+                        assertTrue(column >= mCuller.getFirstColumn() && column <= mCuller.getLastColumn());
+                        assertTrue(row >= mCuller.getFirstRow() && row <= mCuller.getLastRow());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.bogatov.openglproj;
+
+import junit.framework.TestCase;
+
+public class GridScrollerTest extends TestCase {
+
+    private static final long FRAME_NANOS = 16 * 1000 * 1000;
+
+    private GridScroller mScroller;
+
+    @Override
+    protected void setUp() {
+        mScroller = new GridScroller();
+        mScroller.setLayout(10.0f, 2.0f);
+    }
+
+    public void testScrollIsClamped() {
+        mScroller.scrollBy(-1.0f);
+        assertEquals(0.0f, mScroller.getScroll(), 0.0f);
+        mScroller.scrollBy(100.0f);
+        assertEquals(8.0f, mScroller.getScroll(), 0.0f);
+    }
+
+    public void testFlingDecaysAndStops() {
+        mScroller.setScroll(4.0f);
+        mScroller.fling(1.0f);
+        assertTrue(mScroller.update(FRAME_NANOS));
+        assertTrue(mScroller.getVelocity() < 1.0f);
+        for (int frame = 0; frame < 1000 && !mScroller.isSettled(); frame++) {
+            mScroller.update(FRAME_NANOS);
+        }
+        assertTrue(mScroller.isSettled());
+        // The whole fling covers velocity / friction.
+        assertEquals(4.0f + 1.0f / 3.0f, mScroller.getScroll(), 0.05f);
+    }
+
+    public void testFlingStopsAtEnd() {
+        mScroller.setScroll(7.9f);
+        mScroller.fling(10.0f);
+        mScroller.update(FRAME_NANOS * 10);
+        assertEquals(8.0f, mScroller.getScroll(), 0.0f);
+        assertTrue(mScroller.isSettled());
+    }
+
+    public void testFlingAwayFromEndSurvivesFirstFrame() {
+        // The first frame after idle advances by no time at all.
+        mScroller.fling(2.0f);
+        assertFalse(mScroller.update(0));
+        assertFalse(mScroller.isSettled());
+        assertTrue(mScroller.update(FRAME_NANOS));
+        assertTrue(mScroller.getScroll() > 0.0f);
+
+        mScroller.setScroll(8.0f);
+        mScroller.fling(-2.0f);
+        mScroller.update(0);
+        assertFalse(mScroller.isSettled());
+        mScroller.update(FRAME_NANOS);
+        assertTrue(mScroller.getScroll() < 8.0f);
+    }
+
+    public void testFlingIntoEndItSitsAtStops() {
+        mScroller.fling(-2.0f);
+        mScroller.update(0);
+        // Nothing clamped yet, so the fling is still on until it actually pushes against the top.
+        mScroller.update(FRAME_NANOS);
+        assertTrue(mScroller.isSettled());
+        assertEquals(0.0f, mScroller.getScroll(), 0.0f);
+    }
+}
@@ -0,0 +1,106 @@
+package com.bogatov.openglproj;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class HistogramTest extends TestCase {
+
+    public void testSmallValuesAreExact() {
+        for (int value = 0; value < Histogram.SUB_BUCKETS; value++) {
+            assertEquals(value, Histogram.getBucket(value));
+            assertEquals(value, Histogram.getBucketLimit(value));
+        }
+        // From there on, each bucket holds two values, then four, and so on.
+        assertEquals(32, Histogram.getBucket(32));
+        assertEquals(32, Histogram.getBucket(33));
+        assertEquals(33, Histogram.getBucket(34));
+        assertEquals(33, Histogram.getBucketLimit(32));
+        assertEquals(48, Histogram.getBucket(64));
+        assertEquals(67, Histogram.getBucketLimit(48));
+    }
+
+    public void testBucketLimitsAreBoundaries() {
+        for (int bucket = 0; bucket < Histogram.BUCKET_COUNT - 1; bucket++) {
+            final long limit = Histogram.getBucketLimit(bucket);
+            assertEquals(bucket, Histogram.getBucket(limit));
+            assertEquals(bucket + 1, Histogram.getBucket(limit + 1));
+        }
+        assertEquals(Long.MAX_VALUE, Histogram.getBucketLimit(Histogram.BUCKET_COUNT - 1));
+        assertEquals(Histogram.BUCKET_COUNT - 1, Histogram.getBucket(Long.MAX_VALUE));
+    }
+
+    public void testBucketsAreWithinSixPercent() {
+        for (int bucket = Histogram.SUB_BUCKETS; bucket < Histogram.BUCKET_COUNT; bucket++) {
+            final double lowest = Histogram.getBucketLimit(bucket - 1) + 1.0;
+            final double end = Histogram.getBucketLimit(bucket) + 1.0;
+            assertTrue("Bucket " + bucket, end / lowest <= 1.0 + 1.0 / 16);
+        }
+    }
+
+    public void testPercentileRanks() {
+        final Histogram histogram = new Histogram();
+        for (int value = 100; value >= 1; value--) {
+            histogram.add(value);
+        }
+        assertEquals(1, histogram.getPercentile(0));
+        assertEquals(1, histogram.getPercentile(1));
+        // Buckets above 32 hold several values, and the bucket's limit is reported.
+        assertEquals(51, histogram.getPercentile(50));
+        assertEquals(91, histogram.getPercentile(90));
+        assertEquals(95, histogram.getPercentile(95));
+        assertEquals(100, histogram.getPercentile(100));
+    }
+
+    public void testPercentilesAreClampedToTheValuesAdded() {
+        final Histogram histogram = new Histogram();
+        histogram.add(1000);
+        assertEquals(1000, histogram.getPercentile(50));
+
+        // Both fall into the bucket ending at 1023, beyond the largest value added.
+        histogram.add(1001);
+        assertEquals(1001, histogram.getPercentile(0));
+        assertEquals(1001, histogram.getPercentile(100));
+    }
+
+    public void testPercentilesOfRandomValuesAreClose() {
+        final Histogram histogram = new Histogram();
+        final Random random = new Random(5);
+        final long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) (Math.exp(random.nextDouble() * 20));
+            histogram.add(values[i]);
+        }
+        Arrays.sort(values);
+        for (int percentile = 1; percentile <= 100; percentile++) {
+            final long exact = values[percentile * values.length / 100 - 1];
+            final long estimate = histogram.getPercentile(percentile);
+            assertTrue(estimate >= exact);
+            assertTrue(estimate <= exact + exact / 16 + 1);
+        }
+    }
+
+    public void testCountsMinMaxAndClear() {
+        final Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(50));
+
+        histogram.add(-5);
+        histogram.add(Long.MAX_VALUE);
+        assertEquals(2, histogram.getCount());
+        // Negative values count as 0.
+        assertEquals(0, histogram.getMin());
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+
+        histogram.clear();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        histogram.add(7);
+        assertEquals(7, histogram.getMin());
+    }
+}
@@ -0,0 +1,69 @@
+package com.bogatov.openglproj;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class LongHashMapTest extends TestCase {
+
+    public void testPutGetRemove() {
+        final LongHashMap<String> map = new LongHashMap<String>();
+        assertNull(map.put(1, "a"));
+        assertNull(map.put(TextureCache.getKey(1, 64), "b"));
+        assertEquals("a", map.put(1, "c"));
+        assertEquals(2, map.size());
+        assertEquals("c", map.get(1));
+        assertEquals("b", map.get(TextureCache.getKey(1, 64)));
+        assertNull(map.get(TextureCache.getKey(1, 32)));
+        assertFalse(map.containsKey(-1));
+
+        assertEquals("c", map.remove(1));
+        assertNull(map.remove(1));
+        assertEquals(1, map.size());
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(TextureCache.getKey(1, 64)));
+    }
+
+    public void testRemoveMatchesTheValueItself() {
+        final LongHashMap<String> map = new LongHashMap<String>();
+        final String value = "value";
+        map.put(5, value);
+        assertFalse(map.remove(5, new String(value)));
+        assertFalse(map.remove(6, value));
+        assertTrue(map.remove(5, value));
+        assertFalse(map.containsKey(5));
+    }
+
+    public void testRejectsNullValues() {
+        try {
+            new LongHashMap<String>().put(1, null);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    public void testMatchesHashMap() {
+        // Few distinct keys for many operations, so probe runs collide, grow and get shifted back on removal.
+        final Random random = new Random(1);
+        final LongHashMap<Integer> map = new LongHashMap<Integer>(0);
+        final Map<Long, Integer> reference = new HashMap<Long, Integer>();
+        for (int i = 0; i < 100000; i++) {
+            final long key = random.nextInt(500) - 250 + ((long) random.nextInt(3) << 32);
+            if (random.nextInt(3) == 0) {
+                assertEquals(reference.remove(key), map.remove(key));
+            } else {
+                assertEquals(reference.put(key, i), map.put(key, i));
+            }
+            assertEquals(reference.size(), map.size());
+        }
+        for (long key = -250; key < 250; key++) {
+            for (long high = 0; high < 3; high++) {
+                assertEquals(reference.get(key + (high << 32)), map.get(key + (high << 32)));
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.bogatov.openglproj;
+
+import junit.framework.TestCase;
+
+import android.opengl.Matrix;
+import android.util.Log;
+
+/**
+ * Times computing the MVP matrices of a grid of cells placed by translations, as {@link SceneGraph} does, with
+ * android.opengl.Matrix and with each path of {@link MatrixMath}, for 1, 100 and 10,000 cells. Results go to the
+ * log; the assertions only catch regressions far outside noise.
+ */
+public class MatrixMathBenchmark extends TestCase {
+
+    private static final String TAG = MatrixMathBenchmark.class.getSimpleName();
+
+    /** Matrices computed per measurement, spread over rounds for small grids. */
+    private static final int WORK = 200000;
+
+    private static final int PATH_MATRIX = 0;
+    private static final int PATH_MULTIPLY = 1;
+    private static final int PATH_TRANSLATE = 2;
+    private static final int PATH_BATCH = 3;
+    private static final String[] PATH_NAMES = {"Matrix.multiplyMM", "multiply", "translate", "translateBatch"};
+
+    private final float[] mViewProjection = new float[16];
+    private final float[] mModel = new float[16];
+
+    /** Keeps the results from being optimized away. */
+    private float mChecksum;
+
+    @Override
+    protected void setUp() {
+        final float[] projection = new float[16];
+        final float[] view = new float[16];
+        Matrix.frustumM(projection, 0, -0.6f, 0.6f, -1, 1, 1, 20);
+        Matrix.setLookAtM(view, 0, 0, 0, 5, 0, 0, 0, 0, 1, 0);
+        MatrixMath.multiply(mViewProjection, 0, projection, 0, view, 0);
+    }
+
+    /** @return Nanoseconds per cell. */
+    private long time(int path, int cells, float[] translations, float[] mvp) {
+        final int rounds = Math.max(1, WORK / cells);
+        final long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            if (path == PATH_BATCH) {
+                MatrixMath.translateBatch(mvp, 0, mViewProjection, 0, translations, 0, 3, cells);
+            } else {
+                for (int i = 0; i < cells; i++) {
+                    final float x = translations[3 * i];
+                    final float y = translations[3 * i + 1];
+                    final float z = translations[3 * i + 2];
+                    if (path == PATH_MATRIX) {
+                        Matrix.setIdentityM(mModel, 0);
+                        Matrix.translateM(mModel, 0, x, y, z);
+                        Matrix.multiplyMM(mvp, 16 * i, mViewProjection, 0, mModel, 0);
+                    } else if (path == PATH_MULTIPLY) {
+                        MatrixMath.setTranslation(mModel, 0, x, y, z);
+                        MatrixMath.multiply(mvp, 16 * i, mViewProjection, 0, mModel, 0);
+                    } else {
+                        MatrixMath.translate(mvp, 16 * i, mViewProjection, 0, x, y, z);
+                    }
+                }
+            }
+            mChecksum += mvp[16 * (cells - 1) + 12];
+        }
+        return (System.nanoTime() - start) / ((long) rounds * cells);
+    }
+
+    public void testGridMvpMatrices() {
+        final int[] sizes = {1, 100, 10000};
+        final long[] nanos = new long[PATH_NAMES.length];
+        for (int size : sizes) {
+            final float[] translations = new float[3 * size];
+            for (int i = 0; i < size; i++) {
+                translations[3 * i] = i % 100;
+                translations[3 * i + 1] = -(i / 100);
+            }
+            final float[] mvp = new float[16 * size];
+
+            final StringBuilder line = new StringBuilder().append(size).append(" cells:");
+            for (int path = 0; path < PATH_NAMES.length; path++) {
+                // Warm up, then measure.
+                time(path, size, translations, mvp);
+                nanos[path] = time(path, size, translations, mvp);
+                line.append(' ').append(PATH_NAMES[path]).append(' ').append(nanos[path]).append(" ns");
+            }
+            Log.i(TAG, line.toString());
+
+            // Both fast paths skip most of the general multiply.
+            assertTrue(line.toString(), nanos[PATH_TRANSLATE] < 2 * nanos[PATH_MULTIPLY] + 50);
+            assertTrue(line.toString(), nanos[PATH_BATCH] < 2 * nanos[PATH_MULTIPLY] + 50);
+        }
+        assertFalse(Float.isNaN(mChecksum));
+    }
+}
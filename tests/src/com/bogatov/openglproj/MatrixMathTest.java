@@ -0,0 +1,223 @@
+package com.bogatov.openglproj;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class MatrixMathTest extends TestCase {
+
+    private static final float EPSILON = 1e-4f;
+
+    private final Random mRandom = new Random(11);
+
+    /** The textbook triple loop over column-major matrices. */
+    private static float[] reference(float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+        final float[] result = new float[16];
+        for (int row = 0; row < 4; row++) {
+            for (int column = 0; column < 4; column++) {
+                float sum = 0.0f;
+                for (int k = 0; k < 4; k++) {
+                    sum += lhs[lhsOffset + 4 * k + row] * rhs[rhsOffset + 4 * column + k];
+                }
+                result[4 * column + row] = sum;
+            }
+        }
+        return result;
+    }
+
+    private float[] randomMatrix(int offset) {
+        final float[] m = new float[offset + 16];
+        for (int i = 0; i < 16; i++) {
+            m[offset + i] = mRandom.nextFloat() * 4.0f - 2.0f;
+        }
+        return m;
+    }
+
+    private float[] randomAffine(int offset) {
+        final float[] m = randomMatrix(offset);
+        m[offset + 3] = 0.0f;
+        m[offset + 7] = 0.0f;
+        m[offset + 11] = 0.0f;
+        m[offset + 15] = 1.0f;
+        return m;
+    }
+
+    private static void assertMatrix(float[] expected, float[] actual, int offset) {
+        for (int i = 0; i < 16; i++) {
+            assertEquals("Element " + i, expected[i], actual[offset + i], EPSILON);
+        }
+    }
+
+    private static float[] translation(float x, float y, float z) {
+        final float[] m = new float[16];
+        MatrixMath.setTranslation(m, 0, x, y, z);
+        return m;
+    }
+
+    public void testIdentityAndTranslation() {
+        final float[] m = randomMatrix(3);
+        MatrixMath.setIdentity(m, 3);
+        assertTrue(MatrixMath.isAffine(m, 3));
+        final float[] any = randomMatrix(0);
+        MatrixMath.multiply(any, 0, m, 3, any, 0);
+        assertMatrix(reference(m, 3, any, 0), any, 0);
+
+        MatrixMath.setTranslation(m, 3, 1, 2, 3);
+        assertEquals(1.0f, m[3 + 12]);
+        assertEquals(2.0f, m[3 + 13]);
+        assertEquals(3.0f, m[3 + 14]);
+        assertEquals(1.0f, m[3 + 0]);
+        assertTrue(MatrixMath.isAffine(m, 3));
+        assertFalse(MatrixMath.isAffine(randomMatrix(0), 0));
+    }
+
+    public void testMultiplyMatchesReference() {
+        for (int i = 0; i < 100; i++) {
+            final float[] lhs = randomMatrix(5);
+            final float[] rhs = randomMatrix(0);
+            final float[] result = new float[32];
+            MatrixMath.multiply(result, 16, lhs, 5, rhs, 0);
+            assertMatrix(reference(lhs, 5, rhs, 0), result, 16);
+        }
+    }
+
+    public void testMultiplyAffineMatchesGeneralMultiply() {
+        for (int i = 0; i < 100; i++) {
+            final float[] lhs = randomAffine(0);
+            final float[] rhs = randomAffine(16);
+            final float[] result = new float[16];
+            MatrixMath.multiplyAffine(result, 0, lhs, 0, rhs, 16);
+            assertMatrix(reference(lhs, 0, rhs, 16), result, 0);
+            assertTrue(MatrixMath.isAffine(result, 0));
+        }
+    }
+
+    public void testTranslateMatchesGeneralMultiply() {
+        for (int i = 0; i < 100; i++) {
+            final float[] m = randomMatrix(7);
+            final float x = mRandom.nextFloat() * 100 - 50;
+            final float y = mRandom.nextFloat() * 100 - 50;
+            final float z = mRandom.nextFloat() * 100 - 50;
+            final float[] result = new float[16];
+            MatrixMath.translate(result, 0, m, 7, x, y, z);
+            assertMatrix(reference(m, 7, translation(x, y, z), 0), result, 0);
+        }
+    }
+
+    public void testTranslateBatchMatchesGeneralMultiply() {
+        final float[] m = randomMatrix(0);
+        // X, Y, Z and a fourth float per instance, starting at 2.
+        final int count = 10;
+        final float[] translations = new float[2 + 4 * count];
+        for (int i = 0; i < translations.length; i++) {
+            translations[i] = mRandom.nextFloat() * 10;
+        }
+        final float[] result = new float[16 + 16 * count];
+        MatrixMath.translateBatch(result, 16, m, 0, translations, 2, 4, count);
+        for (int i = 0; i < count; i++) {
+            final int t = 2 + 4 * i;
+            assertMatrix(reference(m, 0, translation(translations[t], translations[t + 1], translations[t + 2]), 0),
+                    result, 16 + 16 * i);
+        }
+        // Nothing before the first matrix is touched.
+        for (int i = 0; i < 16; i++) {
+            assertEquals(0.0f, result[i]);
+        }
+    }
+
+    public void testMultiplyVectorMatchesReference() {
+        final float[] m = randomMatrix(0);
+        final float[] vector = {1.5f, -2, 3, 1};
+        final float[] column = new float[16];
+        System.arraycopy(vector, 0, column, 0, 4);
+        final float[] expected = reference(m, 0, column, 0);
+        final float[] result = new float[6];
+        MatrixMath.multiplyVector(result, 2, m, 0, vector[0], vector[1], vector[2], vector[3]);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(expected[i], result[2 + i], EPSILON);
+        }
+    }
+
+    public void testTransformPointsMatchesMultiplyVector() {
+        final float[] m = randomAffine(0);
+        // Interleaved X, Y, Z, U, V, transformed in place.
+        final float[] points = new float[5 * 8];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = mRandom.nextFloat() * 10;
+        }
+        final float[] original = points.clone();
+        MatrixMath.transformPoints(points, 0, 5, m, 0, points, 0, 5, 8);
+
+        final float[] expected = new float[4];
+        for (int i = 0; i < 8; i++) {
+            MatrixMath.multiplyVector(expected, 0, m, 0, original[5 * i], original[5 * i + 1], original[5 * i + 2], 1);
+            assertEquals(expected[0], points[5 * i], EPSILON);
+            assertEquals(expected[1], points[5 * i + 1], EPSILON);
+            assertEquals(expected[2], points[5 * i + 2], EPSILON);
+            assertEquals(original[5 * i + 3], points[5 * i + 3]);
+            assertEquals(original[5 * i + 4], points[5 * i + 4]);
+        }
+    }
+
+    public void testResultMayAliasEitherInput() {
+        for (int i = 0; i < 20; i++) {
+            final float[] lhs = randomMatrix(0);
+            final float[] rhs = randomMatrix(0);
+            final float[] expected = reference(lhs, 0, rhs, 0);
+
+            final float[] intoLhs = lhs.clone();
+            MatrixMath.multiply(intoLhs, 0, intoLhs, 0, rhs, 0);
+            assertMatrix(expected, intoLhs, 0);
+
+            final float[] intoRhs = rhs.clone();
+            MatrixMath.multiply(intoRhs, 0, lhs, 0, intoRhs, 0);
+            assertMatrix(expected, intoRhs, 0);
+
+            // Squaring in place.
+            final float[] square = lhs.clone();
+            MatrixMath.multiply(square, 0, square, 0, square, 0);
+            assertMatrix(reference(lhs, 0, lhs, 0), square, 0);
+
+            // Both in one array, the result over the second.
+            final float[] packed = new float[32];
+            System.arraycopy(lhs, 0, packed, 0, 16);
+            System.arraycopy(rhs, 0, packed, 16, 16);
+            MatrixMath.multiply(packed, 16, packed, 0, packed, 16);
+            assertMatrix(expected, packed, 16);
+        }
+    }
+
+    public void testAffineAndTranslateResultsMayAliasInputs() {
+        final float[] lhs = randomAffine(0);
+        final float[] rhs = randomAffine(0);
+        final float[] expected = reference(lhs, 0, rhs, 0);
+
+        final float[] intoLhs = lhs.clone();
+        MatrixMath.multiplyAffine(intoLhs, 0, intoLhs, 0, rhs, 0);
+        assertMatrix(expected, intoLhs, 0);
+        final float[] intoRhs = rhs.clone();
+        MatrixMath.multiplyAffine(intoRhs, 0, lhs, 0, intoRhs, 0);
+        assertMatrix(expected, intoRhs, 0);
+
+        final float[] m = randomMatrix(0);
+        final float[] translated = reference(m, 0, translation(1, 2, 3), 0);
+        final float[] inPlace = m.clone();
+        MatrixMath.translate(inPlace, 0, inPlace, 0, 1, 2, 3);
+        assertMatrix(translated, inPlace, 0);
+
+        // A batch may start on top of its matrix.
+        final float[] batch = new float[32];
+        System.arraycopy(m, 0, batch, 0, 16);
+        MatrixMath.translateBatch(batch, 0, batch, 0, new float[] {1, 2, 3, 4, 5, 6}, 0, 3, 2);
+        assertMatrix(translated, batch, 0);
+        assertMatrix(reference(m, 0, translation(4, 5, 6), 0), batch, 16);
+
+        final float[] vector = m.clone();
+        final float[] expectedVector = new float[4];
+        MatrixMath.multiplyVector(expectedVector, 0, m, 0, 1, 2, 3, 1);
+        MatrixMath.multiplyVector(vector, 0, vector, 0, 1, 2, 3, 1);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(expectedVector[i], vector[i], EPSILON);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.bogatov.openglproj;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class ProgramCacheTest extends TestCase {
+
+    private static final String VERTEX = "vertex";
+    private static final String FRAGMENT = "fragment";
+    private static final String[] ATTRIBUTES = {"a_Position"};
+    private static final int FORMAT = 0x1234;
+
+    private File mDirectory;
+
+    private int mNextProgram = 1;
+    private final List<Integer> mCompiled = new ArrayList<Integer>();
+    private final List<Integer> mDeleted = new ArrayList<Integer>();
+    private String mDriverKey = "vendor\nrenderer\nOpenGL ES 3.0 driver 1";
+
+    /** Program handles and the binary loaded into each of them. */
+    private final List<Integer> mLoaded = new ArrayList<Integer>();
+    private final List<byte[]> mLoadedData = new ArrayList<byte[]>();
+    private boolean mSupported = true;
+    private boolean mAcceptBinaries = true;
+    private boolean mReturnBinaries = true;
+
+    private final ProgramCache.ICompiler mCompiler = new ProgramCache.ICompiler() {
+        @Override
+        public int compile(String vertexShader, String fragmentShader, String[] attributes) {
+            mCompiled.add(mNextProgram);
+            return mNextProgram++;
+        }
+
+        @Override
+        public int createProgram() {
+            return mNextProgram++;
+        }
+
+        @Override
+        public void deleteProgram(int programHandle) {
+            mDeleted.add(programHandle);
+        }
+
+        @Override
+        public String getDriverKey() {
+            return mDriverKey;
+        }
+    };
+
+    /** Hands out the driver key, as bytes, as the binary of every program. */
+    private final ProgramCache.IBinaryProvider mProvider = new ProgramCache.IBinaryProvider() {
+        @Override
+        public boolean isSupported() {
+            return mSupported;
+        }
+
+        @Override
+        public ProgramCache.Binary getBinary(int programHandle) {
+            return mReturnBinaries ? new ProgramCache.Binary(FORMAT, mDriverKey.getBytes()) : null;
+        }
+
+        @Override
+        public boolean loadBinary(int programHandle, int format, byte[] data) {
+            assertEquals(FORMAT, format);
+            mLoaded.add(programHandle);
+            mLoadedData.add(data);
+            return mAcceptBinaries;
+        }
+    };
+
+    @Override
+    protected void setUp() throws IOException {
+        mDirectory = File.createTempFile("programs", "");
+        assertTrue(mDirectory.delete());
+        // Created by the cache on its first write.
+        mDirectory = new File(mDirectory, "programs");
+    }
+
+    @Override
+    protected void tearDown() {
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+        mDirectory.getParentFile().delete();
+    }
+
+    private ProgramCache createCache() {
+        return new ProgramCache(mDirectory, mProvider, mCompiler);
+    }
+
+    private File getEntry() {
+        return new File(mDirectory, ProgramCache.getKey(mDriverKey, VERTEX, FRAGMENT, ATTRIBUTES) + ".bin");
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        final InputStream in = new FileInputStream(file);
+        try {
+            final byte[] bytes = new byte[(int) file.length()];
+            int read = 0;
+            while (read < bytes.length) {
+                read += in.read(bytes, read, bytes.length - read);
+            }
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeFile(File file, byte[] bytes, int length) throws IOException {
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes, 0, length);
+        } finally {
+            out.close();
+        }
+    }
+
+    public void testCompilesOnceThenLoadsTheBinary() {
+        final int compiled = createCache().getProgram(VERTEX, FRAGMENT, ATTRIBUTES);
+        assertEquals(1, mCompiled.size());
+        assertTrue(getEntry().isFile());
+
+        // A new cache, as after the next surface creation.
+        final ProgramCache cache = createCache();
+        final int loaded = cache.getProgram(VERTEX, FRAGMENT, ATTRIBUTES);
+        assertTrue(loaded != compiled);
+        assertEquals(1, mCompiled.size());
+        assertEquals(Arrays.asList(loaded), mLoaded);
+        assertTrue(Arrays.equals(mDriverKey.getBytes(), mLoadedData.get(0)));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+        assertEquals(0, cache.getRejectCount());
+    }
+
+    public void testDriverRejectingTheBinaryRecompiles() {
+        createCache().getProgram(VERTEX, FRAGMENT, ATTRIBUTES);
+        mAcceptBinaries = false;
+        final ProgramCache cache = createCache();
+        final int program = cache.getProgram(VERTEX, FRAGMENT, ATTRIBUTES);
+
+        // The program the binary went into is deleted and a compiled one takes its place.
+        assertEquals(mLoaded, mDeleted);
+        assertEquals(2, mCompiled.size());
+        assertEquals(program, mCompiled.get(1).intValue());
+        assertEquals(1, cache.getRejectCount());
+        assertEquals(1, cache.getMissCount());
+
+        // The entry was rewritten from the new program.
+        mAcceptBinaries = true;
+        createCache().getProgram(VERTEX, FRAGMENT, ATTRIBUTES);
+        assertEquals(2, mCompiled.size());
+    }
+
+    public void testCorruptEntriesAreRecompiled() throws IOException {
+        createCache().getProgram(VERTEX, FRAGMENT, ATTRIBUTES);
+        final File entry = getEntry();
+        final byte[] bytes = readFile(entry);
+
+        // A flipped bit in the binary fails the checksum.
+        bytes[bytes.length - 1] ^= 1;
+        writeFile(entry, bytes, bytes.length);
+        ProgramCache cache = createCache();
+        cache.getProgram(VERTEX, FRAGMENT, ATTRIBUTES);
+        assertTrue(mLoaded.isEmpty());
+        assertEquals(2, mCompiled.size());
+        assertEquals(1, cache.getRejectCount());
+
+        // So does a truncated one.
+        bytes[bytes.length - 1] ^= 1;
+        writeFile(entry, bytes, bytes.length - 4);
+        cache = createCache();
+        cache.getProgram(VERTEX, FRAGMENT, ATTRIBUTES);
+        assertTrue(mLoaded.isEmpty());
+        assertEquals(3, mCompiled.size());
+        assertEquals(1, cache.getRejectCount());
+
+        // Each time, the entry was rewritten and loads again.
+        createCache().getProgram(VERTEX, FRAGMENT, ATTRIBUTES);
+        assertEquals(1, mLoaded.size());
+        assertEquals(3, mCompiled.size());
+    }
+
+    public void testEntryOfAnotherProgramIsRejected() throws IOException {
+        createCache().getProgram("other vertex", FRAGMENT, ATTRIBUTES);
+        final File other = new File(mDirectory,
+                ProgramCache.getKey(mDriverKey, "other vertex", FRAGMENT, ATTRIBUTES) + ".bin");
+        final byte[] bytes = readFile(other);
+        writeFile(getEntry(), bytes, bytes.length);
+
+        final ProgramCache cache = createCache();
+        cache.getProgram(VERTEX, FRAGMENT, ATTRIBUTES);
+        assertTrue(mLoaded.isEmpty());
+        assertEquals(1, cache.getRejectCount());
+        assertEquals(2, mCompiled.size());
+    }
+
+    public void testDriverChangeMissesTheOldEntries() {
+        createCache().getProgram(VERTEX, FRAGMENT, ATTRIBUTES);
+        final File oldEntry = getEntry();
+
+        mDriverKey = "vendor\nrenderer\nOpenGL ES 3.0 driver 2";
+        final ProgramCache cache = createCache();
+        cache.getProgram(VERTEX, FRAGMENT, ATTRIBUTES);
+        // A different key, so a plain miss rather than a rejected binary of the old driver.
+        assertTrue(mLoaded.isEmpty());
+        assertEquals(2, mCompiled.size());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getRejectCount());
+        assertTrue(getEntry().isFile());
+        assertFalse(getEntry().equals(oldEntry));
+
+        // A key set by hand takes precedence over the compiler's.
+        final ProgramCache pinned = createCache();
+        mDriverKey = "vendor\nrenderer\nOpenGL ES 3.0 driver 1";
+        pinned.setDriverKey("vendor\nrenderer\nOpenGL ES 3.0 driver 2");
+        pinned.getProgram(VERTEX, FRAGMENT, ATTRIBUTES);
+        assertEquals(1, pinned.getHitCount());
+    }
+
+    public void testWithoutBinarySupportAlwaysCompiles() {
+        mSupported = false;
+        final ProgramCache cache = createCache();
+        cache.getProgram(VERTEX, FRAGMENT, ATTRIBUTES);
+        cache.getProgram(VERTEX, FRAGMENT, ATTRIBUTES);
+        assertEquals(2, mCompiled.size());
+        assertFalse(mDirectory.exists());
+        assertEquals(0, cache.getMissCount());
+
+        // Nor is anything written when the driver has no binary to give.
+        mSupported = true;
+        mReturnBinaries = false;
+        cache.getProgram(VERTEX, FRAGMENT, ATTRIBUTES);
+        assertEquals(1, cache.getMissCount());
+        assertFalse(getEntry().exists());
+    }
+
+    public void testEntryFormat() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ProgramCache.write(out, "key", new ProgramCache.Binary(7, new byte[] {1, 2, 3}));
+        final byte[] bytes = out.toByteArray();
+
+        final ProgramCache.Binary binary = ProgramCache.read(new ByteArrayInputStream(bytes), "key");
+        assertEquals(7, binary.format);
+        assertTrue(Arrays.equals(new byte[] {1, 2, 3}, binary.data));
+
+        try {
+            ProgramCache.read(new ByteArrayInputStream(bytes), "other key");
+            fail();
+        } catch (IOException e) {
+            // Expected.
+        }
+        // Magic, then version.
+        for (int i : new int[] {0, 7}) {
+            final byte[] wrong = bytes.clone();
+            wrong[i] ^= 1;
+            try {
+                ProgramCache.read(new ByteArrayInputStream(wrong), "key");
+                fail(Integer.toString(i));
+            } catch (IOException e) {
+                // Expected.
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.bogatov.openglproj;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import android.util.Log;
+
+/**
+ * Times building keys and sorting a frame's draws for 100, 10,000 and 100,000 draws, comparing the radix sort
+ * with Arrays.sort over the keys alone, both for random keys and for a grid frame with one program. Results go to
+ * the log; the assertions only catch regressions far outside noise.
+ */
+public class RenderQueueBenchmark extends TestCase {
+
+    private static final String TAG = RenderQueueBenchmark.class.getSimpleName();
+
+    /** Draws sorted per measurement, spread over rounds for small queues. */
+    private static final int WORK = 1000000;
+
+    private final Random mRandom = new Random(19);
+
+    /** Keeps the results from being optimized away. */
+    private long mChecksum;
+
+    private long[] randomKeys(int size) {
+        final long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = RenderQueue.makeKey(mRandom.nextInt(4), mRandom.nextInt(8) == 0, mRandom.nextInt(64),
+                    mRandom.nextInt(1000), mRandom.nextFloat());
+        }
+        return keys;
+    }
+
+    /**
+     * A grid of cells: one program, a texture each, depth growing down the grid, submitted in the shuffled order
+     * of a recycled pool.
+     */
+    private long[] gridKeys(int size) {
+        final long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = RenderQueue.makeKey(0, false, 3, 1 + i, (float) i / size);
+        }
+        for (int i = size - 1; i > 0; i--) {
+            final int j = mRandom.nextInt(i + 1);
+            final long key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+        }
+        return keys;
+    }
+
+    /** @return Nanoseconds per draw. */
+    private long timeQueue(RenderQueue queue, long[] keys) {
+        final int rounds = Math.max(1, WORK / keys.length);
+        final long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            queue.clear();
+            for (int i = 0; i < keys.length; i++) {
+                queue.add(keys[i], i);
+            }
+            queue.sort();
+            mChecksum += queue.getPayload(0);
+        }
+        return (System.nanoTime() - start) / ((long) rounds * keys.length);
+    }
+
+    /** @return Nanoseconds per draw. */
+    private long timeArraysSort(long[] keys, long[] scratch) {
+        final int rounds = Math.max(1, WORK / keys.length);
+        final long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            System.arraycopy(keys, 0, scratch, 0, keys.length);
+            Arrays.sort(scratch);
+            mChecksum += scratch[0];
+        }
+        return (System.nanoTime() - start) / ((long) rounds * keys.length);
+    }
+
+    public void testMakeKey() {
+        final int size = 10000;
+        final int[] programs = new int[size];
+        final int[] textures = new int[size];
+        final float[] depths = new float[size];
+        for (int i = 0; i < size; i++) {
+            programs[i] = mRandom.nextInt(64);
+            textures[i] = mRandom.nextInt(1000);
+            depths[i] = mRandom.nextFloat();
+        }
+        final int rounds = WORK / size;
+        long nanos = 0;
+        // Warm up, then measure.
+        for (int pass = 0; pass < 2; pass++) {
+            final long start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (int i = 0; i < size; i++) {
+                    mChecksum += RenderQueue.makeKey(0, (i & 7) == 0, programs[i], textures[i], depths[i]);
+                }
+            }
+            nanos = (System.nanoTime() - start) / ((long) rounds * size);
+        }
+        Log.i(TAG, "makeKey: " + nanos + " ns per key");
+        assertTrue(Long.toString(nanos), nanos < 100);
+    }
+
+    public void testSort() {
+        final int[] sizes = {100, 10000, 100000};
+        for (int size : sizes) {
+            final RenderQueue queue = new RenderQueue(size);
+            final long[] scratch = new long[size];
+            final long[][] frames = {randomKeys(size), gridKeys(size)};
+            final String[] names = {"random", "grid"};
+            for (int frame = 0; frame < frames.length; frame++) {
+                // Warm up, then measure.
+                timeQueue(queue, frames[frame]);
+                final long radix = timeQueue(queue, frames[frame]);
+                timeArraysSort(frames[frame], scratch);
+                final long reference = timeArraysSort(frames[frame], scratch);
+                final String line = size + " " + names[frame] + " draws: radix " + radix + " ns ("
+                        + queue.getSortPasses() + " passes), Arrays.sort " + reference + " ns";
+                Log.i(TAG, line);
+
+                // Also moves the payloads and stays stable, which Arrays.sort does not; small queues pay for
+                // clearing the byte counts on every pass.
+                assertTrue(line, radix < 4 * reference + 200);
+            }
+        }
+        assertTrue(mChecksum != 0);
+    }
+}
@@ -0,0 +1,186 @@
+package com.bogatov.openglproj;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class RenderQueueTest extends TestCase {
+
+    private final RenderQueue mQueue = new RenderQueue(2);
+
+    private void assertPayloadOrder(int... payloads) {
+        assertEquals(payloads.length, mQueue.size());
+        for (int i = 0; i < payloads.length; i++) {
+            assertEquals("Draw " + i, payloads[i], mQueue.getPayload(i));
+        }
+    }
+
+    public void testKeyFields() {
+        final long opaque = RenderQueue.makeKey(3, false, 17, 12345, 0.5f);
+        assertEquals(3, RenderQueue.getLayer(opaque));
+        assertFalse(RenderQueue.isTranslucent(opaque));
+        assertEquals(17, RenderQueue.getProgram(opaque));
+        assertEquals(12345, RenderQueue.getTexture(opaque));
+
+        final long translucent = RenderQueue.makeKey(RenderQueue.MAX_LAYER, true, RenderQueue.MAX_PROGRAM,
+                RenderQueue.MAX_TEXTURE, 0.25f);
+        assertEquals(RenderQueue.MAX_LAYER, RenderQueue.getLayer(translucent));
+        assertTrue(RenderQueue.isTranslucent(translucent));
+        assertEquals(RenderQueue.MAX_PROGRAM, RenderQueue.getProgram(translucent));
+        assertEquals(RenderQueue.MAX_TEXTURE, RenderQueue.getTexture(translucent));
+
+        // Wider handles are masked rather than spilling into the neighbouring fields.
+        final long masked = RenderQueue.makeKey(1, false, RenderQueue.MAX_PROGRAM + 2, RenderQueue.MAX_TEXTURE + 3, 0);
+        assertEquals(1, RenderQueue.getLayer(masked));
+        assertEquals(1, RenderQueue.getProgram(masked));
+        assertEquals(2, RenderQueue.getTexture(masked));
+    }
+
+    public void testDepthIsClamped() {
+        assertEquals(0, RenderQueue.quantizeDepth(-1.0f));
+        assertEquals(0, RenderQueue.quantizeDepth(Float.NaN));
+        assertEquals(RenderQueue.MAX_DEPTH, RenderQueue.quantizeDepth(1.0f));
+        assertEquals(RenderQueue.MAX_DEPTH, RenderQueue.quantizeDepth(Float.POSITIVE_INFINITY));
+        assertEquals(RenderQueue.MAX_DEPTH / 2, RenderQueue.quantizeDepth(0.5f));
+    }
+
+    public void testRejectsLayersOutOfRange() {
+        final int[] layers = {-1, RenderQueue.MAX_LAYER + 1};
+        for (int layer : layers) {
+            try {
+                RenderQueue.makeKey(layer, false, 0, 0, 0);
+                fail(Integer.toString(layer));
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+    }
+
+    public void testOpaqueRunsFrontToBackWithinAState() {
+        mQueue.add(RenderQueue.makeKey(0, false, 1, 2, 0.9f), 0);
+        mQueue.add(RenderQueue.makeKey(0, false, 1, 2, 0.1f), 1);
+        mQueue.add(RenderQueue.makeKey(0, false, 1, 2, 0.5f), 2);
+        mQueue.sort();
+        assertPayloadOrder(1, 2, 0);
+    }
+
+    public void testOpaqueGroupsByStateBeforeDepth() {
+        mQueue.add(RenderQueue.makeKey(0, false, 2, 1, 0.1f), 0);
+        mQueue.add(RenderQueue.makeKey(0, false, 1, 7, 0.8f), 1);
+        mQueue.add(RenderQueue.makeKey(0, false, 2, 1, 0.2f), 2);
+        mQueue.add(RenderQueue.makeKey(0, false, 1, 3, 0.9f), 3);
+        mQueue.add(RenderQueue.makeKey(0, false, 1, 7, 0.3f), 4);
+        assertEquals(4, mQueue.countStateChanges());
+        mQueue.sort();
+        assertPayloadOrder(3, 4, 1, 0, 2);
+        assertEquals(2, mQueue.countStateChanges());
+    }
+
+    public void testTranslucentRunsBackToFrontAfterOpaque() {
+        mQueue.add(RenderQueue.makeKey(0, true, 1, 1, 0.2f), 0);
+        mQueue.add(RenderQueue.makeKey(0, false, 9, 9, 0.9f), 1);
+        mQueue.add(RenderQueue.makeKey(0, true, 5, 5, 0.8f), 2);
+        mQueue.add(RenderQueue.makeKey(0, true, 1, 1, 0.5f), 3);
+        mQueue.add(RenderQueue.makeKey(0, false, 1, 1, 0.1f), 4);
+        mQueue.sort();
+        // Depth wins over state for translucent draws, whatever their program and texture.
+        assertPayloadOrder(4, 1, 2, 3, 0);
+    }
+
+    public void testLayersComeFirst() {
+        // The top layer sets the key's sign bit; keys still compare as unsigned.
+        mQueue.add(RenderQueue.makeKey(RenderQueue.MAX_LAYER, false, 0, 0, 0), 0);
+        mQueue.add(RenderQueue.makeKey(1, true, 0, 0, 0), 1);
+        mQueue.add(RenderQueue.makeKey(2, false, 0, 0, 0), 2);
+        mQueue.add(RenderQueue.makeKey(0, true, RenderQueue.MAX_PROGRAM, 0, 1), 3);
+        mQueue.add(RenderQueue.makeKey(128, false, 0, 0, 0), 4);
+        mQueue.sort();
+        assertPayloadOrder(3, 1, 2, 4, 0);
+    }
+
+    public void testEqualKeysKeepSubmissionOrder() {
+        final long first = RenderQueue.makeKey(0, false, 1, 1, 0.5f);
+        final long second = RenderQueue.makeKey(0, false, 1, 2, 0.5f);
+        for (int i = 0; i < 10; i++) {
+            mQueue.add(i % 2 == 0 ? second : first, i);
+        }
+        mQueue.sort();
+        assertPayloadOrder(1, 3, 5, 7, 9, 0, 2, 4, 6, 8);
+
+        // Translucent draws at the same depth too.
+        mQueue.clear();
+        for (int i = 0; i < 5; i++) {
+            mQueue.add(RenderQueue.makeKey(0, true, 1, 1, 0.5f), i);
+        }
+        mQueue.sort();
+        assertPayloadOrder(0, 1, 2, 3, 4);
+    }
+
+    public void testSkipsSharedBytes() {
+        mQueue.sort();
+        assertEquals(0, mQueue.getSortPasses());
+        // Keys differing only in their lowest depth byte.
+        mQueue.add(1, 0);
+        mQueue.add(0, 1);
+        mQueue.add(1, 2);
+        mQueue.sort();
+        assertEquals(1, mQueue.getSortPasses());
+        assertPayloadOrder(1, 0, 2);
+
+        mQueue.add(0, 3);
+        mQueue.add(-1L, 4);
+        mQueue.sort();
+        assertEquals(8, mQueue.getSortPasses());
+        assertPayloadOrder(1, 3, 0, 2, 4);
+    }
+
+    public void testMatchesAStableReferenceSort() {
+        final Random random = new Random(19);
+        final List<long[]> reference = new ArrayList<long[]>();
+        // Few distinct states and depths, so many keys are equal.
+        for (int i = 0; i < 5000; i++) {
+            final long key = RenderQueue.makeKey(random.nextInt(3), random.nextBoolean(), random.nextInt(4),
+                    random.nextInt(8), random.nextInt(16) / 16.0f);
+            mQueue.add(key, i);
+            reference.add(new long[] {key, i});
+        }
+        mQueue.sort();
+        Collections.sort(reference, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] lhs, long[] rhs) {
+                // Unsigned comparison.
+                final long left = lhs[0] ^ Long.MIN_VALUE;
+                final long right = rhs[0] ^ Long.MIN_VALUE;
+                return left < right ? -1 : (left == right ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < reference.size(); i++) {
+            assertEquals(reference.get(i)[0], mQueue.getKey(i));
+            assertEquals((int) reference.get(i)[1], mQueue.getPayload(i));
+        }
+    }
+
+    public void testExecuteHandsOutDrawsInOrder() {
+        mQueue.add(RenderQueue.makeKey(1, false, 0, 0, 0), 7);
+        mQueue.add(RenderQueue.makeKey(0, false, 0, 0, 0), 8);
+        mQueue.sort();
+        final List<Integer> drawn = new ArrayList<Integer>();
+        mQueue.execute(new RenderQueue.IDrawer() {
+            @Override
+            public void draw(long key, int payload) {
+                assertEquals(payload == 8 ? 0 : 1, RenderQueue.getLayer(key));
+                drawn.add(payload);
+            }
+        });
+        assertEquals(2, drawn.size());
+        assertEquals(8, drawn.get(0).intValue());
+        assertEquals(7, drawn.get(1).intValue());
+
+        mQueue.clear();
+        assertEquals(0, mQueue.size());
+    }
+}
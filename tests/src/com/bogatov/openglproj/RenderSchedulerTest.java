@@ -0,0 +1,129 @@
+package com.bogatov.openglproj;
+
+import junit.framework.TestCase;
+
+public class RenderSchedulerTest extends TestCase {
+
+    private static final long MILLIS = 1000L * 1000;
+
+    /** Starts close to overflowing, so windows are compared across the wrap. */
+    private long mNow = Long.MAX_VALUE - 10 * MILLIS;
+    private int mRequests;
+
+    private final RenderScheduler mScheduler = new RenderScheduler(new RenderScheduler.IRenderRequester() {
+        @Override
+        public void requestRender() {
+            mRequests++;
+        }
+    }, new RenderScheduler.IClock() {
+        @Override
+        public long nanoTime() {
+            return mNow;
+        }
+    });
+
+    public void testIdleUntilInvalidated() {
+        assertTrue(mScheduler.isIdle());
+        assertEquals(0, mRequests);
+
+        mScheduler.invalidate(RenderScheduler.DIRTY_DATA);
+        assertEquals(1, mRequests);
+        assertFalse(mScheduler.isIdle());
+
+        assertEquals(RenderScheduler.DIRTY_DATA, mScheduler.beginFrame());
+        assertFalse(mScheduler.endFrame());
+        assertTrue(mScheduler.isIdle());
+        assertEquals(1, mRequests);
+    }
+
+    public void testInvalidationsCoalesceUntilTheFrameBegins() {
+        mScheduler.invalidate(RenderScheduler.DIRTY_SCENE);
+        mScheduler.invalidate(RenderScheduler.DIRTY_TEXTURES);
+        mScheduler.invalidate(RenderScheduler.DIRTY_SCENE);
+        assertEquals(1, mRequests);
+        assertEquals(1, mScheduler.getRequestCount());
+        assertEquals(3, mScheduler.getInvalidateCount());
+
+        assertEquals(RenderScheduler.DIRTY_SCENE | RenderScheduler.DIRTY_TEXTURES, mScheduler.beginFrame());
+        assertEquals(1, mScheduler.getFrameCount());
+    }
+
+    public void testInvalidatingDuringAFrameRequestsTheNext() {
+        mScheduler.invalidate();
+        assertEquals(RenderScheduler.DIRTY_ALL, mScheduler.beginFrame());
+        // E.g. a decode finishing while the frame is drawn.
+        mScheduler.invalidate(RenderScheduler.DIRTY_TEXTURES);
+        assertEquals(2, mRequests);
+        assertTrue(mScheduler.endFrame());
+
+        assertEquals(RenderScheduler.DIRTY_TEXTURES, mScheduler.beginFrame());
+        assertFalse(mScheduler.endFrame());
+        assertEquals(2, mRequests);
+    }
+
+    public void testFrameTheViewDrewOnItsOwn() {
+        // E.g. after a resize; nothing was marked.
+        assertEquals(0, mScheduler.beginFrame());
+        assertFalse(mScheduler.endFrame());
+        assertEquals(0, mRequests);
+    }
+
+    public void testAnimationKeepsFramesComingUntilItsWindowEnds() {
+        mScheduler.animate(5 * MILLIS);
+        assertEquals(1, mRequests);
+        for (int frame = 0; frame < 4; frame++) {
+            assertEquals(RenderScheduler.DIRTY_ANIMATION, mScheduler.beginFrame());
+            mNow += MILLIS;
+            assertTrue(mScheduler.endFrame());
+        }
+        assertEquals(5, mRequests);
+
+        // The frame requested last inside the window is still drawn, and requests no other.
+        mNow += MILLIS;
+        assertEquals(RenderScheduler.DIRTY_ANIMATION, mScheduler.beginFrame());
+        assertFalse(mScheduler.isAnimating());
+        assertFalse(mScheduler.endFrame());
+        assertTrue(mScheduler.isIdle());
+        assertEquals(5, mRequests);
+    }
+
+    public void testOverlappingAnimationsEndWithTheLast() {
+        mScheduler.animate(5 * MILLIS);
+        mNow += MILLIS;
+        // Ends before the first window does, so it changes nothing.
+        mScheduler.animate(MILLIS);
+        mNow += 2 * MILLIS;
+        assertTrue(mScheduler.isAnimating());
+
+        // Extends past it.
+        mScheduler.animate(5 * MILLIS);
+        mNow += 4 * MILLIS;
+        assertTrue(mScheduler.isAnimating());
+        mNow += MILLIS;
+        assertFalse(mScheduler.isAnimating());
+    }
+
+    public void testExtendingTheWindowEveryFrameAnimatesIndefinitely() {
+        mScheduler.animate(MILLIS);
+        for (int frame = 0; frame < 100; frame++) {
+            assertTrue((mScheduler.beginFrame() & RenderScheduler.DIRTY_ANIMATION) != 0);
+            mNow += MILLIS / 2;
+            mScheduler.animate(MILLIS);
+            assertTrue(mScheduler.endFrame());
+        }
+        assertTrue(mScheduler.isAnimating());
+        assertEquals(101, mRequests);
+    }
+
+    public void testStopAnimation() {
+        mScheduler.animate(5 * MILLIS);
+        mScheduler.stopAnimation();
+        assertFalse(mScheduler.isAnimating());
+
+        // The frame already requested is still drawn, but requests no other.
+        assertEquals(RenderScheduler.DIRTY_ANIMATION, mScheduler.beginFrame());
+        assertFalse(mScheduler.endFrame());
+        assertTrue(mScheduler.isIdle());
+        assertEquals(1, mRequests);
+    }
+}
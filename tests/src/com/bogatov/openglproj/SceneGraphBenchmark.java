@@ -0,0 +1,87 @@
+package com.bogatov.openglproj;
+
+import junit.framework.TestCase;
+
+import android.opengl.Matrix;
+import android.util.Log;
+
+/**
+ * Times {@link SceneGraph#update()} over a grid node with 16,384 cells when nothing moved, when 1% of the cells
+ * moved, when only the camera moved and when the grid moved. Results go to the log; the assertions only catch
+ * regressions far outside noise.
+ */
+public class SceneGraphBenchmark extends TestCase {
+
+    private static final String TAG = SceneGraphBenchmark.class.getSimpleName();
+
+    private static final int COLUMNS = 128;
+    private static final int CELLS = COLUMNS * COLUMNS;
+    private static final int ROUNDS = 200;
+
+    private static final int CASE_STATIC = 0;
+    private static final int CASE_FEW_CELLS = 1;
+    private static final int CASE_CAMERA = 2;
+    private static final int CASE_GRID = 3;
+    private static final String[] CASE_NAMES = {"static", "1% of cells", "camera", "grid"};
+
+    private final SceneGraph mGraph = new SceneGraph(CELLS + 1);
+    private final float[] mView = new float[16];
+    private final float[] mProjection = new float[16];
+    private int mGrid;
+
+    /** Keeps the results from being optimized away. */
+    private float mChecksum;
+
+    @Override
+    protected void setUp() {
+        mGrid = mGraph.addNode(SceneGraph.NO_PARENT);
+        for (int i = 0; i < CELLS; i++) {
+            final int cell = mGraph.addNode(mGrid);
+            mGraph.setTranslation(cell, i % COLUMNS, -(i / COLUMNS), 0);
+        }
+        Matrix.frustumM(mProjection, 0, -0.6f, 0.6f, -1, 1, 1, 200);
+        Matrix.setLookAtM(mView, 0, 0, 0, 5, 0, 0, 0, 0, 1, 0);
+        mGraph.setCamera(mView, 0, mProjection, 0);
+        mGraph.update();
+    }
+
+    /** @return Nanoseconds per update. */
+    private long time(int which) {
+        int recomputed = 0;
+        final long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            if (which == CASE_FEW_CELLS) {
+                for (int cell = 1 + round % 100; cell <= CELLS; cell += 100) {
+                    mGraph.setTranslation(cell, (cell - 1) % COLUMNS, -((cell - 1) / COLUMNS), round);
+                }
+            } else if (which == CASE_CAMERA) {
+                mView[14] = 5 + round;
+                mGraph.setCamera(mView, 0, mProjection, 0);
+            } else if (which == CASE_GRID) {
+                mGraph.setTranslation(mGrid, 0, round, 0);
+            }
+            recomputed += mGraph.update();
+            mChecksum += mGraph.getMVPMatrices()[16 * CELLS + 12];
+        }
+        final long nanos = (System.nanoTime() - start) / ROUNDS;
+        Log.i(TAG, CASE_NAMES[which] + ": " + nanos + " ns per update, " + recomputed / ROUNDS + " nodes");
+        return nanos;
+    }
+
+    public void testMostlyStaticUpdate() {
+        final long[] nanos = new long[CASE_NAMES.length];
+        for (int which = 0; which < CASE_NAMES.length; which++) {
+            // Warm up, then measure.
+            time(which);
+            nanos[which] = time(which);
+        }
+        assertFalse(Float.isNaN(mChecksum));
+
+        // Untouched nodes are only visited, so a mostly static grid costs a fraction of a full update.
+        final String message = nanos[CASE_STATIC] + ", " + nanos[CASE_FEW_CELLS] + ", " + nanos[CASE_GRID];
+        assertTrue(message, nanos[CASE_STATIC] < nanos[CASE_GRID] / 2);
+        assertTrue(message, nanos[CASE_FEW_CELLS] < nanos[CASE_GRID] / 2);
+        // The camera alone leaves the world matrices alone.
+        assertTrue(nanos[CASE_CAMERA] + ", " + nanos[CASE_GRID], nanos[CASE_CAMERA] < 2 * nanos[CASE_GRID]);
+    }
+}
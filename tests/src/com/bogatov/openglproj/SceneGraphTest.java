@@ -0,0 +1,149 @@
+package com.bogatov.openglproj;
+
+import junit.framework.TestCase;
+
+import android.opengl.Matrix;
+
+public class SceneGraphTest extends TestCase {
+
+    private static final float EPSILON = 1e-4f;
+
+    private final SceneGraph mGraph = new SceneGraph(2);
+
+    private void assertMatrix(float[] expected, int expectedOffset, float[] actual, int node) {
+        for (int i = 0; i < 16; i++) {
+            assertEquals("Element " + i, expected[expectedOffset + i], actual[SceneGraph.getOffset(node) + i],
+                    EPSILON);
+        }
+    }
+
+    private void assertTranslation(int node, float x, float y, float z) {
+        final float[] world = mGraph.getWorldMatrices();
+        final int offset = SceneGraph.getOffset(node);
+        assertEquals(x, world[offset + 12], EPSILON);
+        assertEquals(y, world[offset + 13], EPSILON);
+        assertEquals(z, world[offset + 14], EPSILON);
+    }
+
+    public void testWorldMatricesCompose() {
+        final int root = mGraph.addNode(SceneGraph.NO_PARENT);
+        final int child = mGraph.addNode(root);
+        final int grandchild = mGraph.addNode(child);
+        mGraph.setTranslation(root, 1, 0, 0);
+        mGraph.setTranslation(child, 0, 2, 0);
+        mGraph.setTranslation(grandchild, 0, 0, 3);
+        assertEquals(3, mGraph.update());
+        assertTranslation(grandchild, 1, 2, 3);
+
+        // A rotated child takes the general multiply.
+        final float[] rotation = new float[16];
+        Matrix.setRotateM(rotation, 0, 90, 0, 0, 1);
+        mGraph.setLocalMatrix(child, rotation, 0);
+        mGraph.update();
+        final float[] expected = new float[16];
+        final float[] parent = new float[16];
+        MatrixMath.setTranslation(parent, 0, 1, 0, 0);
+        MatrixMath.multiply(expected, 0, parent, 0, rotation, 0);
+        assertMatrix(expected, 0, mGraph.getWorldMatrices(), child);
+        // The grandchild's translation along z is not affected by a rotation about z.
+        assertTranslation(grandchild, 1, 0, 3);
+    }
+
+    public void testDirtyNodesPropagateToDescendantsOnly() {
+        final int root = mGraph.addNode(SceneGraph.NO_PARENT);
+        final int child = mGraph.addNode(root);
+        final int grandchild = mGraph.addNode(child);
+        final int sibling = mGraph.addNode(root);
+        final int otherRoot = mGraph.addNode(SceneGraph.NO_PARENT);
+        assertEquals(5, mGraph.update());
+        assertEquals(0, mGraph.update());
+
+        mGraph.setTranslation(child, 0, 1, 0);
+        assertEquals(2, mGraph.update());
+        assertEquals(2, mGraph.getLastUpdateCount());
+        assertTranslation(grandchild, 0, 1, 0);
+
+        mGraph.setTranslation(root, 5, 0, 0);
+        assertEquals(4, mGraph.update());
+        assertTranslation(grandchild, 5, 1, 0);
+        assertTranslation(sibling, 5, 0, 0);
+        assertTranslation(otherRoot, 0, 0, 0);
+
+        mGraph.setTranslation(otherRoot, 0, 0, 1);
+        assertEquals(1, mGraph.update());
+        assertTranslation(grandchild, 5, 1, 0);
+    }
+
+    public void testCameraChangeRecomputesOnlyViewMatrices() {
+        final int root = mGraph.addNode(SceneGraph.NO_PARENT);
+        final int cell = mGraph.addNode(root);
+        mGraph.setTranslation(root, 0, 0, -5);
+        mGraph.setTranslation(cell, 2, 1, 0);
+        mGraph.update();
+        final float[] world = mGraph.getWorldMatrices().clone();
+
+        final float[] view = new float[16];
+        final float[] projection = new float[16];
+        Matrix.setLookAtM(view, 0, 1, 2, 3, 0, 0, -5, 0, 1, 0);
+        Matrix.frustumM(projection, 0, -1, 1, -1, 1, 1, 10);
+        mGraph.setCamera(view, 0, projection, 0);
+        assertEquals(2, mGraph.update());
+        assertEquals(0, mGraph.update());
+
+        // The world matrices stay as they were.
+        assertMatrix(world, SceneGraph.getOffset(cell), mGraph.getWorldMatrices(), cell);
+
+        final float[] modelView = new float[16];
+        final float[] mvp = new float[16];
+        final float[] viewProjection = new float[16];
+        MatrixMath.multiply(modelView, 0, view, 0, world, SceneGraph.getOffset(cell));
+        MatrixMath.multiply(viewProjection, 0, projection, 0, view, 0);
+        MatrixMath.multiply(mvp, 0, viewProjection, 0, world, SceneGraph.getOffset(cell));
+        assertMatrix(modelView, 0, mGraph.getModelViewMatrices(), cell);
+        assertMatrix(mvp, 0, mGraph.getMVPMatrices(), cell);
+    }
+
+    public void testGrowsPastInitialCapacity() {
+        int parent = SceneGraph.NO_PARENT;
+        for (int i = 0; i < 20; i++) {
+            parent = mGraph.addNode(parent);
+            mGraph.setTranslation(parent, 1, 0, 0);
+            if (i == 1) {
+                // Matrices computed before the pools grow survive the copy.
+                mGraph.update();
+            }
+        }
+        assertEquals(20, mGraph.getNodeCount());
+        assertEquals(18, mGraph.getParent(19));
+        assertEquals(18, mGraph.update());
+        assertTranslation(19, 20, 0, 0);
+    }
+
+    public void testRejectsUnknownParents() {
+        try {
+            mGraph.addNode(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        mGraph.addNode(SceneGraph.NO_PARENT);
+        try {
+            mGraph.addNode(-2);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    public void testClear() {
+        mGraph.addNode(SceneGraph.NO_PARENT);
+        mGraph.addNode(0);
+        mGraph.clear();
+        assertEquals(0, mGraph.getNodeCount());
+        assertEquals(0, mGraph.update());
+        // New nodes start dirty with an identity transform.
+        final int node = mGraph.addNode(SceneGraph.NO_PARENT);
+        assertEquals(1, mGraph.update());
+        assertTranslation(node, 0, 0, 0);
+    }
+}
@@ -0,0 +1,111 @@
+package com.bogatov.openglproj;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class ShaderLibraryTest extends TestCase {
+
+    private final Map<String, String> mSources = new HashMap<String, String>();
+    private final List<String> mCompiled = new ArrayList<String>();
+
+    private ShaderLibrary mLibrary;
+
+    @Override
+    protected void setUp() {
+        mSources.put("vertex", "#version 100\n#include \"common\"\nvertex");
+        mSources.put("fragment", "#include \"common\"\nfragment");
+        mSources.put("common", "common");
+        mSources.put("vertex_copy", "#version 100\n#include \"common\"\nvertex");
+
+        final ShaderPreprocessor preprocessor = new ShaderPreprocessor(new ShaderPreprocessor.ISourceResolver() {
+            @Override
+            public String resolve(String name) {
+                return mSources.get(name);
+            }
+        });
+        final ProgramCache.IBinaryProvider noBinaries = new ProgramCache.IBinaryProvider() {
+            @Override
+            public boolean isSupported() {
+                return false;
+            }
+
+            @Override
+            public ProgramCache.Binary getBinary(int programHandle) {
+                return null;
+            }
+
+            @Override
+            public boolean loadBinary(int programHandle, int format, byte[] data) {
+                return false;
+            }
+        };
+        // Without binaries every program is compiled, and the compiler hands out a new handle for each.
+        final ProgramCache programCache = new ProgramCache(null, noBinaries, new ProgramCache.ICompiler() {
+            @Override
+            public int compile(String vertexShader, String fragmentShader, String[] attributes) {
+                mCompiled.add(vertexShader);
+                return mCompiled.size();
+            }
+
+            @Override
+            public int createProgram() {
+                throw new AssertionError();
+            }
+
+            @Override
+            public void deleteProgram(int programHandle) {
+                throw new AssertionError();
+            }
+
+            @Override
+            public String getDriverKey() {
+                throw new AssertionError();
+            }
+        });
+        mLibrary = new ShaderLibrary(preprocessor, programCache);
+    }
+
+    public void testBuildsEachVariantOnce() {
+        final String[] attributes = {"a_Position"};
+        final int plain = mLibrary.getProgram("vertex", "fragment", null, attributes);
+        final int textured = mLibrary.getProgram("vertex", "fragment", new String[] {"USE_TEXTURE"}, attributes);
+        assertTrue(plain != textured);
+        assertEquals("#version 100\n#define USE_TEXTURE 1\ncommon\nvertex\n", mCompiled.get(1));
+
+        assertEquals(plain, mLibrary.getProgram("vertex", "fragment", new String[0], attributes));
+        assertEquals(textured, mLibrary.getProgram("vertex", "fragment", new String[] {"USE_TEXTURE"}, attributes));
+        assertEquals(2, mLibrary.getProgramCount());
+        assertEquals(4, mLibrary.getRequestCount());
+    }
+
+    public void testKeysProgramsByExpandedSource() {
+        // A different name for the same source shares the program.
+        final int program = mLibrary.getProgram("vertex", "fragment", new String[] {"A", "B"}, null);
+        assertEquals(program, mLibrary.getProgram("vertex_copy", "fragment", new String[] {"A", "B"}, null));
+        assertEquals(1, mCompiled.size());
+
+        // The preprocessor keys variants by their sorted defines, so the order of the defines does not matter.
+        assertEquals(program, mLibrary.getProgram("vertex", "fragment", new String[] {"B", "A"}, null));
+        assertEquals(1, mLibrary.getProgramCount());
+    }
+
+    public void testKeysProgramsByAttributes() {
+        final int one = mLibrary.getProgram("vertex", "fragment", null, new String[] {"a_Position"});
+        final int two = mLibrary.getProgram("vertex", "fragment", null, new String[] {"a_Position", "a_Color"});
+        final int none = mLibrary.getProgram("vertex", "fragment", null, null);
+        assertTrue(one != two && two != none && one != none);
+        assertEquals(3, mLibrary.getProgramCount());
+    }
+
+    public void testContextLossForgetsPrograms() {
+        final int before = mLibrary.getProgram("vertex", "fragment", null, null);
+        mLibrary.onContextCreated();
+        assertEquals(0, mLibrary.getProgramCount());
+        assertTrue(before != mLibrary.getProgram("vertex", "fragment", null, null));
+        assertEquals(2, mCompiled.size());
+    }
+}
@@ -0,0 +1,129 @@
+package com.bogatov.openglproj;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class ShaderPreprocessorTest extends TestCase {
+
+    private final Map<String, String> mSources = new HashMap<String, String>();
+    private int mResolveCount;
+
+    private final ShaderPreprocessor mPreprocessor = new ShaderPreprocessor(new ShaderPreprocessor.ISourceResolver() {
+        @Override
+        public String resolve(String name) {
+            mResolveCount++;
+            return mSources.get(name);
+        }
+    });
+
+    private void assertFails(String name, String message) {
+        try {
+            mPreprocessor.expand(name);
+            fail();
+        } catch (RuntimeException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    public void testResolvesNestedIncludesInPlace() {
+        mSources.put("main", "a\n#include \"outer\"\nd");
+        mSources.put("outer", "b\n  #include \"inner\"");
+        mSources.put("inner", "c");
+        assertEquals("a\nb\nc\nd\n", mPreprocessor.expand("main"));
+    }
+
+    public void testIncludesEachSourceOnce() {
+        mSources.put("main", "#include \"left\"\n#include \"right\"\nmain");
+        mSources.put("left", "#include \"common\"\nleft");
+        mSources.put("right", "#include \"common\"\nright");
+        mSources.put("common", "common");
+        assertEquals("common\nleft\nright\nmain\n", mPreprocessor.expand("main"));
+    }
+
+    public void testReportsIncludeCycles() {
+        mSources.put("a", "#include \"b\"");
+        mSources.put("b", "#include \"c\"");
+        mSources.put("c", "#include \"b\"");
+        assertFails("a", "Include cycle: b -> c -> b");
+
+        mSources.put("self", "#include \"self\"");
+        assertFails("self", "Include cycle: self -> self");
+    }
+
+    public void testReportsMissingAndMalformedIncludes() {
+        assertFails("missing", "Shader source not found: missing");
+
+        mSources.put("main", "#include \"missing\"");
+        assertFails("main", "Shader source not found: missing (included from main)");
+
+        mSources.put("malformed", "#include <lighting>");
+        assertFails("malformed", "Malformed include in malformed: #include <lighting>");
+    }
+
+    public void testSkipsIncludesInComments() {
+        mSources.put("main", "// #include \"missing\"\n/*\n#include \"missing\"\n */\n#include \"lib\"\n"
+                + "/* one line */\n#include \"other\"");
+        mSources.put("lib", "lib");
+        mSources.put("other", "other");
+        assertEquals("// #include \"missing\"\n/*\n#include \"missing\"\n */\nlib\n/* one line */\nother\n",
+                mPreprocessor.expand("main"));
+    }
+
+    public void testSkipsIncludesInIfZeroBlocks() {
+        mSources.put("main", "#if 0\n#ifdef FOO\n#include \"missing\"\n#endif\n#include \"missing\"\n#else\n"
+                + "#include \"lib\"\n#endif\n#if 0 // disabled\n#include \"missing\"\n#endif");
+        mSources.put("lib", "lib");
+        assertEquals("#if 0\n#ifdef FOO\n#include \"missing\"\n#endif\n#include \"missing\"\n#else\nlib\n#endif\n"
+                + "#if 0 // disabled\n#include \"missing\"\n#endif\n", mPreprocessor.expand("main"));
+    }
+
+    public void testResolvesIncludesInOtherConditionals() {
+        // Only #if 0 is recognized; anything else is left for the compiler to evaluate.
+        mSources.put("main", "#ifdef USE_TEXTURE\n#include \"texture\"\n#endif\n#if 01\n#include \"other\"\n#endif");
+        mSources.put("texture", "texture");
+        mSources.put("other", "other");
+        assertEquals("#ifdef USE_TEXTURE\ntexture\n#endif\n#if 01\nother\n#endif\n", mPreprocessor.expand("main"));
+    }
+
+    public void testInjectsDefinesAfterVersion() {
+        mSources.put("versioned", "// header\n#version 100\nbody");
+        mSources.put("plain", "body");
+        assertEquals("// header\n#version 100\n#define B 1\n#define A 1\nbody\n",
+                mPreprocessor.expand("versioned", "B", "A"));
+        assertEquals("#define A 1\nbody\n", mPreprocessor.expand("plain", "A"));
+
+        mSources.put("licensed", "/* License\n#version in a comment */\n\n#version 100\nbody");
+        assertEquals("/* License\n#version in a comment */\n\n#version 100\n#define A 1\nbody\n",
+                mPreprocessor.expand("licensed", "A"));
+        assertEquals("body\n", mPreprocessor.expand("plain"));
+    }
+
+    public void testVariantKeys() {
+        assertEquals("shader", ShaderPreprocessor.getVariantKey("shader"));
+        assertEquals("shader", ShaderPreprocessor.getVariantKey("shader", (String[]) null));
+        assertEquals("shader?A,B", ShaderPreprocessor.getVariantKey("shader", "B", "A"));
+        assertEquals("shader?A,B", ShaderPreprocessor.getVariantKey("shader", "A", "B", "A"));
+        assertFalse(ShaderPreprocessor.getVariantKey("shader", "A").equals(ShaderPreprocessor.getVariantKey("shader")));
+    }
+
+    public void testCachesExpansionPerVariant() {
+        mSources.put("main", "#include \"lib\"\nmain");
+        mSources.put("lib", "lib");
+        final String first = mPreprocessor.expand("main", "A", "B");
+        assertEquals(2, mResolveCount);
+
+        // Same variant in another order is served from memory.
+        assertSame(first, mPreprocessor.expand("main", "B", "A"));
+        assertEquals(2, mResolveCount);
+
+        // Another variant resolves again.
+        mPreprocessor.expand("main", "A");
+        assertEquals(4, mResolveCount);
+
+        mSources.put("lib", "changed");
+        mPreprocessor.clear();
+        assertEquals("changed\nmain\n", mPreprocessor.expand("main"));
+    }
+}
@@ -0,0 +1,88 @@
+package com.bogatov.openglproj;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import android.util.Log;
+
+/**
+ * Measures how well and how fast {@link SkylinePacker} fills an atlas page with thumbnail sized images, as the
+ * grid's thumbnail atlas uses it. Results go to the log; the assertions only catch regressions far outside noise.
+ */
+public class SkylinePackerBenchmark extends TestCase {
+
+    private static final String TAG = SkylinePackerBenchmark.class.getSimpleName();
+
+    private static final int PAGE_SIZE = 1024;
+    private static final int PADDING = 2;
+    private static final int PAGES = 200;
+
+    /**
+     * Fills pages with images of one thumbnail level at typical photo aspect ratios until one does not fit.
+     *
+     * @return Average occupancy of the pages.
+     */
+    private static float fillPages(int level, Random random) {
+        final SkylinePacker packer = new SkylinePacker(PAGE_SIZE, PAGE_SIZE);
+        final int[] position = new int[2];
+        float occupancy = 0.0f;
+        for (int page = 0; page < PAGES; page++) {
+            packer.reset();
+            while (true) {
+                // The shorter side is the level; the longer one up to twice that, either way round.
+                final int longer = level + random.nextInt(level + 1);
+                final boolean portrait = random.nextBoolean();
+                final int width = (portrait ? level : longer) + PADDING;
+                final int height = (portrait ? longer : level) + PADDING;
+                if (!packer.insert(width, height, position)) {
+                    break;
+                }
+            }
+            occupancy += packer.getOccupancy();
+        }
+        return occupancy / PAGES;
+    }
+
+    public void testPackingEfficiency() {
+        final Random random = new Random(42);
+        for (int level = 32; level <= 256; level <<= 1) {
+            final float occupancy = fillPages(level, random);
+            Log.i(TAG, "Thumbnails at " + level + ": " + Math.round(occupancy * 100) + "% of a page used");
+            assertTrue("Occupancy " + occupancy + " at level " + level, occupancy > 0.5f);
+        }
+    }
+
+    public void testInsertThroughput() {
+        final SkylinePacker packer = new SkylinePacker(PAGE_SIZE, PAGE_SIZE);
+        final Random random = new Random(7);
+        final int[] sizes = new int[4096];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = 32 + random.nextInt(96);
+        }
+        final int[] position = new int[2];
+
+        // Warm up, then time inserts into pages that are reset whenever one is full.
+        int inserts = 0;
+        long nanos = 0;
+        for (int round = 0; round < 6; round++) {
+            final long start = System.nanoTime();
+            int count = 0;
+            for (int i = 0; i < 50000; i++) {
+                final int size = sizes[i & (sizes.length - 1)];
+                if (!packer.insert(size, sizes[(i + 1) & (sizes.length - 1)], position)) {
+                    packer.reset();
+                }
+                count++;
+            }
+            if (round > 0) {
+                nanos += System.nanoTime() - start;
+                inserts += count;
+            }
+        }
+        final long nanosPerInsert = nanos / inserts;
+        Log.i(TAG, "Insert: " + nanosPerInsert + " ns");
+        // A frame's worth of thumbnails must pack in well under a millisecond.
+        assertTrue("Insert took " + nanosPerInsert + " ns", nanosPerInsert < 20000);
+    }
+}
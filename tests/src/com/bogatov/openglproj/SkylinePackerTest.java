@@ -0,0 +1,110 @@
+package com.bogatov.openglproj;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class SkylinePackerTest extends TestCase {
+
+    /** Whether rectangle i of the arrays overlaps none of the ones before it and lies within the page. */
+    private static void assertPlaced(SkylinePacker packer, int[] x, int[] y, int[] w, int[] h, int count) {
+        final int i = count - 1;
+        assertTrue(x[i] >= 0 && y[i] >= 0);
+        assertTrue(x[i] + w[i] <= packer.getWidth() && y[i] + h[i] <= packer.getHeight());
+        for (int j = 0; j < i; j++) {
+            final boolean apart = x[i] + w[i] <= x[j] || x[j] + w[j] <= x[i] || y[i] + h[i] <= y[j]
+                    || y[j] + h[j] <= y[i];
+            assertTrue("Rectangles " + j + " and " + i + " overlap", apart);
+        }
+    }
+
+    public void testFillsRowsBottomLeftFirst() {
+        final SkylinePacker packer = new SkylinePacker(64, 64);
+        final int[] position = new int[2];
+        for (int i = 0; i < 16; i++) {
+            assertTrue(packer.insert(16, 16, position));
+            assertEquals(16 * (i % 4), position[0]);
+            assertEquals(16 * (i / 4), position[1]);
+        }
+        assertFalse(packer.insert(1, 1, position));
+        assertEquals(1.0f, packer.getOccupancy(), 0.0f);
+    }
+
+    public void testRejectsRectanglesLargerThanThePage() {
+        final SkylinePacker packer = new SkylinePacker(64, 32);
+        final int[] position = new int[2];
+        assertFalse(packer.insert(65, 1, position));
+        assertFalse(packer.insert(1, 33, position));
+        assertFalse(packer.insert(0, 1, position));
+        assertTrue(packer.insert(64, 32, position));
+    }
+
+    public void testRandomRectanglesDoNotOverlap() {
+        final SkylinePacker packer = new SkylinePacker(256, 256);
+        final Random random = new Random(1);
+        final int[] x = new int[1024];
+        final int[] y = new int[1024];
+        final int[] w = new int[1024];
+        final int[] h = new int[1024];
+        final int[] position = new int[2];
+        int count = 0;
+        long area = 0;
+        for (int attempt = 0; attempt < 1024; attempt++) {
+            final int width = 1 + random.nextInt(40);
+            final int height = 1 + random.nextInt(40);
+            if (!packer.insert(width, height, position)) {
+                continue;
+            }
+            x[count] = position[0];
+            y[count] = position[1];
+            w[count] = width;
+            h[count] = height;
+            count++;
+            area += width * height;
+            assertPlaced(packer, x, y, w, h, count);
+        }
+        assertTrue(count > 0);
+        assertEquals(area, packer.getUsedArea());
+    }
+
+    public void testRemoveOnlyAccounts() {
+        final SkylinePacker packer = new SkylinePacker(32, 32);
+        final int[] position = new int[2];
+        packer.insert(32, 16, position);
+        packer.insert(32, 16, position);
+        packer.remove(32, 16);
+
+        assertEquals(32 * 16, packer.getUsedArea());
+        assertEquals(32 * 16, packer.getFreedArea());
+        assertEquals(0.5f, packer.getOccupancy(), 0.0f);
+        // The space is not handed out again until a repack.
+        assertFalse(packer.insert(32, 16, position));
+    }
+
+    public void testRepackReclaimsFreedSpace() {
+        final SkylinePacker packer = new SkylinePacker(32, 32);
+        final int[] position = new int[2];
+        for (int i = 0; i < 4; i++) {
+            packer.insert(16, 16, position);
+        }
+        packer.remove(16, 16);
+        packer.remove(16, 16);
+
+        final int[] widths = {16, 16};
+        final int[] heights = {16, 16};
+        final int[] positions = new int[4];
+        assertTrue(packer.repack(widths, heights, 2, positions));
+        assertEquals(0, packer.getFreedArea());
+        assertEquals(0.5f, packer.getOccupancy(), 0.0f);
+        assertTrue(packer.insert(32, 16, position));
+        assertEquals(16, position[1]);
+    }
+
+    public void testRepackThatDoesNotFitLeavesPackerEmpty() {
+        final SkylinePacker packer = new SkylinePacker(16, 16);
+        final int[] widths = {16, 16};
+        final int[] heights = {16, 1};
+        assertFalse(packer.repack(widths, heights, 2, new int[4]));
+        assertEquals(0, packer.getUsedArea());
+    }
+}
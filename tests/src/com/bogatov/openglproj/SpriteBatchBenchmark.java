@@ -0,0 +1,110 @@
+package com.bogatov.openglproj;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import junit.framework.TestCase;
+
+import android.util.Log;
+
+/**
+ * Times a frame of 10,000 quads through {@link SpriteBatch} into a GL that does nothing but count draws, with the
+ * quads sorted by texture, in runs of a few quads per texture, and alternating textures on every quad. Results go
+ * to the log; the assertions only catch regressions far outside noise.
+ */
+public class SpriteBatchBenchmark extends TestCase {
+
+    private static final String TAG = SpriteBatchBenchmark.class.getSimpleName();
+
+    private static final int QUADS = 10000;
+    private static final int CAPACITY = 1000;
+    private static final int TEXTURES = 8;
+    private static final int FRAMES = 100;
+
+    private int mDraws;
+    private int mNextBuffer = 1;
+
+    private final IGL mGL = (IGL) Proxy.newProxyInstance(IGL.class.getClassLoader(), new Class<?>[] {IGL.class},
+            new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            final String name = method.getName();
+            if (name.equals("glGenBuffers")) {
+                ((int[]) args[1])[(Integer) args[2]] = mNextBuffer++;
+            } else if (name.equals("glDrawElements")) {
+                mDraws++;
+            }
+            return method.getReturnType() == int.class ? Integer.valueOf(0) : null;
+        }
+    });
+
+    private final float[] mMVPMatrix = new float[16];
+
+    private SpriteBatch createBatch() {
+        final ProgramCache programCache = new ProgramCache(null, null) {
+            private int mPrograms;
+
+            @Override
+            public int getProgram(String vertexShader, String fragmentShader, String[] attributes) {
+                return ++mPrograms;
+            }
+        };
+        final ShaderPreprocessor preprocessor = new ShaderPreprocessor(new ShaderPreprocessor.ISourceResolver() {
+            @Override
+            public String resolve(String name) {
+                return "";
+            }
+        });
+        final SpriteBatch batch = new SpriteBatch(CAPACITY);
+        batch.onContextCreated(mGL, new ShaderLibrary(preprocessor, programCache));
+        return batch;
+    }
+
+    /** @return Nanoseconds per quad. */
+    private long timeFrames(SpriteBatch batch, int[] textures) {
+        long nanos = 0;
+        for (int frame = 0; frame < 2 * FRAMES; frame++) {
+            final long start = System.nanoTime();
+            batch.begin(mMVPMatrix, 0);
+            for (int i = 0; i < QUADS; i++) {
+                batch.draw(i % 100, i / 100, 1, 1, 0xFFFFFFFF, textures[i], 0, 0, 1, 1);
+            }
+            batch.end();
+            // The first half warms up.
+            if (frame >= FRAMES) {
+                nanos += System.nanoTime() - start;
+            }
+        }
+        return nanos / ((long) FRAMES * QUADS);
+    }
+
+    public void testFlushesAndThroughput() {
+        final int[] runs = {QUADS / TEXTURES, 16, 1};
+        final String[] names = {"sorted", "runs of 16", "alternating"};
+        final long[] nanos = new long[runs.length];
+        final int[] flushes = new int[runs.length];
+        for (int order = 0; order < runs.length; order++) {
+            final int[] textures = new int[QUADS];
+            for (int i = 0; i < QUADS; i++) {
+                textures[i] = 1 + (i / runs[order]) % TEXTURES;
+            }
+            final SpriteBatch batch = createBatch();
+            mDraws = 0;
+            nanos[order] = timeFrames(batch, textures);
+            flushes[order] = batch.getFlushCount();
+            assertEquals(2 * FRAMES * flushes[order], mDraws);
+            assertEquals(QUADS, batch.getQuadCount());
+            Log.i(TAG, names[order] + ": " + nanos[order] + " ns per quad, " + flushes[order] + " flushes ("
+                    + batch.getTextureFlushCount() + " texture, " + batch.getFullFlushCount() + " full)");
+        }
+
+        // Sorted quads only flush when the batch fills up or the texture changes: 1,250 quads per texture take
+        // two flushes each.
+        assertEquals(2 * TEXTURES, flushes[0]);
+        assertEquals(QUADS, flushes[2]);
+        final String message = nanos[0] + ", " + nanos[2];
+        assertTrue(message, nanos[0] < nanos[2]);
+        assertTrue(message, nanos[0] < 500);
+    }
+}
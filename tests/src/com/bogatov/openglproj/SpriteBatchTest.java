@@ -0,0 +1,211 @@
+package com.bogatov.openglproj;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class SpriteBatchTest extends TestCase {
+
+    /** The draw state calls, as "glUseProgram 1", "glBindTexture 5" or "glDrawElements 12". */
+    private final List<String> mCalls = new ArrayList<String>();
+
+    /** Ints of the last vertex upload. */
+    private int[] mVertices;
+
+    private int mNextBuffer = 1;
+
+    private final IGL mGL = (IGL) Proxy.newProxyInstance(IGL.class.getClassLoader(), new Class<?>[] {IGL.class},
+            new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            final String name = method.getName();
+            if (name.equals("glGenBuffers")) {
+                ((int[]) args[1])[(Integer) args[2]] = mNextBuffer++;
+            } else if (name.equals("glGetUniformLocation")) {
+                return args[1].equals("u_Texture") ? 30 : 10 * (Integer) args[0];
+            } else if (name.equals("glUseProgram") || name.equals("glUniformMatrix4fv")) {
+                mCalls.add(name + " " + args[0]);
+            } else if (name.equals("glBindTexture") || name.equals("glDrawElements")) {
+                mCalls.add(name + " " + args[1]);
+            } else if (name.equals("glBufferSubData")) {
+                final IntBuffer data = (IntBuffer) args[3];
+                mVertices = new int[(Integer) args[2] / 4];
+                data.duplicate().get(mVertices);
+            }
+            return method.getReturnType() == int.class ? Integer.valueOf(0) : null;
+        }
+    });
+
+    private SpriteBatch createBatch(int capacity) {
+        // Hands out the color program 1 first, then the textured program 2; the fake GL puts a program's MVP
+        // matrix uniform at location 10 times its handle.
+        final ProgramCache programCache = new ProgramCache(null, null) {
+            private int mPrograms;
+
+            @Override
+            public int getProgram(String vertexShader, String fragmentShader, String[] attributes) {
+                return ++mPrograms;
+            }
+        };
+        final ShaderPreprocessor preprocessor = new ShaderPreprocessor(new ShaderPreprocessor.ISourceResolver() {
+            @Override
+            public String resolve(String name) {
+                return "";
+            }
+        });
+        final ShaderLibrary library = new ShaderLibrary(preprocessor, programCache);
+        final SpriteBatch batch = new SpriteBatch(capacity);
+        batch.onContextCreated(mGL, library);
+        mCalls.clear();
+        return batch;
+    }
+
+    private void assertCalls(String... calls) {
+        assertEquals(calls.length, mCalls.size());
+        for (int i = 0; i < calls.length; i++) {
+            assertEquals(calls[i], mCalls.get(i));
+        }
+    }
+
+    public void testQuadsOfOneTextureShareAFlush() {
+        final SpriteBatch batch = createBatch(8);
+        batch.begin(new float[16], 0);
+        for (int i = 0; i < 5; i++) {
+            batch.draw(i, 0, 1, 1, 0xFFFFFFFF, 7, 0, 0, 1, 1);
+        }
+        assertTrue(mCalls.isEmpty());
+        batch.end();
+        assertCalls("glUseProgram 2", "glUniformMatrix4fv 20", "glBindTexture 7", "glDrawElements 30");
+        assertEquals(1, batch.getFlushCount());
+        assertEquals(5, batch.getQuadCount());
+    }
+
+    public void testTextureChangeFlushes() {
+        final SpriteBatch batch = createBatch(8);
+        batch.begin(new float[16], 0);
+        batch.draw(0, 0, 1, 1, 0xFFFFFFFF, 5, 0, 0, 1, 1);
+        batch.draw(0, 0, 1, 1, 0xFFFFFFFF, 5, 0, 0, 1, 1);
+        batch.draw(0, 0, 1, 1, 0xFFFFFFFF, 6, 0, 0, 1, 1);
+        batch.end();
+        // The second flush keeps the program and its uniforms.
+        assertCalls("glUseProgram 2", "glUniformMatrix4fv 20", "glBindTexture 5", "glDrawElements 12",
+                "glUseProgram 2", "glBindTexture 6", "glDrawElements 6");
+        assertEquals(2, batch.getFlushCount());
+        assertEquals(1, batch.getTextureFlushCount());
+        assertEquals(0, batch.getProgramFlushCount());
+        assertEquals(0, batch.getFullFlushCount());
+    }
+
+    public void testSwitchingBetweenColoredAndTexturedFlushes() {
+        final SpriteBatch batch = createBatch(8);
+        batch.begin(new float[16], 0);
+        batch.draw(0, 0, 1, 1, 0xFF00FF00);
+        batch.draw(0, 0, 1, 1, 0xFFFFFFFF, 3, 0, 0, 1, 1);
+        batch.draw(0, 0, 1, 1, 0xFF00FF00);
+        batch.draw(0, 0, 1, 1, 0xFF0000FF);
+        batch.end();
+        assertCalls("glUseProgram 1", "glUniformMatrix4fv 10", "glDrawElements 6",
+                "glUseProgram 2", "glUniformMatrix4fv 20", "glBindTexture 3", "glDrawElements 6",
+                "glUseProgram 1", "glUniformMatrix4fv 10", "glDrawElements 12");
+        assertEquals(3, batch.getFlushCount());
+        assertEquals(2, batch.getProgramFlushCount());
+        assertEquals(0, batch.getTextureFlushCount());
+    }
+
+    public void testFullBatchFlushes() {
+        final SpriteBatch batch = createBatch(4);
+        batch.begin(new float[16], 0);
+        for (int i = 0; i < 10; i++) {
+            batch.draw(0, 0, 1, 1, 0xFF00FF00);
+        }
+        batch.end();
+        assertCalls("glUseProgram 1", "glUniformMatrix4fv 10", "glDrawElements 24",
+                "glUseProgram 1", "glDrawElements 24", "glUseProgram 1", "glDrawElements 12");
+        assertEquals(3, batch.getFlushCount());
+        assertEquals(2, batch.getFullFlushCount());
+        assertEquals(10, batch.getQuadCount());
+
+        // Counts are per frame; totals are not.
+        mCalls.clear();
+        batch.begin(new float[16], 0);
+        batch.draw(0, 0, 1, 1, 0xFF00FF00);
+        batch.end();
+        assertCalls("glUseProgram 1", "glUniformMatrix4fv 10", "glDrawElements 6");
+        assertEquals(1, batch.getFlushCount());
+        assertEquals(0, batch.getFullFlushCount());
+        assertEquals(11, batch.getTotalQuadCount());
+        assertEquals(4, batch.getTotalFlushCount());
+
+        // An empty frame draws nothing.
+        mCalls.clear();
+        batch.begin(new float[16], 0);
+        batch.end();
+        assertTrue(mCalls.isEmpty());
+        assertEquals(0, batch.getFlushCount());
+    }
+
+    public void testVertexData() {
+        final SpriteBatch batch = createBatch(4);
+        batch.begin(new float[16], 0);
+        batch.draw(1, 2, 3, 4, 0x80FF4020, 9, 0.25f, 0.5f, 0.75f, 1.0f);
+        batch.end();
+
+        // X, Y, S, T of the bottom left, bottom right, top right and top left corners.
+        final float[] expected = {1, 2, 0.25f, 1.0f, 4, 2, 0.75f, 1.0f, 4, 6, 0.75f, 0.5f, 1, 6, 0.25f, 0.5f};
+        assertEquals(4 * 5, mVertices.length);
+        for (int vertex = 0; vertex < 4; vertex++) {
+            for (int i = 0; i < 4; i++) {
+                assertEquals(expected[4 * vertex + i], Float.intBitsToFloat(mVertices[5 * vertex + i]));
+            }
+            assertEquals(mVertices[4], mVertices[5 * vertex + 4]);
+        }
+
+        // The color lies in memory as R, G, B, A, whatever the byte order.
+        final ByteBuffer color = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+        color.putInt(0, mVertices[4]);
+        assertEquals((byte) 0xFF, color.get(0));
+        assertEquals((byte) 0x40, color.get(1));
+        assertEquals((byte) 0x20, color.get(2));
+        assertEquals((byte) 0x80, color.get(3));
+    }
+
+    public void testRejectsMisuse() {
+        final int[] capacities = {0, SpriteBatch.MAX_QUADS + 1};
+        for (int capacity : capacities) {
+            try {
+                new SpriteBatch(capacity);
+                fail(Integer.toString(capacity));
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+
+        final SpriteBatch batch = createBatch(4);
+        try {
+            batch.draw(0, 0, 1, 1, 0);
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+        try {
+            batch.end();
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+        batch.begin(new float[16], 0);
+        try {
+            batch.begin(new float[16], 0);
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.bogatov.openglproj;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class StreamRingTest extends TestCase {
+
+    private static final int FRAMES_IN_FLIGHT = 3;
+
+    public void testAllocatesAlignedRangesInOrder() {
+        final StreamRing ring = new StreamRing(1024, FRAMES_IN_FLIGHT);
+        ring.beginFrame(0);
+        assertEquals(0, ring.allocate(10, 4));
+        assertEquals(12, ring.allocate(4, 4));
+        assertEquals(16, ring.allocate(1, 16));
+        assertEquals(32, ring.allocate(8, 16));
+        assertEquals(40, ring.getUsedBytes());
+    }
+
+    public void testFramesRetireAfterFramesInFlight() {
+        final StreamRing ring = new StreamRing(1024, FRAMES_IN_FLIGHT);
+        ring.beginFrame(0);
+        ring.allocate(100, 4);
+        ring.beginFrame(1);
+        ring.allocate(200, 4);
+        ring.beginFrame(2);
+        assertEquals(300, ring.getUsedBytes());
+
+        // Frame 0 may still be read until frame 3 begins.
+        ring.beginFrame(3);
+        assertEquals(200, ring.getUsedBytes());
+        ring.beginFrame(4);
+        assertEquals(0, ring.getUsedBytes());
+    }
+
+    public void testSkippedFramesRetireEverythingOlder() {
+        final StreamRing ring = new StreamRing(1024, FRAMES_IN_FLIGHT);
+        ring.beginFrame(0);
+        ring.allocate(100, 4);
+        ring.beginFrame(1);
+        ring.allocate(100, 4);
+        ring.beginFrame(10);
+        assertEquals(0, ring.getUsedBytes());
+    }
+
+    public void testWrapSkipsTailAsPadding() {
+        final StreamRing ring = new StreamRing(1000, FRAMES_IN_FLIGHT);
+        ring.beginFrame(0);
+        assertEquals(0, ring.allocate(600, 4));
+        ring.beginFrame(1);
+        assertEquals(600, ring.allocate(300, 4));
+        ring.beginFrame(3);
+        // Frame 0 is retired; 200 bytes do not fit in the 100 left at the end.
+        assertEquals(0, ring.allocate(200, 4));
+        assertEquals(1, ring.getWrapCount());
+        // Frame 1's 300 bytes, the 100 skipped and the new 200.
+        assertEquals(600, ring.getUsedBytes());
+    }
+
+    public void testOverflowDoesNotOverwriteFramesInFlight() {
+        final StreamRing ring = new StreamRing(1000, FRAMES_IN_FLIGHT);
+        ring.beginFrame(0);
+        ring.allocate(400, 4);
+        ring.beginFrame(1);
+        ring.allocate(400, 4);
+        ring.beginFrame(2);
+        assertEquals(-1, ring.allocate(400, 4));
+        assertEquals(1, ring.getOverflowCount());
+        assertEquals(800, ring.allocate(200, 4));
+        assertEquals(-1, ring.allocate(4, 4));
+        assertEquals(2, ring.getOverflowCount());
+    }
+
+    public void testEmptyRingStartsOverAtZero() {
+        final StreamRing ring = new StreamRing(1000, FRAMES_IN_FLIGHT);
+        ring.beginFrame(0);
+        ring.allocate(600, 4);
+        ring.beginFrame(5);
+        assertEquals(0, ring.getUsedBytes());
+        // Nothing is in flight, so nearly the whole ring is available rather than just what lies past the head.
+        assertEquals(0, ring.allocate(900, 4));
+        assertEquals(0, ring.getOverflowCount());
+        assertEquals(0, ring.getWrapCount());
+    }
+
+    public void testAllocateBeforeBeginFrameThrows() {
+        final StreamRing ring = new StreamRing(1000, FRAMES_IN_FLIGHT);
+        try {
+            ring.allocate(4, 4);
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+    }
+
+    public void testFrameIndexMustIncrease() {
+        final StreamRing ring = new StreamRing(1000, FRAMES_IN_FLIGHT);
+        ring.beginFrame(3);
+        try {
+            ring.beginFrame(3);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    /**
+     * Runs a random workload on a simulated frame clock and checks that no allocation overlaps the data of a frame
+     * that is still in flight.
+     */
+    public void testRandomFramesNeverOverlapFramesInFlight() {
+        final int capacity = 4096;
+        final StreamRing ring = new StreamRing(capacity, FRAMES_IN_FLIGHT);
+        // Frame that last wrote each byte, or -1.
+        final long[] owner = new long[capacity];
+        Arrays.fill(owner, -1);
+        final Random random = new Random(3);
+
+        long frame = 0;
+        int allocations = 0;
+        for (int i = 0; i < 2000; i++) {
+            frame += 1 + (random.nextInt(10) == 0 ? random.nextInt(5) : 0);
+            ring.beginFrame(frame);
+            final int count = random.nextInt(6);
+            for (int j = 0; j < count; j++) {
+                final int bytes = 4 + random.nextInt(800);
+                final int offset = ring.allocate(bytes, 4);
+                if (offset < 0) {
+                    continue;
+                }
+                allocations++;
+                assertEquals(0, offset % 4);
+                assertTrue(offset + bytes <= capacity);
+                for (int b = offset; b < offset + bytes; b++) {
+                    assertTrue("Byte " + b + " of frame " + owner[b] + " overwritten in frame " + frame,
+                            owner[b] < 0 || owner[b] <= frame - FRAMES_IN_FLIGHT || owner[b] == frame);
+                    owner[b] = frame;
+                }
+            }
+            assertTrue(ring.getUsedBytes() >= 0 && ring.getUsedBytes() <= capacity);
+        }
+        assertTrue(allocations > 1000);
+        assertTrue(ring.getWrapCount() > 0);
+    }
+}
@@ -0,0 +1,201 @@
+package com.bogatov.openglproj;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import android.graphics.Bitmap;
+
+public class TextureAtlasTest extends TestCase {
+
+    /** Records uploads instead of making GL calls; pages are numbered from 1. */
+    private static class FakeUploader implements TextureAtlas.IPageUploader {
+        int pages;
+        final List<int[]> uploads = new ArrayList<int[]>();
+
+        @Override
+        public int createPage(int size) {
+            return ++pages;
+        }
+
+        @Override
+        public void upload(int textureHandle, int x, int y, Bitmap bitmap) {
+            uploads.add(new int[] {textureHandle, x, y, bitmap.getWidth(), bitmap.getHeight()});
+        }
+    }
+
+    /** Reloads images of a fixed size, or none. */
+    private static class FixedSource implements TextureAtlas.IImageSource {
+        final int[] widths;
+        final int[] heights;
+
+        FixedSource(int[] widths, int[] heights) {
+            this.widths = widths;
+            this.heights = heights;
+        }
+
+        @Override
+        public Bitmap load(int id) {
+            return widths[id] == 0 ? null : Bitmap.createBitmap(widths[id], heights[id], Bitmap.Config.ARGB_8888);
+        }
+    }
+
+    private final FakeUploader mUploader = new FakeUploader();
+
+    private static Bitmap bitmap(int width, int height) {
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    public void testRegionsArePaddedAndMapped() {
+        final TextureAtlas atlas = new TextureAtlas(64, 1, mUploader);
+        final TextureAtlas.Region region = atlas.add(7, bitmap(16, 8));
+        assertEquals(1, region.textureHandle);
+        assertEquals(1, region.x);
+        assertEquals(1, region.y);
+        assertEquals(1.0f / 64, region.u0, 0.0f);
+        assertEquals(17.0f / 64, region.u1, 0.0f);
+        assertEquals(9.0f / 64, region.v1, 0.0f);
+        assertSame(region, atlas.getRegion(7));
+        assertEquals(1, mUploader.uploads.size());
+    }
+
+    public void testImagesLargerThanPageAreRejected() {
+        final TextureAtlas atlas = new TextureAtlas(64, 1, mUploader);
+        assertNull(atlas.add(1, bitmap(63, 8)));
+        assertEquals(0, atlas.getPageCount());
+    }
+
+    public void testMaxPagesLimitsAdds() {
+        final TextureAtlas atlas = new TextureAtlas(32, 2, mUploader);
+        assertNotNull(atlas.add(1, bitmap(30, 30)));
+        assertNotNull(atlas.add(2, bitmap(30, 30)));
+        assertNull(atlas.add(3, bitmap(30, 30)));
+        assertEquals(2, atlas.getPageCount());
+        assertEquals(2, atlas.getRegionCount());
+    }
+
+    public void testRemovingLastImageFreesPage() {
+        final TextureAtlas atlas = new TextureAtlas(32, 1, mUploader);
+        atlas.add(1, bitmap(30, 14));
+        atlas.add(2, bitmap(30, 14));
+        atlas.remove(1);
+        assertNull(atlas.add(3, bitmap(30, 14)));
+        atlas.remove(2);
+        assertEquals(0.0f, atlas.getOccupancy(0), 0.0f);
+        assertNotNull(atlas.add(3, bitmap(30, 30)));
+    }
+
+    public void testDefragmentReloadsRemainingImages() {
+        final TextureAtlas atlas = new TextureAtlas(32, 1, mUploader);
+        atlas.add(0, bitmap(30, 14));
+        atlas.add(1, bitmap(14, 14));
+        atlas.add(2, bitmap(14, 14));
+        atlas.remove(0);
+        final int version = atlas.getVersion();
+
+        final FixedSource source = new FixedSource(new int[] {0, 14, 14}, new int[] {0, 14, 14});
+        assertEquals(1, atlas.defragment(source));
+        assertTrue(atlas.getVersion() != version);
+        assertEquals(1, atlas.getRegion(1).y);
+        assertEquals(1, atlas.getRegion(2).y);
+        assertTrue(atlas.getRegion(1).x != atlas.getRegion(2).x);
+        // The freed row is usable again.
+        assertNotNull(atlas.add(3, bitmap(30, 14)));
+    }
+
+    public void testDefragmentDropsImagesThatCannotBeReloaded() {
+        final TextureAtlas atlas = new TextureAtlas(32, 1, mUploader);
+        atlas.add(0, bitmap(30, 14));
+        atlas.add(1, bitmap(14, 14));
+        atlas.add(2, bitmap(14, 14));
+        atlas.remove(0);
+
+        assertEquals(1, atlas.defragment(new FixedSource(new int[] {0, 14, 0}, new int[] {0, 14, 0})));
+        assertNotNull(atlas.getRegion(1));
+        assertNull(atlas.getRegion(2));
+        assertEquals(1, atlas.getRegionCount());
+    }
+
+    public void testDefragmentThatDoesNotFitEmptiesPage() {
+        // Fits in this order, but the tallest-first repack of the last three does not.
+        final int[] widths = {25, 2, 15, 28};
+        final int[] heights = {16, 21, 5, 5};
+        final TextureAtlas atlas = new TextureAtlas(32, 1, mUploader);
+        for (int id = 0; id < widths.length; id++) {
+            assertNotNull(atlas.add(id, bitmap(widths[id], heights[id])));
+        }
+        atlas.remove(0);
+        final int uploads = mUploader.uploads.size();
+
+        assertEquals(1, atlas.defragment(new FixedSource(widths, heights)));
+        assertEquals(0, atlas.getRegionCount());
+        assertNull(atlas.getRegion(1));
+        assertEquals(uploads, mUploader.uploads.size());
+        // The packer and the regions agree that the page is empty.
+        assertEquals(0.0f, atlas.getOccupancy(0), 0.0f);
+        assertNotNull(atlas.add(4, bitmap(30, 30)));
+    }
+
+    public void testSparsePagesAreLeftAlone() {
+        final TextureAtlas atlas = new TextureAtlas(32, 1, mUploader);
+        atlas.add(0, bitmap(6, 6));
+        atlas.add(1, bitmap(14, 14));
+        atlas.remove(0);
+        assertEquals(0, atlas.defragment(new FixedSource(new int[] {0, 14}, new int[] {0, 14})));
+    }
+
+    public void testFullAtlasAddRemoveAddAgain() {
+        final TextureAtlas atlas = new TextureAtlas(32, 2, mUploader);
+        for (int id = 0; id < 8; id++) {
+            assertNotNull(atlas.add(id, bitmap(14, 14)));
+        }
+        assertNull(atlas.add(8, bitmap(14, 14)));
+
+        // Removing only frees the space on paper; the skyline cannot hand it out again.
+        atlas.remove(0);
+        atlas.remove(5);
+        assertNull(atlas.add(8, bitmap(14, 14)));
+
+        // Page 0 has ids 1 to 3 in use, page 1 only id 4.
+        final TextureAtlas.IRegionFilter inUse = new TextureAtlas.IRegionFilter() {
+            @Override
+            public boolean matches(TextureAtlas.Region region) {
+                return region.id < 5;
+            }
+        };
+        final int version = atlas.getVersion();
+        assertEquals(1, atlas.evictPage(inUse, 0.5f));
+        assertTrue(atlas.getVersion() != version);
+        assertNull(atlas.getRegion(4));
+        assertNull(atlas.getRegion(6));
+        assertNotNull(atlas.getRegion(1));
+
+        final TextureAtlas.Region region = atlas.add(8, bitmap(14, 14));
+        assertNotNull(region);
+        assertEquals(1, region.page);
+        for (int id = 9; id < 12; id++) {
+            assertNotNull(atlas.add(id, bitmap(14, 14)));
+        }
+        assertNull(atlas.add(12, bitmap(14, 14)));
+        assertEquals(7, atlas.getRegionCount());
+    }
+
+    public void testEvictPageKeepsPagesMostlyInUse() {
+        final TextureAtlas atlas = new TextureAtlas(32, 1, mUploader);
+        for (int id = 0; id < 4; id++) {
+            atlas.add(id, bitmap(14, 14));
+        }
+        final TextureAtlas.IRegionFilter inUse = new TextureAtlas.IRegionFilter() {
+            @Override
+            public boolean matches(TextureAtlas.Region region) {
+                return region.id != 0;
+            }
+        };
+        assertEquals(-1, atlas.evictPage(inUse, 0.5f));
+        assertEquals(4, atlas.getRegionCount());
+        assertEquals(0, atlas.evictPage(inUse, 0.75f));
+        assertEquals(0, atlas.getRegionCount());
+        assertEquals(0.0f, atlas.getOccupancy(0), 0.0f);
+    }
+}
@@ -0,0 +1,237 @@
+package com.bogatov.openglproj;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class TextureCacheTest extends TestCase {
+
+    /** Size of a 10x10 single byte texture without mipmaps. */
+    private static final int BYTES = 100;
+
+    private TextureCache mCache;
+    private final Set<Integer> mLoading = new HashSet<Integer>();
+    private final List<Integer> mDeleted = new ArrayList<Integer>();
+    private IGL mGL;
+
+    @Override
+    protected void setUp() {
+        mCache = new TextureCache(3 * BYTES);
+        mCache.setLoadTracker(new TextureCache.ILoadTracker() {
+            @Override
+            public boolean isLoading(int textureHandle) {
+                return mLoading.contains(textureHandle);
+            }
+        });
+        mGL = (IGL) Proxy.newProxyInstance(IGL.class.getClassLoader(), new Class<?>[] {IGL.class},
+                new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("glDeleteTextures")) {
+                    final int[] textures = (int[]) args[1];
+                    for (int i = 0; i < (Integer) args[0]; i++) {
+                        mDeleted.add(textures[(Integer) args[2] + i]);
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    private void insert(int handle) {
+        mCache.insert(handle, 0, handle);
+        mCache.setSize(handle, 10, 10, 1, false);
+    }
+
+    public void testEstimateBytes() {
+        assertEquals(64 * 64 * 4, TextureCache.estimateBytes(64, 64, 4, false));
+        assertEquals(64 * 64 * 4 * 4 / 3, TextureCache.estimateBytes(64, 64, 4, true));
+    }
+
+    public void testEvictsLeastRecentlyUsed() {
+        insert(1);
+        insert(2);
+        insert(3);
+        // Touching 1 makes 2 the oldest.
+        mCache.release(mCache.acquire(1, 0));
+        insert(4);
+
+        assertEquals(3, mCache.getCount());
+        assertEquals(0, mCache.acquire(2, 0));
+        assertEquals(1, mCache.getEvictionCount());
+        assertEquals(3 * BYTES, mCache.getTotalBytes());
+    }
+
+    public void testReferencedTexturesAreNotEvicted() {
+        insert(1);
+        insert(2);
+        insert(3);
+        mCache.acquire(1, 0);
+        mCache.acquire(2, 0);
+        mCache.acquire(3, 0);
+        insert(4);
+        insert(5);
+
+        // Only the unreferenced newcomers can go.
+        assertEquals(3, mCache.getCount());
+        assertEquals(2, mCache.getEvictionCount());
+        assertEquals(0, mCache.acquire(4, 0));
+
+        // Released textures are kept until something needs the room.
+        mCache.release(1);
+        assertEquals(3, mCache.getCount());
+        insert(6);
+        assertEquals(0, mCache.acquire(1, 0));
+        assertEquals(1, mCache.getRefCount(2));
+    }
+
+    public void testLoadingTexturesAreNotEvicted() {
+        mLoading.add(1);
+        mLoading.add(2);
+        mCache.insert(1, 0, 1);
+        mCache.insert(2, 0, 2);
+        insert(3);
+        insert(4);
+        insert(5);
+        insert(6);
+
+        assertEquals(2, mCache.acquire(2, 0));
+        assertEquals(1, mCache.acquire(1, 0));
+        mCache.release(1);
+        mCache.release(2);
+
+        // Once loaded, they are ordinary entries again.
+        mLoading.clear();
+        mCache.setSize(1, 10, 10, 1, false);
+        mCache.setSize(2, 10, 10, 1, false);
+        insert(7);
+        insert(8);
+        insert(9);
+        assertEquals(3, mCache.getCount());
+        assertEquals(0, mCache.acquire(1, 0));
+        assertEquals(0, mCache.acquire(2, 0));
+    }
+
+    public void testLoadingTexturesExceedBudgetUntilLoaded() {
+        for (int handle = 1; handle <= 4; handle++) {
+            mLoading.add(handle);
+            insert(handle);
+        }
+        assertEquals(4, mCache.getCount());
+        assertEquals(4 * BYTES, mCache.getTotalBytes());
+        assertEquals(0, mCache.getEvictionCount());
+
+        mLoading.remove(1);
+        mCache.setBudget(3 * BYTES);
+        assertEquals(3, mCache.getCount());
+        assertEquals(1, mCache.getEvictionCount());
+    }
+
+    public void testDiscard() {
+        mLoading.add(1);
+        mCache.insert(1, 0, 1);
+        mCache.acquire(1, 0);
+        assertFalse(mCache.discard(1));
+
+        mCache.release(1);
+        assertTrue(mCache.discard(1));
+        assertFalse(mCache.discard(1));
+        assertEquals(0, mCache.getCount());
+        // Discarding is not an eviction for the budget.
+        assertEquals(0, mCache.getEvictionCount());
+
+        assertEquals(1, mCache.deleteEvicted(mGL));
+        assertEquals(1, (int) mDeleted.get(0));
+    }
+
+    public void testReleaseUnreferencedThrows() {
+        insert(1);
+        try {
+            mCache.release(1);
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+        try {
+            mCache.release(2);
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+    }
+
+    public void testHitAndMissCounts() {
+        assertEquals(0, mCache.acquire(1, 0));
+        insert(1);
+        assertEquals(1, mCache.acquire(1, 0));
+        assertEquals(0, mCache.acquire(1, 64));
+        assertEquals(1, mCache.acquire(1, 0));
+
+        assertEquals(2, mCache.getHitCount());
+        assertEquals(2, mCache.getMissCount());
+        assertEquals(2, mCache.getRefCount(1));
+    }
+
+    public void testAcquireWithFactory() {
+        final TextureCache.ITextureFactory factory = new TextureCache.ITextureFactory() {
+            private int mNext = 10;
+
+            @Override
+            public int createTexture(int resourceId, int level) {
+                return mNext++;
+            }
+        };
+        assertEquals(10, mCache.acquire(1, 32, factory));
+        assertEquals(10, mCache.acquire(1, 32, factory));
+        assertEquals(11, mCache.acquire(1, 64, factory));
+        assertEquals(2, mCache.getRefCount(10));
+        assertEquals(2, mCache.getCount());
+    }
+
+    public void testTotalBytesFollowSizesAndReplacement() {
+        mCache.setBudget(1 << 20);
+        insert(1);
+        mCache.setSize(1, 64, 64, 4, true);
+        assertEquals(TextureCache.estimateBytes(64, 64, 4, true), mCache.getTotalBytes());
+
+        // Same key, new handle: the old texture is replaced and queued for deletion.
+        mCache.insert(1, 0, 2);
+        assertEquals(0, mCache.getTotalBytes());
+        mCache.setSize(2, 10, 10, 1, false);
+        assertEquals(BYTES, mCache.getTotalBytes());
+
+        // Sizes for unknown handles are ignored.
+        mCache.setSize(1, 64, 64, 4, true);
+        assertEquals(BYTES, mCache.getTotalBytes());
+
+        assertEquals(1, mCache.deleteEvicted(mGL));
+        assertEquals(0, mCache.deleteEvicted(mGL));
+        assertEquals(1, (int) mDeleted.get(0));
+    }
+
+    public void testDeleteEvictedDeletesEachTextureOnce() {
+        for (int handle = 1; handle <= 6; handle++) {
+            insert(handle);
+        }
+        assertEquals(3, mCache.deleteEvicted(mGL));
+        assertEquals(3, mDeleted.size());
+        assertTrue(mDeleted.contains(1) && mDeleted.contains(2) && mDeleted.contains(3));
+        assertEquals(0, mCache.deleteEvicted(mGL));
+    }
+
+    public void testClearForgetsEverything() {
+        insert(1);
+        insert(2);
+        mCache.setBudget(0);
+        mCache.clear();
+        assertEquals(0, mCache.getCount());
+        assertEquals(0, mCache.getTotalBytes());
+        assertEquals(0, mCache.deleteEvicted(mGL));
+    }
+}
@@ -0,0 +1,123 @@
+package com.bogatov.openglproj;
+
+import junit.framework.TestCase;
+
+public class ThumbnailLodTest extends TestCase {
+
+    /** Levels 32 to 1024, upgrading 12.5% past a level and downgrading 25% below the next lower one. */
+    private final ThumbnailLod mLod = new ThumbnailLod();
+
+    public void testLevelFor() {
+        assertEquals(32, mLod.getLevelFor(0));
+        assertEquals(32, mLod.getLevelFor(32));
+        assertEquals(64, mLod.getLevelFor(33));
+        assertEquals(128, mLod.getLevelFor(100));
+        assertEquals(1024, mLod.getLevelFor(1024));
+        // Clamped to the largest level.
+        assertEquals(1024, mLod.getLevelFor(5000));
+    }
+
+    public void testFirstUpdateTakesTheLevel() {
+        assertEquals(0, mLod.getSize());
+        assertTrue(mLod.update(100));
+        assertEquals(128, mLod.getSize());
+        assertEquals(0, mLod.getChangeCount());
+        assertFalse(mLod.update(100));
+        assertFalse(mLod.update(65));
+    }
+
+    public void testUpgradeMargin() {
+        mLod.update(128);
+        // Up to 144 pixels, 12.5% magnification of the 128 level is tolerated.
+        assertFalse(mLod.update(129));
+        assertFalse(mLod.update(144));
+        assertEquals(128, mLod.getSize());
+        assertTrue(mLod.update(145));
+        assertEquals(256, mLod.getSize());
+        assertEquals(1, mLod.getChangeCount());
+    }
+
+    public void testUpgradeSkipsLevels() {
+        mLod.update(32);
+        assertTrue(mLod.update(600));
+        assertEquals(1024, mLod.getSize());
+    }
+
+    public void testDowngradeMargin() {
+        mLod.update(256);
+        // The 128 level is only taken once the cell is at most 75% of it.
+        assertFalse(mLod.update(128));
+        assertFalse(mLod.update(97));
+        assertEquals(256, mLod.getSize());
+        assertTrue(mLod.update(96));
+        assertEquals(128, mLod.getSize());
+        // Back up needs more than 144 pixels, so the band between 96 and 144 is stable either way.
+        assertFalse(mLod.update(140));
+        assertEquals(1, mLod.getChangeCount());
+    }
+
+    public void testDowngradeDropsSeveralLevels() {
+        mLod.update(1024);
+        assertTrue(mLod.update(40));
+        assertEquals(64, mLod.getSize());
+
+        // Only as far as the margin allows: 100 pixels fit 256 with room, but not 128.
+        mLod.update(1024);
+        assertTrue(mLod.update(100));
+        assertEquals(256, mLod.getSize());
+        assertEquals(3, mLod.getChangeCount());
+    }
+
+    public void testClampsToMinAndMax() {
+        mLod.update(5000);
+        assertEquals(1024, mLod.getSize());
+        assertFalse(mLod.update(10000));
+
+        assertTrue(mLod.update(1));
+        assertEquals(32, mLod.getSize());
+        assertFalse(mLod.update(0));
+    }
+
+    public void testCustomLevelsAndMargins() {
+        final ThumbnailLod lod = new ThumbnailLod(64, 256, 0.0f, 0.0f);
+        lod.update(64);
+        // Without margins the level follows the cell size exactly.
+        assertTrue(lod.update(65));
+        assertEquals(128, lod.getSize());
+        assertTrue(lod.update(64));
+        assertEquals(64, lod.getSize());
+        assertFalse(lod.update(16));
+    }
+
+    public void testRejectsInvalidArguments() {
+        final int[][] sizes = {{24, 1024}, {32, 1000}, {64, 32}, {0, 32}};
+        for (int[] size : sizes) {
+            try {
+                new ThumbnailLod(size[0], size[1], 0.1f, 0.1f);
+                fail(size[0] + ", " + size[1]);
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+        final float[][] margins = {{-0.1f, 0.1f}, {0.1f, -0.1f}, {0.1f, 1.0f}};
+        for (float[] margin : margins) {
+            try {
+                new ThumbnailLod(32, 1024, margin[0], margin[1]);
+                fail(margin[0] + ", " + margin[1]);
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+    }
+
+    public void testSampleSize() {
+        // The shorter side decides: 3000 / 8 is still at least 256, 3000 / 16 is not.
+        assertEquals(8, ThumbnailLod.getSampleSize(4000, 3000, 256));
+        assertEquals(8, ThumbnailLod.getSampleSize(3000, 4000, 256));
+        assertEquals(4, ThumbnailLod.getSampleSize(1024, 1024, 256));
+        assertEquals(1, ThumbnailLod.getSampleSize(100, 100, 256));
+        assertEquals(1, ThumbnailLod.getSampleSize(511, 2000, 256));
+        assertEquals(2, ThumbnailLod.getSampleSize(512, 2000, 256));
+        assertEquals(1, ThumbnailLod.getSampleSize(4000, 3000, 0));
+    }
+}
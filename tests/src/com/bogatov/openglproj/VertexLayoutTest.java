@@ -0,0 +1,198 @@
+package com.bogatov.openglproj;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import android.opengl.GLES20;
+
+public class VertexLayoutTest extends TestCase {
+
+    /** Position, half float normal, byte tangent and RGBA color. */
+    private static final VertexLayout MIXED_LAYOUT = new VertexLayout(
+            VertexAttribute.floats("a_Position", 3),
+            VertexAttribute.halfFloats("a_Normal", 3),
+            VertexAttribute.normalizedBytes("a_Tangent", 3),
+            VertexAttribute.normalizedUnsignedBytes("a_Color", 4));
+
+    private static int half(float value) {
+        return Mesh.toHalfFloat(value) & 0xFFFF;
+    }
+
+    public void testOffsetsAndStrideAreAligned() {
+        // The grid's cube: 12 bytes of position, then 4 of texture coordinates.
+        final VertexLayout cube = new VertexLayout(
+                VertexAttribute.floats("a_Position", 3),
+                VertexAttribute.normalizedUnsignedShorts("a_TexCoordinate", 2));
+        assertEquals(0, cube.getOffset(0));
+        assertEquals(12, cube.getOffset(1));
+        assertEquals(16, cube.getStride());
+
+        // Six bytes of half floats and three of bytes are each padded to a 4 byte boundary.
+        assertEquals(0, MIXED_LAYOUT.getOffset(0));
+        assertEquals(12, MIXED_LAYOUT.getOffset(1));
+        assertEquals(20, MIXED_LAYOUT.getOffset(2));
+        assertEquals(24, MIXED_LAYOUT.getOffset(3));
+        assertEquals(28, MIXED_LAYOUT.getStride());
+
+        final VertexLayout odd = new VertexLayout(VertexAttribute.normalizedUnsignedBytes("a_Color", 3));
+        assertEquals(3, odd.getAttribute(0).getSize());
+        assertEquals(4, odd.getStride());
+    }
+
+    public void testIndexOf() {
+        assertEquals(2, MIXED_LAYOUT.indexOf("a_Tangent"));
+        assertEquals(-1, MIXED_LAYOUT.indexOf("a_Missing"));
+        assertEquals(4, MIXED_LAYOUT.getAttributeCount());
+    }
+
+    public void testBytesSavedOverFloats() {
+        // 13 components as floats take 52 bytes per vertex.
+        assertEquals(52, MIXED_LAYOUT.getFloatStride());
+        assertEquals(24 * 36, MIXED_LAYOUT.getSavedBytes(36));
+
+        final VertexLayout floats = new VertexLayout(VertexAttribute.floats("a_Position", 3));
+        assertEquals(0, floats.getSavedBytes(100));
+
+        final Mesh mesh = new Mesh(MIXED_LAYOUT, 36);
+        try {
+            assertEquals(28 * 36, mesh.getSize());
+            assertEquals(MIXED_LAYOUT.getSavedBytes(36), mesh.getSavedBytes());
+        } finally {
+            mesh.dispose();
+        }
+    }
+
+    public void testRejectsInvalidAttributes() {
+        try {
+            new VertexLayout();
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        try {
+            VertexAttribute.floats("a_Position", 5);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        try {
+            new VertexAttribute("a_Position", 3, GLES20.GL_FIXED, false);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    public void testPacksNormalizedIntegers() {
+        final VertexLayout layout = new VertexLayout(
+                VertexAttribute.normalizedUnsignedShorts("a_TexCoordinate", 4),
+                VertexAttribute.normalizedShorts("a_Normal", 4),
+                VertexAttribute.normalizedUnsignedBytes("a_Color", 4),
+                VertexAttribute.normalizedBytes("a_Tangent", 4),
+                new VertexAttribute("a_Index", 2, GLES20.GL_SHORT, false));
+        final Mesh mesh = new Mesh(layout, 1);
+        try {
+            // Out of range values are clamped.
+            mesh.setAttribute("a_TexCoordinate", new float[] {0.0f, 0.5f, 1.0f, 1.5f});
+            mesh.setAttribute("a_Normal", new float[] {-1.0f, 0.5f, 1.0f, -2.0f});
+            mesh.setAttribute("a_Color", new float[] {0.0f, 0.5f, 1.0f, -0.5f});
+            mesh.setAttribute("a_Tangent", new float[] {-1.0f, 0.5f, 1.0f, 2.0f});
+            mesh.setAttribute("a_Index", new float[] {300.7f, -2.0f});
+
+            final ByteBuffer data = mesh.getData();
+            assertEquals(0, data.getShort(0) & 0xFFFF);
+            assertEquals(32768, data.getShort(2) & 0xFFFF);
+            assertEquals(0xFFFF, data.getShort(4) & 0xFFFF);
+            assertEquals(0xFFFF, data.getShort(6) & 0xFFFF);
+
+            assertEquals(-32767, data.getShort(8));
+            assertEquals(16384, data.getShort(10));
+            assertEquals(32767, data.getShort(12));
+            assertEquals(-32767, data.getShort(14));
+
+            assertEquals(0, data.get(16) & 0xFF);
+            assertEquals(128, data.get(17) & 0xFF);
+            assertEquals(0xFF, data.get(18) & 0xFF);
+            assertEquals(0, data.get(19) & 0xFF);
+
+            assertEquals(-127, data.get(20));
+            assertEquals(64, data.get(21));
+            assertEquals(127, data.get(22));
+            assertEquals(127, data.get(23));
+
+            // Not normalized: stored as the integer part.
+            assertEquals(300, data.getShort(24));
+            assertEquals(-2, data.getShort(26));
+        } finally {
+            mesh.dispose();
+        }
+    }
+
+    public void testPacksInterleavedVertices() {
+        final Mesh mesh = new Mesh(MIXED_LAYOUT, 2);
+        try {
+            mesh.setAttribute(0, new float[] {1.0f, 2.0f, 3.0f, 4.0f, 5.0f, 6.0f});
+            mesh.setAttribute(1, new float[] {0.0f, 1.0f, -2.0f, 0.5f, 0.5f, 0.5f});
+            final ByteBuffer data = mesh.getData();
+            // The second vertex starts one stride in.
+            assertEquals(4.0f, data.getFloat(28), 0.0f);
+            assertEquals(6.0f, data.getFloat(28 + 8), 0.0f);
+            assertEquals(0x3C00, data.getShort(12 + 2) & 0xFFFF);
+            assertEquals(0xC000, data.getShort(12 + 4) & 0xFFFF);
+            assertEquals(0x3800, data.getShort(28 + 12) & 0xFFFF);
+
+            try {
+                mesh.setAttribute(0, new float[5]);
+                fail();
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+            try {
+                mesh.setAttribute("a_Missing", new float[6]);
+                fail();
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        } finally {
+            mesh.dispose();
+        }
+    }
+
+    public void testHalfFloatExactValues() {
+        assertEquals(0x0000, half(0.0f));
+        assertEquals(0x8000, half(-0.0f));
+        assertEquals(0x3C00, half(1.0f));
+        assertEquals(0xC000, half(-2.0f));
+        assertEquals(0x3800, half(0.5f));
+        // Largest normal, smallest normal and smallest subnormal.
+        assertEquals(0x7BFF, half(65504.0f));
+        assertEquals(0x0400, half((float) Math.pow(2, -14)));
+        assertEquals(0x0001, half((float) Math.pow(2, -24)));
+    }
+
+    public void testHalfFloatRounding() {
+        assertEquals(0x3555, half(1.0f / 3.0f));
+        assertEquals(0x2E66, half(0.1f));
+        // Either side of the midpoint between 1 and the next half.
+        assertEquals(0x3C01, half(1.0f + (float) Math.pow(2, -11) + (float) Math.pow(2, -20)));
+        assertEquals(0x3C00, half(1.0f + (float) Math.pow(2, -11) - (float) Math.pow(2, -20)));
+        // The midpoint itself rounds away from zero.
+        assertEquals(0x3C01, half(1.0f + (float) Math.pow(2, -11)));
+        // Rounding can carry into the exponent, and out of the normal range.
+        assertEquals(0x4000, half(2.0f - (float) Math.pow(2, -12)));
+        assertEquals(0x7C00, half(65520.0f));
+        // Subnormals round too, and anything below half the smallest one is flushed to zero.
+        assertEquals(0x0002, half(3.0f * (float) Math.pow(2, -25)));
+        assertEquals(0x8000, half(-1e-8f));
+    }
+
+    public void testHalfFloatSpecialValues() {
+        assertEquals(0x7C00, half(Float.POSITIVE_INFINITY));
+        assertEquals(0xFC00, half(Float.NEGATIVE_INFINITY));
+        assertEquals(0x7C00, half(1e6f));
+        final int nan = half(Float.NaN);
+        assertEquals(0x7C00, nan & 0x7C00);
+        assertTrue((nan & 0x3FF) != 0);
+    }
+}